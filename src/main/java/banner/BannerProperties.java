@@ -3,23 +3,34 @@
  */
 package banner;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 import banner.processing.ParenthesisPostProcessor;
 import banner.processing.PostProcessor;
+import banner.tagging.CachingLemmatiser;
+import banner.tagging.CachingPosTagger;
+import banner.tagging.DictionaryIndex;
 import banner.tagging.DictionaryTagger;
+import banner.tagging.HepplePosTagger;
 import banner.tagging.MentionType;
+import banner.tagging.PosTaggerFactory;
 import banner.tagging.TaggedToken.TagFormat;
 import banner.tokenization.SimpleTokenizer;
 import banner.tokenization.Tokenizer;
+import banner.util.BoundedCache;
 import bc2.GeneDictionaryTagger;
 import dragon.nlp.tool.HeppleTagger;
+import dragon.nlp.tool.Lemmatiser;
 import dragon.nlp.tool.MedPostTagger;
 import dragon.nlp.tool.Tagger;
 import dragon.nlp.tool.lemmatiser.EngLemmatiser;
+import edu.umass.cs.mallet.base.fst.CRF4Checkpoint;
+import edu.umass.cs.mallet.base.fst.CRF4StochasticTrainer;
 
 public class BannerProperties
 {
@@ -39,14 +50,21 @@ public class BannerProperties
 		}
 	}
 
-	private EngLemmatiser lemmatiser;
+	private Lemmatiser lemmatiser;
 	private Tagger posTagger;
+	private String posTaggerName;
+	private String posTaggerDataDirectory;
+	private BoundedCache<CachingLemmatiser.Key, String> lemmaCache;
+	private BoundedCache<List<String>, CachingPosTagger.Tags> posCache;
 	private Tokenizer tokenizer;
 	private TagFormat tagFormat;
 	private PostProcessor postProcessor;
 	private boolean useNumericNormalization;
 	private int order;
 	private boolean useFeatureInduction;
+	private int trainingThreads;
+	private CRF4StochasticTrainer stochasticTrainer;
+	private CRF4Checkpoint checkpoint;
 	private TextDirection textDirection;
 	private banner.tagging.Tagger preTagger;
 	private String regexFilename;
@@ -80,19 +98,28 @@ public class BannerProperties
 
   public static BannerProperties load(Properties properties) throws IOException, ClassNotFoundException, InstantiationException, IllegalAccessException {
     BannerProperties bannerProperties = new BannerProperties();
+    BoundedCache.Eviction cacheEviction = BoundedCache.Eviction.valueOf(properties.getProperty("cacheEviction", "LRU"));
     String lemmatiserDataDirectory = properties.getProperty("lemmatiserDataDirectory");
     if (lemmatiserDataDirectory != null)
+    {
       bannerProperties.lemmatiser = new EngLemmatiser(lemmatiserDataDirectory, false, true);
+      int lemmaCacheSize = Integer.parseInt(properties.getProperty("lemmaCacheSize", "0"));
+      if (lemmaCacheSize > 0)
+      {
+        bannerProperties.lemmaCache = new BoundedCache<CachingLemmatiser.Key, String>(lemmaCacheSize, cacheEviction);
+        bannerProperties.lemmatiser = new CachingLemmatiser(bannerProperties.lemmatiser, bannerProperties.lemmaCache);
+      }
+    }
     String posTaggerDataDirectory = properties.getProperty("posTaggerDataDirectory");
     if (posTaggerDataDirectory != null)
     {
-      String posTagger = properties.getProperty("posTagger", HeppleTagger.class.getName());
-      if (posTagger.equals(HeppleTagger.class.getName()))
-        bannerProperties.posTagger = new HeppleTagger(posTaggerDataDirectory);
-      else if (posTagger.equals(MedPostTagger.class.getName()))
-        bannerProperties.posTagger = new MedPostTagger(posTaggerDataDirectory);
-      else
-        throw new IllegalArgumentException("Unknown POS tagger type: " + posTagger);
+      String posTagger = properties.getProperty("posTagger", HepplePosTagger.class.getName());
+      bannerProperties.posTaggerName = posTagger;
+      bannerProperties.posTaggerDataDirectory = posTaggerDataDirectory;
+      int posCacheSize = Integer.parseInt(properties.getProperty("posCacheSize", "0"));
+      if (posCacheSize > 0)
+        bannerProperties.posCache = new BoundedCache<List<String>, CachingPosTagger.Tags>(posCacheSize, cacheEviction);
+      bannerProperties.posTagger = bannerProperties.newPosTagger();
     }
     String tokenizer = properties.getProperty("tokenizer", SimpleTokenizer.class.getName());
     bannerProperties.tokenizer = (Tokenizer) Class.forName(tokenizer).newInstance();
@@ -104,15 +131,48 @@ public class BannerProperties
     bannerProperties.useNumericNormalization = Boolean.parseBoolean(properties.getProperty("useNumericNormalization", "true"));
     bannerProperties.order = Integer.parseInt(properties.getProperty("order", "2"));
     bannerProperties.useFeatureInduction = Boolean.parseBoolean(properties.getProperty("useFeatureInduction", "false"));
+    bannerProperties.trainingThreads = Integer.parseInt(properties.getProperty("trainingThreads", "1"));
+    if (Boolean.parseBoolean(properties.getProperty("useStochasticTraining", "false")))
+    {
+      CRF4StochasticTrainer stochasticTrainer = new CRF4StochasticTrainer();
+      stochasticTrainer.setNumEpochs(Integer.parseInt(properties.getProperty("stochasticEpochs", "" + CRF4StochasticTrainer.DEFAULT_NUM_EPOCHS)));
+      stochasticTrainer.setBatchSize(Integer.parseInt(properties.getProperty("stochasticBatchSize", "" + CRF4StochasticTrainer.DEFAULT_BATCH_SIZE)));
+      stochasticTrainer.setLearningRate(Double.parseDouble(properties.getProperty("stochasticLearningRate", "" + CRF4StochasticTrainer.DEFAULT_LEARNING_RATE)),
+          Double.parseDouble(properties.getProperty("stochasticDecay", "" + CRF4StochasticTrainer.DEFAULT_DECAY)));
+      bannerProperties.stochasticTrainer = stochasticTrainer;
+    }
+    String checkpointFileName = properties.getProperty("checkpointFile");
+    if (checkpointFileName != null)
+    {
+      CRF4Checkpoint checkpoint = new CRF4Checkpoint(new File(checkpointFileName), Integer.parseInt(properties.getProperty("checkpointInterval", "10")));
+      checkpoint.setKeepAll(Boolean.parseBoolean(properties.getProperty("keepCheckpoints", "false")));
+      bannerProperties.checkpoint = checkpoint;
+    }
     bannerProperties.textDirection = TextDirection.valueOf(properties.getProperty("textDirection", "Forward"));
     String dictionaryFileName = properties.getProperty("dictionary");
     if (dictionaryFileName != null)
     {
       // FIXME This is a temporary hack
       DictionaryTagger dictTagger = new GeneDictionaryTagger(bannerProperties.tokenizer, true);
-      FileReader reader = new FileReader(dictionaryFileName);
-      dictTagger.add(reader, MentionType.getType("GENE"));
-      reader.close();
+      // The index holds the entries already tokenized, unless it is stale
+      String dictionaryIndexFileName = properties.getProperty("dictionaryIndex");
+      if (dictionaryIndexFileName == null || !DictionaryIndex.read(dictTagger, new File(dictionaryFileName), new File(dictionaryIndexFileName)))
+      {
+        FileReader reader = new FileReader(dictionaryFileName);
+        dictTagger.add(reader, MentionType.getType("GENE"));
+        reader.close();
+        // Replaces a missing, stale or corrupt index, which is only a cache of the dictionary
+        if (dictionaryIndexFileName != null)
+        {
+          try
+          {
+            DictionaryIndex.write(dictTagger, new File(dictionaryFileName), new File(dictionaryIndexFileName));
+          } catch (IOException e)
+          {
+            System.err.println("WARNING: Cannot write dictionary index " + dictionaryIndexFileName + ": " + e);
+          }
+        }
+      }
       System.out.println("Dict size - " + dictTagger.size());
       bannerProperties.preTagger = dictTagger;
     }
@@ -132,9 +192,10 @@ public class BannerProperties
 
 	/**
 	 * @return The lemmatiser ({@link EngLemmatiser}) to use for training and
-	 *         tagging
+	 *         tagging, wrapped in a {@link CachingLemmatiser} if lemmaCacheSize
+	 *         is set
 	 */
-	public EngLemmatiser getLemmatiser()
+	public Lemmatiser getLemmatiser()
 	{
 		return lemmatiser;
 	}
@@ -150,13 +211,65 @@ public class BannerProperties
 
 	/**
 	 * @return The part-of-speech {@link Tagger} to use for training and
-	 *         tagging.
+	 *         tagging, wrapped in a {@link CachingPosTagger} if posCacheSize
+	 *         is set.
 	 */
 	public Tagger getPosTagger()
 	{
 		return posTagger;
 	}
 
+	/**
+	 * @return A {@link PosTaggerFactory} creating new instances of the
+	 *         part-of-speech {@link Tagger}, for tagging from several threads,
+	 *         or <code>null</code> if no part-of-speech tagger is used
+	 */
+	public PosTaggerFactory getPosTaggerFactory()
+	{
+		if (posTagger == null)
+			return null;
+		return new PosTaggerFactory()
+		{
+			public Tagger newPosTagger()
+			{
+				try
+				{
+					return BannerProperties.this.newPosTagger();
+				}
+				catch (IOException e)
+				{
+					throw new IllegalStateException("Failed to create POS tagger", e);
+				}
+			}
+		};
+	}
+
+	// The taggers created share one cache, and one HepplePosTagger, since that
+	// may be used by several threads
+	private Tagger newPosTagger() throws IOException
+	{
+		Tagger tagger = posTagger;
+		if (tagger instanceof CachingPosTagger)
+			tagger = ((CachingPosTagger) tagger).getPosTagger();
+		if (!(tagger instanceof HepplePosTagger))
+			tagger = newPosTagger(posTaggerName, posTaggerDataDirectory);
+		if (posCache != null)
+			tagger = new CachingPosTagger(tagger, posCache);
+		return tagger;
+	}
+
+	private static Tagger newPosTagger(String posTagger, String posTaggerDataDirectory) throws IOException
+	{
+		if (posTagger.equals(HeppleTagger.class.getName()))
+			return new HeppleTagger(posTaggerDataDirectory);
+		else if (posTagger.equals(MedPostTagger.class.getName()))
+			return new MedPostTagger(posTaggerDataDirectory);
+		else if (posTagger.equals(HepplePosTagger.class.getName()))
+			return new HepplePosTagger(posTaggerDataDirectory);
+		else
+			throw new IllegalArgumentException("Unknown POS tagger type: " + posTagger);
+	}
+
 	/**
 	 * @return The instance of {@link ParenthesisPostProcessor} to use for
 	 *         training and tagging, or <code>null</code> if it should not be
@@ -193,6 +306,33 @@ public class BannerProperties
 		return useFeatureInduction;
 	}
 
+	/**
+	 * @return The number of threads which compute each training iteration,
+	 *         default is 1
+	 */
+	public int getTrainingThreads()
+	{
+		return trainingThreads;
+	}
+
+	/**
+	 * @return The trainer to train the CRF with by stochastic gradient ascent,
+	 *         or null to train it with L-BFGS, the default
+	 */
+	public CRF4StochasticTrainer getStochasticTrainer()
+	{
+		return stochasticTrainer;
+	}
+
+	/**
+	 * @return Where and how often to save the progress of training with
+	 *         L-BFGS, or null not to, the default
+	 */
+	public CRF4Checkpoint getCheckpoint()
+	{
+		return checkpoint;
+	}
+
 	/**
 	 * @return Whether or not to include numeric normalization features
 	 */
@@ -219,6 +359,35 @@ public class BannerProperties
 		return regexFilename;
 	}
 
+	/**
+	 * @return The cache of lemmas shared by the lemmatiser, or
+	 *         <code>null</code> if lemmas are not cached
+	 */
+	public BoundedCache<CachingLemmatiser.Key, String> getLemmaCache()
+	{
+		return lemmaCache;
+	}
+
+	/**
+	 * @return The cache of part-of-speech tags shared by the part-of-speech
+	 *         taggers, or <code>null</code> if tags are not cached
+	 */
+	public BoundedCache<List<String>, CachingPosTagger.Tags> getPosCache()
+	{
+		return posCache;
+	}
+
+	/**
+	 * Outputs the hits, misses and evictions of the caches to the console
+	 */
+	public void logCacheStatistics()
+	{
+		if (lemmaCache != null)
+			System.out.println("Lemma cache: " + lemmaCache);
+		if (posCache != null)
+			System.out.println("POS cache: " + posCache);
+	}
+
 	/**
 	 * Outputs the settings for this configuration to the console, very useful
 	 * for ensuring the configuration is set as desired prior to a training run
@@ -227,12 +396,24 @@ public class BannerProperties
 	{
 		System.out.println("Lemmatiser: " + (lemmatiser == null ? null : lemmatiser.getClass().getName()));
 		System.out.println("POSTagger: " + (posTagger == null ? null : posTagger.getClass().getName()));
+		System.out.println("Lemma cache size: " + (lemmaCache == null ? 0 : lemmaCache.getMaxSize()));
+		System.out.println("POS cache size: " + (posCache == null ? 0 : posCache.getMaxSize()));
 		System.out.println("Tokenizer: " + tokenizer.getClass().getName());
 		System.out.println("Tag format: " + tagFormat.name());
 		System.out.println("PostProcessor: " + (postProcessor == null ? null : postProcessor.getClass().getName()));
 		System.out.println("Using numeric normalization: " + useNumericNormalization);
 		System.out.println("CRF order is " + order);
 		System.out.println("Using feature induction: " + useFeatureInduction);
+		System.out.println("Training threads: " + trainingThreads);
+		if (stochasticTrainer == null)
+			System.out.println("Stochastic training: false");
+		else
+			System.out.println("Stochastic training: " + stochasticTrainer.getNumEpochs() + " epochs, batch size " + stochasticTrainer.getBatchSize() + ", learning rate "
+					+ stochasticTrainer.getLearningRate() + ", decay " + stochasticTrainer.getDecay());
+		if (checkpoint == null)
+			System.out.println("Checkpoint: null");
+		else
+			System.out.println("Checkpoint: " + checkpoint.getFile() + " every " + checkpoint.getInterval() + " iterations, keeping all: " + checkpoint.isKeepAll());
 		System.out.println("Text textDirection: " + textDirection);
 		System.out.println("Regex filename: " + regexFilename);
 		System.out.println("Dictionary: " + (preTagger == null ? null : preTagger.getClass().getName()));
@@ -3,12 +3,16 @@ package banner;
 import banner.processing.PostProcessor;
 import banner.tagging.CRFTagger;
 import banner.tagging.Mention;
+import banner.tokenization.SentenceSplitter;
 import banner.tokenization.Tokenizer;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A wrapper for the Banner NER, using default options
@@ -22,12 +26,33 @@ public class BannerWrapper {
 
   PostProcessor postProcessor;
 
+  /** If not null, batches given to {@link #tagAll(List)} are tagged in parallel on this */
+  ExecutorService executor;
+
   public BannerWrapper() {
+    this(false);
+  }
+
+  /**
+   * Creates a wrapper which may be shared by several threads, and which tags the batches given
+   * to {@link #tagAll(List)} in parallel on the given executor.
+   */
+  public BannerWrapper(ExecutorService executor) {
+    this(true);
+    this.executor = executor;
+  }
+
+  /**
+   * @param concurrent If true, {@link #tag(String)} may be called from several threads at once
+   *                   on this wrapper. Each thread then loads its own POS tagger.
+   */
+  public BannerWrapper(boolean concurrent) {
     try {
       Properties props = mkDefaultProps();
       BannerProperties properties = BannerProperties.load(props);
       tokenizer = properties.getTokenizer();
       tagger = CRFTagger.load(new File(props.getProperty("model")), properties.getLemmatiser(), properties.getPosTagger());
+      if (concurrent) tagger.enableConcurrentTagging(properties.getPosTaggerFactory());
       postProcessor = properties.getPostProcessor();
     } catch(Exception e) {
       // e.printStackTrace();
@@ -51,6 +76,48 @@ public class BannerWrapper {
     return sentence.getMentions();
   }
 
+  /**
+   * Tags a batch of sentences, such as all the sentences of an abstract.
+   * @return The mentions found in each sentence, in the same order as the input
+   */
+  public List<List<Mention>> tagAll(List<String> sentenceTexts) {
+    List<Sentence> sentences = new ArrayList<Sentence>(sentenceTexts.size());
+    for(String sentenceText: sentenceTexts) {
+      Sentence sentence = new Sentence(sentenceText);
+      tokenizer.tokenize(sentence);
+      sentences.add(sentence);
+    }
+
+    tagger.tag(sentences, executor);
+
+    List<List<Mention>> mentions = new ArrayList<List<Mention>>(sentences.size());
+    for(Sentence sentence: sentences) {
+      if (postProcessor != null) postProcessor.postProcess(sentence);
+      mentions.add(sentence.getMentions());
+    }
+    return mentions;
+  }
+
+  /**
+   * Tags a whole document, splitting it into sentences, and gives each mention found to the handler with its offsets in
+   * the document. The sentences are tagged in parallel if this wrapper was given an executor.
+   */
+  public void tagDocument(CharSequence document, DocumentTagger.MentionHandler handler) {
+    newDocumentTagger().tag(document, handler);
+  }
+
+  /**
+   * Tags a whole document as {@link #tagDocument(CharSequence, DocumentTagger.MentionHandler)}, reading it a part at a
+   * time so that memory use does not grow with its length
+   */
+  public void tagDocument(Reader document, DocumentTagger.MentionHandler handler) throws IOException {
+    newDocumentTagger().tag(document, handler);
+  }
+
+  private DocumentTagger newDocumentTagger() {
+    return new DocumentTagger(tokenizer, tagger, postProcessor, new SentenceSplitter(), executor);
+  }
+
   private static final String BANNER_ENV = "BANNER_DATA";
   private static final String BANNER_MODEL = "banner_model.dat";
 
@@ -87,7 +154,7 @@ public class BannerWrapper {
     String bannerData = findPath();
     props.setProperty("lemmatiserDataDirectory", bannerData + "/nlpdata/lemmatiser");
     props.setProperty("posTaggerDataDirectory", bannerData + "/nlpdata/tagger");
-    props.setProperty("posTagger", "dragon.nlp.tool.HeppleTagger");
+    props.setProperty("posTagger", "banner.tagging.HepplePosTagger");
     props.setProperty("tokenizer", "banner.tokenization.SimpleTokenizer");
     props.setProperty("tagFormat", "IOB");
     props.setProperty("useNumericNormalization", "true");
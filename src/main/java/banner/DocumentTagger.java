@@ -0,0 +1,201 @@
+package banner;
+
+import banner.processing.PostProcessor;
+import banner.tagging.CRFTagger;
+import banner.tagging.Mention;
+import banner.tokenization.SentenceSplitter;
+import banner.tokenization.Tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Tags whole documents: the text is split into sentences, which are tokenized, tagged and post-processed, and each mention
+ * found is given to a handler with its offsets in the document, in the order of the sentences.
+ * A {@link Reader} is read a buffer at a time and at most two batches of sentences are kept, so memory use does not grow
+ * with the length of the document. Given an executor, each batch is tagged on its threads while the next is read, split
+ * and tokenized.
+ */
+public class DocumentTagger {
+  /** Receives the mentions found in a document */
+  public interface MentionHandler {
+    /**
+     * @param mention A mention found, whose {@link Sentence} holds the text of its sentence
+     * @param start The offset in the document of the first character of the mention
+     * @param end The offset in the document after the last character of the mention
+     */
+    void mention(Mention mention, long start, long end);
+  }
+
+  /** The number of sentences tagged together */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /** The number of characters read from a {@link Reader} at a time, unless a sentence may be longer */
+  public static final int BUFFER_LENGTH = 1 << 16;
+
+  Tokenizer tokenizer;
+
+  CRFTagger tagger;
+
+  PostProcessor postProcessor;
+
+  SentenceSplitter splitter;
+
+  ExecutorService executor;
+
+  int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * @param postProcessor The post-processor, or null for none
+   * @param executor The executor to tag on, or null to tag in the calling thread; unless null,
+   *                 {@link CRFTagger#enableConcurrentTagging(banner.tagging.PosTaggerFactory)} must have been called
+   */
+  public DocumentTagger(Tokenizer tokenizer, CRFTagger tagger, PostProcessor postProcessor, SentenceSplitter splitter,
+                        ExecutorService executor) {
+    this.tokenizer = tokenizer;
+    this.tagger = tagger;
+    this.postProcessor = postProcessor;
+    this.splitter = splitter;
+    this.executor = executor;
+  }
+
+  /** Sets the number of sentences tagged together, and so kept in memory twice over */
+  public void setBatchSize(int batchSize) {
+    if(batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+    this.batchSize = batchSize;
+  }
+
+  /** Tags the document, giving the mentions found to the handler */
+  public void tag(CharSequence document, MentionHandler handler) {
+    Batches batches = new Batches(handler);
+    try {
+      int start = 0;
+      while(start < document.length()) {
+        int end = splitter.findSentenceEnd(document, start, document.length(), false);
+        batches.add(document, start, end, 0);
+        start = end;
+      }
+      batches.finish();
+    } finally {
+      batches.cancel();
+    }
+  }
+
+  /** Tags the document read to its end, giving the mentions found to the handler as they are found */
+  public void tag(Reader document, MentionHandler handler) throws IOException {
+    // Room for the longest sentence and the text after it which tells where it ends
+    char[] buffer = new char[Math.max(BUFFER_LENGTH, 2 * splitter.getMaxLength())];
+    CharSequence text = CharBuffer.wrap(buffer);
+    // The offset in the document of the start of the buffer
+    long offset = 0;
+    int start = 0;
+    int filled = 0;
+    boolean more = true;
+    Batches batches = new Batches(handler);
+    try {
+      while(true) {
+        int end = start < filled ? splitter.findSentenceEnd(text, start, filled, more) : -1;
+        // Only a run of whitespace longer than the buffer can fill it without ending a sentence
+        if(end < 0 && start == 0 && filled == buffer.length)
+          end = splitter.findSentenceEnd(text, start, filled, false);
+        if(end >= 0) {
+          batches.add(text, start, end, offset);
+          start = end;
+          continue;
+        }
+        if(!more) break;
+        // Keeps the rest of the text, and reads more after it
+        System.arraycopy(buffer, start, buffer, 0, filled - start);
+        offset += start;
+        filled -= start;
+        start = 0;
+        int read = document.read(buffer, filled, buffer.length - filled);
+        if(read < 0) more = false;
+        else filled += read;
+      }
+      batches.finish();
+    } finally {
+      batches.cancel();
+    }
+  }
+
+  // The batch of sentences being added, and the batch being tagged
+  private class Batches {
+    MentionHandler handler;
+    List<Sentence> sentences = new ArrayList<Sentence>();
+    long[] offsets = new long[batchSize];
+    List<Sentence> tagging = new ArrayList<Sentence>();
+    long[] taggingOffsets = new long[batchSize];
+    List<Future<Object>> results;
+
+    Batches(MentionHandler handler) {
+      this.handler = handler;
+    }
+
+    // Adds the sentence from character start to end - 1 of the text, whose start is at offset in the document
+    void add(CharSequence text, int start, int end, long offset) {
+      while(start < end && text.charAt(start) <= ' ') start ++;
+      while(end > start && text.charAt(end - 1) <= ' ') end --;
+      if(start == end) return;
+      Sentence sentence = new Sentence(text.subSequence(start, end).toString());
+      tokenizer.tokenize(sentence);
+      if(sentence.getTokenCount() == 0) return;
+      offsets[sentences.size()] = offset + start;
+      sentences.add(sentence);
+      if(sentences.size() == batchSize) flush();
+    }
+
+    void flush() {
+      if(executor == null) {
+        tagger.tag(sentences);
+        emit(sentences, offsets);
+        return;
+      }
+      List<Future<Object>> submitted = tagger.submit(sentences, executor, CRFTagger.DEFAULT_BATCH_SIZE);
+      awaitTagging();
+      List<Sentence> emptySentences = tagging;
+      long[] emptyOffsets = taggingOffsets;
+      tagging = sentences;
+      taggingOffsets = offsets;
+      results = submitted;
+      sentences = emptySentences;
+      offsets = emptyOffsets;
+    }
+
+    void finish() {
+      if(!sentences.isEmpty()) flush();
+      awaitTagging();
+    }
+
+    void awaitTagging() {
+      if(results == null) return;
+      List<Future<Object>> submitted = results;
+      results = null;
+      CRFTagger.await(submitted);
+      emit(tagging, taggingOffsets);
+    }
+
+    // Stops tagging after a failure
+    void cancel() {
+      if(results == null) return;
+      for(Future<Object> result: results)
+        result.cancel(false);
+      results = null;
+    }
+
+    void emit(List<Sentence> batch, long[] batchOffsets) {
+      for(int i = 0; i < batch.size(); i ++) {
+        Sentence sentence = batch.get(i);
+        if(postProcessor != null) postProcessor.postProcess(sentence);
+        for(Mention mention: sentence.getMentions())
+          handler.mention(mention, batchOffsets[i] + mention.getStartChar(), batchOffsets[i] + mention.getEndChar());
+      }
+      batch.clear();
+    }
+  }
+}
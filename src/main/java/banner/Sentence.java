@@ -6,10 +6,14 @@
 
 package banner;
 
+import java.nio.CharBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
 import banner.tagging.Mention;
 import banner.tagging.MentionType;
@@ -24,6 +28,14 @@ import banner.tokenization.WhitespaceTokenizer;
 /**
  * This class represents a single sentence, and provides for the text to be
  * tokenized and for mentions.
+ * <p>
+ * The tokens are kept as the start and end of each in the text. The text of a
+ * token is only copied out of the text of the sentence the first time it is
+ * needed, and is then kept; the {@link Token} objects are likewise created on
+ * demand, unless they were added by the {@link Tokenizer}.
+ * <p>
+ * The mentions are also indexed by the tokens they cover, so that finding the
+ * mentions of a token does not scan every mention.
  * 
  * @author Bob
  */
@@ -32,12 +44,29 @@ public class Sentence
 
 	private String tag;
 	private String text;
-	private List<Token> tokens;
+	private int numTokens;
+	private int[] tokenStarts;
+	private int[] tokenEnds;
+	// Null until needed, then kept in step with tokenStarts
+	private Token[] tokenObjects;
+	private String[] tokenTexts;
+	private final List<Token> tokens = new TokenList();
+	private final List<String> tokenTextList = new TokenTextList();
 	private List<Mention> mentions;
+	// Whether the starts and the ends of the tokens are each in order
+	private boolean tokensOrdered = true;
+	// Each mention added is given the next slot; the slots of each token list
+	// the mentions covering it in the order they were added, which is their
+	// order in mentions. Null until the first mention is added.
+	private Mention[] mentionSlots;
+	private int numMentionSlots;
+	private int[][] tokenMentionSlots;
+	private int[] tokenMentionCounts;
 
 	private Sentence()
 	{
-		tokens = new ArrayList<Token>();
+		tokenStarts = new int[16];
+		tokenEnds = new int[16];
 		mentions = new ArrayList<Mention>();
 	}
 
@@ -71,7 +100,8 @@ public class Sentence
 		if (text.length() == 0)
 			throw new IllegalArgumentException("Text must have length greater than 0");
 		this.text = text;
-		tokens = new ArrayList<Token>();
+		tokenStarts = new int[16];
+		tokenEnds = new int[16];
 		mentions = new ArrayList<Mention>();
 	}
 
@@ -130,7 +160,7 @@ public class Sentence
 					if (mentionStart == -1 || mentionType == null)
 						throw new IllegalArgumentException("");
 					Mention mention = new Mention(sentence, mentionType, mentionStart, index);
-					sentence.mentions.add(mention);
+					sentence.addMention(mention);
 					mentionStart = -1;
 					mentionType = null;
 				} else
@@ -152,7 +182,7 @@ public class Sentence
 
 	public void inferTokenization(String tokenizedText)
 	{
-		if (tokens.size() != 0)
+		if (numTokens != 0)
 			throw new IllegalStateException();
 		String[] split = tokenizedText.split("\\s+");
 		int start = 0;
@@ -162,7 +192,7 @@ public class Sentence
 				start++;
 			if (!text.substring(start, start + split[i].length()).equals(split[i]))
 				throw new IllegalArgumentException();
-			tokens.add(new Token(this, start, start + split[i].length()));
+			addToken(start, start + split[i].length());
 			start += split[i].length();
 		}
 	}
@@ -178,7 +208,46 @@ public class Sentence
 		// Add verification of no token overlap
 		if (!token.getSentence().equals(this))
 			throw new IllegalArgumentException();
-		tokens.add(token);
+		addToken(token.getStart(), token.getEnd());
+		if (tokenObjects == null)
+			tokenObjects = new Token[tokenStarts.length];
+		tokenObjects[numTokens - 1] = token;
+	}
+
+	/**
+	 * Adds a token from character start to character end - 1 to this
+	 * {@link Sentence}, without creating a {@link Token}. Normally called by
+	 * instances of {@link Tokenizer}.
+	 * 
+	 * @param start
+	 * @param end
+	 */
+	public void addToken(int start, int end)
+	{
+		if (start < 0)
+			throw new IllegalArgumentException("Start may not be less than 0: " + start);
+		if (end <= start)
+			throw new IllegalArgumentException("End must be greater than start; start: " + start + " end: " + end);
+		if (numTokens == tokenStarts.length)
+		{
+			int capacity = 2 * numTokens;
+			tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+			tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+			if (tokenObjects != null)
+				tokenObjects = Arrays.copyOf(tokenObjects, capacity);
+			if (tokenTexts != null)
+				tokenTexts = Arrays.copyOf(tokenTexts, capacity);
+			if (tokenMentionSlots != null)
+			{
+				tokenMentionSlots = Arrays.copyOf(tokenMentionSlots, capacity);
+				tokenMentionCounts = Arrays.copyOf(tokenMentionCounts, capacity);
+			}
+		}
+		if (numTokens > 0 && (start < tokenStarts[numTokens - 1] || end < tokenEnds[numTokens - 1]))
+			tokensOrdered = false;
+		tokenStarts[numTokens] = start;
+		tokenEnds[numTokens] = end;
+		numTokens++;
 	}
 
 	/**
@@ -192,7 +261,10 @@ public class Sentence
 	{
 		if (!mention.getSentence().equals(this))
 			throw new IllegalArgumentException();
+		if (mention.getEnd() > numTokens)
+			throw new IllegalArgumentException("Mention end " + mention.getEnd() + " is after the last token " + numTokens);
 		mentions.add(mention);
+		indexMention(mention);
 	}
 
 	/**
@@ -206,36 +278,144 @@ public class Sentence
 	{
 		if (!mention.getSentence().equals(this))
 			throw new IllegalArgumentException();
-		List<Mention> overlapping = new ArrayList<Mention>();
-		for (Mention mention2 : mentions)
-		{
-			if (mention.overlaps(mention2) && mention.getType().equals(mention2.getType()))
-				overlapping.add(mention2);
-		}
+		List<Mention> overlapping = getOverlappingMentions(mention);
 		if (overlapping.size() == 0)
 		{
-			mentions.add(mention);
+			addMention(mention);
 		} else
 		{
 			for (Mention mention2 : overlapping)
 			{
-				mentions.remove(mention2);
-				mentions.add(new Mention(this, mention.getType(), Math.min(mention.getStart(), mention2.getStart()), Math.max(mention.getEnd(), mention2.getEnd())));
+				removeMention(mention2);
+				addMention(new Mention(this, mention.getType(), Math.min(mention.getStart(), mention2.getStart()), Math.max(mention.getEnd(), mention2.getEnd())));
 			}
 		}
 	}
 
 	public boolean removeMention(Mention mention)
 	{
-		return mentions.remove(mention);
+		int slot = getMentionSlot(mention);
+		if (slot < 0)
+			return false;
+		// The first mention equal to the one given is both in the first slot
+		// found and first in mentions
+		mentions.remove(mention);
+		unindexMention(slot);
+		return true;
+	}
+
+	// Returns the mentions of the same type overlapping the mention, in the
+	// order they were added
+	private List<Mention> getOverlappingMentions(Mention mention)
+	{
+		if (tokenMentionSlots == null)
+			return Collections.emptyList();
+		int[] slots = new int[4];
+		int numSlots = 0;
+		for (int i = mention.getStart(); i < mention.getEnd(); i++)
+		{
+			for (int j = 0; j < tokenMentionCounts[i]; j++)
+			{
+				int slot = tokenMentionSlots[i][j];
+				if (mention.getType().equals(mentionSlots[slot].getType()))
+				{
+					if (numSlots == slots.length)
+						slots = Arrays.copyOf(slots, 2 * numSlots);
+					slots[numSlots++] = slot;
+				}
+			}
+		}
+		if (numSlots == 0)
+			return Collections.emptyList();
+		Arrays.sort(slots, 0, numSlots);
+		List<Mention> overlapping = new ArrayList<Mention>(numSlots);
+		for (int i = 0; i < numSlots; i++)
+			if (i == 0 || slots[i] != slots[i - 1])
+				overlapping.add(mentionSlots[slots[i]]);
+		return overlapping;
+	}
+
+	// Returns the first slot holding a mention equal to the one given, or -1
+	private int getMentionSlot(Mention mention)
+	{
+		int start = mention.getStart();
+		if (tokenMentionSlots == null || start >= numTokens)
+			return -1;
+		// Any equal mention covers its start
+		for (int j = 0; j < tokenMentionCounts[start]; j++)
+		{
+			int slot = tokenMentionSlots[start][j];
+			if (mentionSlots[slot].equals(mention))
+				return slot;
+		}
+		return -1;
+	}
+
+	private void indexMention(Mention mention)
+	{
+		if (tokenMentionSlots == null)
+		{
+			mentionSlots = new Mention[16];
+			tokenMentionSlots = new int[tokenStarts.length][];
+			tokenMentionCounts = new int[tokenStarts.length];
+		} else if (numMentionSlots == mentionSlots.length)
+		{
+			// Reuses the slots of the mentions removed, renumbering the rest
+			// in order; mentions already includes the new mention
+			int capacity = Math.max(16, 2 * mentions.size());
+			mentionSlots = new Mention[capacity];
+			numMentionSlots = 0;
+			Arrays.fill(tokenMentionCounts, 0);
+			for (int i = 0; i < mentions.size() - 1; i++)
+				addMentionSlot(mentions.get(i));
+		}
+		addMentionSlot(mention);
+	}
+
+	private void addMentionSlot(Mention mention)
+	{
+		int slot = numMentionSlots++;
+		mentionSlots[slot] = mention;
+		for (int i = mention.getStart(); i < mention.getEnd(); i++)
+		{
+			int[] slots = tokenMentionSlots[i];
+			int count = tokenMentionCounts[i];
+			if (slots == null)
+			{
+				slots = new int[2];
+				tokenMentionSlots[i] = slots;
+			} else if (count == slots.length)
+			{
+				slots = Arrays.copyOf(slots, 2 * count);
+				tokenMentionSlots[i] = slots;
+			}
+			slots[count] = slot;
+			tokenMentionCounts[i] = count + 1;
+		}
+	}
+
+	private void unindexMention(int slot)
+	{
+		Mention mention = mentionSlots[slot];
+		mentionSlots[slot] = null;
+		for (int i = mention.getStart(); i < mention.getEnd(); i++)
+		{
+			int[] slots = tokenMentionSlots[i];
+			int count = tokenMentionCounts[i];
+			int j = 0;
+			while (slots[j] != slot)
+				j++;
+			System.arraycopy(slots, j + 1, slots, j, count - j - 1);
+			tokenMentionCounts[i] = count - 1;
+		}
 	}
 
 	public void addMentions(TagPosition[] positions, MentionType[] types)
 	{
 		// TODO Verify correct transitions & type continuity
-		if (tokens.size() != positions.length)
+		if (numTokens != positions.length)
 			throw new IllegalArgumentException();
-		if (tokens.size() != types.length)
+		if (numTokens != types.length)
 			throw new IllegalArgumentException();
 		int startIndex = -1;
 		for (int i = 0; i < positions.length; i++)
@@ -285,16 +465,21 @@ public class Sentence
 		// The token with the highest start that is below the given character
 		// index
 		// The token with the lowest end that is above the given index
+		if (tokensOrdered)
+		{
+			if (returnNextIfBoundary)
+				return lastStartAtOrBefore(charIndex);
+			return firstEndAfter(charIndex);
+		}
 		int startToken = -1;
 		int endToken = -1;
-		for (int i = 0; i < tokens.size(); i++)
+		for (int i = 0; i < numTokens; i++)
 		{
-			Token token = tokens.get(i);
-			if (token.getStart() <= charIndex)
-				if (startToken == -1 || tokens.get(startToken).getStart() <= token.getStart())
+			if (tokenStarts[i] <= charIndex)
+				if (startToken == -1 || tokenStarts[startToken] <= tokenStarts[i])
 					startToken = i;
-			if (token.getEnd() > charIndex)
-				if (endToken == -1 || tokens.get(endToken).getEnd() > token.getEnd())
+			if (tokenEnds[i] > charIndex)
+				if (endToken == -1 || tokenEnds[endToken] > tokenEnds[i])
 					endToken = i;
 		}
 		if (returnNextIfBoundary)
@@ -303,6 +488,38 @@ public class Sentence
 			return endToken;
 	}
 
+	// Returns the last token starting at or before the character, or -1
+	private int lastStartAtOrBefore(int charIndex)
+	{
+		int low = 0;
+		int high = numTokens;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (tokenStarts[middle] <= charIndex)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low - 1;
+	}
+
+	// Returns the first token ending after the character, or -1
+	private int firstEndAfter(int charIndex)
+	{
+		int low = 0;
+		int high = numTokens;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (tokenEnds[middle] > charIndex)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return low == numTokens ? -1 : low;
+	}
+
 	/**
 	 * @return The tokenized form of the text for this {@link Sentence}. Formed
 	 *         by placing a single space character between the text for each
@@ -310,37 +527,166 @@ public class Sentence
 	 */
 	public String getTokenizedText()
 	{
-		StringBuffer text2 = new StringBuffer();
-		for (Token token : tokens)
+		StringBuilder text2 = new StringBuilder(text.length() + numTokens);
+		for (int i = 0; i < numTokens; i++)
 		{
-			text2.append(token.getText());
-			text2.append(" ");
+			text2.append(text, tokenStarts[i], tokenEnds[i]);
+			text2.append(' ');
 		}
 		return text2.toString().trim();
 	}
 
+	/**
+	 * @return The text from character start to character end - 1, which is the
+	 *         kept text of the token if there is a token with those bounds
+	 */
 	public String getText(int start, int end)
 	{
+		int index = findToken(start, end);
+		if (index >= 0)
+			return getTokenText(index);
 		return text.substring(start, end);
 	}
 
 	/**
-	 * @return The {@link List} of {@link Token}s for this {@link Sentence}
+	 * @return The number of tokens in this {@link Sentence}
+	 */
+	public int getTokenCount()
+	{
+		return numTokens;
+	}
+
+	/**
+	 * @return The start index of the token, inclusive
+	 */
+	public int getTokenStart(int index)
+	{
+		checkTokenIndex(index);
+		return tokenStarts[index];
+	}
+
+	/**
+	 * @return The end index of the token, exclusive
+	 */
+	public int getTokenEnd(int index)
+	{
+		checkTokenIndex(index);
+		return tokenEnds[index];
+	}
+
+	/**
+	 * @return The text of the token, copied from the text of the
+	 *         {@link Sentence} the first time it is needed
+	 */
+	public String getTokenText(int index)
+	{
+		checkTokenIndex(index);
+		if (tokenTexts == null)
+			tokenTexts = new String[tokenStarts.length];
+		String tokenText = tokenTexts[index];
+		if (tokenText == null)
+		{
+			tokenText = text.substring(tokenStarts[index], tokenEnds[index]);
+			tokenTexts[index] = tokenText;
+		}
+		return tokenText;
+	}
+
+	/**
+	 * @return The characters of the token, as a view of the text of the
+	 *         {@link Sentence} unless its text is already kept
+	 */
+	public CharSequence getTokenChars(int index)
+	{
+		checkTokenIndex(index);
+		if (tokenTexts != null && tokenTexts[index] != null)
+			return tokenTexts[index];
+		return CharBuffer.wrap(text, tokenStarts[index], tokenEnds[index]);
+	}
+
+	// Returns the index of a token with the bounds, or -1
+	private int findToken(int start, int end)
+	{
+		if (tokensOrdered)
+		{
+			int index = lastStartAtOrBefore(start);
+			if (index >= 0 && tokenStarts[index] == start && tokenEnds[index] == end)
+				return index;
+			return -1;
+		}
+		for (int i = 0; i < numTokens; i++)
+			if (tokenStarts[i] == start && tokenEnds[i] == end)
+				return i;
+		return -1;
+	}
+
+	private void checkTokenIndex(int index)
+	{
+		if (index < 0 || index >= numTokens)
+			throw new IndexOutOfBoundsException("Token " + index + " of " + numTokens);
+	}
+
+	/**
+	 * @return The {@link List} of {@link Token}s for this {@link Sentence}, an
+	 *         unmodifiable view which creates each {@link Token} the first
+	 *         time it is needed
 	 */
 	public List<Token> getTokens()
 	{
-		return Collections.unmodifiableList(tokens);
+		return tokens;
 	}
 
 	/**
-	 * @return The {@link List} of {@link Token}s for this {@link Sentence}
+	 * @return The text of the {@link Token}s for this {@link Sentence}, an
+	 *         unmodifiable view of the kept text of each token
 	 */
 	public List<String> getTokenText()
 	{
-		List<String> tokenTexts = new ArrayList<String>();
-		for (Token t : tokens)
-			tokenTexts.add(t.getText());
-		return tokenTexts;
+		return tokenTextList;
+	}
+
+	private Token getToken(int index)
+	{
+		checkTokenIndex(index);
+		if (tokenObjects == null)
+			tokenObjects = new Token[tokenStarts.length];
+		Token token = tokenObjects[index];
+		if (token == null)
+		{
+			token = new Token(this, tokenStarts[index], tokenEnds[index]);
+			tokenObjects[index] = token;
+		}
+		return token;
+	}
+
+	private class TokenList extends AbstractList<Token> implements RandomAccess
+	{
+		@Override
+		public Token get(int index)
+		{
+			return getToken(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return numTokens;
+		}
+	}
+
+	private class TokenTextList extends AbstractList<String> implements RandomAccess
+	{
+		@Override
+		public String get(int index)
+		{
+			return getTokenText(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return numTokens;
+		}
 	}
 
 	/**
@@ -357,29 +703,34 @@ public class Sentence
 	 */
 	private Mention getMention(int tokenIndex)
 	{
-		Mention mention = null;
-		for (Mention mention2 : mentions)
+		if (tokenMentionSlots == null || tokenMentionCounts[tokenIndex] == 0)
+			return null;
+		if (tokenMentionCounts[tokenIndex] > 1)
 		{
-			if (mention2.contains(tokenIndex))
-				if (mention == null)
-					mention = mention2;
-				else
-				{
-					// System.out.println(mention.getText() + " " +
-					// mention.getStart() + "-" + mention.getEnd());
-					// System.out.println(mention2.getText() + " " +
-					// mention2.getStart() + "-" + mention2.getEnd());
-					String message = "Token \"" + tokens.get(tokenIndex).getText() + "\" (" + tokenIndex + ") is tagged multiple times";
-					throw new IllegalArgumentException(message);
-				}
+			String message = "Token \"" + getTokenText(tokenIndex) + "\" (" + tokenIndex + ") is tagged multiple times";
+			throw new IllegalArgumentException(message);
 		}
-		return mention;
+		return mentionSlots[tokenMentionSlots[tokenIndex][0]];
+	}
+
+	// Returns the mentions covering the token, in the order they were added
+	private List<Mention> getMentions(int tokenIndex)
+	{
+		int count = tokenMentionSlots == null ? 0 : tokenMentionCounts[tokenIndex];
+		if (count == 0)
+			return Collections.emptyList();
+		if (count == 1)
+			return Collections.singletonList(mentionSlots[tokenMentionSlots[tokenIndex][0]]);
+		List<Mention> mentionsForToken = new ArrayList<Mention>(count);
+		for (int j = 0; j < count; j++)
+			mentionsForToken.add(mentionSlots[tokenMentionSlots[tokenIndex][j]]);
+		return Collections.unmodifiableList(mentionsForToken);
 	}
 
 	public List<TaggedToken> getTaggedTokens()
 	{
-		List<TaggedToken> taggedTokens = new ArrayList<TaggedToken>();
-		for (int i = 0; i < tokens.size(); i++)
+		List<TaggedToken> taggedTokens = new ArrayList<TaggedToken>(numTokens);
+		for (int i = 0; i < numTokens; i++)
 		{
 			taggedTokens.add(new TaggedToken(this, getMention(i), i));
 		}
@@ -432,19 +783,20 @@ public class Sentence
 
 	public List<Mention> getMentions(Token token)
 	{
-		ArrayList<Mention> mentionsForToken = new ArrayList<Mention>();
-		for (Mention mention : mentions)
-			if (mention.getTokens().contains(token))
-				mentionsForToken.add(mention);
-		return Collections.unmodifiableList(mentionsForToken);
+		if (!token.getSentence().equals(this))
+			return Collections.emptyList();
+		int index = findToken(token.getStart(), token.getEnd());
+		if (index < 0)
+			return Collections.emptyList();
+		return getMentions(index);
 	}
 
 	public List<String> getTokenLabels(TagFormat format)
 	{
-		List<String> labels = new ArrayList<String>();
-		for (int i = 0; i < tokens.size(); i++)
+		List<String> labels = new ArrayList<String>(numTokens);
+		for (int i = 0; i < numTokens; i++)
 		{
-			List<Mention> tokenMentions = getMentions(tokens.get(i));
+			List<Mention> tokenMentions = getMentions(i);
 			if (tokenMentions.size() == 0)
 				labels.add(TagPosition.O.name());
 			else if (tokenMentions.size() == 1)
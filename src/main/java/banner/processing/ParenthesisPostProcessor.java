@@ -12,7 +12,6 @@ import java.util.List;
 
 import banner.Sentence;
 import banner.tagging.Mention;
-import banner.tagging.TaggedToken;
 
 /**
  * This class removes {@link Mention}s which contain a mismatched parenthesis ("(" or ")"), square bracket ("[" or "]") or curly bracket ("{" or
@@ -58,17 +57,17 @@ public class ParenthesisPostProcessor implements PostProcessor
 
     private static boolean isMismatched(Mention mention)
     {
-        List<TaggedToken> tokens = mention.getTaggedTokens();
+        List<String> tokens = mention.getSentence().getTokenText().subList(mention.getStart(), mention.getEnd());
         boolean mismatched = false;
         LinkedList<Integer> startMatch = new LinkedList<Integer>();
         for (int i = 0; i < tokens.size(); i++)
         {
-            TaggedToken token = tokens.get(i);
-            if (ParenthesisPostProcessor.isStart(token.getToken().getText()))
+            String token = tokens.get(i);
+            if (ParenthesisPostProcessor.isStart(token))
             {
                 startMatch.add(i);
             }
-            else if (ParenthesisPostProcessor.isEnd(token.getToken().getText()))
+            else if (ParenthesisPostProcessor.isEnd(token))
             {
                 if (startMatch.size() > 0)
                 {
@@ -0,0 +1,443 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import banner.BannerProperties.TextDirection;
+import banner.tagging.TaggedToken.TagFormat;
+import dragon.nlp.tool.Lemmatiser;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4DenseWeights;
+import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.SerialPipes;
+import edu.umass.cs.mallet.base.pipe.tsf.ConjunctionTable;
+import edu.umass.cs.mallet.base.pipe.tsf.OffsetConjunctions;
+import edu.umass.cs.mallet.base.types.Alphabet;
+import edu.umass.cs.mallet.base.types.IndexedSparseVector;
+import edu.umass.cs.mallet.base.types.MappedAlphabet;
+import edu.umass.cs.mallet.base.types.SparseVector;
+
+/**
+ * Reads and writes {@link CRFTagger}s in a versioned binary format, which loads much faster than the serialized form written by
+ * {@link CRFTagger#write(File)} and needs far less temporary heap. The feature and label alphabets are stored as string tables, the weights as
+ * primitive arrays, and the feature pipes as the parameters passed to them, so only taggers using the standard {@link CRFTagger} pipes can be
+ * written. The file may be read through a memory mapping, which avoids copying it onto the heap before it is parsed.
+ * <p>
+ * The feature alphabet is stored as a {@link MappedAlphabet} and the weights of each CRF also as {@link CRF4DenseWeights}, so a tagger read
+ * with {@link #readShared(File, Lemmatiser, dragon.nlp.tool.Tagger, Tagger)} looks features up and scores them directly in the mapped file.
+ * The {@link ConjunctionTable} of the offset conjunctions is stored as well, so neither read scans the feature alphabet to find them. Several
+ * processes tagging with the same file then share one copy of the model through the operating system's page cache, and each heap holds only
+ * the CRF states and the per-thread decoding buffers.
+ * <p>
+ * All numbers are big-endian. After the header (magic number, version, text direction, order, feature induction flag, tag format, numeric
+ * normalization flag, regex lines) come the label alphabet, the feature alphabet and the conjunction table, then each CRF: its weight group
+ * names, default weights and states, followed by its dense and its sparse weights. The feature alphabet, the conjunction table and the
+ * weights are each preceded by their length in bytes, so they can be skipped, and are 8-byte aligned.
+ * <p>
+ * Run with <code>&lt;model.dat&gt; &lt;model.bin&gt;</code> to convert a model written by {@link CRFTagger#write(File)}.
+ */
+public class BinaryModelFormat
+{
+
+    /**
+     * The first four bytes of a binary model file, "BNRM"
+     */
+    public static final int MAGIC = 0x424E524D;
+    public static final int VERSION = 3;
+
+    private BinaryModelFormat()
+    {
+        // Not instantiable
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: BinaryModelFormat <model.dat> <model.bin>");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        CRFTagger tagger = CRFTagger.load(new File(args[0]), null, null, null);
+        write(tagger, new File(args[1]));
+        System.out.println("Converted " + args[0] + " to " + args[1] + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return Whether the specified file starts with the magic number of this format
+     */
+    public static boolean isBinaryModel(File f) throws IOException
+    {
+        if (f.length() < 4)
+            return false;
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try
+        {
+            return in.readInt() == MAGIC;
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the specified {@link CRFTagger} to the specified file in this format
+     *
+     * @throws IllegalArgumentException
+     *             If the tagger does not use the standard {@link CRFTagger} pipes
+     */
+    public static void write(CRFTagger tagger, File f) throws IOException
+    {
+        if (tagger.hasSharedWeights())
+            throw new IllegalArgumentException("The tagger was read with shared weights, so it cannot be written");
+        CRF4 crf = tagger.getForwardCRF() != null ? tagger.getForwardCRF() : tagger.getReverseCRF();
+        List<Pipe> pipes = ((SerialPipes) crf.getInputPipe()).getPipes();
+        ConfigurableRegexMatches regexMatches = checkPipes(pipes);
+        if (tagger.getForwardCRF() != null && tagger.getReverseCRF() != null
+                && tagger.getForwardCRF().getInputPipe() != tagger.getReverseCRF().getInputPipe())
+            throw new IllegalArgumentException("The forward and reverse CRFs must share their pipe");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, tagger.getTextDirection().name());
+            out.writeInt(tagger.getOrder());
+            out.writeBoolean(tagger.isUseFeatureInduction());
+            writeString(out, tagger.getFormat().name());
+            out.writeBoolean(((String2TokenSequencePipe) pipes.get(0)).isUseNumericNormalization());
+            if (regexMatches == null)
+                out.writeInt(-1);
+            else
+                writeStrings(out, regexMatches.getLines());
+            writeAlphabet(out, crf.getOutputAlphabet());
+            ByteArrayOutputStream section = new ByteArrayOutputStream();
+            MappedAlphabet.write(crf.getInputAlphabet(), new DataOutputStream(section));
+            writeSection(out, section);
+            section.reset();
+            ConjunctionTable.write(crf.getInputAlphabet(), ((OffsetConjunctions) pipes.get(pipes.size() - 2)).getConjunctions(), new DataOutputStream(section));
+            writeSection(out, section);
+            if (tagger.getTextDirection().doForward())
+                writeCRF(out, tagger.getForwardCRF());
+            if (tagger.getTextDirection().doReverse())
+                writeCRF(out, tagger.getReverseCRF());
+        } finally
+        {
+            out.close();
+        }
+    }
+
+    private static ConfigurableRegexMatches checkPipes(List<Pipe> pipes)
+    {
+        ConfigurableRegexMatches regexMatches = null;
+        if (pipes.size() > 1 && pipes.get(1) instanceof ConfigurableRegexMatches)
+            regexMatches = (ConfigurableRegexMatches) pipes.get(1);
+        ArrayList<Pipe> expected = new ArrayList<Pipe>();
+        expected.add(pipes.get(0));
+        CRFTagger.setupPipes(expected, regexMatches, new Alphabet());
+        boolean same = pipes.size() == expected.size() && pipes.get(0) instanceof String2TokenSequencePipe;
+        for (int i = 0; same && i < pipes.size(); i++)
+            same = pipes.get(i).getClass() == expected.get(i).getClass();
+        if (!same)
+            throw new IllegalArgumentException("The tagger does not use the standard CRFTagger pipes, so it cannot be written in the binary format");
+        return regexMatches;
+    }
+
+    private static void writeCRF(DataOutputStream out, CRF4 crf) throws IOException
+    {
+        SparseVector[] weights = crf.getWeights();
+        Map<String, Integer> weightIndices = new HashMap<String, Integer>();
+        out.writeInt(weights.length);
+        for (int i = 0; i < weights.length; i++)
+        {
+            writeString(out, crf.getWeightsName(i));
+            weightIndices.put(crf.getWeightsName(i), i);
+        }
+        double[] defaultWeights = crf.getDefaultWeights();
+        for (int i = 0; i < weights.length; i++)
+            out.writeDouble(defaultWeights[i]);
+        out.writeInt(crf.numStates());
+        for (int i = 0; i < crf.numStates(); i++)
+        {
+            CRF4.State state = (CRF4.State) crf.getState(i);
+            writeString(out, state.getName());
+            out.writeDouble(state.getInitialCost());
+            out.writeDouble(state.getFinalCost());
+            out.writeInt(state.numDestinations());
+            for (int j = 0; j < state.numDestinations(); j++)
+            {
+                writeString(out, state.getDestinationState(j).getName());
+                writeString(out, state.getLabelName(j));
+                String[] weightNames = state.getWeightNames(j);
+                out.writeInt(weightNames.length);
+                for (String weightName : weightNames)
+                    out.writeInt(weightIndices.get(weightName));
+            }
+        }
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        new CRF4DenseWeights(crf).write(new DataOutputStream(section));
+        writeSection(out, section);
+        section.reset();
+        DataOutputStream sectionOut = new DataOutputStream(section);
+        for (int i = 0; i < weights.length; i++)
+        {
+            int numLocations = weights[i].numLocations();
+            sectionOut.writeInt(numLocations);
+            for (int j = 0; j < numLocations; j++)
+                sectionOut.writeInt(weights[i].indexAtLocation(j));
+            for (int j = 0; j < numLocations; j++)
+                sectionOut.writeDouble(weights[i].valueAtLocation(j));
+        }
+        writeSection(out, section);
+    }
+
+    /**
+     * Writes the length of the section, then the section, starting on an 8-byte boundary
+     */
+    private static void writeSection(DataOutputStream out, ByteArrayOutputStream section) throws IOException
+    {
+        while (out.size() % 8 != 0)
+            out.writeByte(0);
+        out.writeLong(section.size());
+        section.writeTo(out);
+    }
+
+    private static void writeAlphabet(DataOutputStream out, Alphabet alphabet) throws IOException
+    {
+        out.writeInt(alphabet.size());
+        for (int i = 0; i < alphabet.size(); i++)
+            writeString(out, alphabet.lookupObject(i).toString());
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String s : strings)
+            writeString(out, s);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    /**
+     * Reads a {@link CRFTagger} written by {@link #write(CRFTagger, File)} onto the heap. As with
+     * {@link CRFTagger#load(File, Lemmatiser, dragon.nlp.tool.Tagger, Tagger)}, the lemmatiser, part-of-speech tagger and pre-tagger must be
+     * passed in new.
+     *
+     * @param memoryMap
+     *            Whether to read the file through a memory mapping rather than copying it onto the heap first
+     */
+    public static CRFTagger read(File f, Lemmatiser lemmatiser, dragon.nlp.tool.Tagger posTagger, Tagger preTagger, boolean memoryMap) throws IOException
+    {
+        return read(f, lemmatiser, posTagger, preTagger, memoryMap, false);
+    }
+
+    /**
+     * Reads a {@link CRFTagger} written by {@link #write(CRFTagger, File)}, leaving its feature alphabet and weights in a read-only mapping
+     * of the file. The tagger tags exactly as one read by {@link #read(File, Lemmatiser, dragon.nlp.tool.Tagger, Tagger, boolean)}, but the
+     * sparse weights of its CRFs are empty, so it can neither be trained nor written. The file must not be changed while the tagger is in
+     * use.
+     */
+    public static CRFTagger readShared(File f, Lemmatiser lemmatiser, dragon.nlp.tool.Tagger posTagger, Tagger preTagger) throws IOException
+    {
+        return read(f, lemmatiser, posTagger, preTagger, true, true);
+    }
+
+    private static CRFTagger read(File f, Lemmatiser lemmatiser, dragon.nlp.tool.Tagger posTagger, Tagger preTagger, boolean memoryMap, boolean shared)
+            throws IOException
+    {
+        ByteBuffer in;
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            // A ByteBuffer, mapped or not, holds at most Integer.MAX_VALUE bytes
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(f + " has " + channel.size() + " bytes, but a binary model file can have at most " + Integer.MAX_VALUE);
+            if (memoryMap)
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            else
+            {
+                in = ByteBuffer.allocate((int) channel.size());
+                while (in.hasRemaining())
+                    if (channel.read(in) < 0)
+                        throw new IOException("Unexpected end of file " + f);
+                in.flip();
+            }
+        } finally
+        {
+            // A mapping stays valid after its channel is closed
+            file.close();
+        }
+
+        if (in.getInt() != MAGIC)
+            throw new IOException(f + " is not a binary model file");
+        int version = in.getInt();
+        if (version != VERSION)
+            throw new IOException(f + " has binary model version " + version + ", but only version " + VERSION + " can be read");
+        TextDirection textDirection = TextDirection.valueOf(readString(in));
+        int order = in.getInt();
+        boolean useFeatureInduction = in.get() != 0;
+        TagFormat format = TagFormat.valueOf(readString(in));
+        boolean useNumericNormalization = in.get() != 0;
+        int numRegexLines = in.getInt();
+        ConfigurableRegexMatches regexMatches = null;
+        if (numRegexLines >= 0)
+        {
+            List<String> lines = new ArrayList<String>(numRegexLines);
+            for (int i = 0; i < numRegexLines; i++)
+                lines.add(readString(in));
+            regexMatches = new ConfigurableRegexMatches(lines);
+        }
+        List<String> labels = readStrings(in);
+        MappedAlphabet mappedFeatures = new MappedAlphabet(readSection(in));
+        Alphabet features = shared ? mappedFeatures : mappedFeatures.toAlphabet();
+        ConjunctionTable conjunctionTable = new ConjunctionTable(features, readSection(in), !shared);
+
+        String2TokenSequencePipe basePipe = new String2TokenSequencePipe(lemmatiser, posTagger, useNumericNormalization, preTagger);
+        ArrayList<Pipe> pipes = new ArrayList<Pipe>();
+        pipes.add(basePipe);
+        CRFTagger.setupPipes(pipes, regexMatches, features);
+        ((OffsetConjunctions) pipes.get(pipes.size() - 2)).setConjunctionTable(conjunctionTable);
+        Pipe pipe = new SerialPipes(pipes);
+        // Both CRFs share the pipe and so its label alphabet, as when trained
+        Alphabet labelAlphabet = pipe.getTargetAlphabet();
+        for (String label : labels)
+            labelAlphabet.lookupIndex(label, true);
+        CRF4DenseWeights[] sharedWeights = new CRF4DenseWeights[2];
+        CRF4 forwardCRF = textDirection.doForward() ? readCRF(in, pipe, shared, sharedWeights, 0) : null;
+        CRF4 reverseCRF = textDirection.doReverse() ? readCRF(in, pipe, shared, sharedWeights, 1) : null;
+
+        CRFTagger tagger = new CRFTagger(forwardCRF, reverseCRF, basePipe, order, useFeatureInduction, format, textDirection);
+        tagger.setInferenceMode();
+        if (shared)
+            tagger.setSharedWeights(sharedWeights[0], sharedWeights[1]);
+        return tagger;
+    }
+
+    private static CRF4 readCRF(ByteBuffer in, Pipe pipe, boolean shared, CRF4DenseWeights[] sharedWeights, int direction)
+    {
+        CRF4 crf = new CRF4(pipe, null);
+        int numWeights = in.getInt();
+        String[] weightNames = new String[numWeights];
+        for (int i = 0; i < numWeights; i++)
+        {
+            weightNames[i] = readString(in);
+            // Creates the weight groups in the same order as they were written
+            crf.getWeightsIndex(weightNames[i]);
+        }
+        double[] defaultWeights = new double[numWeights];
+        for (int i = 0; i < numWeights; i++)
+            defaultWeights[i] = in.getDouble();
+        int numStates = in.getInt();
+        for (int i = 0; i < numStates; i++)
+        {
+            String name = readString(in);
+            double initialCost = in.getDouble();
+            double finalCost = in.getDouble();
+            int numDestinations = in.getInt();
+            String[] destinationNames = new String[numDestinations];
+            String[] labelNames = new String[numDestinations];
+            String[][] stateWeightNames = new String[numDestinations][];
+            for (int j = 0; j < numDestinations; j++)
+            {
+                destinationNames[j] = readString(in);
+                labelNames[j] = readString(in);
+                stateWeightNames[j] = new String[in.getInt()];
+                for (int k = 0; k < stateWeightNames[j].length; k++)
+                    stateWeightNames[j][k] = weightNames[in.getInt()];
+            }
+            crf.addState(name, initialCost, finalCost, destinationNames, labelNames, stateWeightNames);
+        }
+        crf.setDefaultWeights(defaultWeights);
+
+        ByteBuffer denseWeights = readSection(in);
+        ByteBuffer sparseWeights = readSection(in);
+        if (shared)
+        {
+            // The sparse weights stay empty
+            sharedWeights[direction] = new CRF4DenseWeights(denseWeights);
+            return crf;
+        }
+        SparseVector[] weights = new SparseVector[numWeights];
+        for (int i = 0; i < numWeights; i++)
+        {
+            int numLocations = sparseWeights.getInt();
+            int[] indices = new int[numLocations];
+            sparseWeights.asIntBuffer().get(indices);
+            sparseWeights.position(sparseWeights.position() + 4 * numLocations);
+            double[] values = new double[numLocations];
+            sparseWeights.asDoubleBuffer().get(values);
+            sparseWeights.position(sparseWeights.position() + 8 * numLocations);
+            weights[i] = new IndexedSparseVector(indices, values, numLocations, numLocations, false, false, false);
+        }
+        crf.setWeights(weights);
+        return crf;
+    }
+
+    /**
+     * @return The section written by {@link #writeSection(DataOutputStream, ByteArrayOutputStream)} at the position of <code>in</code>, which
+     *         is moved past it
+     */
+    private static ByteBuffer readSection(ByteBuffer in)
+    {
+        while (in.position() % 8 != 0)
+            in.get();
+        long length = in.getLong();
+        if (length < 0 || length > in.remaining())
+            throw new IllegalArgumentException("Section of length " + length + " at " + in.position() + " overruns the file");
+        ByteBuffer section = in.slice();
+        section.limit((int) length);
+        in.position(in.position() + (int) length);
+        return section;
+    }
+
+    private static List<String> readStrings(ByteBuffer in)
+    {
+        int size = in.getInt();
+        List<String> strings = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+            strings.add(readString(in));
+        return strings;
+    }
+
+    private static String readString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        try
+        {
+            return new String(bytes, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -20,6 +20,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -27,7 +32,12 @@ import java.util.zip.GZIPOutputStream;
 import dragon.nlp.tool.Lemmatiser;
 
 import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4Checkpoint;
+import edu.umass.cs.mallet.base.fst.CRF4DenseWeights;
+import edu.umass.cs.mallet.base.fst.CRF4StochasticTrainer;
+import edu.umass.cs.mallet.base.fst.CRF4Viterbi;
 import edu.umass.cs.mallet.base.fst.MultiSegmentationEvaluator;
+import edu.umass.cs.mallet.base.fst.Transducer;
 import edu.umass.cs.mallet.base.fst.Transducer.State;
 import edu.umass.cs.mallet.base.pipe.Pipe;
 import edu.umass.cs.mallet.base.pipe.SerialPipes;
@@ -42,7 +52,6 @@ import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
 import edu.umass.cs.mallet.base.types.Instance;
 import edu.umass.cs.mallet.base.types.InstanceList;
 import edu.umass.cs.mallet.base.types.LabelSequence;
-import edu.umass.cs.mallet.base.types.Sequence;
 import edu.umass.cs.mallet.base.types.SparseVector;
 import banner.Sentence;
 import banner.BannerProperties.TextDirection;
@@ -54,6 +63,10 @@ public class CRFTagger implements Tagger
 
 	// TODO Add support for TextDirection.Union and TextDirection.Intersection
 
+	/**
+	 * The number of sentences in each task when tagging in parallel
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 32;
 	private static String GREEK = "(alpha|beta|gamma|delta|epsilon|zeta|eta|theta|iota|kappa|lambda|mu|nu|xi|omicron|pi|rho|sigma|tau|upsilon|phi|chi|psi|omega)";
 	private CRF4 forwardCRF;
 	private CRF4 reverseCRF;
@@ -62,8 +75,14 @@ public class CRFTagger implements Tagger
 	private boolean useFeatureInduction;
 	private TagFormat format;
 	private TextDirection textDirection;
+	private List<OffsetConjunctions> conjunctionPipes;
+	private FeatureEncoder featureEncoder;
+	private volatile boolean concurrent;
+	private ThreadLocal<CRF4Viterbi> forwardDecoder;
+	private ThreadLocal<CRF4Viterbi> reverseDecoder;
+	private CRF4DenseWeights[] sharedWeights;
 
-	private CRFTagger(CRF4 forwardCRF, CRF4 reverseCRF, String2TokenSequencePipe basePipe, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection)
+	CRFTagger(CRF4 forwardCRF, CRF4 reverseCRF, String2TokenSequencePipe basePipe, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection)
 	{
 		// TODO Verify crf==null matches textDirection
 		this.forwardCRF = forwardCRF;
@@ -73,6 +92,82 @@ public class CRFTagger implements Tagger
 		this.useFeatureInduction = useFeatureInduction;
 		this.format = format;
 		this.textDirection = textDirection;
+		forwardDecoder = newDecoder(forwardCRF);
+		reverseDecoder = newDecoder(reverseCRF);
+	}
+
+	/**
+	 * Compiles the weights of the CRFs into the dense feature-major layout of
+	 * {@link CRF4DenseWeights}, which is faster to score tokens with but may
+	 * use more memory, and tags with them from then on. The output does not
+	 * change. This must be called before tagging starts.
+	 * 
+	 * @return The number of bytes used by the compiled weights
+	 */
+	public long compileWeights()
+	{
+		long size = 0;
+		if (sharedWeights != null)
+		{
+			// Already compiled, in the mapped file
+			for (CRF4DenseWeights weights : sharedWeights)
+				if (weights != null)
+					size += weights.getSizeInBytes();
+			return size;
+		}
+		if (forwardCRF != null)
+		{
+			CRF4DenseWeights weights = new CRF4DenseWeights(forwardCRF);
+			forwardDecoder = newDecoder(forwardCRF, weights);
+			size += weights.getSizeInBytes();
+		}
+		if (reverseCRF != null)
+		{
+			CRF4DenseWeights weights = new CRF4DenseWeights(reverseCRF);
+			reverseDecoder = newDecoder(reverseCRF, weights);
+			size += weights.getSizeInBytes();
+		}
+		return size;
+	}
+
+	/**
+	 * Tags with the specified weights, read from a file shared with other
+	 * processes, instead of the sparse weights of the CRFs, which are empty.
+	 */
+	void setSharedWeights(CRF4DenseWeights forwardWeights, CRF4DenseWeights reverseWeights)
+	{
+		sharedWeights = new CRF4DenseWeights[] { forwardWeights, reverseWeights };
+		forwardDecoder = newDecoder(forwardCRF, forwardWeights);
+		reverseDecoder = newDecoder(reverseCRF, reverseWeights);
+	}
+
+	/**
+	 * @return Whether this tagger was read by
+	 *         {@link BinaryModelFormat#readShared(File, Lemmatiser, dragon.nlp.tool.Tagger, Tagger)},
+	 *         so that its weights are in a file shared with other processes
+	 */
+	public boolean hasSharedWeights()
+	{
+		return sharedWeights != null;
+	}
+
+	private static ThreadLocal<CRF4Viterbi> newDecoder(CRF4 crf)
+	{
+		return newDecoder(crf, null);
+	}
+
+	private static ThreadLocal<CRF4Viterbi> newDecoder(final CRF4 crf, final CRF4DenseWeights weights)
+	{
+		if (crf == null)
+			return null;
+		// The decoders reuse their buffers, so each thread has its own
+		return new ThreadLocal<CRF4Viterbi>()
+		{
+			protected CRF4Viterbi initialValue()
+			{
+				return new CRF4Viterbi(crf, weights);
+			}
+		};
 	}
 
 	/**
@@ -82,7 +177,8 @@ public class CRFTagger implements Tagger
 	 * 
 	 * @param f
 	 *            The file to load the CRFTagger from, as written by the {@link}
-	 *            write() method.
+	 *            write() method, or in the {@link BinaryModelFormat}, which is
+	 *            memory mapped.
 	 * @param lemmatiser
 	 *            The {@link Lemmatiser} to use
 	 * @param posTagger
@@ -94,6 +190,8 @@ public class CRFTagger implements Tagger
 	 */
 	public static synchronized CRFTagger load(File f, Lemmatiser lemmatiser, dragon.nlp.tool.Tagger posTagger, Tagger preTagger) throws IOException
 	{
+		if (BinaryModelFormat.isBinaryModel(f))
+			return BinaryModelFormat.read(f, lemmatiser, posTagger, preTagger, true);
 		try
 		{
 			ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(f)));
@@ -114,7 +212,9 @@ public class CRFTagger implements Tagger
 			boolean useFeatureInduction = ois.readBoolean();
 			TagFormat format = (TagFormat) ois.readObject();
 			ois.close();
-			return new CRFTagger(forwardCRF, reverseCRF, basePipe, order, useFeatureInduction, format, textDirection);
+			CRFTagger tagger = new CRFTagger(forwardCRF, reverseCRF, basePipe, order, useFeatureInduction, format, textDirection);
+			tagger.setInferenceMode();
+			return tagger;
 		} catch (ClassNotFoundException e)
 		{
 			throw new RuntimeException(e);
@@ -146,12 +246,26 @@ public class CRFTagger implements Tagger
 	{
 		try
 		{
-			if (regexFilename != null)
-				pipes.add(new ConfigurableRegexMatches(regexFilename));
+			setupPipes(pipes, regexFilename == null ? null : new ConfigurableRegexMatches(regexFilename), null);
 		} catch (IOException e)
 		{
 			throw new RuntimeException(e);
 		}
+	}
+
+	/**
+	 * Adds the feature pipes which follow the {@link String2TokenSequencePipe}
+	 * 
+	 * @param regexMatches
+	 *            The configurable regex features, or <code>null</code> for none
+	 * @param features
+	 *            The feature {@link Alphabet} to use, or <code>null</code> to
+	 *            create a new one
+	 */
+	static void setupPipes(ArrayList<Pipe> pipes, ConfigurableRegexMatches regexMatches, Alphabet features)
+	{
+		if (regexMatches != null)
+			pipes.add(regexMatches);
 		pipes.add(new TokenTextCharPrefix("2PREFIX=", 2));
 		pipes.add(new TokenTextCharPrefix("3PREFIX=", 3));
 		pipes.add(new TokenTextCharPrefix("4PREFIX=", 4));
@@ -165,7 +279,10 @@ public class CRFTagger implements Tagger
 		pipes.add(new RegexMatches("GREEK", Pattern.compile(GREEK, Pattern.CASE_INSENSITIVE)));
 		pipes.add(new RegexMatches("ISPUNCT", Pattern.compile("[`~!@#$%^&*()-=_+\\[\\]\\\\{}|;\':\\\",./<>?]+")));
 		pipes.add(new OffsetConjunctions(new int[][] { { -2 }, { -1 }, { 1 }, { 2 } }));
-		pipes.add(new TokenSequence2FeatureVectorSequence(true, true));
+		if (features == null)
+			pipes.add(new TokenSequence2FeatureVectorSequence(true, true));
+		else
+			pipes.add(new TokenSequence2FeatureVectorSequence(features, true, true));
 	}
 
 	/**
@@ -196,6 +313,74 @@ public class CRFTagger implements Tagger
 	public static CRFTagger train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection, Lemmatiser lemmatiser,
 			dragon.nlp.tool.Tagger posTagger, boolean useNumericalNormalization, Tagger preTagger, String regexFilename)
 	{
+		return train(sentences, order, useFeatureInduction, format, textDirection, lemmatiser, posTagger, useNumericalNormalization, preTagger, regexFilename, 1);
+	}
+
+	/**
+	 * Trains and returns a {@link CRFTagger} on the specified {@link Sentence}
+	 * s, computing the value and gradient of each iteration with several
+	 * threads, as {@link CRF4#setTrainingThreads(int)}. The model differs from
+	 * the one trained with one thread only by floating-point rounding.
+	 * 
+	 * @param trainingThreads
+	 *            The number of threads to train with, at least 1
+	 * @see #train(List, int, boolean, TagFormat, TextDirection, Lemmatiser,
+	 *      dragon.nlp.tool.Tagger, boolean, Tagger, String)
+	 */
+	public static CRFTagger train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection, Lemmatiser lemmatiser,
+			dragon.nlp.tool.Tagger posTagger, boolean useNumericalNormalization, Tagger preTagger, String regexFilename, int trainingThreads)
+	{
+		return train(sentences, order, useFeatureInduction, format, textDirection, lemmatiser, posTagger, useNumericalNormalization, preTagger, regexFilename, trainingThreads,
+				null);
+	}
+
+	/**
+	 * Trains and returns a {@link CRFTagger} on the specified {@link Sentence}
+	 * s, possibly by stochastic gradient ascent, as
+	 * {@link #train(List, int, boolean, TagFormat, TextDirection, Lemmatiser, dragon.nlp.tool.Tagger, boolean, Tagger, String, int, CRF4StochasticTrainer)}
+	 * .
+	 */
+	public static CRFTagger train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection, Lemmatiser lemmatiser,
+			dragon.nlp.tool.Tagger posTagger, boolean useNumericalNormalization, Tagger preTagger, String regexFilename, int trainingThreads,
+			CRF4StochasticTrainer stochasticTrainer)
+	{
+		return train(sentences, order, useFeatureInduction, format, textDirection, lemmatiser, posTagger, useNumericalNormalization, preTagger, regexFilename, trainingThreads,
+				stochasticTrainer, null);
+	}
+
+	/**
+	 * Trains and returns a {@link CRFTagger} on the specified {@link Sentence}
+	 * s, by stochastic gradient ascent on mini-batches of sentences instead of
+	 * L-BFGS if a {@link CRF4StochasticTrainer} is given. Each step of
+	 * stochastic training looks at one batch only, so it needs far fewer
+	 * passes over a large training set, but it does not stop at convergence:
+	 * it makes the trainer's number of epochs. Feature induction is only
+	 * available with L-BFGS.
+	 * 
+	 * <p>
+	 * Training with L-BFGS can save its progress in a {@link CRF4Checkpoint},
+	 * and continue from it after it stopped. The checkpoint of the reverse CRF
+	 * is in the file of the checkpoint followed by ".reverse", and so are its
+	 * kept checkpoints.
+	 * 
+	 * @param stochasticTrainer
+	 *            The trainer to train the CRFs with, or null to use L-BFGS
+	 * @param checkpoint
+	 *            Where and how often to save the progress of L-BFGS, or null
+	 *            not to
+	 * @see #train(List, int, boolean, TagFormat, TextDirection, Lemmatiser,
+	 *      dragon.nlp.tool.Tagger, boolean, Tagger, String, int)
+	 */
+	public static CRFTagger train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, TextDirection textDirection, Lemmatiser lemmatiser,
+			dragon.nlp.tool.Tagger posTagger, boolean useNumericalNormalization, Tagger preTagger, String regexFilename, int trainingThreads,
+			CRF4StochasticTrainer stochasticTrainer, CRF4Checkpoint checkpoint)
+	{
+		if (useFeatureInduction && stochasticTrainer != null)
+			throw new IllegalArgumentException("Feature induction cannot be used with stochastic training");
+		if (checkpoint != null && (useFeatureInduction || stochasticTrainer != null))
+			throw new IllegalArgumentException("Only training with L-BFGS without feature induction can be checkpointed");
+		if (trainingThreads < 1)
+			throw new IllegalArgumentException("Number of training threads must be at least 1: " + trainingThreads);
 		if (sentences.size() == 0)
 			throw new RuntimeException("Number of sentences must be greater than zero");
 		String2TokenSequencePipe localBasePipe = new String2TokenSequencePipe(lemmatiser, posTagger, useNumericalNormalization, preTagger);
@@ -207,14 +392,16 @@ public class CRFTagger implements Tagger
 		if (textDirection == TextDirection.Intersection)
 			throw new UnsupportedOperationException("TextDirection.Intersection not yet supported");
 		if (textDirection.doForward())
-			forwardCRF = train(sentences, order, useFeatureInduction, format, pipe, false);
+			forwardCRF = train(sentences, order, useFeatureInduction, format, pipe, false, trainingThreads, stochasticTrainer, checkpoint);
 		CRF4 reverseCRF = null;
 		if (textDirection.doReverse())
-			reverseCRF = train(sentences, order, useFeatureInduction, format, pipe, true);
+			reverseCRF = train(sentences, order, useFeatureInduction, format, pipe, true, trainingThreads, stochasticTrainer,
+					checkpoint == null ? null : checkpoint.withSuffix(".reverse"));
 		return new CRFTagger(forwardCRF, reverseCRF, localBasePipe, order, useFeatureInduction, format, textDirection);
 	}
 
-	private static CRF4 train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, Pipe pipe, boolean reverse)
+	private static CRF4 train(List<Sentence> sentences, int order, boolean useFeatureInduction, TagFormat format, Pipe pipe, boolean reverse, int trainingThreads,
+			CRF4StochasticTrainer stochasticTrainer, CRF4Checkpoint checkpoint)
 	{
 		InstanceList instances = new InstanceList(pipe);
 		for (Sentence sentence : sentences)
@@ -241,13 +428,17 @@ public class CRFTagger implements Tagger
 			}
 		}
 		CRF4 crf = new CRF4(pipe, null);
+		crf.setTrainingThreads(trainingThreads);
+		crf.setCheckpoint(checkpoint);
 		if (order == 1)
 			crf.addStatesForLabelsConnectedAsIn(instances);
 		else if (order == 2)
 			crf.addStatesForBiLabelsConnectedAsIn(instances);
 		else
 			throw new IllegalArgumentException("Order must be equal to 1 or 2");
-		if (useFeatureInduction)
+		if (stochasticTrainer != null)
+			stochasticTrainer.train(crf, instances);
+		else if (useFeatureInduction)
 			crf.trainWithFeatureInduction(instances, null, null, null, 99999, 100, 10, 1000, 0.5, false, new double[] { .2, .5, .8 });
 		else
 			crf.train(instances, null, null, (MultiSegmentationEvaluator) null, 99999, 10, new double[] { .2, .5, .8 });
@@ -262,6 +453,8 @@ public class CRFTagger implements Tagger
 	 */
 	public void write(File f)
 	{
+		if (sharedWeights != null)
+			throw new IllegalStateException("This tagger was read with shared weights, so it cannot be written");
 		try
 		{
 			ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(f)));
@@ -383,7 +576,7 @@ public class CRFTagger implements Tagger
 
 	public void tag(Sentence sentence)
 	{
-		int size = sentence.getTokens().size();
+		int size = sentence.getTokenCount();
 		TagPosition[] forwardPositions = new TagPosition[size];
 		MentionType[] forwardTypes = new MentionType[size];
 		if (textDirection.doForward())
@@ -493,6 +686,116 @@ public class CRFTagger implements Tagger
 		}
 	}
 
+	/**
+	 * Tags each of the specified {@link Sentence}s in turn
+	 * 
+	 * @param sentences
+	 *            The {@link Sentence}s to tag
+	 */
+	public void tag(List<Sentence> sentences)
+	{
+		for (Sentence sentence : sentences)
+			tag(sentence);
+	}
+
+	/**
+	 * Tags the specified {@link Sentence}s using the threads of the specified
+	 * executor. The list is divided into contiguous batches of
+	 * {@value #DEFAULT_BATCH_SIZE} sentences, each tagged by one task. The
+	 * mentions are added to each {@link Sentence}, so they stay in input
+	 * order. Unless the executor is <code>null</code>,
+	 * {@link #enableConcurrentTagging(PosTaggerFactory)} must have been
+	 * called first.
+	 * 
+	 * @param sentences
+	 *            The {@link Sentence}s to tag
+	 * @param executor
+	 *            The executor to run the batches on, or <code>null</code> to
+	 *            tag in the calling thread
+	 */
+	public void tag(List<Sentence> sentences, ExecutorService executor)
+	{
+		tag(sentences, executor, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Tags the specified {@link Sentence}s using the threads of the specified
+	 * executor, as {@link #tag(List, ExecutorService)}, with the specified
+	 * number of sentences in each batch
+	 */
+	public void tag(List<Sentence> sentences, ExecutorService executor, int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		if (executor == null || sentences.size() <= batchSize)
+		{
+			tag(sentences);
+			return;
+		}
+		await(submit(sentences, executor, batchSize));
+	}
+
+	/**
+	 * Starts tagging the specified {@link Sentence}s using the threads of the
+	 * specified executor, as {@link #tag(List, ExecutorService, int)}, without
+	 * waiting for them to be tagged.
+	 * {@link #enableConcurrentTagging(PosTaggerFactory)} must have been called
+	 * first.
+	 * 
+	 * @return The result of each batch, to be given to {@link #await(List)}
+	 *         before the mentions of the {@link Sentence}s are used
+	 */
+	public List<Future<Object>> submit(List<Sentence> sentences, ExecutorService executor, int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		if (!concurrent)
+			throw new IllegalStateException("enableConcurrentTagging() must be called before tagging in parallel");
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int start = 0; start < sentences.size(); start += batchSize)
+		{
+			final List<Sentence> batch = sentences.subList(start, Math.min(start + batchSize, sentences.size()));
+			results.add(executor.submit(new Callable<Object>()
+			{
+				public Object call()
+				{
+					tag(batch);
+					return null;
+				}
+			}));
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for the batches started by
+	 * {@link #submit(List, ExecutorService, int)} to be tagged, throwing the
+	 * exception of the first batch which failed
+	 */
+	public static void await(List<Future<Object>> results)
+	{
+		RuntimeException failure = null;
+		for (Future<Object> result : results)
+		{
+			try
+			{
+				result.get();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				if (failure == null)
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
 	public List<Mention> getMentions(Sentence sentence, TagPosition[] positions, MentionType[] types)
 	{
 		List<Mention> mentions = new ArrayList<Mention>();
@@ -532,29 +835,61 @@ public class CRFTagger implements Tagger
 			array[i] = copy[offset - i];
 	}
 
-	private void getPositionsAndTypes(Sentence sentence, TagPosition[] positions, MentionType[] types, boolean reverse)
+	// The parsed labels of the CRFs, which are shared by all taggers
+	private static final ConcurrentHashMap<String, Label> labels = new ConcurrentHashMap<String, Label>();
+
+	private static Label getLabel(String text)
 	{
-		Instance instance = new Instance(sentence.getTokenText(), sentence.getTokenLabels(format), sentence.getTag(), null, forwardCRF.getInputPipe());
-		Sequence tags;
-		if (reverse)
+		Label label = labels.get(text);
+		if (label == null)
+		{
+			// The tag string is e.g. "O" or "B-GENE"
+			String[] split = text.split("-");
+			label = new Label(TagPosition.valueOf(split[0]), split.length == 2 ? MentionType.getType(split[1]) : null);
+			labels.put(text, label);
+		}
+		return label;
+	}
+
+	private static final class Label
+	{
+		final TagPosition position;
+		final MentionType type;
+
+		Label(TagPosition position, MentionType type)
 		{
-			tags = reverseCRF.viterbiPath((Sequence) instance.getData()).output();
-		} else
+			this.position = position;
+			this.type = type;
+		}
+	}
+
+	private void getPositionsAndTypes(Sentence sentence, TagPosition[] positions, MentionType[] types, boolean reverse)
+	{
+		FeatureVectorSequence input;
+		if (featureEncoder != null)
+			input = featureEncoder.encode(sentence.getTokenText());
+		else
 		{
-			tags = forwardCRF.viterbiPath((Sequence) instance.getData()).output();
+			// No target: the labels are not needed for tagging, and looking
+			// them up could add to the label alphabet
+			Instance instance = new Instance(sentence.getTokenText(), null, sentence.getTag(), null, forwardCRF.getInputPipe());
+			input = (FeatureVectorSequence) instance.getData();
 		}
-		if (positions.length != tags.size())
+		CRF4Viterbi decoder = reverse ? reverseDecoder.get() : forwardDecoder.get();
+		int[] tags = new int[input.size()];
+		if (decoder.bestLabels(input, tags) == Transducer.INFINITE_COST)
+			tags = new int[0];
+		if (positions.length != tags.length)
 			throw new IllegalArgumentException();
-		if (types.length != tags.size())
+		if (types.length != tags.length)
 			throw new IllegalArgumentException();
-		for (int i = 0; i < tags.size(); i++)
+		for (int i = 0; i < tags.length; i++)
 		{
-			// The tag string is e.g. "O" or "B-GENE"
-			String[] split = tags.get(i).toString().split("-");
-			positions[i] = TagPosition.valueOf(split[0]);
+			Label label = getLabel(decoder.getLabel(tags[i]));
+			positions[i] = label.position;
 			// TODO Verify that the type stays the same
-			if (split.length == 2)
-				types[i] = MentionType.getType(split[1]);
+			if (label.type != null)
+				types[i] = label.type;
 		}
 		if (reverse)
 		{
@@ -577,6 +912,106 @@ public class CRFTagger implements Tagger
 		}
 	}
 
+	/**
+	 * Prepares this {@link CRFTagger} to be shared by several threads which
+	 * call {@link #tag(Sentence)} at the same time, without any locking. The
+	 * feature and label alphabets stop growing (features not seen in training
+	 * have no weights, so the output is unchanged), the parts of the CRFs
+	 * which are otherwise built lazily are built now, and each thread is given
+	 * its own part-of-speech tagger. The lemmatiser and the pre-tagger are
+	 * only read while tagging, and are shared. The text direction should not
+	 * be changed once tagging has started.
+	 * 
+	 * @param posTaggerFactory
+	 *            Creates the part-of-speech tagger for each thread; may be
+	 *            <code>null</code> if this tagger does not use part-of-speech
+	 *            features
+	 */
+	public void enableConcurrentTagging(PosTaggerFactory posTaggerFactory)
+	{
+		basePipe.setPosTaggerFactory(posTaggerFactory);
+		setInferenceMode();
+		if (forwardCRF != null)
+			prepareForConcurrentInference(forwardCRF);
+		if (reverseCRF != null)
+			prepareForConcurrentInference(reverseCRF);
+		concurrent = true;
+	}
+
+	private static void prepareForConcurrentInference(CRF4 crf)
+	{
+		// Resolve the pipe alphabets, which is also done lazily
+		crf.getInputPipe().getDataAlphabet();
+		crf.getInputPipe().getTargetAlphabet();
+		crf.prepareForConcurrentInference();
+	}
+
+	/**
+	 * Stops the feature and label alphabets from growing while tagging, so
+	 * that features which were not seen in training (and therefore have no
+	 * weight) are dropped instead of being added to the model. They are
+	 * removed before the conjunctions with neighboring tokens are built from
+	 * them. If the pipe allows, tagging then computes the features with a
+	 * {@link FeatureEncoder} instead of running the pipe. This is done by {@link #load(File, Lemmatiser, dragon.nlp.tool.Tagger, Tagger)}.
+	 */
+	void setInferenceMode()
+	{
+		conjunctionPipes = new ArrayList<OffsetConjunctions>();
+		for (CRF4 crf : new CRF4[] { forwardCRF, reverseCRF })
+		{
+			if (crf == null)
+				continue;
+			Alphabet features = crf.getInputAlphabet();
+			features.stopGrowth();
+			crf.getOutputAlphabet().stopGrowth();
+			for (Pipe pipe : ((SerialPipes) crf.getInputPipe()).getPipes())
+			{
+				if (pipe instanceof OffsetConjunctions && !conjunctionPipes.contains(pipe))
+				{
+					((OffsetConjunctions) pipe).setKnownFeatures(features);
+					conjunctionPipes.add((OffsetConjunctions) pipe);
+				} else if (pipe instanceof TokenSequence2FeatureVectorSequence)
+					((TokenSequence2FeatureVectorSequence) pipe).setGrowAlphabet(false);
+			}
+		}
+		// Tagging runs the pipe of the forward CRF
+		if (forwardCRF != null)
+			featureEncoder = FeatureEncoder.create(forwardCRF.getInputPipe());
+	}
+
+	/**
+	 * @return The number of features dropped while tagging because they were
+	 *         not seen in training, since this tagger was loaded
+	 */
+	public long getDroppedFeatureCount()
+	{
+		long count = 0;
+		if (conjunctionPipes != null)
+			for (OffsetConjunctions pipe : conjunctionPipes)
+				count += pipe.getDroppedFeatureCount();
+		if (featureEncoder != null)
+			count += featureEncoder.getDroppedFeatureCount();
+		return count;
+	}
+
+	/**
+	 * @return The CRF which tags the sentences forwards, or <code>null</code>
+	 *         if the text direction does not use one
+	 */
+	public CRF4 getForwardCRF()
+	{
+		return forwardCRF;
+	}
+
+	/**
+	 * @return The CRF which tags the sentences in reverse, or
+	 *         <code>null</code> if the text direction does not use one
+	 */
+	public CRF4 getReverseCRF()
+	{
+		return reverseCRF;
+	}
+
 	/**
 	 * @return The {@link TagFormat} used by this tagger
 	 */
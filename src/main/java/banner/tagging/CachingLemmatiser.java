@@ -0,0 +1,118 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import banner.util.BoundedCache;
+import dragon.nlp.tool.Lemmatiser;
+
+/**
+ * A {@link Lemmatiser} which remembers the lemmas another one finds for each token and part of speech in a {@link BoundedCache}, since the same
+ * tokens occur again and again in a corpus. Stems are not cached.
+ */
+public class CachingLemmatiser implements Lemmatiser
+{
+
+    // The part of speech of the key of a lemma found without one
+    private static final int NO_POS = Integer.MIN_VALUE;
+
+    private final Lemmatiser lemmatiser;
+    private final BoundedCache<Key, String> cache;
+
+
+    /**
+     * @param lemmatiser
+     *        The {@link Lemmatiser} to find the lemmas which are not cached
+     * @param cache
+     *        The cache of lemmas, which may be shared with other instances using equivalent lemmatisers
+     */
+    public CachingLemmatiser(Lemmatiser lemmatiser, BoundedCache<Key, String> cache)
+    {
+        this.lemmatiser = lemmatiser;
+        this.cache = cache;
+    }
+
+
+    public Lemmatiser getLemmatiser()
+    {
+        return lemmatiser;
+    }
+
+
+    public BoundedCache<Key, String> getCache()
+    {
+        return cache;
+    }
+
+
+    public String lemmatize(String word)
+    {
+        Key key = new Key(word, NO_POS);
+        String lemma = cache.get(key);
+        if (lemma == null)
+        {
+            lemma = lemmatiser.lemmatize(word);
+            if (lemma != null)
+                cache.put(key, lemma);
+        }
+        return lemma;
+    }
+
+
+    public String lemmatize(String word, int pos)
+    {
+        Key key = new Key(word, pos);
+        String lemma = cache.get(key);
+        if (lemma == null)
+        {
+            lemma = lemmatiser.lemmatize(word, pos);
+            if (lemma != null)
+                cache.put(key, lemma);
+        }
+        return lemma;
+    }
+
+
+    public String stem(String word)
+    {
+        return lemmatiser.stem(word);
+    }
+
+    /**
+     * A token and its part of speech
+     */
+    public static final class Key
+    {
+
+        private final String word;
+        private final int pos;
+
+
+        Key(String word, int pos)
+        {
+            this.word = word;
+            this.pos = pos;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * word.hashCode() + pos;
+        }
+
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return pos == other.pos && word.equals(other.word);
+        }
+    }
+
+}
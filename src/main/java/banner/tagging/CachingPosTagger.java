@@ -0,0 +1,133 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import banner.util.BoundedCache;
+import dragon.nlp.Sentence;
+import dragon.nlp.Word;
+import dragon.nlp.tool.Tagger;
+
+/**
+ * A part-of-speech {@link Tagger} which remembers the tags another one sets on the words of each sentence in a {@link BoundedCache}, keyed by the
+ * text of the words. A sentence seen before has its tags set from the cache, without being tagged again. Only the tags are cached, since that is
+ * all the dragon taggers set.
+ * <p>
+ * As a {@link PosTagger}, only the part-of-speech indexes are cached if the tagger it wraps is also a {@link PosTagger}; a {@link Sentence}
+ * whose tags were cached that way is tagged again, to find the labels.
+ * <p>
+ * Like the tagger it wraps, an instance should only be used by one thread at a time; several instances may share one cache.
+ */
+public class CachingPosTagger implements PosTagger, Tagger
+{
+
+    private final Tagger posTagger;
+    private final BoundedCache<List<String>, Tags> cache;
+
+
+    /**
+     * @param posTagger
+     *        The {@link Tagger} to tag the sentences which are not cached
+     * @param cache
+     *        The cache of tags, which may be shared with other instances using equivalent taggers
+     */
+    public CachingPosTagger(Tagger posTagger, BoundedCache<List<String>, Tags> cache)
+    {
+        this.posTagger = posTagger;
+        this.cache = cache;
+    }
+
+
+    public Tagger getPosTagger()
+    {
+        return posTagger;
+    }
+
+
+    public BoundedCache<List<String>, Tags> getCache()
+    {
+        return cache;
+    }
+
+
+    public void tag(Sentence sentence)
+    {
+        List<String> words = new ArrayList<String>(sentence.getWordNum());
+        for (Word word = sentence.getFirstWord(); word != null; word = word.next)
+            words.add(word.getContent());
+        Tags tags = cache.get(words);
+        if (tags == null || tags.labels == null)
+            tag(sentence, words);
+        else
+        {
+            int i = 0;
+            for (Word word = sentence.getFirstWord(); word != null; word = word.next, i++)
+                word.setPOS(tags.labels[i], tags.indices[i]);
+        }
+    }
+
+
+    public int[] tag(List<String> tokens)
+    {
+        Tags tags = cache.get(tokens);
+        if (tags == null)
+        {
+            List<String> words = new ArrayList<String>(tokens);
+            if (posTagger instanceof PosTagger)
+            {
+                tags = new Tags(null, ((PosTagger) posTagger).tag(words));
+                cache.put(words, tags);
+            }
+            else
+            {
+                // Caches the labels too, as when tagging a Sentence
+                Sentence sentence = new Sentence();
+                for (String word : words)
+                    sentence.addWord(new Word(word));
+                tags = tag(sentence, words);
+            }
+        }
+        return tags.indices.clone();
+    }
+
+
+    // Tags the sentence with the tagger and caches the tags of its words
+    private Tags tag(Sentence sentence, List<String> words)
+    {
+        posTagger.tag(sentence);
+        Tags tags = new Tags(new String[words.size()], new int[words.size()]);
+        int i = 0;
+        for (Word word = sentence.getFirstWord(); word != null; word = word.next, i++)
+        {
+            tags.labels[i] = word.getPOSLabel();
+            tags.indices[i] = word.getPOSIndex();
+        }
+        cache.put(words, tags);
+        return tags;
+    }
+
+    /**
+     * The part-of-speech label and index of each word of a sentence
+     */
+    public static final class Tags
+    {
+
+        final String[] labels;
+        final int[] indices;
+
+
+        // The labels are null if only the indices are known
+        Tags(String[] labels, int[] indices)
+        {
+            this.labels = labels;
+            this.indices = indices;
+        }
+    }
+
+}
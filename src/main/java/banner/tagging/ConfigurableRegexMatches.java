@@ -3,22 +3,29 @@ package banner.tagging;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.tsf.TokenTextFeatureIds;
+import edu.umass.cs.mallet.base.types.FeatureIdBuffer;
 import edu.umass.cs.mallet.base.types.Instance;
 import edu.umass.cs.mallet.base.types.Token;
 import edu.umass.cs.mallet.base.types.TokenSequence;
+import edu.umass.cs.mallet.base.util.MultiPatternMatcher;
 
-public class ConfigurableRegexMatches extends Pipe implements Serializable
+public class ConfigurableRegexMatches extends Pipe implements Serializable, TokenTextFeatureIds
 {
 
 	private static final long serialVersionUID = 1L;
 
 	private List<RegexPair> regexPairs;
+	// Matches all the patterns in one pass over the token text, without a
+	// cache, as in FeatureEncoder
+	private transient MultiPatternMatcher matcher;
 
 	public ConfigurableRegexMatches(String filename) throws IOException
 	{
@@ -33,6 +40,64 @@ public class ConfigurableRegexMatches extends Pipe implements Serializable
 			line = reader.readLine();
 		}
 		reader.close();
+		matcher = createMatcher();
+	}
+
+	/**
+	 * Creates a pipe from lines in the same format as the regex file, as
+	 * returned by {@link #getLines()}
+	 */
+	public ConfigurableRegexMatches(List<String> lines)
+	{
+		regexPairs = new ArrayList<RegexPair>();
+		for (String line : lines)
+			regexPairs.add(new RegexPair(line));
+		matcher = createMatcher();
+	}
+
+	private MultiPatternMatcher createMatcher()
+	{
+		return new MultiPatternMatcher(getPatterns(), 0);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		matcher = createMatcher();
+	}
+
+	/**
+	 * @return The configuration of this pipe, one line of the regex file per
+	 *         pattern
+	 */
+	public List<String> getLines()
+	{
+		List<String> lines = new ArrayList<String>();
+		for (RegexPair pair : regexPairs)
+			lines.add(pair.regex.pattern() + "\t" + pair.feature);
+		return lines;
+	}
+
+	/**
+	 * @return The patterns, in the order of the regex file
+	 */
+	public List<Pattern> getPatterns()
+	{
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (RegexPair pair : regexPairs)
+			patterns.add(pair.regex);
+		return patterns;
+	}
+
+	/**
+	 * @return The feature of each pattern returned by {@link #getPatterns()}
+	 */
+	public List<String> getFeatures()
+	{
+		List<String> features = new ArrayList<String>();
+		for (RegexPair pair : regexPairs)
+			features.add(pair.feature);
+		return features;
 	}
 
 	@Override
@@ -42,15 +107,18 @@ public class ConfigurableRegexMatches extends Pipe implements Serializable
 		for (int i = 0; i < ts.size(); i++)
 		{
 			Token t = ts.getToken(i);
-			for (RegexPair pair : regexPairs)
-			{
-				if (pair.regex.matcher(t.getText()).matches())
-					t.setFeatureValue(pair.feature, 1.0);
-			}
+			for (int p : matcher.matches(t.getText()))
+				t.setFeatureValue(regexPairs.get(p).feature, 1.0);
 		}
 		return carrier;
 	}
 
+	public void addFeatureIds(String text, FeatureIdBuffer ids)
+	{
+		for (int p : matcher.matches(text))
+			ids.add(regexPairs.get(p).feature);
+	}
+
 	private class RegexPair implements Serializable
 	{
 		private static final long serialVersionUID = 1L;
@@ -0,0 +1,188 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import banner.BannerProperties;
+import banner.tokenization.Tokenizer;
+
+/**
+ * Reads and writes the entries of a {@link DictionaryTagger} as an index file, so that a process can load the dictionary without tokenizing
+ * every entry of the dictionary file again. The entries are those of the tagger after processing, including any variants its class adds.
+ * <p>
+ * The index records what it was built from: the length and CRC-32 checksum of the dictionary file, the class of the tagger and the class of its
+ * tokenizer. An index which does not match all four is stale, and is not read. Neither is an index which is corrupt or truncated: the index is only
+ * a cache of the dictionary file, which can always be loaded instead.
+ * <p>
+ * Run with <code>&lt;banner.properties&gt; [&lt;index&gt;]</code> to build the index for the dictionary of the properties, by default at the
+ * location set by the <code>dictionaryIndex</code> property.
+ */
+public class DictionaryIndex
+{
+
+    /**
+     * The first four bytes of a dictionary index file, "BDIX"
+     */
+    public static final int MAGIC = 0x42444958;
+    public static final int VERSION = 1;
+
+    private DictionaryIndex()
+    {
+        // Not instantiable
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("Usage: DictionaryIndex <banner.properties> [<index>]");
+            System.exit(1);
+        }
+        java.util.Properties properties = new java.util.Properties();
+        FileInputStream in = new FileInputStream(args[0]);
+        properties.load(in);
+        in.close();
+        String dictionaryFileName = properties.getProperty("dictionary");
+        String indexFileName = args.length > 1 ? args[1] : properties.getProperty("dictionaryIndex");
+        if (dictionaryFileName == null || indexFileName == null)
+        {
+            System.err.println("The properties must set dictionary, and dictionaryIndex unless the index is given");
+            System.exit(1);
+        }
+        // Loads the dictionary from its file, not from an index which may be stale
+        properties.remove("dictionaryIndex");
+        long start = System.currentTimeMillis();
+        BannerProperties bannerProperties = BannerProperties.load(properties);
+        DictionaryTagger tagger = (DictionaryTagger) bannerProperties.getPreTagger();
+        write(tagger, new File(dictionaryFileName), new File(indexFileName));
+        System.out.println("Wrote " + tagger.size() + " entries of " + dictionaryFileName + " to " + indexFileName + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+
+    /**
+     * Writes the entries of the tagger, which were added from the dictionary file, to the index file
+     */
+    public static void write(DictionaryTagger tagger, File dictionary, File index) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dictionary.length());
+            out.writeLong(checksum(dictionary));
+            out.writeUTF(tagger.getClass().getName());
+            out.writeUTF(tagger.getTokenizer().getClass().getName());
+            tagger.write(out);
+        } finally
+        {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Replaces the entries of the tagger with those in the index file, if the index was built from the dictionary file by a tagger of the same
+     * class with the same class of tokenizer
+     *
+     * @return Whether the entries were read; if not, the reason is printed and the tagger is unchanged
+     * @throws IOException
+     *         If the dictionary file cannot be read to check the index against it
+     */
+    public static boolean read(DictionaryTagger tagger, File dictionary, File index) throws IOException
+    {
+        if (!index.exists())
+        {
+            System.out.println("Dictionary index " + index + " does not exist");
+            return false;
+        }
+        // Checksums the dictionary first, so that its errors are not taken for those of the index
+        long checksum = checksum(dictionary);
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(index), 1 << 16));
+            String stale = checkHeader(in, tagger, dictionary, checksum);
+            if (stale != null)
+            {
+                System.out.println("Dictionary index " + index + " is stale: " + stale);
+                return false;
+            }
+            tagger.read(in);
+            return true;
+        } catch (IOException e)
+        {
+            System.err.println("WARNING: Dictionary index " + index + " cannot be read, and is not used: " + e);
+            return false;
+        } catch (RuntimeException e)
+        {
+            // A corrupt trie may have impossible sizes
+            System.err.println("WARNING: Dictionary index " + index + " is corrupt, and is not used: " + e);
+            return false;
+        } finally
+        {
+            if (in != null)
+                in.close();
+        }
+    }
+
+
+    // Returns why the index does not match, or null if it does
+    private static String checkHeader(DataInputStream in, DictionaryTagger tagger, File dictionary, long dictionaryChecksum) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+            return "not a dictionary index";
+        int version = in.readInt();
+        if (version != VERSION)
+            return "version " + version + ", expected " + VERSION;
+        long length = in.readLong();
+        long checksum = in.readLong();
+        if (length != dictionary.length() || checksum != dictionaryChecksum)
+            return dictionary + " has changed";
+        String taggerClass = in.readUTF();
+        if (!taggerClass.equals(tagger.getClass().getName()))
+            return "built by " + taggerClass + ", not " + tagger.getClass().getName();
+        String tokenizerClass = in.readUTF();
+        Tokenizer tokenizer = tagger.getTokenizer();
+        if (!tokenizerClass.equals(tokenizer.getClass().getName()))
+            return "built with " + tokenizerClass + ", not " + tokenizer.getClass().getName();
+        return null;
+    }
+
+
+    /**
+     * @return The CRC-32 checksum of the contents of the file
+     */
+    public static long checksum(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[1 << 16];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                crc.update(buffer, 0, n);
+        } finally
+        {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+}
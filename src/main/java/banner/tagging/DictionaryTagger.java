@@ -7,32 +7,43 @@
 package banner.tagging;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 import banner.Sentence;
-import banner.tokenization.Token;
 import banner.tokenization.Tokenizer;
-import banner.util.Trie;
+import banner.util.TokenTrie;
+import banner.util.TokenTrieMatcher;
 
 /**
  * This class represents a very simple dictionary-based tagger. All text subsequences which match an entry will be tagged, without regard to the
  * context. No facilities for text processing (such as case-folding) are provided.
+ * <p>
+ * Entries are collected in a {@link TokenTrie.Builder}, and compacted into a {@link TokenTrie} when the tagger is first used; entries added after
+ * that are copied back into a builder. The entries may be written to a stream and read back, instead of being added again. Sentences are tagged
+ * by a {@link TokenTrieMatcher}, in one pass over their tokens.
  * 
  * @author Bob
  */
-public class DictionaryTagger implements Tagger
+public class DictionaryTagger implements TokenTagger
 {
 
     public static final String delimiter = "-->";
 
     private Tokenizer tokenizer;
     private boolean filterContainedMentions;
-    protected Trie<String, MentionType> entities;
+    // The types of the entries, indexed by their value in the trie
+    private List<MentionType> types;
+    // Exactly one of these is not null
+    private TokenTrie.Builder builder;
+    private volatile TokenTrie entities;
+    // The matcher of the last entities used for tagging
+    private volatile TokenTrieMatcher matcher;
 
 
     /**
@@ -47,7 +58,17 @@ public class DictionaryTagger implements Tagger
     {
         this.tokenizer = tokenizer;
         this.filterContainedMentions = filterContainedMentions;
-        entities = new Trie<String, MentionType>();
+        types = new ArrayList<MentionType>();
+        builder = new TokenTrie.Builder();
+    }
+
+
+    /**
+     * @return The {@link Tokenizer} used for breaking new entries into tokens
+     */
+    public Tokenizer getTokenizer()
+    {
+        return tokenizer;
     }
 
 
@@ -55,11 +76,11 @@ public class DictionaryTagger implements Tagger
     {
         Sentence inputSentence = new Sentence(input);
         tokenizer.tokenize(inputSentence);
-        List<Token> tokens = inputSentence.getTokens();
+        List<String> tokens = inputSentence.getTokenText();
         List<String> output = new ArrayList<String>(tokens.size());
         for (int i = 0; i < tokens.size(); i++)
         {
-            output.add(transform(tokens.get(i).getText()));
+            output.add(transform(tokens.get(i)));
         }
         return output;
     }
@@ -85,13 +106,25 @@ public class DictionaryTagger implements Tagger
     }
 
 
-    protected void add(List<String> tokens, MentionType type)
+    protected synchronized void add(List<String> tokens, MentionType type)
     {
         if (tokens.size() == 0)
             throw new IllegalArgumentException("Number of tokens must be greater than zero");
-        MentionType previousType = entities.add(tokens, type);
-        if (previousType != null && !previousType.equals(type))
+        if (builder == null)
+        {
+            builder = new TokenTrie.Builder(entities);
+            entities = null;
+        }
+        int value = types.indexOf(type);
+        if (value < 0)
+        {
+            value = types.size();
+            types.add(type);
+        }
+        int previous = builder.add(tokens, value);
+        if (previous != TokenTrie.NONE && previous != value)
         {
+            MentionType previousType = types.get(previous);
             String str = "Text is already associated with a different tag: " + tokens;
             str += " was tag " + previousType.getText() + " trying to add as tag " + type;
             throw new IllegalArgumentException(str);
@@ -99,6 +132,70 @@ public class DictionaryTagger implements Tagger
     }
 
 
+    /**
+     * @return The entries of this dictionary, compacted into a {@link TokenTrie} if they have changed since it was last used. The values of the trie
+     *         are indices into {@link #getTypes()}.
+     */
+    public TokenTrie getEntities()
+    {
+        TokenTrie trie = entities;
+        if (trie != null)
+            return trie;
+        synchronized (this)
+        {
+            if (entities == null)
+            {
+                entities = builder.build();
+                builder = null;
+            }
+            return entities;
+        }
+    }
+
+
+    /**
+     * @return The {@link MentionType} of each value in the trie returned by {@link #getEntities()}
+     */
+    public synchronized List<MentionType> getTypes()
+    {
+        return new ArrayList<MentionType>(types);
+    }
+
+
+    /**
+     * Writes the entries of this dictionary, in the format read by {@link #read(DataInputStream)}
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        TokenTrie trie = getEntities();
+        List<MentionType> types = getTypes();
+        out.writeInt(types.size());
+        for (MentionType type : types)
+            out.writeUTF(type.getText());
+        trie.write(out);
+    }
+
+
+    /**
+     * Replaces the entries of this dictionary with those written by {@link #write(DataOutputStream)}. The entries are used as written, without
+     * being processed by the tokenizer.
+     */
+    public void read(DataInputStream in) throws IOException
+    {
+        int numTypes = in.readInt();
+        List<MentionType> types = new ArrayList<MentionType>(numTypes);
+        for (int i = 0; i < numTypes; i++)
+            types.add(MentionType.getType(in.readUTF()));
+        TokenTrie trie = TokenTrie.read(in);
+        synchronized (this)
+        {
+            this.types = types;
+            entities = trie;
+            builder = null;
+        }
+    }
+
+
     /**
      * Loads multiple entries of a single type to the dictionary by reading them from the specified {@link Reader}.
      * 
@@ -147,72 +244,90 @@ public class DictionaryTagger implements Tagger
 
     public void tag(Sentence sentence)
     {
-        List<Token> tokens = sentence.getTokens();
-        // Lookup mentions
-        List<Mention> mentions = new LinkedList<Mention>();
-        for (int startIndex = 0; startIndex < tokens.size(); startIndex++)
-        {
-            Trie<String, MentionType> t = entities;
-            for (int currentIndex = startIndex; currentIndex < tokens.size() && t != null; currentIndex++)
+        List<String> tokens = sentence.getTokenText();
+        TokenTrieMatcher matcher = getMatcher();
+        TokenTrie trie = matcher.getTrie();
+        List<MentionType> types = this.types;
+        // Each token is looked up once, rather than once for every entry it is part of
+        int[] tokenIds = new int[tokens.size()];
+        for (int i = 0; i < tokenIds.length; i++)
+            tokenIds[i] = trie.getTokenId(transform(tokens.get(i)));
+        int[] mentions = findMentions(matcher, types, tokenIds);
+        for (int m = 0; m < mentions.length; m += 3)
+            sentence.addMention(new Mention(sentence, types.get(mentions[m + 2]), mentions[m], mentions[m + 1]));
+    }
+
+
+    public MentionType[] tag(List<String> tokens)
+    {
+        TokenTrieMatcher matcher = getMatcher();
+        TokenTrie trie = matcher.getTrie();
+        List<MentionType> types = this.types;
+        int[] tokenIds = new int[tokens.size()];
+        for (int i = 0; i < tokenIds.length; i++)
+            tokenIds[i] = trie.getTokenId(transform(tokens.get(i)));
+        int[] mentions = findMentions(matcher, types, tokenIds);
+        MentionType[] tokenTypes = new MentionType[tokenIds.length];
+        for (int m = 0; m < mentions.length; m += 3)
+            for (int i = mentions[m]; i < mentions[m + 1]; i++)
             {
-                MentionType type = t.getValue();
-                if (type != null)
-                    mentions.add(new Mention(sentence, type, startIndex, currentIndex));
-                Token currentToken = tokens.get(currentIndex);
-                t = t.getChild(transform(currentToken.getText()));
+                if (tokenTypes[i] != null)
+                    throw new IllegalArgumentException("Token \"" + tokens.get(i) + "\" (" + i + ") is tagged multiple times");
+                tokenTypes[i] = types.get(mentions[m + 2]);
             }
-        }
+        return tokenTypes;
+    }
 
-        // Add mentions found
 
-        // Iterator<Mention> mentionIterator = mentions.iterator();
-        // while (mentionIterator.hasNext())
-        // {
-        // Mention mention = mentionIterator.next();
-        // boolean contained = false;
-        // for (Mention mention2 : mentions)
-        // contained |= !mention2.equals(mention) && mention2.contains(mention);
-        // if (!filterContainedMentions || !contained)
-        // sentence.addMention(mention);
-        // }
+    /**
+     * Returns the mentions of the entries in the tokens, as triples of the index of the first token, the index after the last token and the
+     * index of the type, in the order they are added to a {@link Sentence}
+     */
+    private int[] findMentions(TokenTrieMatcher matcher, List<MentionType> types, int[] tokenIds)
+    {
+        // Lookup mentions; those ending with the last token have never been found, and are still not
+        int[] found = matcher.findAll(tokenIds, Math.max(tokenIds.length - 1, 0));
+        if (!filterContainedMentions)
+            return found;
 
-        while (!mentions.isEmpty())
+        // Merges each mention into the last mention of its type if they overlap or are adjacent; since the mentions are ordered by their start,
+        // the merged mentions are the maximal runs of such mentions, and are added in order of their first mention
+        int[] merged = new int[found.length];
+        int numMerged = 0;
+        int[] last = new int[types.size()];
+        Arrays.fill(last, -1);
+        for (int f = 0; f < found.length; f += 3)
         {
-            Mention mention1 = mentions.remove(0);
-            if (filterContainedMentions)
+            int m = last[found[f + 2]];
+            if (m >= 0 && found[f] <= merged[m + 1])
             {
-                int start = mention1.getStart();
-                int end = mention1.getEnd();
-                ArrayList<Mention> adjacentMentions = new ArrayList<Mention>();
-                Iterator<Mention> mentionIterator = mentions.iterator();
-                boolean changed = true;
-                while (changed)
-                {
-                    changed = false;
-                    while (mentionIterator.hasNext())
-                    {
-                        Mention mention2 = mentionIterator.next();
-                        boolean adjacent = (end >= mention2.getStart()) && (start <= mention2.getEnd());
-                        if (mention1.getType().equals(mention2.getType()) && adjacent)
-                        {
-                            adjacentMentions.add(mention2);
-                            mentionIterator.remove();
-                            start = Math.min(start, mention2.getStart());
-                            end = Math.max(end, mention2.getEnd());
-                            changed = true;
-                        }
-                    }
-                }
-                sentence.addMention(new Mention(sentence, mention1.getType(), start, end));
+                merged[m + 1] = Math.max(merged[m + 1], found[f + 1]);
             }
             else
             {
-                sentence.addMention(mention1);
+                m = numMerged;
+                merged[m] = found[f];
+                merged[m + 1] = found[f + 1];
+                merged[m + 2] = found[f + 2];
+                last[found[f + 2]] = m;
+                numMerged += 3;
             }
         }
-        // System.out.println(sentence.getText());
-        // for (Mention mention : sentence.getMentions())
-        // System.out.println("\t" + mention.getText());
+        return Arrays.copyOf(merged, numMerged);
+    }
+
+
+    // Returns the matcher for the current entries, creating it if they have changed since it was last used
+    private TokenTrieMatcher getMatcher()
+    {
+        TokenTrie trie = getEntities();
+        TokenTrieMatcher matcher = this.matcher;
+        if (matcher == null || matcher.getTrie() != trie)
+        {
+            matcher = new TokenTrieMatcher(trie);
+            this.matcher = matcher;
+        }
+        return matcher;
     }
 
 
@@ -221,6 +336,6 @@ public class DictionaryTagger implements Tagger
      */
     public int size()
     {
-        return entities.size();
+        return getEntities().size();
     }
 }
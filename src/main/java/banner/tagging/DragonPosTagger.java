@@ -0,0 +1,53 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.util.List;
+
+import dragon.nlp.Sentence;
+import dragon.nlp.Word;
+import dragon.nlp.tool.Tagger;
+
+/**
+ * A {@link PosTagger} which tags a {@link Sentence} of new {@link Word}s with a dragon {@link Tagger}, and is as safe to use from several threads
+ * as that tagger is.
+ */
+public class DragonPosTagger implements PosTagger
+{
+
+    private final Tagger posTagger;
+
+
+    public DragonPosTagger(Tagger posTagger)
+    {
+        this.posTagger = posTagger;
+    }
+
+
+    public Tagger getPosTagger()
+    {
+        return posTagger;
+    }
+
+
+    public int[] tag(List<String> tokens)
+    {
+        Word[] words = new Word[tokens.size()];
+        Sentence sentence = new Sentence();
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            words[i] = new Word(tokens.get(i));
+            sentence.addWord(words[i]);
+        }
+        posTagger.tag(sentence);
+        int[] pos = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++)
+            pos[i] = words[i].getPOSIndex();
+        return pos;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.SerialPipes;
+import edu.umass.cs.mallet.base.pipe.TokenSequence2FeatureVectorSequence;
+import edu.umass.cs.mallet.base.pipe.tsf.ConjunctionTable;
+import edu.umass.cs.mallet.base.pipe.tsf.OffsetConjunctions;
+import edu.umass.cs.mallet.base.pipe.tsf.RegexMatches;
+import edu.umass.cs.mallet.base.pipe.tsf.TokenTextFeatureIds;
+import edu.umass.cs.mallet.base.types.Alphabet;
+import edu.umass.cs.mallet.base.types.FeatureIdBuffer;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.util.MultiPatternMatcher;
+
+/**
+ * Computes the input of a trained {@link CRFTagger} for a sentence as feature
+ * ids, instead of running the feature pipe. The pipe builds a name for every
+ * feature by string concatenation, chains the names into property lists,
+ * concatenates them again for each offset conjunction and finally looks them
+ * all up in the feature alphabet; this looks up each feature of a token once,
+ * from a reusable buffer, and finds the offset conjunctions of a feature by
+ * its id in a {@link ConjunctionTable}.
+ * <p>
+ * The feature vectors are identical to those of the pipe, since the pipe
+ * creates binary vectors of the features found in the alphabet, sorted by
+ * index. Only pipes of the form created by {@link CRFTagger} can be encoded:
+ * a {@link String2TokenSequencePipe}, then pipes implementing
+ * {@link TokenTextFeatureIds}, then one {@link OffsetConjunctions} of single
+ * offsets which includes the original features, then a binary
+ * {@link TokenSequence2FeatureVectorSequence}.
+ * <p>
+ * The patterns of all the {@link ConfigurableRegexMatches} and
+ * {@link RegexMatches} pipes are matched together, in one pass over each
+ * token. The conjunction table is the one read with a binary model, which may be
+ * mapped, or one filled in as features are first seen. An encoder may be shared
+ * between threads if the part-of-speech tagger of the pipe may.
+ */
+public class FeatureEncoder
+{
+
+	private Alphabet features;
+	private String2TokenSequencePipe basePipe;
+	private List<TokenTextFeatureIds> textPipes;
+	// The patterns of the regex pipes, and the id of the feature of each
+	private MultiPatternMatcher regexMatcher;
+	private int[] regexFeatureIds;
+	private int[] offsets;
+	private ConjunctionTable conjunctionTable;
+	// The conjunctions of the start and end markers which stand in for positions
+	// before and after the sentence, indexed by offset then marker number
+	private int[][] boundaryIds;
+	private ThreadLocal<FeatureIdBuffer[]> localBuffers;
+	private AtomicLong droppedFeatures;
+
+	private FeatureEncoder(Alphabet features, String2TokenSequencePipe basePipe, List<TokenTextFeatureIds> textPipes, OffsetConjunctions conjunctions)
+	{
+		this.features = features;
+		this.basePipe = basePipe;
+		this.textPipes = new ArrayList<TokenTextFeatureIds>();
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		List<String> patternFeatures = new ArrayList<String>();
+		for (TokenTextFeatureIds textPipe : textPipes)
+		{
+			if (textPipe instanceof ConfigurableRegexMatches)
+			{
+				patterns.addAll(((ConfigurableRegexMatches) textPipe).getPatterns());
+				patternFeatures.addAll(((ConfigurableRegexMatches) textPipe).getFeatures());
+			}
+			else if (textPipe instanceof RegexMatches)
+			{
+				patterns.add(((RegexMatches) textPipe).getPattern());
+				patternFeatures.add(((RegexMatches) textPipe).getFeature());
+			}
+			else
+				this.textPipes.add(textPipe);
+		}
+		// Without a cache, since the automaton for the patterns of the tagger is
+		// faster than looking the token up (see RegexBenchmark)
+		regexMatcher = new MultiPatternMatcher(patterns, 0);
+		regexFeatureIds = new int[patterns.size()];
+		for (int p = 0; p < regexFeatureIds.length; p++)
+			regexFeatureIds[p] = features.lookupIndex(patternFeatures.get(p), false);
+		// The table read with a binary model, or otherwise one resolved as features are seen
+		conjunctionTable = conjunctions.getConjunctionTable();
+		if (conjunctionTable == null || conjunctionTable.getAlphabet() != features)
+			conjunctionTable = new ConjunctionTable(features, conjunctions.getConjunctions());
+		offsets = conjunctionTable.getOffsets();
+		boundaryIds = new int[offsets.length][];
+		for (int j = 0; j < offsets.length; j++)
+		{
+			int numMarkers = Math.abs(offsets[j]);
+			boundaryIds[j] = new int[numMarkers];
+			for (int m = 0; m < numMarkers; m++)
+				boundaryIds[j][m] = features.lookupIndex((offsets[j] < 0 ? "<START" : "<END") + m + ">@" + offsets[j], false);
+		}
+		localBuffers = new ThreadLocal<FeatureIdBuffer[]>()
+		{
+			@Override
+			protected FeatureIdBuffer[] initialValue()
+			{
+				return new FeatureIdBuffer[0];
+			}
+		};
+		droppedFeatures = new AtomicLong();
+	}
+
+	/**
+	 * Creates an encoder for the specified pipe, whose feature alphabet must
+	 * have stopped growing
+	 *
+	 * @return The encoder, or <code>null</code> if the pipe is not of the form
+	 *         described above
+	 */
+	public static FeatureEncoder create(Pipe pipe)
+	{
+		if (!(pipe instanceof SerialPipes))
+			return null;
+		List<Pipe> pipes = ((SerialPipes) pipe).getPipes();
+		int n = pipes.size();
+		if (n < 3 || !(pipes.get(0) instanceof String2TokenSequencePipe) || !(pipes.get(n - 2) instanceof OffsetConjunctions)
+				|| !(pipes.get(n - 1) instanceof TokenSequence2FeatureVectorSequence))
+			return null;
+		List<TokenTextFeatureIds> textPipes = new ArrayList<TokenTextFeatureIds>();
+		for (Pipe p : pipes.subList(1, n - 2))
+		{
+			if (!(p instanceof TokenTextFeatureIds))
+				return null;
+			textPipes.add((TokenTextFeatureIds) p);
+		}
+		OffsetConjunctions conjunctions = (OffsetConjunctions) pipes.get(n - 2);
+		// Without the original features, a conjunction may be in the alphabet when
+		// its feature is not, so it could not be found from the feature's id
+		if (conjunctions.getFeatureRegex() != null || !conjunctions.includesOriginalSingletons())
+			return null;
+		for (int[] conjunction : conjunctions.getConjunctions())
+			if (conjunction == null || conjunction.length != 1)
+				return null;
+		if (!((TokenSequence2FeatureVectorSequence) pipes.get(n - 1)).isBinary())
+			return null;
+		Alphabet features = pipe.getDataAlphabet();
+		if (features == null || !features.growthStopped())
+			return null;
+		return new FeatureEncoder(features, (String2TokenSequencePipe) pipes.get(0), textPipes, conjunctions);
+	}
+
+	/**
+	 * @return The input for the specified tokens, the same as the data of an
+	 *         {@link edu.umass.cs.mallet.base.types.Instance} created with the
+	 *         pipe
+	 */
+	public FeatureVectorSequence encode(List<? extends CharSequence> tokenChars)
+	{
+		List<String> tokens = String2TokenSequencePipe.getText(tokenChars);
+		int size = tokens.size();
+		FeatureIdBuffer[] ids = localBuffers.get();
+		if (ids.length < size)
+		{
+			FeatureIdBuffer[] newIds = new FeatureIdBuffer[Math.max(size, 2 * ids.length)];
+			System.arraycopy(ids, 0, newIds, 0, ids.length);
+			for (int i = ids.length; i < newIds.length; i++)
+				newIds[i] = new FeatureIdBuffer(features);
+			ids = newIds;
+			localBuffers.set(ids);
+		}
+		long unknown = 0;
+		for (int i = 0; i < size; i++)
+		{
+			unknown -= ids[i].getUnknownCount();
+			ids[i].clear();
+		}
+		basePipe.addFeatureIds(tokens, ids);
+		for (int i = 0; i < size; i++)
+		{
+			String text = tokens.get(i);
+			for (TokenTextFeatureIds textPipe : textPipes)
+				textPipe.addFeatureIds(text, ids[i]);
+			for (int p : regexMatcher.matches(text))
+				ids[i].addId(regexFeatureIds[p]);
+			unknown += ids[i].getUnknownCount();
+		}
+
+		FeatureVector[] vectors = new FeatureVector[size];
+		for (int i = 0; i < size; i++)
+		{
+			int count = ids[i].size();
+			for (int j = 0; j < offsets.length; j++)
+			{
+				int k = i + offsets[j];
+				if (k >= 0 && k < size)
+					count += ids[k].size();
+				else
+					count++;
+			}
+			int[] indices = new int[count];
+			count = 0;
+			for (int f = 0; f < ids[i].size(); f++)
+				indices[count++] = ids[i].getId(f);
+			for (int j = 0; j < offsets.length; j++)
+			{
+				int k = i + offsets[j];
+				int id;
+				if (k < 0)
+					id = boundaryIds[j][-k - 1];
+				else if (k >= size)
+					id = boundaryIds[j][k - size];
+				else
+				{
+					for (int f = 0; f < ids[k].size(); f++)
+					{
+						id = conjunctionTable.getConjunction(j, ids[k].getId(f));
+						if (id < 0)
+							unknown++;
+						else
+							indices[count++] = id;
+					}
+					continue;
+				}
+				if (id < 0)
+					unknown++;
+				else
+					indices[count++] = id;
+			}
+			// Sorts the indices and removes duplicates, as for the vectors of the pipe
+			vectors[i] = new FeatureVector(features, count == indices.length ? indices : Arrays.copyOf(indices, count));
+		}
+		droppedFeatures.addAndGet(unknown);
+		return new FeatureVectorSequence(vectors);
+	}
+
+	/**
+	 * @return The number of features not in the feature alphabet, which were
+	 *         skipped, as counted by
+	 *         {@link OffsetConjunctions#getDroppedFeatureCount()}
+	 */
+	public long getDroppedFeatureCount()
+	{
+		return droppedFeatures.get();
+	}
+
+}
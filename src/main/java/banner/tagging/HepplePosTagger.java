@@ -0,0 +1,502 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import banner.util.TokenTrie;
+import dragon.nlp.Sentence;
+import dragon.nlp.Word;
+import dragon.nlp.tool.HeppleTagger;
+import dragon.nlp.tool.Tagger;
+
+/**
+ * A part-of-speech tagger which reads the lexicon (<code>lexicon_all</code>) and transformation rules (<code>rules_cap</code>) of a dragon
+ * {@link HeppleTagger}, and sets the same tags with the same part-of-speech indexes. The words of the lexicon and the rules are kept in a
+ * {@link TokenTrie}, and their tags and the rules in arrays of ids, so tagging the tokens of a sentence as a {@link PosTagger} creates no object
+ * per token.
+ * <p>
+ * The rules of the Hepple tagger only test the words and the initial lexical tags around a word, never the tags set by other rules, so each word
+ * is tagged independently. Instances hold no state while tagging, and may be used by several threads at once.
+ */
+public class HepplePosTagger implements PosTagger, Tagger
+{
+
+    // The word and tag of the positions before the start and after the end of the sentence
+    private static final String STAART = "STAART";
+
+    // The contexts of the rules, in the order of their ids
+    private static final List<String> CONTEXTS = Arrays.asList("CURWD", "LBIGRAM", "RBIGRAM", "NEXTWD", "NEXT2WD", "NEXT1OR2WD", "PREVWD",
+            "PREV2WD", "PREV1OR2WD", "NEXTTAG", "NEXT2TAG", "NEXT1OR2TAG", "NEXT1OR2OR3TAG", "NEXTBIGRAM", "PREVTAG", "PREV2TAG", "PREV1OR2TAG",
+            "PREV1OR2OR3TAG", "PREVBIGRAM", "SURROUNDTAG", "WDAND2AFT", "WDAND2BFR", "WDAND2TAGAFT", "WDAND2TAGBFR", "WDNEXTTAG", "WDPREVTAG",
+            "UNKNOWN", "UNRESTRICTED");
+    private static final int CURWD = 0, LBIGRAM = 1, RBIGRAM = 2, NEXTWD = 3, NEXT2WD = 4, NEXT1OR2WD = 5, PREVWD = 6, PREV2WD = 7,
+            PREV1OR2WD = 8, NEXTTAG = 9, NEXT2TAG = 10, NEXT1OR2TAG = 11, NEXT1OR2OR3TAG = 12, NEXTBIGRAM = 13, PREVTAG = 14, PREV2TAG = 15,
+            PREV1OR2TAG = 16, PREV1OR2OR3TAG = 17, PREVBIGRAM = 18, SURROUNDTAG = 19, WDAND2AFT = 20, WDAND2BFR = 21, WDAND2TAGAFT = 22,
+            WDAND2TAGBFR = 23, WDNEXTTAG = 24, WDPREVTAG = 25, UNKNOWN = 26, UNRESTRICTED = 27;
+    // Whether the first and second values of each context are words rather than tags, and the number of values it needs
+    private static final boolean[] WORD_VALUE0 = new boolean[CONTEXTS.size()];
+    private static final boolean[] WORD_VALUE1 = new boolean[CONTEXTS.size()];
+    private static final int[] NUM_VALUES = new int[CONTEXTS.size()];
+    static
+    {
+        for (int context : new int[] {CURWD, LBIGRAM, RBIGRAM, NEXTWD, NEXT2WD, NEXT1OR2WD, PREVWD, PREV2WD, PREV1OR2WD, WDAND2AFT, WDAND2BFR,
+                WDAND2TAGAFT, WDNEXTTAG})
+            WORD_VALUE0[context] = true;
+        for (int context : new int[] {LBIGRAM, RBIGRAM, WDAND2AFT, WDAND2BFR, WDAND2TAGBFR, WDPREVTAG})
+            WORD_VALUE1[context] = true;
+        Arrays.fill(NUM_VALUES, 0, UNKNOWN, 1);
+        for (int context : new int[] {LBIGRAM, RBIGRAM, NEXTBIGRAM, PREVBIGRAM, SURROUNDTAG, WDAND2AFT, WDAND2BFR, WDAND2TAGAFT, WDAND2TAGBFR,
+                WDNEXTTAG, WDPREVTAG})
+            NUM_VALUES[context] = 2;
+    }
+
+    // The words which dragon indexes as conjunctions when tagged IN, sorted
+    private static final String[] CONJUNCTIONS = {"although", "because", "but", "if", "that", "though", "when", "whether", "while"};
+    // Part-of-speech indexes of tags which depend on the word
+    private static final int IN_INDEX = -1;
+    private static final int CD_INDEX = -2;
+
+    // The words of the lexicon and the rules; the lexicon entry of the word with token id t is wordEntries[t]
+    private final TokenTrie words;
+    private final int[] wordEntries;
+    private final int staartWord;
+    // The tags of lexicon entry e are entryTags[entryStarts[e]] to entryTags[entryStarts[e + 1] - 1], the first being the initial tag of the
+    // word; the words of the rules which are not in the lexicon have an entry with no tags
+    private final int[] entryStarts;
+    private final int[] entryTags;
+
+    private final String[] tagLabels;
+    private final int[] tagIndexes;
+    private final int staartTag, nnTag, nnpTag, nnsTag, jjTag, cdTag, rbTag, vbgTag;
+
+    // The rules changing the initial tag f of a word to t are r = ruleStarts[p] to ruleStarts[p + 1] - 1 for p = f * numTags + t, in the
+    // order of the rules file; ruleOrders[r] is the line of the rule. Rule r sets the tag ruleTags[r] if ruleContexts[r] holds for the values
+    // ruleValues0[r] and ruleValues1[r], which are token ids or tag ids, and the word is ruleWords[r] unless that is NONE
+    private final int numTags;
+    private final int[] ruleStarts;
+    private final int[] ruleOrders;
+    private final int[] ruleTags;
+    private final int[] ruleContexts;
+    private final int[] ruleValues0;
+    private final int[] ruleValues1;
+    private final int[] ruleWords;
+
+
+    /**
+     * @param dataDirectory
+     *        The directory containing <code>lexicon_all</code> and <code>rules_cap</code>, as given to a {@link HeppleTagger}
+     */
+    public HepplePosTagger(String dataDirectory) throws IOException
+    {
+        Map<String, Integer> tagIds = new HashMap<String, Integer>();
+        List<String> labels = new ArrayList<String>();
+        staartTag = getTagId(STAART, tagIds, labels);
+        nnTag = getTagId("NN", tagIds, labels);
+        nnpTag = getTagId("NNP", tagIds, labels);
+        nnsTag = getTagId("NNS", tagIds, labels);
+        jjTag = getTagId("JJ", tagIds, labels);
+        cdTag = getTagId("CD", tagIds, labels);
+        rbTag = getTagId("RB", tagIds, labels);
+        vbgTag = getTagId("VBG", tagIds, labels);
+
+        // A later line for a word replaces an earlier one
+        Map<String, int[]> lexicon = new LinkedHashMap<String, int[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(new File(dataDirectory, "lexicon_all")));
+        try
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                StringTokenizer tokens = new StringTokenizer(line);
+                if (!tokens.hasMoreTokens())
+                    continue;
+                String word = tokens.nextToken();
+                int[] tags = new int[tokens.countTokens()];
+                for (int i = 0; i < tags.length; i++)
+                    tags[i] = getTagId(tokens.nextToken(), tagIds, labels);
+                lexicon.remove(word);
+                lexicon.put(word, tags);
+            }
+        } finally
+        {
+            reader.close();
+        }
+
+        List<int[]> rules = new ArrayList<int[]>();
+        List<String[]> ruleValues = new ArrayList<String[]>();
+        reader = new BufferedReader(new FileReader(new File(dataDirectory, "rules_cap")));
+        try
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                StringTokenizer tokens = new StringTokenizer(line);
+                if (!tokens.hasMoreTokens())
+                    continue;
+                if (tokens.countTokens() < 3)
+                    throw new IOException("Invalid rule: " + line);
+                int from = getTagId(tokens.nextToken(), tagIds, labels);
+                int to = getTagId(tokens.nextToken(), tagIds, labels);
+                int context = CONTEXTS.indexOf(tokens.nextToken());
+                if (context < 0 || tokens.countTokens() < NUM_VALUES[context])
+                    throw new IOException("Invalid rule: " + line);
+                int[] rule = {from, to, context, TokenTrie.NONE, TokenTrie.NONE};
+                String[] values = new String[2];
+                for (int i = 0; i < NUM_VALUES[context]; i++)
+                {
+                    String value = tokens.nextToken();
+                    if (i == 0 ? WORD_VALUE0[context] : WORD_VALUE1[context])
+                        values[i] = value;
+                    else
+                        rule[3 + i] = getTagId(value, tagIds, labels);
+                }
+                rules.add(rule);
+                ruleValues.add(values);
+            }
+        } finally
+        {
+            reader.close();
+        }
+
+        // Lexicon entries, then an empty entry for the words only in the rules, and for STAART
+        TokenTrie.Builder builder = new TokenTrie.Builder();
+        int numEntryTags = 0;
+        for (int[] tags : lexicon.values())
+            numEntryTags += tags.length;
+        entryStarts = new int[lexicon.size() + 2];
+        entryTags = new int[numEntryTags];
+        int entry = 0;
+        for (Map.Entry<String, int[]> word : lexicon.entrySet())
+        {
+            builder.add(Collections.singletonList(word.getKey()), entry);
+            int[] tags = word.getValue();
+            System.arraycopy(tags, 0, entryTags, entryStarts[entry], tags.length);
+            entryStarts[entry + 1] = entryStarts[entry] + tags.length;
+            entry++;
+        }
+        entryStarts[entry + 1] = entryStarts[entry];
+        for (String[] values : ruleValues)
+            for (String value : values)
+                if (value != null && !lexicon.containsKey(value))
+                    builder.add(Collections.singletonList(value), entry);
+        if (!lexicon.containsKey(STAART))
+            builder.add(Collections.singletonList(STAART), entry);
+        words = builder.build();
+        wordEntries = new int[words.numTokens()];
+        for (int token = 0; token < wordEntries.length; token++)
+            wordEntries[token] = words.getValue(words.getChild(TokenTrie.ROOT, token));
+        staartWord = words.getTokenId(STAART);
+
+        // A rule only applies to words which may have the tag it sets, so the rules are grouped by the initial tag they apply to and the tag
+        // they set, keeping their order
+        int numRules = rules.size();
+        numTags = labels.size();
+        ruleStarts = new int[numTags * numTags + 1];
+        for (int[] rule : rules)
+            ruleStarts[rule[0] * numTags + rule[1] + 1]++;
+        for (int pair = 0; pair < numTags * numTags; pair++)
+            ruleStarts[pair + 1] += ruleStarts[pair];
+        int[] next = Arrays.copyOf(ruleStarts, numTags * numTags);
+        ruleOrders = new int[numRules];
+        ruleTags = new int[numRules];
+        ruleContexts = new int[numRules];
+        ruleValues0 = new int[numRules];
+        ruleValues1 = new int[numRules];
+        ruleWords = new int[numRules];
+        for (int r = 0; r < numRules; r++)
+        {
+            int[] rule = rules.get(r);
+            String[] values = ruleValues.get(r);
+            int i = next[rule[0] * numTags + rule[1]]++;
+            ruleOrders[i] = r;
+            ruleTags[i] = rule[1];
+            ruleContexts[i] = rule[2];
+            ruleValues0[i] = values[0] == null ? rule[3] : words.getTokenId(values[0]);
+            ruleValues1[i] = values[1] == null ? rule[4] : words.getTokenId(values[1]);
+            ruleWords[i] = getRuleWord(rule[2], ruleValues0[i], ruleValues1[i]);
+        }
+
+        tagLabels = labels.toArray(new String[labels.size()]);
+        tagIndexes = new int[tagLabels.length];
+        for (int tag = 0; tag < tagLabels.length; tag++)
+            tagIndexes[tag] = getPOSIndex(tagLabels[tag]);
+    }
+
+
+    // The token id of the word a rule with the context and values applies to, or NONE if it applies to any word
+    private static int getRuleWord(int context, int value0, int value1)
+    {
+        switch (context)
+        {
+        case CURWD:
+        case RBIGRAM:
+        case WDAND2AFT:
+        case WDAND2TAGAFT:
+        case WDNEXTTAG:
+            return value0;
+        case LBIGRAM:
+        case WDAND2BFR:
+        case WDAND2TAGBFR:
+        case WDPREVTAG:
+            return value1;
+        default:
+            return TokenTrie.NONE;
+        }
+    }
+
+
+    private static int getTagId(String label, Map<String, Integer> tagIds, List<String> labels)
+    {
+        Integer id = tagIds.get(label);
+        if (id == null)
+        {
+            id = labels.size();
+            tagIds.put(label, id);
+            labels.add(label);
+        }
+        return id;
+    }
+
+
+    // The index dragon gives the tag, or IN_INDEX or CD_INDEX if that depends on the word
+    private static int getPOSIndex(String label)
+    {
+        if (label.startsWith("N"))
+            return 1;
+        if (label.startsWith("VB"))
+            return 2;
+        if (label.startsWith("JJ"))
+            return 3;
+        if (label.startsWith("RB"))
+            return 4;
+        if (label.startsWith("CC"))
+            return 8;
+        if (label.startsWith("DT"))
+            return 7;
+        if (label.startsWith("PRP"))
+            return 6;
+        if (label.startsWith("IN"))
+            return IN_INDEX;
+        if (label.startsWith("CD"))
+            return CD_INDEX;
+        if (label.startsWith("W"))
+            return 8;
+        return 0;
+    }
+
+
+    /**
+     * @return The part-of-speech index dragon gives a word with the tag
+     */
+    private int getPOSIndex(int tag, String word, boolean punctuation, boolean number)
+    {
+        if (punctuation)
+            return 0;
+        int index = tagIndexes[tag];
+        if (index == IN_INDEX)
+            index = Arrays.binarySearch(CONJUNCTIONS, word, String.CASE_INSENSITIVE_ORDER) >= 0 ? 8 : 5;
+        else if (index == CD_INDEX)
+            index = number ? 9 : 1;
+        if (index > 1 && word.length() > 0 && Character.isUpperCase(word.charAt(0)) && Character.isUpperCase(word.charAt(word.length() - 1)))
+            index = 1;
+        return index;
+    }
+
+
+    public int[] tag(List<String> tokens)
+    {
+        int[] tags = tagIds(tokens);
+        for (int i = 0; i < tags.length; i++)
+            tags[i] = getPOSIndex(tags[i], tokens.get(i), false, false);
+        return tags;
+    }
+
+
+    /**
+     * @return The part-of-speech label of each token
+     */
+    public String[] tagLabels(List<String> tokens)
+    {
+        int[] tags = tagIds(tokens);
+        String[] labels = new String[tags.length];
+        for (int i = 0; i < tags.length; i++)
+            labels[i] = tagLabels[tags[i]];
+        return labels;
+    }
+
+
+    public void tag(Sentence sentence)
+    {
+        List<String> tokens = new ArrayList<String>(sentence.getWordNum());
+        for (Word word = sentence.getFirstWord(); word != null; word = word.next)
+            tokens.add(word.getContent());
+        int[] tags = tagIds(tokens);
+        int i = 0;
+        for (Word word = sentence.getFirstWord(); word != null; word = word.next, i++)
+            word.setPOS(tagLabels[tags[i]], getPOSIndex(tags[i], tokens.get(i), word.isPunctuation(), word.isNumber()));
+    }
+
+
+    private int[] tagIds(List<String> tokens)
+    {
+        int n = tokens.size();
+        // The token id and lexicon entry of each word, and its initial tag
+        int[] wordIds = new int[n];
+        int[] entries = new int[n];
+        int[] initialTags = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            String word = tokens.get(i);
+            wordIds[i] = words.getTokenId(word);
+            entries[i] = wordIds[i] == TokenTrie.NONE ? TokenTrie.NONE : wordEntries[wordIds[i]];
+            if (entries[i] != TokenTrie.NONE && entryStarts[entries[i]] == entryStarts[entries[i] + 1])
+                entries[i] = TokenTrie.NONE;
+            initialTags[i] = entries[i] == TokenTrie.NONE ? guessTag(word) : entryTags[entryStarts[entries[i]]];
+        }
+        // The first rule in the file which applies, among those setting one of the tags the word may have
+        int[] tags = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            int from = initialTags[i];
+            int rule = entries[i] == TokenTrie.NONE ? findRule(from, from, i, wordIds, initialTags) : TokenTrie.NONE;
+            if (entries[i] != TokenTrie.NONE)
+                for (int t = entryStarts[entries[i]]; t < entryStarts[entries[i] + 1]; t++)
+                {
+                    int r = findRule(from, entryTags[t], i, wordIds, initialTags);
+                    if (r != TokenTrie.NONE && (rule == TokenTrie.NONE || ruleOrders[r] < ruleOrders[rule]))
+                        rule = r;
+                }
+            tags[i] = rule == TokenTrie.NONE ? from : ruleTags[rule];
+        }
+        return tags;
+    }
+
+
+    // The first rule changing the tag from to the tag to which applies to word i, or NONE
+    private int findRule(int from, int to, int i, int[] wordIds, int[] initialTags)
+    {
+        int pair = from * numTags + to;
+        for (int r = ruleStarts[pair]; r < ruleStarts[pair + 1]; r++)
+            if ((ruleWords[r] == TokenTrie.NONE || ruleWords[r] == wordIds[i]) && matches(r, i, wordIds, initialTags))
+                return r;
+        return TokenTrie.NONE;
+    }
+
+
+    // The tag of words not in the lexicon
+    private int guessTag(String word)
+    {
+        if (word.length() > 0 && word.charAt(0) >= 'A' && word.charAt(0) <= 'Z')
+            return nnpTag;
+        for (int i = 1; i < word.length() - 1; i++)
+            if (word.charAt(i) == '-')
+                return jjTag;
+        for (int i = 0; i < word.length(); i++)
+            if (Character.isDigit(word.charAt(i)))
+                return cdTag;
+        if (word.endsWith("ed") || word.endsWith("us") || word.endsWith("ic") || word.endsWith("ble") || word.endsWith("ive")
+                || word.endsWith("ary") || word.endsWith("ful") || word.endsWith("ical") || word.endsWith("less"))
+            return jjTag;
+        if (word.endsWith("s"))
+            return nnsTag;
+        if (word.endsWith("ly"))
+            return rbTag;
+        if (word.endsWith("ing"))
+            return vbgTag;
+        return nnTag;
+    }
+
+
+    private boolean matches(int rule, int i, int[] wordIds, int[] initialTags)
+    {
+        int value0 = ruleValues0[rule];
+        int value1 = ruleValues1[rule];
+        switch (ruleContexts[rule])
+        {
+        case CURWD:
+            return word(i, wordIds) == value0;
+        case LBIGRAM:
+            return word(i - 1, wordIds) == value0 && word(i, wordIds) == value1;
+        case RBIGRAM:
+            return word(i, wordIds) == value0 && word(i + 1, wordIds) == value1;
+        case NEXTWD:
+            return word(i + 1, wordIds) == value0;
+        case NEXT2WD:
+            return word(i + 2, wordIds) == value0;
+        case NEXT1OR2WD:
+            return word(i + 1, wordIds) == value0 || word(i + 2, wordIds) == value0;
+        case PREVWD:
+            return word(i - 1, wordIds) == value0;
+        case PREV2WD:
+            return word(i - 2, wordIds) == value0;
+        case PREV1OR2WD:
+            return word(i - 1, wordIds) == value0 || word(i - 2, wordIds) == value0;
+        case NEXTTAG:
+            return tag(i + 1, initialTags) == value0;
+        case NEXT2TAG:
+            return tag(i + 2, initialTags) == value0;
+        case NEXT1OR2TAG:
+            return tag(i + 1, initialTags) == value0 || tag(i + 2, initialTags) == value0;
+        case NEXT1OR2OR3TAG:
+            return tag(i + 1, initialTags) == value0 || tag(i + 2, initialTags) == value0 || tag(i + 3, initialTags) == value0;
+        case NEXTBIGRAM:
+            return tag(i + 1, initialTags) == value0 && tag(i + 2, initialTags) == value1;
+        case PREVTAG:
+            return tag(i - 1, initialTags) == value0;
+        case PREV2TAG:
+            return tag(i - 2, initialTags) == value0;
+        case PREV1OR2TAG:
+            return tag(i - 1, initialTags) == value0 || tag(i - 2, initialTags) == value0;
+        case PREV1OR2OR3TAG:
+            return tag(i - 1, initialTags) == value0 || tag(i - 2, initialTags) == value0 || tag(i - 3, initialTags) == value0;
+        case PREVBIGRAM:
+            return tag(i - 2, initialTags) == value0 && tag(i - 1, initialTags) == value1;
+        case SURROUNDTAG:
+            return tag(i - 1, initialTags) == value0 && tag(i + 1, initialTags) == value1;
+        case WDAND2AFT:
+            return word(i, wordIds) == value0 && word(i + 2, wordIds) == value1;
+        case WDAND2BFR:
+            return word(i - 2, wordIds) == value0 && word(i, wordIds) == value1;
+        case WDAND2TAGAFT:
+            return word(i, wordIds) == value0 && tag(i + 2, initialTags) == value1;
+        case WDAND2TAGBFR:
+            return tag(i - 2, initialTags) == value0 && word(i, wordIds) == value1;
+        case WDNEXTTAG:
+            return word(i, wordIds) == value0 && tag(i + 1, initialTags) == value1;
+        case WDPREVTAG:
+            return tag(i - 1, initialTags) == value0 && word(i, wordIds) == value1;
+        case UNRESTRICTED:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+
+    // The token id of the word at the position, which is NONE for words not in the lexicon or rules, and never equal to a rule value
+    private int word(int i, int[] wordIds)
+    {
+        return i < 0 || i >= wordIds.length ? staartWord : wordIds[i];
+    }
+
+
+    private int tag(int i, int[] initialTags)
+    {
+        return i < 0 || i >= initialTags.length ? staartTag : initialTags[i];
+    }
+
+}
@@ -37,7 +37,7 @@ public class Mention
         if (start < 0)
             throw new IllegalArgumentException();
         this.start = start;
-        if (end > sentence.getTokens().size())
+        if (end > sentence.getTokenCount())
             throw new IllegalArgumentException();
         this.end = end;
         if (length() <= 0)
@@ -137,13 +137,13 @@ public class Mention
 
     public int getEndChar()
     {
-        return sentence.getTokens().get(end - 1).getEnd();
+        return sentence.getTokenEnd(end - 1);
     }
 
 
     public int getStartChar()
     {
-        return sentence.getTokens().get(start).getStart();
+        return sentence.getTokenStart(start);
     }
 
 
@@ -6,8 +6,8 @@
 
 package banner.tagging;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Instances of this class represent the type of a {@link Mention}. Instances of this class are kept in a static cache to ensure only one instance of
@@ -18,7 +18,8 @@ import java.util.Map;
 public class MentionType
 {
 
-    private static final Map<String, MentionType> types = new HashMap<String, MentionType>();
+    // Concurrent so that types may be looked up by several tagging threads at once
+    private static final ConcurrentMap<String, MentionType> types = new ConcurrentHashMap<String, MentionType>();
 
     private String text;
 
@@ -43,7 +44,9 @@ public class MentionType
         if (type == null)
         {
             type = new MentionType(text);
-            types.put(text, type);
+            MentionType previous = types.putIfAbsent(text, type);
+            if (previous != null)
+                type = previous;
         }
         return type;
     }
@@ -0,0 +1,27 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.util.List;
+
+/**
+ * Finds the part of speech of the tokens of a sentence, as the index used for the POS features of a model. Part-of-speech taggers which implement
+ * {@link dragon.nlp.tool.Tagger} may also implement this interface, in which case {@link String2TokenSequencePipe} calls it directly instead of
+ * creating a {@link dragon.nlp.Sentence}; for the other taggers it uses a {@link DragonPosTagger}.
+ */
+public interface PosTagger
+{
+
+    /**
+     * @param tokens
+     *        The text of each token of a sentence
+     * @return The part-of-speech index of each token, the same as {@link dragon.nlp.Word#getPOSIndex()} after tagging a new {@link dragon.nlp.Word}
+     *         for each token with a {@link dragon.nlp.tool.Tagger}
+     */
+    public int[] tag(List<String> tokens);
+
+}
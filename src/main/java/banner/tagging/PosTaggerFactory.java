@@ -0,0 +1,24 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import dragon.nlp.tool.Tagger;
+
+/**
+ * Creates new instances of a part-of-speech {@link Tagger}. The dragon taggers keep per-call state in the tagger instance, so a {@link CRFTagger}
+ * which is shared between threads uses one of these to give each thread its own part-of-speech tagger.
+ */
+public interface PosTaggerFactory
+{
+
+    /**
+     * @return A new part-of-speech {@link Tagger}, which will only be used by the calling thread, or a shared one which may be used by several
+     *         threads at once
+     */
+    public Tagger newPosTagger();
+
+}
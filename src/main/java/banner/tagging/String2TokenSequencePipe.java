@@ -6,10 +6,9 @@
 
 package banner.tagging;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import dragon.nlp.Sentence;
-import dragon.nlp.Word;
 import dragon.nlp.tool.Tagger;
 import dragon.nlp.tool.Lemmatiser;
 import edu.umass.cs.mallet.base.pipe.*;
@@ -25,9 +24,12 @@ import edu.umass.cs.mallet.base.types.*;
 public class String2TokenSequencePipe extends Pipe
 {
 	private static final long serialVersionUID = 1L;
+	// Shared by all pipes, since the shapes of a token do not depend on the model
+	private static final WordShapes wordShapes = new WordShapes(8192);
 
 	private transient Lemmatiser lemmatiser = null;
 	private transient Tagger posTagger = null;
+	private transient ThreadLocal<Tagger> localPosTaggers = null;
 	private transient banner.tagging.Tagger preTagger = null;
 
 	private boolean useNumericNormalization;
@@ -41,6 +43,11 @@ public class String2TokenSequencePipe extends Pipe
 		this.preTagger = preTagger;
 	}
 
+	public boolean isUseNumericNormalization()
+	{
+		return useNumericNormalization;
+	}
+
 	public void setLemmatiser(Lemmatiser lemmatiser)
 	{
 		this.lemmatiser = lemmatiser;
@@ -51,6 +58,32 @@ public class String2TokenSequencePipe extends Pipe
 		this.posTagger = posTagger;
 	}
 
+	/**
+	 * Makes this pipe safe to use from several threads at once by giving each
+	 * thread its own part-of-speech tagger, created on first use by the
+	 * specified factory. Has no effect if this pipe does not use
+	 * part-of-speech features.
+	 * 
+	 * @param posTaggerFactory
+	 *            The {@link PosTaggerFactory} to create the per-thread
+	 *            part-of-speech taggers with
+	 */
+	public void setPosTaggerFactory(final PosTaggerFactory posTaggerFactory)
+	{
+		if (posTagger == null)
+			return;
+		if (posTaggerFactory == null)
+			throw new IllegalArgumentException("A PosTaggerFactory is required since this pipe uses part-of-speech features");
+		localPosTaggers = new ThreadLocal<Tagger>()
+		{
+			@Override
+			protected Tagger initialValue()
+			{
+				return posTaggerFactory.newPosTagger();
+			}
+		};
+	}
+
 	public void setPreTagger(banner.tagging.Tagger preTagger)
 	{
 		this.preTagger = preTagger;
@@ -60,11 +93,14 @@ public class String2TokenSequencePipe extends Pipe
 	@SuppressWarnings("unchecked")
 	public Instance pipe(Instance carrier)
 	{
-		List<String> tokens = (List) carrier.getData();
+		List<String> tokens = getText((List<? extends CharSequence>) carrier.getData());
+		// The target is null when tagging
 		List<String> tags = (List) carrier.getTarget();
 
 		TokenSequence data = new TokenSequence(tokens.size());
-		LabelSequence target = new LabelSequence((LabelAlphabet) getTargetAlphabet(), tokens.size());
+		LabelSequence target = null;
+		if (tags != null)
+			target = new LabelSequence((LabelAlphabet) getTargetAlphabet(), tokens.size());
 		StringBuffer source = new StringBuffer();
 
 		// Get the part of speech array
@@ -79,37 +115,13 @@ public class String2TokenSequencePipe extends Pipe
 		for (int i = 0; i < tokens.size(); i++)
 		{
 			String text = tokens.get(i);
-			String tag = tags.get(i);
 			Token token = new Token(text);
-
-			// Add features to token
-			token.setFeatureValue("W=" + text.toLowerCase(), 1);
-			if (posTagger != null)
-				token.setFeatureValue("POS=" + pos[i], 1);
-			if (lemmatiser != null)
-			{
-				String lemma;
-				if (pos == null)
-					lemma = lemmatiser.lemmatize(text);
-				else
-					lemma = lemmatiser.lemmatize(text, pos[i]);
-				token.setFeatureValue("LW=" + lemma, 1);
-			}
-			if (useNumericNormalization)
-			{
-				token.setFeatureValue("NC=" + getNumberClass(text), 1);
-				token.setFeatureValue("BNC=" + getBriefNumberClass(text), 1);
-			}
-			if (types != null && types[i] != null)
-			{
-				token.setFeatureValue("DICT=" + types[i].getText(), 1);
-			}
-			token.setFeatureValue("WC=" + getWordClass(text), 1);
-			token.setFeatureValue("BWC=" + getBriefWordClass(text), 1);
+			addFeatures(text, pos == null ? -1 : pos[i], types == null ? null : types[i], token, null);
 
 			// Add token to data
 			data.add(token);
-			target.add(tag);
+			if (target != null)
+				target.add(tags.get(i));
 
 			source.append(token.getText());
 			source.append(" ");
@@ -121,59 +133,102 @@ public class String2TokenSequencePipe extends Pipe
 		return carrier;
 	}
 
-	private String getNumberClass(String text)
+	/**
+	 * Adds the ids of the features this pipe gives each token to the buffer
+	 * for that token, instead of creating a {@link TokenSequence}. Each
+	 * buffer gets exactly the features {@link #pipe(Instance)} sets on its
+	 * token.
+	 * 
+	 * @param ids
+	 *            One buffer per token
+	 */
+	public void addFeatureIds(List<? extends CharSequence> tokenChars, FeatureIdBuffer[] ids)
 	{
-		text = text.replaceAll("[0-9]", "0");
-		return text;
+		List<String> tokens = getText(tokenChars);
+		int[] pos = null;
+		if (posTagger != null)
+			pos = getPOS(tokens);
+		MentionType[] types = null;
+		if (preTagger != null)
+			types = getDictionary(tokens);
+		for (int i = 0; i < tokens.size(); i++)
+			addFeatures(tokens.get(i), pos == null ? -1 : pos[i], types == null ? null : types[i], null, ids[i]);
 	}
 
-	private String getWordClass(String text)
+	/**
+	 * @return The text of the tokens, which is the list itself if the tokens
+	 *         are already {@link String}s, so that the text of each token is
+	 *         copied at most once
+	 */
+	@SuppressWarnings("unchecked")
+	static List<String> getText(List<? extends CharSequence> tokens)
 	{
-		text = text.replaceAll("[A-Z]", "A");
-		text = text.replaceAll("[a-z]", "a");
-		text = text.replaceAll("[0-9]", "0");
-		text = text.replaceAll("[^A-Za-z0-9]", "x");
-		return text;
+		int size = tokens.size();
+		for (int i = 0; i < size; i++)
+			if (!(tokens.get(i) instanceof String))
+			{
+				List<String> text = new ArrayList<String>(size);
+				for (int j = 0; j < size; j++)
+					text.add(tokens.get(j).toString());
+				return text;
+			}
+		return (List<String>) tokens;
 	}
 
-	private String getBriefNumberClass(String text)
+	/**
+	 * Adds the features of one token, either to the token or, if it is
+	 * <code>null</code>, to the buffer
+	 */
+	private void addFeatures(String text, int pos, MentionType type, Token token, FeatureIdBuffer ids)
 	{
-		text = text.replaceAll("[0-9]+", "0");
-		return text;
+		addFeature("W=", text.toLowerCase(), token, ids);
+		if (posTagger != null)
+			addFeature("POS=", String.valueOf(pos), token, ids);
+		if (lemmatiser != null)
+		{
+			String lemma;
+			if (posTagger == null)
+				lemma = lemmatiser.lemmatize(text);
+			else
+				lemma = lemmatiser.lemmatize(text, pos);
+			addFeature("LW=", lemma, token, ids);
+		}
+		WordShapes.Shape shape = wordShapes.getShape(text);
+		if (useNumericNormalization)
+		{
+			addFeature("NC=", shape.getNumberClass(), token, ids);
+			addFeature("BNC=", shape.getBriefNumberClass(), token, ids);
+		}
+		if (type != null)
+		{
+			addFeature("DICT=", type.getText(), token, ids);
+		}
+		addFeature("WC=", shape.getWordClass(), token, ids);
+		addFeature("BWC=", shape.getBriefWordClass(), token, ids);
 	}
 
-	private static String getBriefWordClass(String text)
+	private static void addFeature(String prefix, String value, Token token, FeatureIdBuffer ids)
 	{
-		text = text.replaceAll("[A-Z]+", "A");
-		text = text.replaceAll("[a-z]+", "a");
-		text = text.replaceAll("[0-9]+", "0");
-		text = text.replaceAll("[^A-Za-z0-9]+", "x");
-		return text;
+		if (token != null)
+			token.setFeatureValue(prefix + value, 1);
+		else
+			ids.add(prefix, value);
 	}
 
 	private int[] getPOS(List<String> tokens)
 	{
-		String[] rawTokens = new String[tokens.size()];
-		Word[] words = new Word[tokens.size()];
-		Sentence sentence = new Sentence();
-		for (int i = 0; i < tokens.size(); i++)
-		{
-			rawTokens[i] = tokens.get(i);
-			words[i] = new Word(rawTokens[i]);
-			sentence.addWord(words[i]);
-		}
-		// System.out.println(Arrays.toString(rawTokens));
-		posTagger.tag(sentence);
-		int[] pos = new int[tokens.size()];
-		for (int i = 0; i < tokens.size(); i++)
-		{
-			pos[i] = words[i].getPOSIndex();
-		}
-		return pos;
+		Tagger tagger = localPosTaggers == null ? posTagger : localPosTaggers.get();
+		// Taggers which can tag the tokens directly need no Sentence of Words
+		if (tagger instanceof PosTagger)
+			return ((PosTagger) tagger).tag(tokens);
+		return new DragonPosTagger(tagger).tag(tokens);
 	}
 
 	private MentionType[] getDictionary(List<String> tokens)
 	{
+		// Taggers which can tag the tokens directly need no Sentence to find the mentions in
+		if (preTagger instanceof TokenTagger)
+			return ((TokenTagger) preTagger).tag(tokens);
 		StringBuffer text = new StringBuffer();
 		for (int i = 0; i < tokens.size(); i++)
 		{
@@ -39,7 +39,7 @@ public class TaggedToken
 		if (mention != null && !mention.getSentence().equals(sentence))
 			throw new IllegalArgumentException();
 		this.index = index;
-		if (index < 0 || index >= sentence.getTokens().size())
+		if (index < 0 || index >= sentence.getTokenCount())
 			throw new IllegalArgumentException();
 		if (mention != null && (index < mention.getStart() || index >= mention.getEnd()))
 			throw new IllegalArgumentException();
@@ -0,0 +1,31 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+import java.util.List;
+
+import banner.Sentence;
+
+/**
+ * {@link Tagger}s which can also tag the text of the tokens of a sentence, without a {@link Sentence} to hold the tokens and the {@link Mention}s
+ * found.
+ */
+public interface TokenTagger extends Tagger
+{
+
+    /**
+     * Finds the {@link Mention}s that {@link #tag(Sentence)} would add to a {@link Sentence} with the specified tokens and no mentions.
+     * 
+     * @param tokens
+     *        The text of each token
+     * @return The {@link MentionType} of the mention containing each token, or <code>null</code> for tokens not in a mention
+     * @throws IllegalArgumentException
+     *         If a token would be in more than one mention
+     */
+    public MentionType[] tag(List<String> tokens);
+
+}
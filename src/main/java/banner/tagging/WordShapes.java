@@ -0,0 +1,187 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tagging;
+
+/**
+ * Computes the word class and number class features of a token in a single
+ * scan of its characters. The word class replaces each upper case ASCII
+ * letter with 'A', each lower case ASCII letter with 'a', each digit with '0'
+ * and any other character with 'x'; the brief word class replaces each run of
+ * the same class with one character. The number class replaces each digit
+ * with '0', and the brief number class replaces each run of digits with one
+ * '0'. The results are the same as replacing the patterns with regular
+ * expressions, so a surrogate pair is a single character.
+ * <p>
+ * Instances cache the shapes of recently seen tokens in a fixed-size table,
+ * and may be shared between threads.
+ */
+public class WordShapes
+{
+
+	/**
+	 * The shapes of one token
+	 */
+	public static class Shape
+	{
+		private final String text;
+		private final String wordClass;
+		private final String briefWordClass;
+		private final String numberClass;
+		private final String briefNumberClass;
+
+		public Shape(String text)
+		{
+			this.text = text;
+			wordClass = WordShapes.getWordClass(text);
+			briefWordClass = WordShapes.getBriefWordClass(text);
+			numberClass = WordShapes.getNumberClass(text);
+			briefNumberClass = WordShapes.getBriefNumberClass(text);
+		}
+
+		public String getText()
+		{
+			return text;
+		}
+
+		public String getWordClass()
+		{
+			return wordClass;
+		}
+
+		public String getBriefWordClass()
+		{
+			return briefWordClass;
+		}
+
+		public String getNumberClass()
+		{
+			return numberClass;
+		}
+
+		public String getBriefNumberClass()
+		{
+			return briefNumberClass;
+		}
+	}
+
+	// Shapes are immutable and their fields final, so a thread sees either an
+	// old entry or a complete new one
+	private Shape[] cache;
+	private int mask;
+
+	/**
+	 * @param cacheSize
+	 *            The number of tokens to cache, rounded up to a power of two;
+	 *            0 disables the cache
+	 */
+	public WordShapes(int cacheSize)
+	{
+		int capacity = 1;
+		while (capacity < cacheSize)
+			capacity *= 2;
+		cache = cacheSize > 0 ? new Shape[capacity] : null;
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @return The shapes of <code>text</code>, from the cache if it holds them
+	 */
+	public Shape getShape(String text)
+	{
+		if (cache == null)
+			return new Shape(text);
+		int h = text.hashCode();
+		int slot = (h ^ (h >>> 16)) & mask;
+		Shape shape = cache[slot];
+		if (shape == null || !shape.text.equals(text))
+		{
+			shape = new Shape(text);
+			cache[slot] = shape;
+		}
+		return shape;
+	}
+
+	private static char wordClass(char c)
+	{
+		if (c >= 'A' && c <= 'Z')
+			return 'A';
+		if (c >= 'a' && c <= 'z')
+			return 'a';
+		if (c >= '0' && c <= '9')
+			return '0';
+		return 'x';
+	}
+
+	// The number of chars in the character starting at index i
+	private static int charCount(String text, int i)
+	{
+		if (Character.isHighSurrogate(text.charAt(i)) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+			return 2;
+		return 1;
+	}
+
+	public static String getWordClass(String text)
+	{
+		int length = text.length();
+		char[] shape = new char[length];
+		int n = 0;
+		for (int i = 0; i < length; i += charCount(text, i))
+			shape[n++] = wordClass(text.charAt(i));
+		return new String(shape, 0, n);
+	}
+
+	public static String getBriefWordClass(String text)
+	{
+		int length = text.length();
+		char[] shape = new char[length];
+		int n = 0;
+		for (int i = 0; i < length; i += charCount(text, i))
+		{
+			char c = wordClass(text.charAt(i));
+			if (n == 0 || shape[n - 1] != c)
+				shape[n++] = c;
+		}
+		return new String(shape, 0, n);
+	}
+
+	public static String getNumberClass(String text)
+	{
+		int length = text.length();
+		int i = 0;
+		while (i < length && (text.charAt(i) < '1' || text.charAt(i) > '9'))
+			i++;
+		if (i == length)
+			return text;
+		char[] shape = text.toCharArray();
+		for (; i < length; i++)
+			if (shape[i] >= '1' && shape[i] <= '9')
+				shape[i] = '0';
+		return new String(shape);
+	}
+
+	public static String getBriefNumberClass(String text)
+	{
+		int length = text.length();
+		char[] shape = new char[length];
+		int n = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (!isDigit(c))
+				shape[n++] = c;
+			else if (i == 0 || !isDigit(text.charAt(i - 1)))
+				shape[n++] = '0';
+		}
+		return new String(shape, 0, n);
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+}
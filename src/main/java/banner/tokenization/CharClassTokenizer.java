@@ -0,0 +1,287 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tokenization;
+
+import banner.Sentence;
+
+/**
+ * Finds the tokens of {@link BaseTokenizer}, {@link SimpleTokenizer} or {@link NaiveTokenizer} in one pass over the text, looking up the class
+ * of each character in a table instead of testing it with {@link Character} and searching the punctuation marks for it.
+ * <p>
+ * Any range of a text may be tokenized, such as a whole document, with the tokens written to a {@link TokenOffsets} in the offsets of the text.
+ * The range is tokenized as if it were the whole text: the characters before and after it are not looked at. Instances are immutable, and may
+ * be shared between threads.
+ */
+public class CharClassTokenizer implements Tokenizer
+{
+
+    /**
+     * The tokenizer whose tokens are found
+     */
+    public enum Rules
+    {
+        /**
+         * Contiguous letters and digits, or real numbers and percentages, or a single punctuation mark, as {@link BaseTokenizer}
+         */
+        BASE,
+        /**
+         * Contiguous letters and digits, or a single punctuation mark, as {@link SimpleTokenizer}
+         */
+        SIMPLE,
+        /**
+         * Contiguous letters, or contiguous digits, or a single punctuation mark, as {@link NaiveTokenizer}
+         */
+        NAIVE
+    }
+
+    public static final CharClassTokenizer BASE = new CharClassTokenizer(Rules.BASE);
+    public static final CharClassTokenizer SIMPLE = new CharClassTokenizer(Rules.SIMPLE);
+    public static final CharClassTokenizer NAIVE = new CharClassTokenizer(Rules.NAIVE);
+
+    private static final String PUNCTUATION = "`~!@#$%^&*()-=_+[]\\{}|;':\",./<>?";
+
+    // The classes of a character, as bits
+    private static final int LETTER = 1;
+    private static final int DIGIT = 2;
+    private static final int ALPHANUMERIC = LETTER | DIGIT;
+    private static final int PUNCTUATION_MARK = 4;
+    // Character.isSpaceChar, which separates the tokens of SIMPLE and NAIVE
+    private static final int SPACE = 8;
+    // Character.isWhitespace, which separates the tokens of BASE
+    private static final int WHITESPACE = 16;
+    // A digit, '+', '-' or '.', which may start a number for BASE
+    private static final int NUMBER_START = 32;
+
+    private static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    // The kind of a character for SIMPLE and NAIVE, one of its classes
+    private static final int OTHER_KIND = 0;
+    private static final int LETTER_KIND = 1;
+    private static final int DIGIT_KIND = 2;
+    private static final int PUNCTUATION_KIND = 3;
+    private static final int SPACE_KIND = 4;
+    private static final int NUM_KINDS = 5;
+    private static final byte[] KINDS = new byte[Character.MAX_VALUE + 1];
+
+    // What SIMPLE and NAIVE do on a character, as bits, indexed by the kind of the character then the kind of the next
+    private static final int EMIT = 1;
+    private static final int RESTART = 2;
+    private static final byte[] SIMPLE_ACTIONS = new byte[NUM_KINDS * NUM_KINDS];
+    private static final byte[] NAIVE_ACTIONS = new byte[NUM_KINDS * NUM_KINDS];
+
+    // The number of characters for which room is made for tokens at a time
+    private static final int BLOCK_LENGTH = 1024;
+
+    static
+    {
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++)
+        {
+            int charClass = 0;
+            if (Character.isLetter((char) ch))
+                charClass |= LETTER;
+            if (Character.isDigit((char) ch))
+                charClass |= DIGIT;
+            if (Character.isSpaceChar((char) ch))
+                charClass |= SPACE;
+            if (Character.isWhitespace((char) ch))
+                charClass |= WHITESPACE;
+            CLASSES[ch] = (byte) charClass;
+        }
+        for (int i = 0; i < PUNCTUATION.length(); i++)
+            CLASSES[PUNCTUATION.charAt(i)] |= PUNCTUATION_MARK;
+        CLASSES['+'] |= NUMBER_START;
+        CLASSES['-'] |= NUMBER_START;
+        CLASSES['.'] |= NUMBER_START;
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++)
+        {
+            int charClass = CLASSES[ch];
+            if ((charClass & DIGIT) != 0)
+                CLASSES[ch] |= NUMBER_START;
+            if ((charClass & SPACE) != 0)
+                KINDS[ch] = SPACE_KIND;
+            else if ((charClass & LETTER) != 0)
+                KINDS[ch] = LETTER_KIND;
+            else if ((charClass & DIGIT) != 0)
+                KINDS[ch] = DIGIT_KIND;
+            else if ((charClass & PUNCTUATION_MARK) != 0)
+                KINDS[ch] = PUNCTUATION_KIND;
+        }
+        for (int kind = 0; kind < NUM_KINDS; kind++)
+        {
+            for (int nextKind = 0; nextKind < NUM_KINDS; nextKind++)
+            {
+                int simpleAction = 0;
+                int naiveAction = 0;
+                if (kind == SPACE_KIND)
+                {
+                    simpleAction = RESTART;
+                    naiveAction = RESTART;
+                } else if (kind == LETTER_KIND || kind == DIGIT_KIND)
+                {
+                    if (nextKind != LETTER_KIND && nextKind != DIGIT_KIND)
+                        simpleAction = EMIT | RESTART;
+                    if (nextKind != kind)
+                        naiveAction = EMIT | RESTART;
+                } else if (kind == PUNCTUATION_KIND)
+                {
+                    simpleAction = EMIT | RESTART;
+                    naiveAction = EMIT | RESTART;
+                }
+                SIMPLE_ACTIONS[kind * NUM_KINDS + nextKind] = (byte) simpleAction;
+                NAIVE_ACTIONS[kind * NUM_KINDS + nextKind] = (byte) naiveAction;
+            }
+        }
+    }
+
+    private final Rules rules;
+    private final ThreadLocal<TokenOffsets> localOffsets;
+
+
+    public CharClassTokenizer(Rules rules)
+    {
+        if (rules == null)
+            throw new IllegalArgumentException();
+        this.rules = rules;
+        localOffsets = new ThreadLocal<TokenOffsets>()
+        {
+            @Override
+            protected TokenOffsets initialValue()
+            {
+                return new TokenOffsets();
+            }
+        };
+    }
+
+
+    public Rules getRules()
+    {
+        return rules;
+    }
+
+
+    public void tokenize(Sentence sentence)
+    {
+        String text = sentence.getText();
+        TokenOffsets offsets = localOffsets.get();
+        offsets.clear();
+        tokenize(text, 0, text.length(), offsets);
+        offsets.addTo(sentence, 0, offsets.size(), 0);
+    }
+
+
+    /**
+     * Adds the tokens of the text from character start to character end - 1 to the offsets, which are those of the text
+     */
+    public void tokenize(CharSequence text, int start, int end, TokenOffsets offsets)
+    {
+        if (start < 0 || end > text.length() || start > end)
+            throw new IndexOutOfBoundsException("Characters " + start + " to " + end + " of " + text.length());
+        if (rules == Rules.BASE)
+            tokenizeBase(text, start, end, offsets);
+        else
+            tokenizeRuns(text, start, end, rules == Rules.SIMPLE ? SIMPLE_ACTIONS : NAIVE_ACTIONS, offsets);
+    }
+
+
+    // A token is a run of letters and digits, or of letters or of digits if they are not joined, or a single punctuation mark. Spaces end a
+    // token and are skipped; any other character starts the token which follows it. The action on each character depends only on its kind
+    // and the kind of the next, so the token is written on every character and kept only if the action emits it.
+    private static void tokenizeRuns(CharSequence text, int start, int end, byte[] actions, TokenOffsets offsets)
+    {
+        if (start == end)
+            return;
+        int count = offsets.size();
+        int tokenStart = start;
+        int kind = KINDS[text.charAt(start)];
+        for (int blockStart = start + 1; blockStart < end; blockStart += BLOCK_LENGTH)
+        {
+            int blockEnd = Math.min(end, blockStart + BLOCK_LENGTH);
+            offsets.ensureCapacity(count + blockEnd - blockStart);
+            int[] starts = offsets.getStarts();
+            int[] ends = offsets.getEnds();
+            for (int i = blockStart; i < blockEnd; i++)
+            {
+                int nextKind = KINDS[text.charAt(i)];
+                int action = actions[kind * NUM_KINDS + nextKind];
+                starts[count] = tokenStart;
+                ends[count] = i;
+                count += action & EMIT;
+                tokenStart = (action & RESTART) != 0 ? i : tokenStart;
+                kind = nextKind;
+            }
+        }
+        offsets.setSize(count);
+        // The last character ends a token unless it is a space, whether it is emitted as followed by no kind or kept as the rest of the text
+        if (kind != SPACE_KIND)
+            offsets.add(tokenStart, end);
+    }
+
+
+    // A token is a number, else a run of letters and digits, else a single punctuation mark. Whitespace is skipped; any other character ends
+    // the tokens of the text.
+    private static void tokenizeBase(CharSequence text, int start, int end, TokenOffsets offsets)
+    {
+        int position = start;
+        while (true)
+        {
+            while (position < end && (CLASSES[text.charAt(position)] & WHITESPACE) != 0)
+                position++;
+            if (position == end)
+                return;
+            int tokenEnd = -1;
+            if ((CLASSES[text.charAt(position)] & NUMBER_START) != 0)
+                tokenEnd = getNumberEnd(text, start, end, position);
+            if (tokenEnd < 0)
+            {
+                tokenEnd = position;
+                while (tokenEnd < end && (CLASSES[text.charAt(tokenEnd)] & ALPHANUMERIC) != 0)
+                    tokenEnd++;
+                if (tokenEnd == position)
+                {
+                    if ((CLASSES[text.charAt(position)] & PUNCTUATION_MARK) == 0)
+                        return;
+                    tokenEnd = position + 1;
+                }
+            }
+            offsets.add(position, tokenEnd);
+            position = tokenEnd;
+        }
+    }
+
+
+    // Returns the end of a number starting at position: an optional sign, digits, an optional "." and digits, and an optional "%", neither
+    // following nor followed by a letter; or -1 if there is none
+    private static int getNumberEnd(CharSequence text, int start, int end, int position)
+    {
+        if (position > start && (CLASSES[text.charAt(position - 1)] & LETTER) != 0)
+            return -1;
+        int numberEnd = position;
+        char ch = text.charAt(numberEnd);
+        if (ch == '+' || ch == '-')
+            numberEnd++;
+        boolean foundDigit = false;
+        while (numberEnd < end && (CLASSES[text.charAt(numberEnd)] & DIGIT) != 0)
+        {
+            numberEnd++;
+            foundDigit = true;
+        }
+        if (numberEnd + 1 < end && text.charAt(numberEnd) == '.' && (CLASSES[text.charAt(numberEnd + 1)] & DIGIT) != 0)
+        {
+            numberEnd++;
+            while (numberEnd < end && (CLASSES[text.charAt(numberEnd)] & DIGIT) != 0)
+            {
+                numberEnd++;
+                foundDigit = true;
+            }
+        }
+        if (numberEnd < end && text.charAt(numberEnd) == '%')
+            numberEnd++;
+        if (foundDigit && (numberEnd == end || (CLASSES[text.charAt(numberEnd)] & LETTER) == 0))
+            return numberEnd;
+        return -1;
+    }
+}
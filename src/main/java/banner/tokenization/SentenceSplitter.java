@@ -0,0 +1,154 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tokenization;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Splits the text of a document into sentences. A sentence ends after a '.', '!' or '?', and any closing quotes and brackets, which is
+ * followed by whitespace and then by anything but a lowercase letter, unless the '.' ends a known abbreviation or an initial. A sentence also
+ * ends at a blank line, and is split at its last whitespace if it would be longer than the maximum length.
+ * <p>
+ * The text may be given a part at a time: {@link #findSentenceEnd(CharSequence, int, int, boolean)} tells when more text is needed to decide
+ * where a sentence ends. Instances are immutable, and may be shared between threads.
+ */
+public class SentenceSplitter
+{
+
+    public static final int DEFAULT_MAX_LENGTH = 4096;
+
+    // Lowercase, without the final '.'
+    private static final Set<String> ABBREVIATIONS = new HashSet<String>(Arrays.asList("al", "approx", "ca", "cf", "dr", "e.g", "eq", "eqs",
+            "fig", "figs", "i.e", "inc", "mr", "mrs", "ms", "no", "nos", "prof", "ref", "refs", "resp", "sp", "spp", "st", "vol", "vs"));
+
+    private final int maxLength;
+
+
+    public SentenceSplitter()
+    {
+        this(DEFAULT_MAX_LENGTH);
+    }
+
+
+    /**
+     * @param maxLength
+     *        The greatest number of characters in a sentence
+     */
+    public SentenceSplitter(int maxLength)
+    {
+        if (maxLength < 1)
+            throw new IllegalArgumentException("Maximum length must be at least 1: " + maxLength);
+        this.maxLength = maxLength;
+    }
+
+
+    /**
+     * @return The greatest number of characters in a sentence
+     */
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+
+
+    /**
+     * Adds the sentences of the text from character start to character end - 1 to the offsets, which are those of the text. Each sentence is
+     * trimmed as {@link String#trim()} does, and sentences which are only whitespace are left out.
+     */
+    public void split(CharSequence text, int start, int end, TokenOffsets sentences)
+    {
+        while (start < end)
+        {
+            int sentenceEnd = findSentenceEnd(text, start, end, false);
+            addTrimmed(text, start, sentenceEnd, sentences);
+            start = sentenceEnd;
+        }
+    }
+
+
+    /**
+     * Adds the sentence from character start to character end - 1 to the offsets without the whitespace before and after it, as
+     * {@link String#trim()}, unless it is only whitespace
+     */
+    public static void addTrimmed(CharSequence text, int start, int end, TokenOffsets sentences)
+    {
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        if (start < end)
+            sentences.add(start, end);
+    }
+
+
+    /**
+     * Finds the end of the sentence starting at character start of the text, which is known up to character end - 1
+     *
+     * @param more
+     *        Whether more text may follow end
+     * @return The end of the sentence, after start and at most end; or -1 if more text is needed to tell where the sentence ends
+     */
+    public int findSentenceEnd(CharSequence text, int start, int end, boolean more)
+    {
+        int limit = Math.min(end, start + maxLength);
+        for (int i = start; i < limit; i++)
+        {
+            char ch = text.charAt(i);
+            if (ch == '.' || ch == '!' || ch == '?')
+            {
+                int sentenceEnd = i + 1;
+                while (sentenceEnd < end && isClosing(text.charAt(sentenceEnd)))
+                    sentenceEnd++;
+                int next = sentenceEnd;
+                while (next < end && Character.isWhitespace(text.charAt(next)))
+                    next++;
+                if (next == end)
+                    return more ? -1 : end;
+                if (next > sentenceEnd && !Character.isLowerCase(text.charAt(next)) && !(ch == '.' && isAbbreviation(text, start, i)))
+                    return Math.min(sentenceEnd, limit);
+            } else if (ch == '\n')
+            {
+                int next = i + 1;
+                while (next < end && text.charAt(next) != '\n' && Character.isWhitespace(text.charAt(next)))
+                    next++;
+                if (next == end)
+                    return more ? -1 : end;
+                if (text.charAt(next) == '\n')
+                    return i + 1;
+            }
+        }
+        if (limit < start + maxLength)
+            return more ? -1 : end;
+        // Too long, so split at the last whitespace
+        for (int i = limit - 1; i > start; i--)
+            if (Character.isWhitespace(text.charAt(i)))
+                return i;
+        return limit;
+    }
+
+
+    private static boolean isClosing(char ch)
+    {
+        return ch == '"' || ch == '\'' || ch == ')' || ch == ']' || ch == '}' || ch == '\u2019' || ch == '\u201D';
+    }
+
+
+    // Whether the word before the '.' at period is an abbreviation or an initial
+    private static boolean isAbbreviation(CharSequence text, int start, int period)
+    {
+        int wordStart = period;
+        while (wordStart > start && (Character.isLetter(text.charAt(wordStart - 1)) || text.charAt(wordStart - 1) == '.'))
+            wordStart--;
+        if (wordStart == period)
+            return false;
+        if (period - wordStart == 1 && Character.isUpperCase(text.charAt(wordStart)))
+            return true;
+        return ABBREVIATIONS.contains(text.subSequence(wordStart, period).toString().toLowerCase());
+    }
+}
@@ -17,12 +17,6 @@ import banner.Sentence;
 public class SimpleTokenizer implements Tokenizer
 {
 
-    private static boolean isPunctuation(char ch)
-    {
-        return ("`~!@#$%^&*()-=_+[]\\{}|;':\",./<>?".indexOf(ch) != -1);
-    }
-
-
     public SimpleTokenizer()
     {
         // Empty
@@ -31,34 +25,6 @@ public class SimpleTokenizer implements Tokenizer
 
     public void tokenize(Sentence sentence)
     {
-        String text = sentence.getText();
-        int start = 0;
-        for (int i = 1; i - 1 < text.length(); i++)
-        {
-            char current = text.charAt(i - 1);
-            char next = 0;
-            if (i < text.length())
-                next = text.charAt(i);
-            if (Character.isSpaceChar(current))
-            {
-                start = i;
-            }
-            else if (Character.isLetter(current) || Character.isDigit(current))
-            {
-                if (!Character.isLetter(next) && !Character.isDigit(next))
-                {
-                    sentence.addToken(new Token(sentence, start, i));
-                    start = i;
-                }
-            }
-            else if (isPunctuation(current))
-            {
-                sentence.addToken(new Token(sentence, start, i));
-                start = i;
-            }
-        }
-        if (start < text.length())
-            sentence.addToken(new Token(sentence, start, text.length()));
+        CharClassTokenizer.SIMPLE.tokenize(sentence);
     }
-
 }
@@ -0,0 +1,146 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.tokenization;
+
+import java.util.Arrays;
+
+import banner.Sentence;
+
+/**
+ * The start and end of each of a sequence of tokens, kept in int arrays which grow as needed and are reused after {@link #clear()}. The offsets
+ * are those of the text which was tokenized, such as a whole document.
+ */
+public class TokenOffsets
+{
+
+    private int size;
+    private int[] starts;
+    private int[] ends;
+
+
+    public TokenOffsets()
+    {
+        this(64);
+    }
+
+
+    public TokenOffsets(int capacity)
+    {
+        starts = new int[Math.max(1, capacity)];
+        ends = new int[starts.length];
+    }
+
+
+    /**
+     * Adds a token from character start to character end - 1
+     */
+    public void add(int start, int end)
+    {
+        if (size == starts.length)
+        {
+            starts = Arrays.copyOf(starts, 2 * size);
+            ends = Arrays.copyOf(ends, 2 * size);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+
+    // Makes room for the number of tokens given in all, so that the arrays may be written up to it directly
+    void ensureCapacity(int capacity)
+    {
+        if (capacity > starts.length)
+        {
+            int newCapacity = Math.max(capacity, 2 * starts.length);
+            starts = Arrays.copyOf(starts, newCapacity);
+            ends = Arrays.copyOf(ends, newCapacity);
+        }
+    }
+
+
+    void setSize(int size)
+    {
+        this.size = size;
+    }
+
+
+    /**
+     * Removes all tokens, keeping the arrays
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+
+    /**
+     * @return The number of tokens
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return The start of the token, inclusive
+     */
+    public int getStart(int index)
+    {
+        checkIndex(index);
+        return starts[index];
+    }
+
+
+    /**
+     * @return The end of the token, exclusive
+     */
+    public int getEnd(int index)
+    {
+        checkIndex(index);
+        return ends[index];
+    }
+
+
+    /**
+     * @return The array holding the starts of the tokens, valid up to {@link #size()}; replaced when it grows
+     */
+    public int[] getStarts()
+    {
+        return starts;
+    }
+
+
+    /**
+     * @return The array holding the ends of the tokens, valid up to {@link #size()}; replaced when it grows
+     */
+    public int[] getEnds()
+    {
+        return ends;
+    }
+
+
+    /**
+     * Adds the tokens from index from to index to - 1 to the {@link Sentence}, moving each by offset, which is the start in the tokenized text
+     * of the text of the {@link Sentence}
+     */
+    public void addTo(Sentence sentence, int from, int to, int offset)
+    {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("Tokens " + from + " to " + to + " of " + size);
+        for (int i = from; i < to; i++)
+            sentence.addToken(starts[i] - offset, ends[i] - offset);
+    }
+
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Token " + index + " of " + size);
+    }
+}
@@ -38,12 +38,12 @@ public class WhitespaceTokenizer implements Tokenizer
             }
             else if (Character.isSpaceChar(next))
             {
-                sentence.addToken(new Token(sentence, start, i));
+                sentence.addToken(start, i);
                 start = i;
             }
         }
         if (start < text.length())
-            sentence.addToken(new Token(sentence, start, text.length()));
+            sentence.addToken(start, text.length());
     }
 
 }
@@ -0,0 +1,245 @@
+/* 
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache holding at most a fixed number of values, which may be used from several threads at once. The keys are spread over a number of
+ * segments by their hash code, each a {@link LinkedHashMap} with its own lock and an equal share of the capacity, so that threads rarely wait for
+ * each other; when a segment is full, adding a value evicts the least recently used or the oldest value of that segment, according to the
+ * {@link Eviction} policy.
+ * <p>
+ * The cache counts its hits, misses and evictions, so that its size can be tuned.
+ * 
+ * @param <K>
+ * @param <V>
+ */
+public class BoundedCache<K, V>
+{
+
+    /**
+     * Which value is evicted when a segment is full
+     */
+    public enum Eviction
+    {
+        /**
+         * The value least recently returned or added
+         */
+        LRU,
+        /**
+         * The value added first
+         */
+        FIFO
+    }
+
+    private static final int NUM_SEGMENTS = 16;
+
+    private final int maxSize;
+    private final Eviction eviction;
+    private final Segment<K, V>[] segments;
+
+
+    /**
+     * @param maxSize
+     *        The maximum number of values, which must be positive
+     * @param eviction
+     *        Which value to evict when the cache is full
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int maxSize, Eviction eviction)
+    {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The size of the cache must be positive");
+        this.maxSize = maxSize;
+        this.eviction = eviction;
+        int numSegments = Math.min(NUM_SEGMENTS, maxSize);
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++)
+            segments[i] = new Segment<K, V>(maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0), eviction == Eviction.LRU);
+    }
+
+
+    private Segment<K, V> getSegment(Object key)
+    {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+
+    /**
+     * @return The value of the key, or <code>null</code> if it is not in the cache
+     */
+    public V get(K key)
+    {
+        Segment<K, V> segment = getSegment(key);
+        synchronized (segment)
+        {
+            V value = segment.get(key);
+            if (value == null)
+                segment.misses++;
+            else
+                segment.hits++;
+            return value;
+        }
+    }
+
+
+    /**
+     * Adds the value of the key, evicting another value if the cache is full
+     */
+    public void put(K key, V value)
+    {
+        if (value == null)
+            throw new IllegalArgumentException("The value may not be null");
+        Segment<K, V> segment = getSegment(key);
+        synchronized (segment)
+        {
+            segment.put(key, value);
+        }
+    }
+
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+
+    public Eviction getEviction()
+    {
+        return eviction;
+    }
+
+
+    /**
+     * @return The number of values in the cache
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment<K, V> segment : segments)
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        return size;
+    }
+
+
+    /**
+     * @return The number of calls to {@link #get(Object)} which returned a value
+     */
+    public long getHits()
+    {
+        long hits = 0;
+        for (Segment<K, V> segment : segments)
+            synchronized (segment)
+            {
+                hits += segment.hits;
+            }
+        return hits;
+    }
+
+
+    /**
+     * @return The number of calls to {@link #get(Object)} which returned <code>null</code>
+     */
+    public long getMisses()
+    {
+        long misses = 0;
+        for (Segment<K, V> segment : segments)
+            synchronized (segment)
+            {
+                misses += segment.misses;
+            }
+        return misses;
+    }
+
+
+    /**
+     * @return The number of values evicted to make room for others
+     */
+    public long getEvictions()
+    {
+        long evictions = 0;
+        for (Segment<K, V> segment : segments)
+            synchronized (segment)
+            {
+                evictions += segment.evictions;
+            }
+        return evictions;
+    }
+
+
+    /**
+     * @return The fraction of the calls to {@link #get(Object)} which returned a value, or 0 if there were none
+     */
+    public double getHitRate()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+
+    /**
+     * Removes all values from the cache and resets its counts
+     */
+    public void clear()
+    {
+        for (Segment<K, V> segment : segments)
+            synchronized (segment)
+            {
+                segment.clear();
+                segment.hits = 0;
+                segment.misses = 0;
+                segment.evictions = 0;
+            }
+    }
+
+
+    @Override
+    public String toString()
+    {
+        long hits = getHits();
+        long misses = getMisses();
+        return String.format("%d/%d values (%s), %d hits, %d misses (%.1f%% hit rate), %d evictions", size(), maxSize, eviction, hits, misses,
+                100.0 * getHitRate(), getEvictions());
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V>
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        long hits;
+        long misses;
+        long evictions;
+
+
+        Segment(int capacity, boolean accessOrder)
+        {
+            super(16, 0.75f, accessOrder);
+            this.capacity = capacity;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+        {
+            if (size() <= capacity)
+                return false;
+            evictions++;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,492 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable {@link Trie} from lists of tokens to int values, kept in a few arrays instead of one object and one {@link Map} per node. Each
+ * distinct token has an id, and the nodes are numbered in breadth-first order, so that the children of a node are consecutive and sorted by the id
+ * of their token; a child is found by binary search. The tokens themselves are stored as one array of characters with an open-addressing hash
+ * table.
+ * <p>
+ * Instances are created with a {@link Builder}, or read from a stream written by {@link #write(DataOutputStream)}. They may be shared between
+ * threads.
+ */
+public class TokenTrie
+{
+
+    /**
+     * The root node
+     */
+    public static final int ROOT = 0;
+    /**
+     * Returned for a token, node or value that does not exist
+     */
+    public static final int NONE = -1;
+
+    private static final int MAGIC = 0x544b5452; // "TKTR"
+    private static final int VERSION = 1;
+
+    // The characters of token i are tokenChars[tokenOffsets[i]] to tokenChars[tokenOffsets[i + 1] - 1]
+    private final char[] tokenChars;
+    private final int[] tokenOffsets;
+    private final int[] tokenHashes;
+    // The token in each slot of the hash table, or NONE
+    private final int[] tokenSlots;
+    // The children of node n are the nodes firstChild[n] to firstChild[n + 1] - 1
+    private final int[] firstChild;
+    // The token on the edge into each node
+    private final int[] nodeTokens;
+    private final int[] nodeValues;
+    private final int size;
+
+
+    private TokenTrie(char[] tokenChars, int[] tokenOffsets, int[] firstChild, int[] nodeTokens, int[] nodeValues)
+    {
+        this.tokenChars = tokenChars;
+        this.tokenOffsets = tokenOffsets;
+        this.firstChild = firstChild;
+        this.nodeTokens = nodeTokens;
+        this.nodeValues = nodeValues;
+        int numTokens = tokenOffsets.length - 1;
+        tokenHashes = new int[numTokens];
+        int capacity = 2;
+        while (capacity < 2 * numTokens)
+            capacity *= 2;
+        tokenSlots = new int[capacity];
+        Arrays.fill(tokenSlots, NONE);
+        for (int id = 0; id < numTokens; id++)
+        {
+            int h = hashCode(tokenChars, tokenOffsets[id], tokenOffsets[id + 1]);
+            tokenHashes[id] = h;
+            int slot = spread(h) & (capacity - 1);
+            while (tokenSlots[slot] != NONE)
+                slot = (slot + 1) & (capacity - 1);
+            tokenSlots[slot] = id;
+        }
+        int size = 0;
+        for (int value : nodeValues)
+            if (value != NONE)
+                size++;
+        this.size = size;
+    }
+
+
+    // The same as String.hashCode()
+    private static int hashCode(char[] chars, int start, int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + chars[i];
+        return h;
+    }
+
+
+    private static int spread(int h)
+    {
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * @return The id of the token, or {@link #NONE} if no entry contains it
+     */
+    public int getTokenId(String token)
+    {
+        int h = token.hashCode();
+        int mask = tokenSlots.length - 1;
+        for (int slot = spread(h) & mask;; slot = (slot + 1) & mask)
+        {
+            int id = tokenSlots[slot];
+            if (id == NONE)
+                return NONE;
+            if (tokenHashes[id] == h && matches(id, token))
+                return id;
+        }
+    }
+
+
+    private boolean matches(int id, String token)
+    {
+        int start = tokenOffsets[id];
+        int length = token.length();
+        if (tokenOffsets[id + 1] - start != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (tokenChars[start + i] != token.charAt(i))
+                return false;
+        return true;
+    }
+
+
+    public String getToken(int id)
+    {
+        return new String(tokenChars, tokenOffsets[id], tokenOffsets[id + 1] - tokenOffsets[id]);
+    }
+
+
+    public int numTokens()
+    {
+        return tokenOffsets.length - 1;
+    }
+
+
+    public int numNodes()
+    {
+        return nodeValues.length;
+    }
+
+
+    /**
+     * @return The child of the node along the edge for the token, or {@link #NONE} if there is none
+     */
+    public int getChild(int node, int tokenId)
+    {
+        if (tokenId == NONE)
+            return NONE;
+        int low = firstChild[node];
+        int high = firstChild[node + 1] - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int token = nodeTokens[middle];
+            if (token < tokenId)
+                low = middle + 1;
+            else if (token > tokenId)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return NONE;
+    }
+
+
+    public int getChild(int node, String token)
+    {
+        return getChild(node, getTokenId(token));
+    }
+
+
+    /**
+     * @return The first child of the node; the children of node n are the nodes <code>getFirstChild(n)</code> to
+     *         <code>getFirstChild(n + 1) - 1</code>
+     */
+    public int getFirstChild(int node)
+    {
+        return firstChild[node];
+    }
+
+
+    /**
+     * @return The id of the token on the edge into the node, or {@link #NONE} for the root
+     */
+    public int getNodeToken(int node)
+    {
+        return nodeTokens[node];
+    }
+
+
+    /**
+     * @return The value of the node, or {@link #NONE} if no entry ends at it
+     */
+    public int getValue(int node)
+    {
+        return nodeValues[node];
+    }
+
+
+    /**
+     * @return The value of the entry for the tokens, or {@link #NONE} if there is none
+     */
+    public int getValue(List<String> tokens)
+    {
+        int node = ROOT;
+        for (int i = 0; i < tokens.size() && node != NONE; i++)
+            node = getChild(node, tokens.get(i));
+        return node == NONE ? NONE : nodeValues[node];
+    }
+
+
+    /**
+     * Returns the number of entries in this {@link TokenTrie}
+     *
+     * @return The number of entries in this {@link TokenTrie}
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Writes this trie in the format read by {@link #read(DataInputStream)}
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numTokens());
+        out.writeInt(tokenChars.length);
+        out.writeInt(numNodes());
+        writeInts(out, tokenOffsets);
+        for (char c : tokenChars)
+            out.writeChar(c);
+        writeInts(out, firstChild);
+        writeInts(out, nodeTokens);
+        writeInts(out, nodeValues);
+    }
+
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException
+    {
+        for (int value : values)
+            out.writeInt(value);
+    }
+
+
+    public static TokenTrie read(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a TokenTrie");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported TokenTrie version " + version);
+        int numTokens = in.readInt();
+        int numChars = in.readInt();
+        int numNodes = in.readInt();
+        int[] tokenOffsets = new int[numTokens + 1];
+        readInts(in, tokenOffsets);
+        char[] tokenChars = new char[numChars];
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int i = 0; i < numChars;)
+        {
+            int n = Math.min(buffer.capacity() / 2, numChars - i);
+            in.readFully(buffer.array(), 0, 2 * n);
+            buffer.clear();
+            buffer.asCharBuffer().get(tokenChars, i, n);
+            i += n;
+        }
+        int[] firstChild = new int[numNodes + 1];
+        readInts(in, firstChild);
+        int[] nodeTokens = new int[numNodes];
+        readInts(in, nodeTokens);
+        int[] nodeValues = new int[numNodes];
+        readInts(in, nodeValues);
+        return new TokenTrie(tokenChars, tokenOffsets, firstChild, nodeTokens, nodeValues);
+    }
+
+
+    // Reads the ints in blocks instead of one at a time
+    private static void readInts(DataInputStream in, int[] values) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int i = 0; i < values.length;)
+        {
+            int n = Math.min(buffer.capacity() / 4, values.length - i);
+            in.readFully(buffer.array(), 0, 4 * n);
+            buffer.clear();
+            buffer.asIntBuffer().get(values, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Collects the entries of a {@link TokenTrie}. The edges are kept in an open-addressing hash table keyed by parent node and token id.
+     */
+    public static class Builder
+    {
+
+        private Map<String, Integer> tokenIds;
+        private List<String> tokens;
+        // Keys are parent << 32 | token; a child of 0 marks an empty slot, since the root is no one's child
+        private long[] edgeKeys;
+        private int[] edgeChildren;
+        private int numEdges;
+        private int[] nodeValues;
+        private int numNodes;
+
+
+        public Builder()
+        {
+            tokenIds = new HashMap<String, Integer>();
+            tokens = new ArrayList<String>();
+            edgeKeys = new long[1024];
+            edgeChildren = new int[1024];
+            nodeValues = new int[1024];
+            nodeValues[ROOT] = NONE;
+            numNodes = 1;
+        }
+
+
+        /**
+         * Creates a builder with the entries of the trie
+         */
+        public Builder(TokenTrie trie)
+        {
+            this();
+            for (int id = 0; id < trie.numTokens(); id++)
+                getTokenId(trie.getToken(id));
+            nodeValues[ROOT] = trie.nodeValues[ROOT];
+            // Nodes are numbered in breadth-first order, so each parent is added before its children
+            int[] newIds = new int[trie.numNodes()];
+            for (int node = 0; node < trie.numNodes(); node++)
+                for (int child = trie.firstChild[node]; child < trie.firstChild[node + 1]; child++)
+                {
+                    newIds[child] = getChild(newIds[node], trie.nodeTokens[child]);
+                    nodeValues[newIds[child]] = trie.nodeValues[child];
+                }
+        }
+
+
+        private int getTokenId(String token)
+        {
+            Integer id = tokenIds.get(token);
+            if (id == null)
+            {
+                id = tokens.size();
+                tokenIds.put(token, id);
+                tokens.add(token);
+            }
+            return id;
+        }
+
+
+        // Returns the child of the node for the token, adding it if necessary
+        private int getChild(int node, int tokenId)
+        {
+            long key = ((long) node << 32) | tokenId;
+            int mask = edgeKeys.length - 1;
+            int slot = hash(key) & mask;
+            while (edgeChildren[slot] != 0)
+            {
+                if (edgeKeys[slot] == key)
+                    return edgeChildren[slot];
+                slot = (slot + 1) & mask;
+            }
+            int child = numNodes++;
+            if (child == nodeValues.length)
+                nodeValues = Arrays.copyOf(nodeValues, 2 * nodeValues.length);
+            nodeValues[child] = NONE;
+            edgeKeys[slot] = key;
+            edgeChildren[slot] = child;
+            if (++numEdges * 2 > edgeKeys.length)
+                growEdges();
+            return child;
+        }
+
+
+        // Multiplicative hashing, since parents and tokens are small, nearly consecutive numbers
+        private static int hash(long key)
+        {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+
+
+        private void growEdges()
+        {
+            long[] oldKeys = edgeKeys;
+            int[] oldChildren = edgeChildren;
+            edgeKeys = new long[2 * oldKeys.length];
+            edgeChildren = new int[2 * oldKeys.length];
+            int mask = edgeKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldChildren[i] != 0)
+                {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (edgeChildren[slot] != 0)
+                        slot = (slot + 1) & mask;
+                    edgeKeys[slot] = oldKeys[i];
+                    edgeChildren[slot] = oldChildren[i];
+                }
+        }
+
+
+        /**
+         * Adds an entry, replacing the value of the tokens if they already have one
+         *
+         * @param value
+         *        The value, which must not be {@link TokenTrie#NONE}
+         * @return The previous value of the tokens, or {@link TokenTrie#NONE} if they had none
+         */
+        public int add(List<String> tokens, int value)
+        {
+            if (value == NONE)
+                throw new IllegalArgumentException("The value may not be NONE");
+            int node = ROOT;
+            for (String token : tokens)
+                node = getChild(node, getTokenId(token));
+            int previous = nodeValues[node];
+            nodeValues[node] = value;
+            return previous;
+        }
+
+
+        /**
+         * @return A {@link TokenTrie} with the entries added so far
+         */
+        public TokenTrie build()
+        {
+            // Groups the edges by parent, each as token << 32 | child so that sorting orders them by token
+            int[] childStart = new int[numNodes + 1];
+            for (int i = 0; i < edgeKeys.length; i++)
+                if (edgeChildren[i] != 0)
+                    childStart[(int) (edgeKeys[i] >>> 32) + 1]++;
+            for (int node = 0; node < numNodes; node++)
+                childStart[node + 1] += childStart[node];
+            long[] edges = new long[numEdges];
+            int[] next = Arrays.copyOf(childStart, numNodes);
+            for (int i = 0; i < edgeKeys.length; i++)
+                if (edgeChildren[i] != 0)
+                    edges[next[(int) (edgeKeys[i] >>> 32)]++] = (edgeKeys[i] << 32) | edgeChildren[i];
+            for (int node = 0; node < numNodes; node++)
+                Arrays.sort(edges, childStart[node], childStart[node + 1]);
+
+            // Numbers the nodes in breadth-first order: the new id of a node is its position in the queue
+            int[] queue = new int[numNodes];
+            int[] firstChild = new int[numNodes + 1];
+            int[] newTokens = new int[numNodes];
+            int[] newValues = new int[numNodes];
+            int tail = 1;
+            newTokens[ROOT] = NONE;
+            for (int head = 0; head < numNodes; head++)
+            {
+                int node = queue[head];
+                firstChild[head] = tail;
+                newValues[head] = nodeValues[node];
+                for (int e = childStart[node]; e < childStart[node + 1]; e++)
+                {
+                    newTokens[tail] = (int) (edges[e] >>> 32);
+                    queue[tail++] = (int) edges[e];
+                }
+            }
+            firstChild[numNodes] = numNodes;
+
+            int numChars = 0;
+            for (String token : tokens)
+                numChars += token.length();
+            char[] tokenChars = new char[numChars];
+            int[] tokenOffsets = new int[tokens.size() + 1];
+            for (int id = 0; id < tokens.size(); id++)
+            {
+                String token = tokens.get(id);
+                token.getChars(0, token.length(), tokenChars, tokenOffsets[id]);
+                tokenOffsets[id + 1] = tokenOffsets[id] + token.length();
+            }
+            return new TokenTrie(tokenChars, tokenOffsets, firstChild, newTokens, newValues);
+        }
+    }
+
+}
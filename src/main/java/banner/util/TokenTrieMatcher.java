@@ -0,0 +1,123 @@
+/*
+ Copyright (c) 2007 Arizona State University, Dept. of Computer Science and Dept. of Biomedical Informatics.
+ This file is part of the BANNER Named Entity Recognition System, http://banner.sourceforge.net
+ This software is provided under the terms of the Common Public License, version 1.0, as published by http://www.opensource.org.  For further information, see the file 'LICENSE.txt' included with this distribution.
+ */
+
+package banner.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds every entry of a {@link TokenTrie} in a sequence of token ids in one left-to-right pass, in the manner of Aho-Corasick: each node has a
+ * failure link to the node of its longest proper suffix which is also in the trie, and an output link to the nearest node along the failure links
+ * at which an entry ends. The time taken is linear in the number of tokens plus the number of entries found, rather than a walk from every
+ * position.
+ * <p>
+ * The links are computed once, when the matcher is created, in three arrays as long as the trie has nodes. The value of the root, an entry with no
+ * tokens, is never reported. Instances may be shared between threads.
+ */
+public class TokenTrieMatcher
+{
+
+    private final TokenTrie trie;
+    private final int[] failure;
+    // The nearest node along the failure links with a value, or NONE
+    private final int[] output;
+    private final int[] depth;
+
+
+    public TokenTrieMatcher(TokenTrie trie)
+    {
+        this.trie = trie;
+        int numNodes = trie.numNodes();
+        failure = new int[numNodes];
+        output = new int[numNodes];
+        depth = new int[numNodes];
+        failure[TokenTrie.ROOT] = TokenTrie.ROOT;
+        output[TokenTrie.ROOT] = TokenTrie.NONE;
+        // Nodes are numbered in breadth-first order, so the links of every shallower node are known before a node is reached
+        for (int node = 0; node < numNodes; node++)
+            for (int child = trie.getFirstChild(node); child < trie.getFirstChild(node + 1); child++)
+            {
+                int link = TokenTrie.ROOT;
+                if (node != TokenTrie.ROOT)
+                    link = next(failure[node], trie.getNodeToken(child));
+                failure[child] = link;
+                output[child] = trie.getValue(link) != TokenTrie.NONE ? link : output[link];
+                depth[child] = depth[node] + 1;
+            }
+    }
+
+
+    // Follows the edge for the token from the node, or failure links until there is one
+    private int next(int node, int tokenId)
+    {
+        if (tokenId == TokenTrie.NONE)
+            return TokenTrie.ROOT;
+        while (true)
+        {
+            int child = trie.getChild(node, tokenId);
+            if (child != TokenTrie.NONE)
+                return child;
+            if (node == TokenTrie.ROOT)
+                return TokenTrie.ROOT;
+            node = failure[node];
+        }
+    }
+
+
+    public TokenTrie getTrie()
+    {
+        return trie;
+    }
+
+
+    /**
+     * Finds the entries of the trie in the first tokens of a sequence
+     * 
+     * @param tokenIds
+     *        The ids of the tokens in the trie, {@link TokenTrie#NONE} for tokens it does not contain
+     * @param length
+     *        The number of tokens to search
+     * @return The entries found, as triples of the index of the first token, the index after the last token and the value, ordered by the first
+     *         index and then by the second
+     */
+    public int[] findAll(int[] tokenIds, int length)
+    {
+        // Entries are found in order of their end; the ones ending together are found longest first, so in order of their start
+        int[] found = new int[3 * length];
+        int numFound = 0;
+        int[] startCounts = new int[length + 1];
+        int node = TokenTrie.ROOT;
+        for (int i = 0; i < length; i++)
+        {
+            node = next(node, tokenIds[i]);
+            int match = trie.getValue(node) != TokenTrie.NONE ? node : output[node];
+            for (; match != TokenTrie.NONE; match = output[match])
+            {
+                if (3 * numFound == found.length)
+                    found = Arrays.copyOf(found, 2 * found.length);
+                int start = i + 1 - depth[match];
+                found[3 * numFound] = start;
+                found[3 * numFound + 1] = i + 1;
+                found[3 * numFound + 2] = trie.getValue(match);
+                numFound++;
+                startCounts[start + 1]++;
+            }
+        }
+        // A stable counting sort by start keeps the entries with the same start in order of their end
+        for (int start = 0; start < length; start++)
+            startCounts[start + 1] += startCounts[start];
+        int[] sorted = new int[3 * numFound];
+        for (int f = 0; f < numFound; f++)
+        {
+            int position = 3 * startCounts[found[3 * f]]++;
+            sorted[position] = found[3 * f];
+            sorted[position + 1] = found[3 * f + 1];
+            sorted[position + 2] = found[3 * f + 2];
+        }
+        return sorted;
+    }
+
+}
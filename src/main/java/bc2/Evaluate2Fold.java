@@ -182,7 +182,8 @@ public class Evaluate2Fold extends Base
 			sentences.add(id2Sentence.get(id));
 		sysOut.println("\tTraining data loaded, starting training");
 		CRFTagger tagger = CRFTagger.train(sentences, properties.getOrder(), properties.isUseFeatureInduction(), properties.getTagFormat(), properties.getTextDirection(), properties.getLemmatiser(),
-				properties.getPosTagger(), properties.isUseNumericNormalization(), properties.getPreTagger(), properties.getRegexFilename());
+				properties.getPosTagger(), properties.isUseNumericNormalization(), properties.getPreTagger(), properties.getRegexFilename(), properties.getTrainingThreads(),
+				properties.getStochasticTrainer());
 		sysOut.println("\tTraining complete, saving model");
 		tagger.write(new File(modelFile));
 		return tagger;
@@ -116,6 +116,7 @@ public class TestModel extends Base
         }
 
         System.out.println("Elapsed time: " + (System.currentTimeMillis() - startTime));
+        properties.logCacheStatistics();
 
         double[] results = Base.getResults(mentionsTest, mentionsAlternate, mentionsFound);
         System.out.println("precision: " + results[1]);
@@ -20,6 +20,7 @@ import banner.BannerProperties;
 import banner.Sentence;
 import banner.tagging.CRFTagger;
 import banner.tokenization.Tokenizer;
+import edu.umass.cs.mallet.base.fst.CRF4Checkpoint;
 
 public class TrainModel extends Base
 {
@@ -31,8 +32,28 @@ public class TrainModel extends Base
 		String tagFilename = args[2];
 		String modelName = args[3];
 		Double percentage = null;
-		if (args.length == 5)
-			percentage = Double.valueOf(args[4]);
+		int arg = 4;
+		if (args.length > arg && !args[arg].equals("resume") && !args[arg].equals("from"))
+			percentage = Double.valueOf(args[arg++]);
+		// "resume" continues training from the checkpoint file in the properties,
+		// "from <file>" makes the model from the parameters of a kept checkpoint, and
+		// those of the reverse CRF from the same file followed by ".reverse"
+		CRF4Checkpoint checkpoint = properties.getCheckpoint();
+		if (args.length > arg && args[arg].equals("resume"))
+		{
+			if (checkpoint == null)
+				throw new IllegalArgumentException("Cannot resume training without a checkpointFile in the properties");
+			checkpoint.setResume(true);
+		}
+		else if (args.length > arg + 1 && args[arg].equals("from"))
+		{
+			checkpoint = new CRF4Checkpoint(new File(args[arg + 1]), 1);
+			checkpoint.setFinish(true);
+		}
+		else if (args.length > arg)
+			throw new IllegalArgumentException("Usage: TrainModel <properties> <sentences> <tags> <model> [percentage] [resume | from <checkpoint>]");
+		if (percentage != null && checkpoint != null && (checkpoint.isResume() || checkpoint.isFinish()))
+			throw new IllegalArgumentException("A random percentage of the sentences cannot be trained on again from a checkpoint");
 
 		properties.log();
 
@@ -72,7 +93,8 @@ public class TrainModel extends Base
 
 		sysOut.println("Training data loaded, starting training");
 		CRFTagger tagger = CRFTagger.train(sentences, properties.getOrder(), properties.isUseFeatureInduction(), properties.getTagFormat(), properties.getTextDirection(), properties.getLemmatiser(),
-				properties.getPosTagger(), properties.isUseNumericNormalization(), properties.getPreTagger(), properties.getRegexFilename());
+				properties.getPosTagger(), properties.isUseNumericNormalization(), properties.getPreTagger(), properties.getRegexFilename(), properties.getTrainingThreads(),
+				properties.getStochasticTrainer(), checkpoint);
 		sysOut.println("Training complete, saving model");
 		tagger.write(new File(modelName));
 	}
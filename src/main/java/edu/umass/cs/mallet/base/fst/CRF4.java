@@ -28,6 +28,9 @@ import java.util.Iterator;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.*;
 import java.util.logging.*;
 import java.io.*;
@@ -119,6 +122,10 @@ public class CRF4 extends Transducer implements Serializable
 	protected boolean someTrainingDone = false;
   private int transductionType = 0;
 	ArrayList featureInducers = new ArrayList();
+	// The number of threads among which the training instances are divided; see setTrainingThreads()
+	private transient int trainingThreads = 1;
+	// Where train() saves its progress, and whether it resumes from it; see setCheckpoint()
+	private transient CRF4Checkpoint checkpoint = null;
 
 	// xxx temporary hack.
   //  This is quite useful to have, though!! -cas
@@ -210,6 +217,31 @@ public class CRF4 extends Transducer implements Serializable
    */
   public void setUseSomeUnsupportedTrick (boolean b) { useSomeUnsupportedTrick = b; }
 
+  /** Sets the number of threads which compute the value and gradient during training.
+   * The training instances are divided into as many contiguous shards, each of which adds
+   * to its own expectations; these are then added together in the order of the shards, so
+   * the result does not depend on which thread finishes first. It differs from training
+   * with one thread only by floating-point rounding. Ignored when the forward-backward
+   * beam is used, and by subclasses, which compute the expectations their own way.
+   *
+   * @param n The number of threads, 1 (the default) to train in the calling thread only
+   */
+  public void setTrainingThreads (int n)
+  {
+    if (n < 1)
+      throw new IllegalArgumentException ("Number of training threads must be at least 1: "+n);
+    trainingThreads = n;
+  }
+
+  public int getTrainingThreads () { return trainingThreads < 1 ? 1 : trainingThreads; }
+
+  /** Sets where and how often train() saves the parameters and the state of L-BFGS, and
+   * whether it resumes from what was saved; null, the default, to save nothing.  Training
+   * with feature induction cannot be checkpointed. */
+  public void setCheckpoint (CRF4Checkpoint checkpoint) { this.checkpoint = checkpoint; }
+
+  public CRF4Checkpoint getCheckpoint () { return checkpoint; }
+
     // Types of transuction support
     public static final int VITERBI = 0;
     // CPAL   - some new beam based "transducers"
@@ -1244,26 +1276,58 @@ public class CRF4 extends Transducer implements Serializable
 
 	public boolean train (InstanceList ilist, InstanceList validation, InstanceList testing,
 												TransducerEvaluator eval, int numIterations)
+	{
+		CRF4Checkpoint.Progress progress = readCheckpoint (1);
+		if (progress != null && (progress.finished || checkpoint.isFinish()))
+			return finishFromCheckpoint (progress);
+		return train (ilist, validation, testing, eval, numIterations, 1, 0, 0, progress);
+	}
+
+	// Round round of numRounds of training, which follows totalIteration iterations of the
+	// previous rounds; continues from progress unless it is null
+	private boolean train (InstanceList ilist, InstanceList validation, InstanceList testing,
+												 TransducerEvaluator eval, int numIterations,
+												 int numRounds, int round, int totalIteration, CRF4Checkpoint.Progress progress)
 	{
 		if (numIterations <= 0)
 			return false;
 		assert (ilist.size() > 0);
 
-		if (useSparseWeights) {
-			setWeightsDimensionAsIn (ilist);			 
+		//Maximizer.ByGradient minimizer = new ConjugateGradient (0.001);
+		LimitedMemoryBFGS maximizer = new LimitedMemoryBFGS();
+		MaximizableCRF mc;
+		double[] startParameters = null;
+		int startIteration = 0;
+		if (progress == null) {
+			if (useSparseWeights) {
+				setWeightsDimensionAsIn (ilist);			 
+			} else {
+				setWeightsDimensionDensely ();
+			}
+			if (checkpoint != null)
+				startParameters = CRF4Checkpoint.getParameters (this);
+			mc = new MaximizableCRF (ilist, this);
 		} else {
-			setWeightsDimensionDensely ();
+			// The constraints are gathered with the parameters at the start of the round, as they were
+			progress.restoreStart (this);
+			startParameters = progress.startParameters;
+			mc = new MaximizableCRF (ilist, this);
+			mc.setParameters (progress.parameters);
+			try {
+				progress.restoreMaximizer (maximizer, mc);
+			} catch (IOException e) {
+				throw new IllegalStateException ("Cannot read checkpoint "+checkpoint.getFile()+": "+e);
+			}
+			startIteration = progress.iteration;
+			logger.info ("CRF resuming training after "+startIteration+" iterations");
 		}
-		
-		MaximizableCRF mc = new MaximizableCRF (ilist, this);
-		//Maximizer.ByGradient minimizer = new ConjugateGradient (0.001);
-		Maximizer.ByGradient maximizer = new LimitedMemoryBFGS();
 
 		int i;
 		boolean continueTraining = true;
 		boolean converged = false;
 		logger.info ("CRF about to train with "+numIterations+" iterations");
-		for (i = 0; i < numIterations; i++) {
+		for (i = startIteration; i < numIterations; i++) {
+			long iterationStartingTime = System.currentTimeMillis();
 			try {
                 // CPAL - added this to alter forward backward beam parameters based on iteration
                 setCurIter(i);  // CPAL - this resets the tctIter as well
@@ -1277,12 +1341,15 @@ public class CRF4 extends Transducer implements Serializable
                 //}
                 // CPAL - done
 
-				logger.info ("CRF finished one iteration of maximizer, i="+i);
+				logger.info ("CRF finished one iteration of maximizer, i="+i+", in "
+										 +(System.currentTimeMillis() - iterationStartingTime)+" milliseconds");
 			} catch (IllegalArgumentException e) {
 				e.printStackTrace();
 				logger.info ("Catching exception; saying converged.");
 				converged = true;
 			}
+			if (checkpoint != null && !converged && (i+1) % checkpoint.getInterval() == 0)
+				writeCheckpoint (numRounds, round, i+1, totalIteration+i+1, false, false, startParameters, maximizer);
 			if (eval != null) {
 				continueTraining = eval.evaluate (this, (converged || i == numIterations-1), i,
 																					converged, mc.getValue(), ilist, validation, testing);
@@ -1294,6 +1361,10 @@ public class CRF4 extends Transducer implements Serializable
 				break;
 			}
 		}
+		if (checkpoint != null)
+			writeCheckpoint (numRounds, round, Math.min (i+1, numIterations), totalIteration+Math.min (i+1, numIterations),
+											 true, converged, null, null);
+		mc.shutdownThreads ();
 		logger.info ("About to setTrainable(false)");
 		// Free the memory of the expectations and constraints
 		setTrainable (false);
@@ -1306,8 +1377,26 @@ public class CRF4 extends Transducer implements Serializable
 												int numIterationsPerProportion,
 												double[] trainingProportions)
 	{
+		// Each proportion is a round of training, and the whole data the last
+		int numRounds = trainingProportions.length + 1;
+		int firstRound = 0;
+		CRF4Checkpoint.Progress progress = readCheckpoint (numRounds);
+		if (progress != null) {
+			if (checkpoint.isFinish() || (progress.finished && progress.round == numRounds - 1))
+				return finishFromCheckpoint (progress);
+			firstRound = progress.round;
+			if (progress.finished) {
+				finishFromCheckpoint (progress);
+				firstRound++;
+				progress = null;
+			}
+		}
 		int trainingIteration = 0;
 		for (int i = 0; i < trainingProportions.length; i++) {
+			if (i < firstRound) {
+				trainingIteration += numIterationsPerProportion;
+				continue;
+			}
 			// Train the CRF
 			InstanceList theTrainingData = training;
 			if (trainingProportions != null && i < trainingProportions.length) {
@@ -1316,13 +1405,57 @@ public class CRF4 extends Transducer implements Serializable
 																															new double[] {trainingProportions[i],	1-trainingProportions[i]});
 				theTrainingData = sampledTrainingData[0];
 			}
-			boolean converged = this.train (theTrainingData, validation, testing, eval, numIterationsPerProportion);
+			boolean converged = this.train (theTrainingData, validation, testing, eval, numIterationsPerProportion,
+																			numRounds, i, trainingIteration, progress);
+			progress = null;
 			trainingIteration += numIterationsPerProportion;
 		}
 		logger.info ("Training on 100% of the data this round, for "+
 												(numIterations-trainingIteration)+" iterations.");
 		return this.train (training, validation, testing,
-											 eval, numIterations - trainingIteration);
+											 eval, numIterations - trainingIteration, numRounds, numRounds - 1, trainingIteration, progress);
+	}
+
+	// The progress saved in the checkpoint to resume from, or null to start afresh
+	private CRF4Checkpoint.Progress readCheckpoint (int numRounds)
+	{
+		if (checkpoint == null || !(checkpoint.isResume() || checkpoint.isFinish()))
+			return null;
+		CRF4Checkpoint.Progress progress;
+		try {
+			progress = checkpoint.read (this, numRounds);
+		} catch (IOException e) {
+			throw new IllegalStateException ("Cannot read checkpoint "+checkpoint.getFile()+": "+e);
+		}
+		if (progress == null && checkpoint.isFinish())
+			throw new IllegalStateException ("No checkpoint "+checkpoint.getFile()+" to finish training with");
+		return progress;
+	}
+
+	// Takes the parameters of the checkpoint, and returns whether training had converged
+	private boolean finishFromCheckpoint (CRF4Checkpoint.Progress progress)
+	{
+		progress.restore (this);
+		try {
+			progress.close ();
+		} catch (IOException e) {
+			// Nothing more is read
+		}
+		logger.info ("CRF has the parameters of the checkpoint after "+progress.totalIteration+" iterations");
+		return progress.finished && progress.converged;
+	}
+
+	// Failing to write a checkpoint does not stop training, which can be checkpointed later
+	private void writeCheckpoint (int numRounds, int round, int iteration, int totalIteration,
+																boolean finished, boolean converged, double[] startParameters,
+																LimitedMemoryBFGS maximizer)
+	{
+		try {
+			checkpoint.write (this, numRounds, round, iteration, totalIteration, finished, converged,
+												startParameters, maximizer);
+		} catch (IOException e) {
+			logger.warning ("Cannot write checkpoint "+checkpoint.getFile()+": "+e);
+		}
 	}
 
 	public boolean trainWithFeatureInduction (InstanceList trainingData,
@@ -1353,6 +1486,8 @@ public class CRF4 extends Transducer implements Serializable
 																						double[] trainingProportions,
 																						String gainName)
 	{
+		if (checkpoint != null)
+			throw new IllegalStateException ("Training with feature induction cannot be checkpointed");
 		int trainingIteration = 0;
 		int numLabels = outputAlphabet.size();
 
@@ -1850,6 +1985,64 @@ public class CRF4 extends Transducer implements Serializable
     return new ViterbiPath (inputSequence, null, keepLattice);
   }
 
+  /**
+   * Builds the structures that inference otherwise creates lazily: the
+   * location index of each weights vector and the destination states of
+   * each state.  Afterwards viterbiPath() only reads this CRF, so a trained
+   * CRF can be shared by several decoding threads without locking.
+   */
+  public void prepareForConcurrentInference ()
+  {
+    for (int i = 0; i < weights.length; i++)
+      if (weights[i] instanceof IndexedSparseVector)
+        ((IndexedSparseVector) weights[i]).indexVector ();
+    for (int i = 0; i < numStates (); i++) {
+      State s = (State) getState (i);
+      for (int j = 0; j < s.numDestinations (); j++)
+        s.getDestinationState (j);
+    }
+  }
+
+
+  // The expectations added to by one CRF4ForwardBackward; has the same locations as the
+  // CRF's expectations
+  static class Expectations
+  {
+    double[] initialExpectations, finalExpectations;
+    SparseVector[] expectations;
+    double[] defaultExpectations;
+
+    Expectations (CRF4 crf)
+    {
+      initialExpectations = new double[crf.numStates()];
+      finalExpectations = new double[crf.numStates()];
+      expectations = new SparseVector[crf.weights.length];
+      for (int i = 0; i < expectations.length; i++)
+        expectations[i] = (SparseVector) crf.weights[i].cloneMatrixZeroed ();
+      defaultExpectations = new double[crf.weights.length];
+    }
+
+    // Whether these still have the locations of the CRF's expectations
+    boolean fits (CRF4 crf)
+    {
+      if (initialExpectations.length != crf.numStates() || expectations.length != crf.weights.length)
+        return false;
+      for (int i = 0; i < expectations.length; i++)
+        if (expectations[i].numLocations() != crf.weights[i].numLocations())
+          return false;
+      return true;
+    }
+
+    void clear ()
+    {
+      Arrays.fill (initialExpectations, 0);
+      Arrays.fill (finalExpectations, 0);
+      for (int i = 0; i < expectations.length; i++)
+        expectations[i].setAll (0.0);
+      Arrays.fill (defaultExpectations, 0);
+    }
+  }
+
 
   public class MaximizableCRF implements Maximizable.ByGradient, Serializable
 	{
@@ -1859,6 +2052,11 @@ public class CRF4 extends Transducer implements Serializable
 		BitSet infiniteValues = null;
 		int numParameters;
 		CRF4 crf;
+		// The transitions which the labels of each training instance allow, found by gatherConstraints()
+		// unless the value is computed in shards: for each input position, their number and then the
+		// source state, transition and destination state index of each.  They depend only on the
+		// instance and the states of the CRF.
+		transient int[][] labeledTransitions = null;
 
 		protected MaximizableCRF (InstanceList ilist, CRF4 crf)
 		{
@@ -1884,7 +2082,9 @@ public class CRF4 extends Transducer implements Serializable
 			// Set the contraints by running forward-backward with the *output
 			// label sequence provided*, thus restricting it to only those
 			// paths that agree with the label sequence.
+			long startingTime = System.currentTimeMillis();
 			gatheringConstraints = true;
+			labeledTransitions = (usesShards () ? null : new int[ilist.size()][]);
 			for (int i = 0; i < ilist.size(); i++) {
 				Instance instance = ilist.getInstance(i);
 				FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
@@ -1892,12 +2092,107 @@ public class CRF4 extends Transducer implements Serializable
 				//System.out.println ("Confidence-gathering forward-backward on instance "+i+" of "+ilist.size());
 				this.crf.forwardBackward (input, output, true);
 				//System.out.println ("Gathering constraints for Instance #"+i);
+				if (labeledTransitions != null)
+					labeledTransitions[i] = getLabeledTransitions (output);
 			}
 			gatheringConstraints = false;
+			logger.info ("Constraints gathered in "+(System.currentTimeMillis() - startingTime)+" milliseconds");
 			//System.out.println ("testing Value and Gradient");
       //TestMaximizable.testValueAndGradientCurrentParameters (this);
 		}
 
+		// The transitions which the labels allow from the initial states, in the order in which
+		// the forward pass of forwardBackward (input, output) takes them
+		private int[] getLabeledTransitions (FeatureSequence output)
+		{
+			int[] transitions = new int[16];
+			int length = 0;
+			boolean[] reached = new boolean[numStates()];
+			boolean[] nextReached = new boolean[numStates()];
+			for (int i = 0; i < numStates(); i++)
+				reached[i] = getState(i).getInitialCost() < INFINITE_COST;
+			for (int ip = 0; ip < output.size(); ip++) {
+				Object label = output.get(ip);
+				Arrays.fill (nextReached, false);
+				// Room for the count, which impossible labels leave at 0, and one transition
+				transitions = ensureCapacity (transitions, length + 4);
+				int countIndex = length++;
+				int count = 0;
+				for (int i = 0; i < numStates(); i++) {
+					if (!reached[i])
+						continue;
+					State s = (State) getState (i);
+					for (int t = 0; t < s.numDestinations(); t++) {
+						if (!label.equals (s.labels[t]))
+							continue;
+						transitions = ensureCapacity (transitions, length + 3);
+						int destination = s.getDestinationState(t).getIndex();
+						transitions[length++] = i;
+						transitions[length++] = t;
+						transitions[length++] = destination;
+						nextReached[destination] = true;
+						count++;
+					}
+				}
+				transitions[countIndex] = count;
+				boolean[] swap = reached;
+				reached = nextReached;
+				nextReached = swap;
+			}
+			int[] trimmed = new int[length];
+			System.arraycopy (transitions, 0, trimmed, 0, length);
+			return trimmed;
+		}
+
+		// transitions, or a longer copy if it is shorter than capacity
+		private int[] ensureCapacity (int[] transitions, int capacity)
+		{
+			if (capacity <= transitions.length)
+				return transitions;
+			int[] newTransitions = new int[Math.max (capacity, 2 * transitions.length)];
+			System.arraycopy (transitions, 0, newTransitions, 0, transitions.length);
+			return newTransitions;
+		}
+
+		// The cost of the labels of instance ii, which is that of the lattice of
+		// forwardBackward (input, output), found with its forward pass only
+		private double getLabeledCost (int ii, FeatureVectorSequence input)
+		{
+			int[] transitions = labeledTransitions[ii];
+			double[] alphas = new double[numStates()];
+			double[] nextAlphas = new double[numStates()];
+			for (int i = 0; i < numStates(); i++)
+				alphas[i] = getState(i).getInitialCost();
+			int k = 0;
+			for (int ip = 0; ip < input.size(); ip++) {
+				FeatureVector fv = input.getFeatureVector(ip);
+				Arrays.fill (nextAlphas, INFINITE_COST);
+				int count = transitions[k++];
+				for (int n = 0; n < count; n++, k += 3) {
+					int i = transitions[k];
+					if (alphas[i] == INFINITE_COST)
+						continue;
+					State s = (State) getState (i);
+					int[] weightsIndices = s.weightsIndices[transitions[k+1]];
+					// As TransitionIterator computes it
+					double transitionCost = 0;
+					for (int wi = 0; wi < weightsIndices.length; wi++)
+						transitionCost -= (weights[weightsIndices[wi]].dotProduct (fv)
+															 + defaultWeights[weightsIndices[wi]]);
+					int j = transitions[k+2];
+					nextAlphas[j] = sumNegLogProb (nextAlphas[j], alphas[i] + transitionCost);
+				}
+				double[] swap = alphas;
+				alphas = nextAlphas;
+				nextAlphas = swap;
+			}
+			double cost = INFINITE_COST;
+			for (int i = 0; i < numStates(); i++)
+				if (alphas[i] != INFINITE_COST)
+					cost = sumNegLogProb (cost, alphas[i] + getState(i).getFinalCost());
+			return cost;
+		}
+
         // CPAL - added this to alter parameters of forward backward beam during optimization
         public void setCurIter(int curIter){
             this.crf.setCurIter(curIter);
@@ -2011,8 +2306,6 @@ public class CRF4 extends Transducer implements Serializable
 				infiniteValues = new BitSet ();
 				initializingInfiniteValues = true;
 			}
-			// Calculate the value of each instance, and also fill in expectations
-			double unlabeledCost, labeledCost, cost;
 
             // CPAL - added this to compute some stats for beam forward backward
             double meanStatesExpl[];
@@ -2021,47 +2314,12 @@ public class CRF4 extends Transducer implements Serializable
             tctIter++;
             // CPAL - done
 
-			for (int ii = 0; ii < trainingSet.size(); ii++) {
-				Instance instance = trainingSet.getInstance(ii);
-				FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
-				FeatureSequence output = (FeatureSequence) instance.getTarget();
-				labeledCost = forwardBackward (input, output, false).getCost();
-				//System.out.println ("labeledCost = "+labeledCost);
-				if (Double.isInfinite (labeledCost))
-					logger.warning (instance.getName().toString() + " has infinite labeled cost.\n"
-													+(instance.getSource() != null ? instance.getSource() : ""));
-
-                // CPAL - modified for beam forwardBackward
-                // unlabeledCost = forwardBackward (input, true).getCost ();
-                if (UseForwardBackwardBeam == true) {
-                    unlabeledCost = forwardBackwardBeam (input, true).getCost ();
-                    meanStatesExpl[ii] = MatrixOps.mean(getNstatesExpl());
-                } else {
-                    unlabeledCost = forwardBackward (input, true).getCost ();
-                }
-                // CPAL - done modified for beam forwardBackward
-
-				//System.out.println ("unlabeledCost = "+unlabeledCost);
-
-				if (Double.isInfinite (unlabeledCost))
-					logger.warning (instance.getName().toString() + " has infinite unlabeled cost.\n"
-													+(instance.getSource() != null ? instance.getSource() : ""));
-				// Here cost is -log(conditional probability correct label sequence)
-				cost = labeledCost - unlabeledCost;
-				//System.out.println ("Instance "+ii+" CRF.MaximizableCRF.getCost = "+cost);
-				if (Double.isInfinite(cost)) {
-					logger.warning (instance.getName().toString() + " has infinite cost; skipping.");
-					if (initializingInfiniteValues)
-						infiniteValues.set (ii);
-					else if (!infiniteValues.get(ii))
-						throw new IllegalStateException ("Instance i used to have non-infinite value, "
-																						 +"but now it has infinite value.");
-					continue;
-				} else {
-					// Negate here because costs are -log probabilities, and we want to return a log probability
-					value -= cost;
-				}
-			}
+			if (usesShards ())
+				return getExpectationValueInShards (initializingInfiniteValues);
+
+			// Calculate the value of each instance, and also fill in expectations
+			for (int ii = 0; ii < trainingSet.size(); ii++)
+				value += getInstanceValue (ii, initializingInfiniteValues, infiniteValues, meanStatesExpl);
 
             // CPAL - output some beam stats
             if (UseForwardBackwardBeam == true) {
@@ -2073,6 +2331,172 @@ public class CRF4 extends Transducer implements Serializable
 			return value;
 		}
 
+		// log probability of the labels of training instance ii, or 0 if it is infinite, and add
+		// to the expectations.  While initializing, instances with infinite value are set in newInfiniteValues.
+		private double getInstanceValue (int ii, boolean initializingInfiniteValues, BitSet newInfiniteValues,
+																		 double[] meanStatesExpl)
+		{
+			double unlabeledCost, labeledCost;
+			Instance instance = trainingSet.getInstance(ii);
+			FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
+			FeatureSequence output = (FeatureSequence) instance.getTarget();
+			if (labeledTransitions != null)
+				labeledCost = getLabeledCost (ii, input);
+			else
+				labeledCost = forwardBackward (input, output, false).getCost();
+
+            // CPAL - modified for beam forwardBackward
+            // unlabeledCost = forwardBackward (input, true).getCost ();
+            if (UseForwardBackwardBeam == true) {
+                unlabeledCost = forwardBackwardBeam (input, true).getCost ();
+                meanStatesExpl[ii] = MatrixOps.mean(getNstatesExpl());
+            } else {
+                unlabeledCost = forwardBackward (input, true).getCost ();
+            }
+            // CPAL - done modified for beam forwardBackward
+
+			return getInstanceValue (ii, labeledCost, unlabeledCost, initializingInfiniteValues, newInfiniteValues);
+		}
+
+		// log probability of the labels of training instance ii given the costs of its labeled and
+		// unlabeled lattices, or 0 if it is infinite
+		private double getInstanceValue (int ii, double labeledCost, double unlabeledCost,
+																		 boolean initializingInfiniteValues, BitSet newInfiniteValues)
+		{
+			Instance instance = trainingSet.getInstance(ii);
+			//System.out.println ("labeledCost = "+labeledCost);
+			if (Double.isInfinite (labeledCost))
+				logger.warning (instance.getName().toString() + " has infinite labeled cost.\n"
+												+(instance.getSource() != null ? instance.getSource() : ""));
+			//System.out.println ("unlabeledCost = "+unlabeledCost);
+			if (Double.isInfinite (unlabeledCost))
+				logger.warning (instance.getName().toString() + " has infinite unlabeled cost.\n"
+												+(instance.getSource() != null ? instance.getSource() : ""));
+			// Here cost is -log(conditional probability correct label sequence)
+			double cost = labeledCost - unlabeledCost;
+			//System.out.println ("Instance "+ii+" CRF.MaximizableCRF.getCost = "+cost);
+			if (Double.isInfinite(cost)) {
+				logger.warning (instance.getName().toString() + " has infinite cost; skipping.");
+				if (initializingInfiniteValues)
+					newInfiniteValues.set (ii);
+				else if (!infiniteValues.get(ii))
+					throw new IllegalStateException ("Instance i used to have non-infinite value, "
+																					 +"but now it has infinite value.");
+				return 0;
+			}
+			// Negate here because costs are -log probabilities, and we want to return a log probability
+			return -cost;
+		}
+
+		// Whether getExpectationValue() computes the value in shards, which the beam and the
+		// subclasses, which may change forwardBackward(), do not
+		private boolean usesShards ()
+		{
+			return !UseForwardBackwardBeam && CRF4.this.getClass() == CRF4.class;
+		}
+
+		// getExpectationValue() with CRF4ForwardBackward, and the training instances divided among
+		// trainingThreads threads.  The calling thread computes the first shard.
+		private double getExpectationValueInShards (boolean initializingInfiniteValues)
+		{
+			// Lazily computed indices would otherwise be written by several threads
+			prepareForConcurrentInference ();
+			int numShards = Math.max (1, Math.min (getTrainingThreads(), trainingSet.size()));
+			if (shards == null || shards.length != numShards || !shards[0].fits (CRF4.this)) {
+				shards = new Shard[numShards];
+				for (int i = 0; i < numShards; i++)
+					shards[i] = new Shard ();
+			}
+			for (int i = 0; i < numShards; i++)
+				shards[i].reset (i * trainingSet.size() / numShards, (i + 1) * trainingSet.size() / numShards,
+												 initializingInfiniteValues);
+
+			if (numShards == 1)
+				shards[0].call ();
+			else {
+				if (executor == null || executorThreads != numShards - 1) {
+					shutdownThreads ();
+					executor = TrainingThreads.newExecutor (numShards - 1);
+					executorThreads = numShards - 1;
+				}
+				TrainingThreads.callInParallel (executor, shards);
+			}
+
+			// Add the shards in order, so that the sums do not depend on which thread finished first
+			double value = 0;
+			for (int i = 0; i < numShards; i++) {
+				Shard shard = shards[i];
+				value += shard.value;
+				for (int j = 0; j < numStates(); j++) {
+					State s = (State) getState (j);
+					s.initialExpectation += shard.initialExpectations[j];
+					s.finalExpectation += shard.finalExpectations[j];
+				}
+				for (int j = 0; j < weights.length; j++) {
+					SparseVector local = shard.expectations[j];
+					assert (local.numLocations() == expectations[j].numLocations());
+					for (int k = 0; k < local.numLocations(); k++)
+						expectations[j].setValueAtLocation (k, expectations[j].valueAtLocation(k) + local.valueAtLocation(k));
+					defaultExpectations[j] += shard.defaultExpectations[j];
+				}
+				if (initializingInfiniteValues)
+					infiniteValues.or (shard.newInfiniteValues);
+			}
+			return value;
+		}
+
+		// Stops the threads of the shards, which are started again if needed
+		void shutdownThreads ()
+		{
+			if (executor != null)
+				executor.shutdown ();
+			executor = null;
+		}
+
+		// The shards of getExpectationValueInShards(), kept between calls, and the threads which
+		// compute all but the first, kept until training ends
+		transient Shard[] shards;
+		transient ExecutorService executor;
+		transient int executorThreads;
+
+		// The value and expectations of the training instances from start to end - 1, which one
+		// thread computes
+		class Shard extends Expectations implements Callable<Object>
+		{
+			int start, end;
+			boolean initializingInfiniteValues;
+			double value;
+			BitSet newInfiniteValues = new BitSet ();
+			CRF4ForwardBackward lattice = new CRF4ForwardBackward (CRF4.this);
+
+			Shard ()
+			{
+				super (CRF4.this);
+			}
+
+			void reset (int start, int end, boolean initializingInfiniteValues)
+			{
+				this.start = start;
+				this.end = end;
+				this.initializingInfiniteValues = initializingInfiniteValues;
+				value = 0;
+				newInfiniteValues.clear ();
+				clear ();
+			}
+
+			public Object call ()
+			{
+				for (int ii = start; ii < end; ii++) {
+					Instance instance = trainingSet.getInstance(ii);
+					lattice.setInput ((FeatureVectorSequence) instance.getData());
+					double labeledCost = lattice.getLabeledCost ((Sequence) instance.getTarget());
+					double unlabeledCost = lattice.addExpectations (this);
+					value += getInstanceValue (ii, labeledCost, unlabeledCost, initializingInfiniteValues, newInfiniteValues);
+				}
+				return null;
+			}
+		}
+
 		// log probability of the training sequence labels and the prior over parameters
 		public double getValue ()
 		{
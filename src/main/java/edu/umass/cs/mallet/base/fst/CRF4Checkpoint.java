@@ -0,0 +1,347 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Where and how often {@link CRF4#train} saves its progress, and whether it
+	 continues from the progress saved.  A checkpoint holds the parameters of
+	 the CRF and the state of {@link LimitedMemoryBFGS}, so training resumed
+	 from it takes the same steps as if it had not stopped.  It is written
+	 every <code>interval</code> iterations and at the end of each round of
+	 training on a proportion of the data, in a compact binary form: the
+	 layout of the weights as ints and the rest as doubles.
+	 <p>
+	 Training can only be resumed on the same training data, put through the
+	 same pipes into a CRF with the same states, with the same arguments to
+	 <code>train</code>.  The checkpoints of the iterations can be kept, so
+	 that training can be finished with the parameters of any of them, such
+	 as the one which does best on held-out data.
+	 <p>
+	 The checkpoint of another CRF trained alongside, made by
+	 {@link #withSuffix}, is in the file followed by the suffix, and so is each
+	 of its kept checkpoints: that of <code>file-n</code> is
+	 <code>file-n.suffix</code>.  A checkpoint on a kept file thus finds the
+	 kept files of the other CRFs through the same suffixes.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import edu.umass.cs.mallet.base.maximize.LimitedMemoryBFGS;
+import edu.umass.cs.mallet.base.types.IndexedSparseVector;
+import edu.umass.cs.mallet.base.types.SparseVector;
+import edu.umass.cs.mallet.base.util.MalletLogger;
+
+public class CRF4Checkpoint
+{
+	private static Logger logger = MalletLogger.getLogger(CRF4Checkpoint.class.getName());
+
+	private static final int MAGIC = 0x43524643;	// "CRFC"
+	private static final int CURRENT_VERSION = 1;
+
+	File file;
+	// The file without the suffixes given by withSuffix(), which follow the iteration in kept files
+	File baseFile;
+	String suffix = "";
+	int interval;
+	boolean keepAll = false;
+	boolean resume = false;
+	boolean finish = false;
+
+	/** Checkpoints to <code>file</code>, which is replaced every <code>interval</code>
+	 * iterations of L-BFGS. */
+	public CRF4Checkpoint (File file, int interval)
+	{
+		if (interval < 1)
+			throw new IllegalArgumentException ("Checkpoint interval must be at least 1: "+interval);
+		this.file = file;
+		this.baseFile = file;
+		this.interval = interval;
+	}
+
+	public File getFile () { return file; }
+
+	public int getInterval () { return interval; }
+
+	/** Sets whether each checkpoint is also kept, in the file named after the checkpoint
+	 * file by {@link #getKeptFile}. */
+	public void setKeepAll (boolean keepAll) { this.keepAll = keepAll; }
+
+	public boolean isKeepAll () { return keepAll; }
+
+	/** Sets whether training continues from the checkpoint file, if it exists. */
+	public void setResume (boolean resume) { this.resume = resume; }
+
+	public boolean isResume () { return resume; }
+
+	/** Sets whether training stops at once with the parameters of the checkpoint file,
+	 * instead of continuing from it. */
+	public void setFinish (boolean finish) { this.finish = finish; }
+
+	public boolean isFinish () { return finish; }
+
+	/** Returns the file in which the checkpoint after <code>iteration</code> iterations of
+	 * all rounds is kept: the checkpoint file followed by "-" and the iteration, before
+	 * the suffixes given by {@link #withSuffix}. */
+	public File getKeptFile (int iteration)
+	{
+		return new File (baseFile.getPath() + "-" + iteration + suffix);
+	}
+
+	/** Returns these settings for the checkpoint file named after this one with <code>suffix</code>,
+	 * for another CRF trained alongside. */
+	public CRF4Checkpoint withSuffix (String suffix)
+	{
+		CRF4Checkpoint checkpoint = new CRF4Checkpoint (new File (file.getPath() + suffix), interval);
+		checkpoint.baseFile = baseFile;
+		checkpoint.suffix = this.suffix + suffix;
+		checkpoint.keepAll = keepAll;
+		checkpoint.resume = resume;
+		checkpoint.finish = finish;
+		return checkpoint;
+	}
+
+	// The progress read from a checkpoint file
+	static class Progress
+	{
+		int numRounds, round, iteration, totalIteration;
+		// Whether the round is over, and whether it converged
+		boolean finished, converged;
+		int[][] indices;
+		double[] startParameters, parameters;
+		// Left unread until the maximizer is set up again
+		DataInputStream maximizerState;
+
+		// Sets the layout of the weights of the CRF and its parameters at the start of the round
+		void restoreStart (CRF4 crf)
+		{
+			restoreLayout (crf);
+			setParameters (crf, startParameters);
+		}
+
+		// Sets the layout of the weights of the CRF and its parameters at the checkpoint
+		void restore (CRF4 crf)
+		{
+			restoreLayout (crf);
+			setParameters (crf, parameters);
+		}
+
+		void restoreLayout (CRF4 crf)
+		{
+			crf.setTrainable (false);
+			if (!crf.useSparseWeights)
+				crf.setWeightsDimensionDensely ();
+			for (int i = 0; i < crf.weights.length; i++) {
+				int numLocations = indices[i].length;
+				if (crf.useSparseWeights)
+					crf.weights[i] = new IndexedSparseVector (indices[i], new double[numLocations],
+																										numLocations, numLocations, false, false, false);
+				else if (crf.weights[i].numLocations() != numLocations)
+					throw new IllegalStateException ("Checkpoint has "+numLocations+" weights in group "+i
+																					 +", not "+crf.weights[i].numLocations());
+			}
+			crf.someTrainingDone = true;
+		}
+
+		void restoreMaximizer (LimitedMemoryBFGS maximizer, CRF4.MaximizableCRF mc) throws IOException
+		{
+			try {
+				maximizer.readState (maximizerState, mc);
+			} finally {
+				close ();
+			}
+		}
+
+		void close () throws IOException
+		{
+			if (maximizerState != null)
+				maximizerState.close ();
+			maximizerState = null;
+		}
+	}
+
+	/** Writes the progress of round <code>round</code> of <code>numRounds</code> after
+	 * <code>iteration</code> of its iterations, and <code>totalIteration</code> of all rounds. */
+	void write (CRF4 crf, int numRounds, int round, int iteration, int totalIteration,
+							boolean finished, boolean converged, double[] startParameters, LimitedMemoryBFGS maximizer)
+		throws IOException
+	{
+		long startingTime = System.currentTimeMillis();
+		File temporary = new File (file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (temporary), 1 << 16));
+		try {
+			out.writeInt (MAGIC);
+			out.writeInt (CURRENT_VERSION);
+			out.writeInt (crf.numStates());
+			out.writeInt (crf.weights.length);
+			out.writeInt (crf.getInputAlphabet().size());
+			out.writeInt (numRounds);
+			out.writeInt (round);
+			out.writeInt (iteration);
+			out.writeInt (totalIteration);
+			out.writeBoolean (finished);
+			out.writeBoolean (converged);
+			for (int i = 0; i < crf.weights.length; i++) {
+				SparseVector weights = crf.weights[i];
+				out.writeInt (weights.numLocations());
+				for (int j = 0; j < weights.numLocations(); j++)
+					out.writeInt (weights.indexAtLocation(j));
+			}
+			double[] parameters = getParameters (crf);
+			out.writeInt (parameters.length);
+			writeArray (out, parameters);
+			if (!finished) {
+				writeArray (out, startParameters);
+				maximizer.writeState (out);
+			}
+		} finally {
+			out.close ();
+		}
+		// Replaces the previous checkpoint only once this one is complete
+		if (!temporary.renameTo (file)) {
+			file.delete ();
+			if (!temporary.renameTo (file))
+				throw new IOException ("Cannot rename "+temporary+" to "+file);
+		}
+		if (keepAll)
+			copy (file, getKeptFile (totalIteration));
+		logger.info ("CRF checkpoint written to "+file+" after "+totalIteration+" iterations, in "
+								 +(System.currentTimeMillis() - startingTime)+" milliseconds");
+	}
+
+	/** Returns the progress saved in the checkpoint file for a CRF like <code>crf</code> trained
+	 * in <code>numRounds</code> rounds, or null if there is no checkpoint file. */
+	Progress read (CRF4 crf, int numRounds) throws IOException
+	{
+		if (!file.exists ())
+			return null;
+		DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (file), 1 << 16));
+		Progress progress = new Progress ();
+		try {
+			if (in.readInt () != MAGIC)
+				throw new IOException (file+" is not a CRF checkpoint");
+			int version = in.readInt ();
+			if (version != CURRENT_VERSION)
+				throw new IOException ("Unknown CRF checkpoint version "+version+" in "+file);
+			int numStates = in.readInt ();
+			int numWeights = in.readInt ();
+			int numFeatures = in.readInt ();
+			progress.numRounds = in.readInt ();
+			if (numStates != crf.numStates() || numWeights != crf.weights.length
+					|| numFeatures != crf.getInputAlphabet().size() || progress.numRounds != numRounds)
+				throw new IllegalStateException ("Checkpoint "+file+" is of a CRF with "+numStates+" states, "
+																				 +numWeights+" weights and "+numFeatures+" features trained in "
+																				 +progress.numRounds+" rounds, not "+crf.numStates()+", "
+																				 +crf.weights.length+", "+crf.getInputAlphabet().size()+" and "
+																				 +numRounds);
+			progress.round = in.readInt ();
+			progress.iteration = in.readInt ();
+			progress.totalIteration = in.readInt ();
+			progress.finished = in.readBoolean ();
+			progress.converged = in.readBoolean ();
+			progress.indices = new int[numWeights][];
+			for (int i = 0; i < numWeights; i++) {
+				progress.indices[i] = new int[in.readInt ()];
+				for (int j = 0; j < progress.indices[i].length; j++)
+					progress.indices[i][j] = in.readInt ();
+			}
+			int numParameters = in.readInt ();
+			progress.parameters = readArray (in, numParameters);
+			if (!progress.finished) {
+				progress.startParameters = readArray (in, numParameters);
+				progress.maximizerState = in;
+				in = null;
+			}
+		} finally {
+			if (in != null)
+				in.close ();
+		}
+		logger.info ("CRF checkpoint read from "+file+", after "+progress.totalIteration+" iterations");
+		return progress;
+	}
+
+	// The parameters of the CRF in the order of CRF4.MaximizableCRF
+	static double[] getParameters (CRF4 crf)
+	{
+		int numParameters = 2 * crf.numStates() + crf.weights.length;
+		for (int i = 0; i < crf.weights.length; i++)
+			numParameters += crf.weights[i].numLocations();
+		double[] parameters = new double[numParameters];
+		int pi = 0;
+		for (int i = 0; i < crf.numStates(); i++) {
+			CRF4.State s = (CRF4.State) crf.getState (i);
+			parameters[pi++] = -s.initialCost;
+			parameters[pi++] = -s.finalCost;
+		}
+		for (int i = 0; i < crf.weights.length; i++) {
+			parameters[pi++] = crf.defaultWeights[i];
+			for (int j = 0; j < crf.weights[i].numLocations(); j++)
+				parameters[pi++] = crf.weights[i].valueAtLocation (j);
+		}
+		return parameters;
+	}
+
+	static void setParameters (CRF4 crf, double[] parameters)
+	{
+		int pi = 0;
+		for (int i = 0; i < crf.numStates(); i++) {
+			CRF4.State s = (CRF4.State) crf.getState (i);
+			s.initialCost = -parameters[pi++];
+			s.finalCost = -parameters[pi++];
+		}
+		for (int i = 0; i < crf.weights.length; i++) {
+			crf.defaultWeights[i] = parameters[pi++];
+			for (int j = 0; j < crf.weights[i].numLocations(); j++)
+				crf.weights[i].setValueAtLocation (j, parameters[pi++]);
+		}
+		if (pi != parameters.length)
+			throw new IllegalStateException ("Checkpoint has "+parameters.length+" parameters, not "+pi);
+	}
+
+	private static void writeArray (DataOutputStream out, double[] a) throws IOException
+	{
+		for (int i = 0; i < a.length; i++)
+			out.writeDouble (a[i]);
+	}
+
+	private static double[] readArray (DataInputStream in, int length) throws IOException
+	{
+		double[] a = new double[length];
+		for (int i = 0; i < length; i++)
+			a[i] = in.readDouble ();
+		return a;
+	}
+
+	private static void copy (File from, File to) throws IOException
+	{
+		FileInputStream in = new FileInputStream (from);
+		try {
+			FileOutputStream out = new FileOutputStream (to);
+			try {
+				byte[] buffer = new byte[1 << 16];
+				for (int read; (read = in.read (buffer)) > 0; )
+					out.write (buffer, 0, read);
+			} finally {
+				out.close ();
+			}
+		} finally {
+			in.close ();
+		}
+	}
+
+}
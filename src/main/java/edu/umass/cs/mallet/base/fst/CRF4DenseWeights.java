@@ -0,0 +1,229 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 The weights of a trained {@link CRF4}, compiled into a feature-major
+	 layout for inference.  Each input feature which has a weight in any
+	 weights group gets a contiguous block holding its weight in every
+	 group, so scoring a token against all the groups is one pass over
+	 its features, adding one block per feature.  The scores are
+	 identical to <code>weights[i].dotProduct(fv) + defaultWeights[i]</code>,
+	 since each group's sum is accumulated in the same order.
+	 <p>
+	 The weights are copied, so later changes to the CRF are not seen.
+	 They may be written with {@link #write} and read back from a
+	 {@link ByteBuffer} without copying, so processes which map the same
+	 file share one copy of them through the page cache.  Instances are
+	 not modified after construction and may be shared between threads.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.IndexedSparseVector;
+import edu.umass.cs.mallet.base.types.SparseVector;
+
+public class CRF4DenseWeights
+{
+	// Header: number of groups, features and blocks, unused, then the sparse size
+	private static final int HEADER_BYTES = 24;
+
+	int numGroups;
+	int numFeatures;
+	int numValues;
+	// Start of each feature's block in values, or -1 if it has no weights
+	int[] blockStart;
+	double[] values;
+	// The same, when read from a buffer; buffer reads are slower than array
+	// reads, so arrays are used when the weights are on the heap anyway
+	IntBuffer blockStartBuffer;
+	DoubleBuffer valuesBuffer;
+	double[] defaultWeights;
+	long sparseSizeInBytes;
+
+	public CRF4DenseWeights (CRF4 crf)
+	{
+		SparseVector[] weights = crf.weights;
+		numGroups = weights.length;
+		defaultWeights = crf.defaultWeights.clone ();
+		numFeatures = crf.getInputAlphabet ().size ();
+		for (int g = 0; g < numGroups; g++) {
+			// Other vector types may sum in a different order
+			if (!(weights[g] instanceof IndexedSparseVector))
+				throw new IllegalArgumentException ("Weights group "+g+" is a "+weights[g].getClass ().getName ()
+																						+", not an IndexedSparseVector");
+			for (int loc = 0; loc < weights[g].numLocations (); loc++)
+				numFeatures = Math.max (numFeatures, weights[g].indexAtLocation (loc) + 1);
+		}
+		blockStart = new int[numFeatures];
+		java.util.Arrays.fill (blockStart, -1);
+		int numBlocks = 0;
+		for (int g = 0; g < numGroups; g++) {
+			int numLocations = weights[g].numLocations ();
+			for (int loc = 0; loc < numLocations; loc++) {
+				int index = weights[g].indexAtLocation (loc);
+				if (blockStart[index] < 0)
+					blockStart[index] = numGroups * numBlocks++;
+			}
+			// Each location has an index array, a value array and an entry
+			// in the index-to-location array covering up to the largest index
+			sparseSizeInBytes += 12L * numLocations;
+			if (numLocations > 0)
+				sparseSizeInBytes += 4L * (weights[g].indexAtLocation (numLocations - 1) + 1);
+		}
+		numValues = numGroups * numBlocks;
+		values = new double[numValues];
+		for (int g = 0; g < numGroups; g++) {
+			for (int loc = 0; loc < weights[g].numLocations (); loc++) {
+				double value = weights[g].valueAtLocation (loc);
+				if (Double.isInfinite (value) || Double.isNaN (value))
+					throw new IllegalArgumentException ("Weights group "+g+" has the non-finite weight "+value);
+				values[blockStart[weights[g].indexAtLocation (loc)] + g] = value;
+			}
+		}
+	}
+
+	/** Reads weights written by {@link #write} from the bytes between the position
+	 * and the limit of <code>buffer</code>.  The buffer is not copied, and its
+	 * position is not changed. */
+	public CRF4DenseWeights (ByteBuffer buffer)
+	{
+		ByteBuffer b = buffer.slice ();
+		numGroups = b.getInt (0);
+		numFeatures = b.getInt (4);
+		int numBlocks = b.getInt (8);
+		if (numGroups < 0 || numFeatures < 0 || numBlocks < 0 || numBlocks > numFeatures)
+			throw new IllegalArgumentException ("Not a CRF4DenseWeights: "+numGroups+" groups, "+numBlocks+" of "+numFeatures+" features");
+		sparseSizeInBytes = b.getLong (16);
+		int position = HEADER_BYTES;
+		defaultWeights = new double[numGroups];
+		for (int g = 0; g < numGroups; g++)
+			defaultWeights[g] = b.getDouble (position + 8 * g);
+		position += 8 * numGroups;
+		b.position (position);
+		numValues = numGroups * numBlocks;
+		valuesBuffer = b.slice ().asDoubleBuffer ();
+		valuesBuffer.limit (numValues);
+		position += 8 * numValues;
+		b.position (position);
+		blockStartBuffer = b.slice ().asIntBuffer ();
+		blockStartBuffer.limit (numFeatures);
+	}
+
+	/** Writes these weights in the layout read by {@link #CRF4DenseWeights(ByteBuffer)}.
+	 * The values are 8-byte aligned if the output starts on an 8-byte boundary. */
+	public void write (DataOutputStream out) throws IOException
+	{
+		out.writeInt (numGroups);
+		out.writeInt (numFeatures);
+		out.writeInt (numValues / Math.max (numGroups, 1));
+		out.writeInt (0);
+		out.writeLong (sparseSizeInBytes);
+		for (int g = 0; g < numGroups; g++)
+			out.writeDouble (defaultWeights[g]);
+		for (int i = 0; i < numValues; i++)
+			out.writeDouble (values != null ? values[i] : valuesBuffer.get (i));
+		for (int i = 0; i < numFeatures; i++)
+			out.writeInt (blockStart != null ? blockStart[i] : blockStartBuffer.get (i));
+	}
+
+	public int numGroups () { return numGroups; }
+
+	/** Stores in <code>scores</code> the score of <code>fv</code> under each weights
+	 * group, including the default weight.  Features without weights, such as those
+	 * added to the alphabet after this was compiled, are ignored. */
+	public void score (FeatureVector fv, double[] scores)
+	{
+		java.util.Arrays.fill (scores, 0, numGroups, 0.0);
+		if (values == null) {
+			scoreFromBuffers (fv, scores);
+			return;
+		}
+		int numLocations = fv.numLocations ();
+		boolean binary = fv.isBinary ();
+		for (int loc = 0; loc < numLocations; loc++) {
+			int index = fv.indexAtLocation (loc);
+			if (index >= numFeatures)
+				continue;
+			int start = blockStart[index];
+			if (start < 0)
+				continue;
+			if (binary)
+				for (int g = 0; g < numGroups; g++)
+					scores[g] += values[start + g];
+			else {
+				double value = fv.valueAtLocation (loc);
+				for (int g = 0; g < numGroups; g++)
+					scores[g] += values[start + g] * value;
+			}
+		}
+		for (int g = 0; g < numGroups; g++)
+			scores[g] += defaultWeights[g];
+	}
+
+	// The same as score(), from the buffers
+	private void scoreFromBuffers (FeatureVector fv, double[] scores)
+	{
+		int numLocations = fv.numLocations ();
+		boolean binary = fv.isBinary ();
+		for (int loc = 0; loc < numLocations; loc++) {
+			int index = fv.indexAtLocation (loc);
+			if (index >= numFeatures)
+				continue;
+			int start = blockStartBuffer.get (index);
+			if (start < 0)
+				continue;
+			if (binary)
+				for (int g = 0; g < numGroups; g++)
+					scores[g] += valuesBuffer.get (start + g);
+			else {
+				double value = fv.valueAtLocation (loc);
+				for (int g = 0; g < numGroups; g++)
+					scores[g] += valuesBuffer.get (start + g) * value;
+			}
+		}
+		for (int g = 0; g < numGroups; g++)
+			scores[g] += defaultWeights[g];
+	}
+
+	/** Returns the approximate number of bytes used by the compiled weights. */
+	public long getSizeInBytes ()
+	{
+		return 4L * numFeatures + 8L * numValues + 8L * defaultWeights.length;
+	}
+
+	/** Returns whether the weights are kept outside the heap, as when they are read
+	 * from a mapped file. */
+	public boolean isDirect ()
+	{
+		return valuesBuffer != null && valuesBuffer.isDirect ();
+	}
+
+	/** Returns the approximate number of bytes used by the sparse weights these were
+	 * compiled from, including their index-to-location arrays. */
+	public long getSparseSizeInBytes ()
+	{
+		return sparseSizeInBytes + 8L * defaultWeights.length;
+	}
+
+	public String toString ()
+	{
+		return "CRF4DenseWeights: "+numGroups+" groups, "+(numValues / Math.max (numGroups, 1))
+			+" of "+numFeatures+" features with weights, "+getSizeInBytes ()+" bytes (sparse: "
+			+getSparseSizeInBytes ()+" bytes)";
+	}
+
+}
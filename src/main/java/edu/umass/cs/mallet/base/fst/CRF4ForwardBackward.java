@@ -0,0 +1,348 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Forward-backward specialized for training a {@link CRF4}.  The cost of
+	 each transition at each input position is computed once, by
+	 {@link #setInput}, and shared by the labeled pass, the forward pass and
+	 the backward pass; {@link Transducer.Lattice} computes it again in each
+	 of them.  The lattice is kept in flat arrays which are reused from one
+	 input to the next instead of a grid of node objects.
+	 <p>
+	 The forward and backward passes work with probabilities rather than
+	 costs: each position's transition costs are shifted by their minimum
+	 and exponentiated once, and the forward and backward vectors are
+	 rescaled to sum to one at each position, so no position can overflow
+	 or underflow as a whole and the inner loops are plain multiply-adds
+	 with no log or exp.  The labeled cost is summed in cost space in the
+	 same order as the lattice, so it is identical to
+	 <code>forwardBackward (input, output).getCost()</code>.
+	 <p>
+	 The structure of the CRF (states, transitions, labels) is copied when
+	 this is created, so it must not change afterwards; the weights and the
+	 initial and final costs are read by each call.  Not thread-safe: give
+	 each thread its own.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import java.util.Arrays;
+
+import edu.umass.cs.mallet.base.types.Alphabet;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Sequence;
+import edu.umass.cs.mallet.base.types.SparseVector;
+
+public class CRF4ForwardBackward
+{
+	private static final double INFINITE_COST = Transducer.INFINITE_COST;
+
+	CRF4 crf;
+	int numStates;
+	// The transitions of all the states, numbered from transitionStart[i]
+	// to transitionStart[i+1] - 1 for state i
+	int numTransitions;
+	int[] transitionStart;
+	int[] destination;
+	int[][] weightsIndices;
+	int[] labelIndex;
+	// The weights groups of any transition
+	int[] usedGroups;
+
+	FeatureVectorSequence input;
+	int inputLength;
+	// Indexed by position * numTransitions + transition; grown as needed
+	double[] costs = new double[0];
+	double[] factors = new double[0];
+	// Indexed by position * numStates + state, for positions 0 to inputLength
+	double[] alpha = new double[0];
+	double[] beta = new double[0];
+	// The label index at each position of the output of addExpectations()
+	int[] outputLabels = new int[0];
+	// Per state or transition, for the current position
+	double[] initialFactors, finalFactors, groupScores, alphaCosts, nextAlphaCosts, posteriors;
+
+	public CRF4ForwardBackward (CRF4 crf)
+	{
+		this.crf = crf;
+		numStates = crf.numStates ();
+		transitionStart = new int[numStates + 1];
+		for (int i = 0; i < numStates; i++)
+			transitionStart[i+1] = transitionStart[i] + ((CRF4.State) crf.getState (i)).numDestinations ();
+		numTransitions = transitionStart[numStates];
+		destination = new int[numTransitions];
+		weightsIndices = new int[numTransitions][];
+		labelIndex = new int[numTransitions];
+		Alphabet outputAlphabet = crf.getOutputAlphabet ();
+		boolean[] used = new boolean[crf.weights.length];
+		int numUsed = 0;
+		for (int i = 0; i < numStates; i++) {
+			CRF4.State s = (CRF4.State) crf.getState (i);
+			for (int t = 0; t < s.numDestinations (); t++) {
+				int k = transitionStart[i] + t;
+				destination[k] = s.getDestinationState (t).getIndex ();
+				weightsIndices[k] = s.weightsIndices[t];
+				labelIndex[k] = outputAlphabet.lookupIndex (s.labels[t], false);
+				if (labelIndex[k] < 0)
+					throw new IllegalStateException ("Label "+s.labels[t]+" is not in the output alphabet");
+				for (int wi = 0; wi < weightsIndices[k].length; wi++)
+					if (!used[weightsIndices[k][wi]]) {
+						used[weightsIndices[k][wi]] = true;
+						numUsed++;
+					}
+			}
+		}
+		usedGroups = new int[numUsed];
+		for (int g = 0, n = 0; g < used.length; g++)
+			if (used[g])
+				usedGroups[n++] = g;
+		initialFactors = new double[numStates];
+		finalFactors = new double[numStates];
+		groupScores = new double[crf.weights.length];
+		alphaCosts = new double[numStates];
+		nextAlphaCosts = new double[numStates];
+		posteriors = new double[numTransitions];
+	}
+
+	/** Computes the cost of each transition at each position of <code>input</code>
+	 * with the current weights.  The other methods are about this input. */
+	public void setInput (FeatureVectorSequence input)
+	{
+		this.input = input;
+		inputLength = input.size ();
+		ensureCapacity (inputLength);
+		for (int ip = 0; ip < inputLength; ip++) {
+			FeatureVector fv = input.getFeatureVector (ip);
+			for (int n = 0; n < usedGroups.length; n++) {
+				int g = usedGroups[n];
+				// include with implicit weight 1.0 the default feature
+				groupScores[g] = crf.weights[g].dotProduct (fv) + crf.defaultWeights[g];
+			}
+			// Summed in the same order as CRF4.TransitionIterator, so the
+			// costs are identical
+			int offset = ip * numTransitions;
+			for (int k = 0; k < numTransitions; k++) {
+				double cost = 0;
+				int[] swi = weightsIndices[k];
+				for (int wi = 0; wi < swi.length; wi++)
+					cost -= groupScores[swi[wi]];
+				costs[offset + k] = cost;
+			}
+		}
+	}
+
+	/** Returns the cost of the paths whose labels are <code>output</code>, as
+	 * <code>forwardBackward (input, output).getCost()</code> does. */
+	public double getLabeledCost (Sequence output)
+	{
+		assert (output.size () == inputLength);
+		Alphabet outputAlphabet = crf.getOutputAlphabet ();
+		for (int i = 0; i < numStates; i++)
+			alphaCosts[i] = crf.getState (i).getInitialCost ();
+		for (int ip = 0; ip < inputLength; ip++) {
+			int label = outputAlphabet.lookupIndex (output.get (ip), false);
+			Arrays.fill (nextAlphaCosts, INFINITE_COST);
+			int offset = ip * numTransitions;
+			for (int i = 0; i < numStates; i++) {
+				if (alphaCosts[i] == INFINITE_COST)
+					continue;
+				for (int k = transitionStart[i]; k < transitionStart[i+1]; k++)
+					if (labelIndex[k] == label && costs[offset + k] != INFINITE_COST) {
+						int j = destination[k];
+						nextAlphaCosts[j] = Transducer.sumNegLogProb (nextAlphaCosts[j], alphaCosts[i] + costs[offset + k]);
+					}
+			}
+			double[] swap = alphaCosts;
+			alphaCosts = nextAlphaCosts;
+			nextAlphaCosts = swap;
+		}
+		double cost = INFINITE_COST;
+		for (int i = 0; i < numStates; i++)
+			if (alphaCosts[i] != INFINITE_COST)
+				cost = Transducer.sumNegLogProb (cost, alphaCosts[i] + crf.getState (i).getFinalCost ());
+		return cost;
+	}
+
+	/** Returns the cost of all the paths, as <code>forwardBackward (input).getCost()</code>
+	 * does up to rounding. */
+	public double getCost ()
+	{
+		return forward (null);
+	}
+
+	/** Returns the cost of all the paths, and adds the expected count of each transition
+	 * and of each initial and final state to <code>expectations</code>, as
+	 * <code>forwardBackward (input, true)</code> adds them to the CRF's. */
+	double addExpectations (CRF4.Expectations expectations)
+	{
+		return addExpectations (expectations, null, 1.0);
+	}
+
+	/** Returns the cost of the paths whose labels are <code>output</code>, or of all the paths
+	 * if it is null, and adds the expected counts over those paths times <code>weight</code>
+	 * to <code>expectations</code>.  Nothing is added if the cost is infinite. */
+	double addExpectations (CRF4.Expectations expectations, Sequence output, double weight)
+	{
+		int[] labels = null;
+		if (output != null) {
+			assert (output.size () == inputLength);
+			Alphabet outputAlphabet = crf.getOutputAlphabet ();
+			labels = outputLabels;
+			for (int ip = 0; ip < inputLength; ip++)
+				labels[ip] = outputAlphabet.lookupIndex (output.get (ip), false);
+		}
+		double cost = forward (labels);
+		if (cost == INFINITE_COST)
+			return cost;
+
+		// Backward pass, rescaled like the forward pass; the expected count of a
+		// transition is proportional to alpha * factor * beta at its destination
+		int last = inputLength * numStates;
+		double sum = 0;
+		for (int i = 0; i < numStates; i++) {
+			beta[last + i] = finalFactors[i];
+			sum += finalFactors[i];
+		}
+		double normalizer = 0;
+		for (int i = 0; i < numStates; i++) {
+			beta[last + i] /= sum;
+			normalizer += alpha[last + i] * beta[last + i];
+		}
+		for (int i = 0; i < numStates; i++)
+			expectations.finalExpectations[i] += weight * alpha[last + i] * beta[last + i] / normalizer;
+
+		for (int ip = inputLength - 1; ip >= 0; ip--) {
+			int from = ip * numStates;
+			int to = from + numStates;
+			int offset = ip * numTransitions;
+			sum = 0;
+			normalizer = 0;
+			for (int i = 0; i < numStates; i++) {
+				double b = 0;
+				double a = alpha[from + i];
+				for (int k = transitionStart[i]; k < transitionStart[i+1]; k++) {
+					double p = factors[offset + k] * beta[to + destination[k]];
+					b += p;
+					posteriors[k] = a * p;
+					normalizer += a * p;
+				}
+				beta[from + i] = b;
+				sum += b;
+			}
+			FeatureVector fv = input.getFeatureVector (ip);
+			for (int k = 0; k < numTransitions; k++) {
+				if (posteriors[k] == 0)
+					continue;
+				double p = weight * posteriors[k] / normalizer;
+				int[] swi = weightsIndices[k];
+				for (int wi = 0; wi < swi.length; wi++) {
+					expectations.expectations[swi[wi]].plusEqualsSparse (fv, p);
+					expectations.defaultExpectations[swi[wi]] += p;
+				}
+			}
+			for (int i = 0; i < numStates; i++)
+				beta[from + i] /= sum;
+		}
+		normalizer = 0;
+		for (int i = 0; i < numStates; i++)
+			normalizer += alpha[i] * beta[i];
+		for (int i = 0; i < numStates; i++)
+			expectations.initialExpectations[i] += weight * alpha[i] * beta[i] / normalizer;
+		return cost;
+	}
+
+	// Fills in the factors and the rescaled forward vectors, and returns the cost of all the paths,
+	// or of those with the given label index at each position if labels is not null
+	private double forward (int[] labels)
+	{
+		double shift = INFINITE_COST;
+		for (int i = 0; i < numStates; i++)
+			shift = Math.min (shift, crf.getState (i).getInitialCost ());
+		if (shift == INFINITE_COST)
+			return INFINITE_COST;
+		double cost = shift;
+		double sum = 0;
+		for (int i = 0; i < numStates; i++) {
+			alpha[i] = Math.exp (shift - crf.getState (i).getInitialCost ());
+			sum += alpha[i];
+		}
+		for (int i = 0; i < numStates; i++)
+			alpha[i] /= sum;
+		cost -= Math.log (sum);
+
+		for (int ip = 0; ip < inputLength; ip++) {
+			int offset = ip * numTransitions;
+			int from = ip * numStates;
+			int to = from + numStates;
+			// Only the transitions from reachable states count, lest a cheap
+			// transition from an unreachable one underflow all the others
+			shift = INFINITE_COST;
+			for (int i = 0; i < numStates; i++)
+				if (alpha[from + i] != 0)
+					for (int k = transitionStart[i]; k < transitionStart[i+1]; k++)
+						if (labels == null || labelIndex[k] == labels[ip])
+							shift = Math.min (shift, costs[offset + k]);
+			if (shift == INFINITE_COST)
+				return INFINITE_COST;
+			for (int i = 0; i < numStates; i++)
+				for (int k = transitionStart[i]; k < transitionStart[i+1]; k++)
+					factors[offset + k] = (alpha[from + i] != 0 && (labels == null || labelIndex[k] == labels[ip])
+																 ? Math.exp (shift - costs[offset + k]) : 0);
+			Arrays.fill (alpha, to, to + numStates, 0);
+			for (int i = 0; i < numStates; i++) {
+				double a = alpha[from + i];
+				if (a == 0)
+					continue;
+				for (int k = transitionStart[i]; k < transitionStart[i+1]; k++)
+					alpha[to + destination[k]] += a * factors[offset + k];
+			}
+			sum = 0;
+			for (int i = 0; i < numStates; i++)
+				sum += alpha[to + i];
+			if (sum == 0)
+				return INFINITE_COST;
+			for (int i = 0; i < numStates; i++)
+				alpha[to + i] /= sum;
+			cost += shift - Math.log (sum);
+		}
+
+		int last = inputLength * numStates;
+		shift = INFINITE_COST;
+		for (int i = 0; i < numStates; i++)
+			if (alpha[last + i] != 0)
+				shift = Math.min (shift, crf.getState (i).getFinalCost ());
+		if (shift == INFINITE_COST)
+			return INFINITE_COST;
+		sum = 0;
+		for (int i = 0; i < numStates; i++) {
+			finalFactors[i] = Math.exp (shift - crf.getState (i).getFinalCost ());
+			sum += alpha[last + i] * finalFactors[i];
+		}
+		return cost + shift - Math.log (sum);
+	}
+
+	private void ensureCapacity (int inputLength)
+	{
+		if (costs.length < inputLength * numTransitions) {
+			int capacity = Math.max (inputLength, 2 * costs.length / Math.max (numTransitions, 1));
+			costs = new double[capacity * numTransitions];
+			factors = new double[capacity * numTransitions];
+		}
+		if (outputLabels.length < inputLength)
+			outputLabels = new int[Math.max (inputLength, 2 * outputLabels.length)];
+		if (alpha.length < (inputLength + 1) * numStates) {
+			int capacity = Math.max (inputLength + 1, 2 * alpha.length / Math.max (numStates, 1));
+			alpha = new double[capacity * numStates];
+			beta = new double[capacity * numStates];
+		}
+	}
+
+}
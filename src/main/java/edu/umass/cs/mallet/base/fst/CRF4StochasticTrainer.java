@@ -0,0 +1,395 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Trains a {@link CRF4} by stochastic gradient ascent on mini-batches of the
+	 training instances, as an alternative to {@link CRF4#train}, which takes
+	 a step of {@link LimitedMemoryBFGS} only after a pass over all of them.
+	 Each epoch visits the instances in a new random order, a batch at a time,
+	 and after each batch moves the parameters along the gradient of the log
+	 likelihood of the batch plus its share of the Gaussian prior.
+	 <p>
+	 The step of each parameter is the learning rate of the epoch,
+	 <code>learningRate / (1 + decay * epoch)</code>, divided (with AdaGrad,
+	 the default) by the root of the sum of the squares of its past
+	 gradients.  Only the parameters of the features in the batch are
+	 updated; the prior shrinks the others lazily, by the total of the steps
+	 missed, when their features next appear and at the end of training.
+	 <p>
+	 The gradient of each batch is computed by {@link CRF4ForwardBackward},
+	 on {@link CRF4#getTrainingThreads} threads among which the batch is
+	 divided.  The result does not depend on the number of threads beyond
+	 floating-point rounding.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import edu.umass.cs.mallet.base.types.Sequence;
+import edu.umass.cs.mallet.base.types.SparseVector;
+import edu.umass.cs.mallet.base.util.MalletLogger;
+
+public class CRF4StochasticTrainer
+{
+	private static Logger logger = MalletLogger.getLogger(CRF4StochasticTrainer.class.getName());
+
+	public static final int DEFAULT_NUM_EPOCHS = 20;
+	public static final int DEFAULT_BATCH_SIZE = 16;
+	public static final double DEFAULT_LEARNING_RATE = 0.5;
+	public static final double DEFAULT_DECAY = 0.1;
+
+	int numEpochs = DEFAULT_NUM_EPOCHS;
+	int batchSize = DEFAULT_BATCH_SIZE;
+	double learningRate = DEFAULT_LEARNING_RATE;
+	double decay = DEFAULT_DECAY;
+	boolean adaGrad = true;
+	long seed = 1;
+
+	/** Sets the number of passes over the training instances. */
+	public void setNumEpochs (int numEpochs)
+	{
+		if (numEpochs < 1)
+			throw new IllegalArgumentException ("Number of epochs must be at least 1: "+numEpochs);
+		this.numEpochs = numEpochs;
+	}
+
+	public int getNumEpochs () { return numEpochs; }
+
+	/** Sets the number of training instances whose gradient makes each step. */
+	public void setBatchSize (int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException ("Batch size must be at least 1: "+batchSize);
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize () { return batchSize; }
+
+	/** Sets the learning rate of the first epoch, and how fast it decreases: that of epoch
+	 * <code>e</code> (from 0) is <code>learningRate / (1 + decay * e)</code>. */
+	public void setLearningRate (double learningRate, double decay)
+	{
+		if (!(learningRate > 0) || !(decay >= 0))
+			throw new IllegalArgumentException ("Learning rate must be positive and decay not negative: "
+																					+learningRate+", "+decay);
+		this.learningRate = learningRate;
+		this.decay = decay;
+	}
+
+	public double getLearningRate () { return learningRate; }
+
+	public double getDecay () { return decay; }
+
+	/** Sets whether the step of each parameter is scaled by the root of the sum of the squares
+	 * of its past gradients (AdaGrad), or is the learning rate times its gradient. */
+	public void setAdaGrad (boolean adaGrad) { this.adaGrad = adaGrad; }
+
+	public boolean isAdaGrad () { return adaGrad; }
+
+	/** Sets the seed of the random order in which the instances are visited. */
+	public void setSeed (long seed) { this.seed = seed; }
+
+	/** Trains <code>crf</code>, whose states must have been added, on <code>training</code>,
+	 * starting from its current parameters.  Returns the log likelihood of the training
+	 * instances summed during the last epoch, as the parameters changed.
+	 * @throws IllegalArgumentException if <code>crf</code> is not a plain {@link CRF4}, or
+	 * uses the hyperbolic prior rather than the Gaussian prior */
+	public double train (CRF4 crf, InstanceList training)
+	{
+		assert (training.size() > 0);
+		if (crf.getClass() != CRF4.class)
+			throw new IllegalArgumentException ("Only "+CRF4.class.getName()+" can be trained stochastically");
+		if (crf.usingHyperbolicPrior)
+			throw new IllegalArgumentException ("Only a CRF with the Gaussian prior can be trained stochastically");
+		if (crf.useSparseWeights)
+			crf.setWeightsDimensionAsIn (training);
+		else
+			crf.setWeightsDimensionDensely ();
+		crf.prepareForConcurrentInference ();
+		Training state = new Training (crf, training);
+		double logLikelihood = 0;
+		logger.info ("CRF about to train stochastically for "+numEpochs+" epochs of batches of "+batchSize);
+		try {
+			for (int epoch = 0; epoch < numEpochs; epoch++) {
+				long epochStartingTime = System.currentTimeMillis();
+				logLikelihood = state.epoch (learningRate / (1 + decay * epoch));
+				logger.info ("CRF finished epoch "+epoch+" of stochastic training, log likelihood = "+logLikelihood
+										 +", in "+(System.currentTimeMillis() - epochStartingTime)+" milliseconds");
+			}
+			state.finish ();
+		} finally {
+			state.shutdown ();
+		}
+		crf.someTrainingDone = true;
+		return logLikelihood;
+	}
+
+	// The state of the parameters and of the optimizer during one call to train()
+	private class Training
+	{
+		CRF4 crf;
+		InstanceList training;
+		int[] order;
+		Random random = new Random (seed);
+		// The share of the prior in the objective of one batch is its size / priorScale, and that
+		// of a full batch is batchPrior
+		double priorScale, batchPrior;
+		// The sum of the squares of the gradients of each parameter, and the total of the learning
+		// rates of all steps when its prior was last applied: for the weights by location, and for
+		// the initial and final costs of the states and the default weights
+		double[][] sumSquares, lastRates;
+		double[] stateSumSquares, stateLastRates, defaultSumSquares, defaultLastRates;
+		double totalRate = 0;
+		// The features of the instances in the current batch
+		boolean[] inBatch;
+		int[] batchFeatures = new int[1024];
+		int numBatchFeatures;
+		Worker[] workers;
+		ExecutorService executor;
+
+		Training (CRF4 crf, InstanceList training)
+		{
+			this.crf = crf;
+			this.training = training;
+			order = new int[training.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			priorScale = training.size() * crf.gaussianPriorVariance;
+			batchPrior = batchSize / priorScale;
+			sumSquares = new double[crf.weights.length][];
+			lastRates = new double[crf.weights.length][];
+			for (int i = 0; i < crf.weights.length; i++) {
+				sumSquares[i] = new double[crf.weights[i].numLocations()];
+				lastRates[i] = new double[crf.weights[i].numLocations()];
+			}
+			stateSumSquares = new double[2 * crf.numStates()];
+			stateLastRates = new double[2 * crf.numStates()];
+			defaultSumSquares = new double[crf.weights.length];
+			defaultLastRates = new double[crf.weights.length];
+			inBatch = new boolean[crf.getInputAlphabet().size()];
+			workers = new Worker[Math.max (1, Math.min (crf.getTrainingThreads(), batchSize))];
+			for (int i = 0; i < workers.length; i++)
+				workers[i] = new Worker (crf);
+			if (workers.length > 1)
+				executor = TrainingThreads.newExecutor (workers.length - 1);
+		}
+
+		// Takes a step for each batch of the training instances in a random order, and returns their log likelihood
+		double epoch (double rate)
+		{
+			for (int i = order.length - 1; i > 0; i--) {
+				int j = random.nextInt (i + 1);
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+			double logLikelihood = 0;
+			for (int start = 0; start < order.length; start += batchSize) {
+				int end = Math.min (order.length, start + batchSize);
+				collectFeatures (start, end);
+				for (int i = 0; i < workers.length; i++)
+					workers[i].reset (start + i * (end - start) / workers.length,
+														start + (i + 1) * (end - start) / workers.length);
+				if (workers.length == 1)
+					workers[0].call ();
+				else
+					TrainingThreads.callInParallel (executor, workers);
+				for (int i = 0; i < workers.length; i++)
+					logLikelihood += workers[i].logLikelihood;
+				step (rate, (end - start) / priorScale);
+			}
+			return logLikelihood;
+		}
+
+		// Lists the features of instances start to end - 1 of the order
+		void collectFeatures (int start, int end)
+		{
+			numBatchFeatures = 0;
+			for (int n = start; n < end; n++) {
+				FeatureVectorSequence input = (FeatureVectorSequence) training.getInstance(order[n]).getData();
+				for (int ip = 0; ip < input.size(); ip++) {
+					FeatureVector fv = input.getFeatureVector (ip);
+					for (int l = 0; l < fv.numLocations(); l++) {
+						int index = fv.indexAtLocation (l);
+						if (index >= inBatch.length || inBatch[index])
+							continue;
+						inBatch[index] = true;
+						if (numBatchFeatures == batchFeatures.length) {
+							int[] newFeatures = new int[2 * batchFeatures.length];
+							System.arraycopy (batchFeatures, 0, newFeatures, 0, numBatchFeatures);
+							batchFeatures = newFeatures;
+						}
+						batchFeatures[numBatchFeatures++] = index;
+					}
+				}
+			}
+			for (int n = 0; n < numBatchFeatures; n++)
+				inBatch[batchFeatures[n]] = false;
+		}
+
+		// Moves the parameters of the batch's features, the default weights and the state costs
+		// along the gradient gathered by the workers, which are cleared
+		void step (double rate, double prior)
+		{
+			totalRate += rate;
+			for (int i = 0; i < crf.numStates(); i++) {
+				CRF4.State s = (CRF4.State) crf.getState (i);
+				double gradient = 0;
+				for (int w = 0; w < workers.length; w++)
+					gradient += workers[w].initialExpectations[i];
+				if (!Double.isInfinite (s.initialCost))
+					s.initialCost = -update (-s.initialCost, gradient, rate, prior, stateSumSquares, stateLastRates, 2*i);
+				gradient = 0;
+				for (int w = 0; w < workers.length; w++)
+					gradient += workers[w].finalExpectations[i];
+				if (!Double.isInfinite (s.finalCost))
+					s.finalCost = -update (-s.finalCost, gradient, rate, prior, stateSumSquares, stateLastRates, 2*i+1);
+			}
+			for (int i = 0; i < crf.weights.length; i++) {
+				if (crf.weightsFrozen[i])
+					continue;
+				double gradient = 0;
+				for (int w = 0; w < workers.length; w++)
+					gradient += workers[w].defaultExpectations[i];
+				if (!Double.isInfinite (crf.defaultWeights[i]))
+					crf.defaultWeights[i] = update (crf.defaultWeights[i], gradient, rate, prior,
+																					defaultSumSquares, defaultLastRates, i);
+				SparseVector weights = crf.weights[i];
+				for (int n = 0; n < numBatchFeatures; n++) {
+					int location = weights.location (batchFeatures[n]);
+					if (location < 0)
+						continue;
+					gradient = 0;
+					for (int w = 0; w < workers.length; w++) {
+						SparseVector expectations = workers[w].expectations[i];
+						gradient += expectations.valueAtLocation (location);
+						expectations.setValueAtLocation (location, 0);
+					}
+					double value = weights.valueAtLocation (location);
+					if (!Double.isInfinite (value))
+						weights.setValueAtLocation (location, update (value, gradient, rate, prior,
+																													sumSquares[i], lastRates[i], location));
+				}
+			}
+			for (int w = 0; w < workers.length; w++) {
+				Arrays.fill (workers[w].initialExpectations, 0);
+				Arrays.fill (workers[w].finalExpectations, 0);
+				Arrays.fill (workers[w].defaultExpectations, 0);
+			}
+		}
+
+		// Returns the parameter at index of sums and rates moved along the gradient of the log likelihood
+		// and of the prior, after the steps of the prior it missed.  totalRate includes this step's rate.
+		double update (double value, double gradient, double rate, double prior,
+									 double[] sums, double[] rates, int index)
+		{
+			value = shrink (value, sums[index], totalRate - rate - rates[index]);
+			gradient -= prior * value;
+			sums[index] += gradient * gradient;
+			rates[index] = totalRate;
+			return value + rate * gradient / scale (sums[index]);
+		}
+
+		// The parameter shrunk by the steps of the prior of a full batch which it missed since its last
+		// update, whose learning rates total missedRate.  Each would multiply it by
+		// (1 - rate * batchPrior / scale), which is close to exp (-rate * batchPrior / scale).
+		double shrink (double value, double sumSquares, double missedRate)
+		{
+			if (missedRate <= 0 || value == 0)
+				return value;
+			// A parameter not yet updated has no scale, so is shrunk as without AdaGrad
+			double scale = (sumSquares == 0 ? 1 : scale (sumSquares));
+			return value * Math.exp (-missedRate * batchPrior / scale);
+		}
+
+		// The divisor of the learning rate of a parameter
+		double scale (double sumSquares)
+		{
+			return adaGrad ? Math.sqrt (sumSquares) + 1e-8 : 1;
+		}
+
+		// Applies the steps of the prior which each parameter missed since its last update
+		void finish ()
+		{
+			for (int i = 0; i < crf.weights.length; i++) {
+				if (crf.weightsFrozen[i])
+					continue;
+				SparseVector weights = crf.weights[i];
+				for (int location = 0; location < weights.numLocations(); location++) {
+					double value = weights.valueAtLocation (location);
+					if (!Double.isInfinite (value))
+						weights.setValueAtLocation (location, shrink (value, sumSquares[i][location],
+																													totalRate - lastRates[i][location]));
+				}
+			}
+		}
+
+		void shutdown ()
+		{
+			if (executor != null)
+				executor.shutdown ();
+		}
+
+		// Adds the gradient of the log likelihood of instances start to end - 1 of the order
+		class Worker extends CRF4.Expectations implements Callable<Object>
+		{
+			CRF4ForwardBackward lattice;
+			int start, end;
+			double logLikelihood;
+
+			Worker (CRF4 crf)
+			{
+				super (crf);
+				lattice = new CRF4ForwardBackward (crf);
+			}
+
+			void reset (int start, int end)
+			{
+				this.start = start;
+				this.end = end;
+				logLikelihood = 0;
+			}
+
+			public Object call ()
+			{
+				for (int n = start; n < end; n++) {
+					Instance instance = training.getInstance(order[n]);
+					lattice.setInput ((FeatureVectorSequence) instance.getData());
+					// Both costs are checked before the labeled expectations are added, so that an
+					// instance with infinite cost adds nothing
+					Sequence output = (Sequence) instance.getTarget();
+					double labeledCost = lattice.getLabeledCost (output);
+					if (Double.isInfinite (labeledCost)) {
+						logger.warning (instance.getName() + " has infinite labeled cost; skipping.");
+						continue;
+					}
+					double unlabeledCost = lattice.addExpectations (this, null, -1.0);
+					if (Double.isInfinite (unlabeledCost)) {
+						logger.warning (instance.getName() + " has infinite cost; skipping.");
+						continue;
+					}
+					lattice.addExpectations (this, output, 1.0);
+					logLikelihood += unlabeledCost - labeledCost;
+				}
+				return null;
+			}
+		}
+	}
+
+}
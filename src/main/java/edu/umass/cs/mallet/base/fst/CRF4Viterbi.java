@@ -0,0 +1,197 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Viterbi decoding specialized for a trained {@link CRF4}.  Returns the
+	 same path as {@link Transducer#viterbiPath(Sequence)}, but the score of
+	 each weights group is computed once per input position rather than once
+	 per transition (or all at once, from a {@link CRF4DenseWeights}), and
+	 the lattice is kept in flat arrays which are reused from one call to
+	 the next instead of a grid of node objects.
+	 <p>
+	 The structure of the CRF (states, transitions, labels) is copied when
+	 the decoder is created, so it must not change afterwards; the weights
+	 are read on each call.  A decoder is not thread-safe: give each
+	 decoding thread its own.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import edu.umass.cs.mallet.base.types.Alphabet;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+
+public class CRF4Viterbi
+{
+	private static final double INFINITE_COST = Transducer.INFINITE_COST;
+
+	CRF4 crf;
+	CRF4DenseWeights denseWeights;
+	int numStates;
+	double[] initialCosts;
+	double[] finalCosts;
+	// Indexed by source state, then by transition
+	int[][] destinations;
+	int[][][] weightsIndices;
+	int[][] labelIndices;
+
+	// The lattice, indexed by position * numStates + state; grown as needed
+	double[] delta = new double[0];
+	int[] predecessor = new int[0];
+	int[] output = new int[0];
+	// Score of each weights group at the current position, and the position
+	// it was computed at
+	double[] groupScores;
+	int[] groupScorePosition;
+	double[] costs;
+
+	public CRF4Viterbi (CRF4 crf)
+	{
+		this (crf, null);
+	}
+
+	/** Creates a decoder which scores each position with <code>denseWeights</code>,
+	 * compiled from <code>crf</code>, instead of the sparse weights of the CRF. */
+	public CRF4Viterbi (CRF4 crf, CRF4DenseWeights denseWeights)
+	{
+		this.crf = crf;
+		this.denseWeights = denseWeights;
+		numStates = crf.numStates ();
+		initialCosts = new double[numStates];
+		finalCosts = new double[numStates];
+		destinations = new int[numStates][];
+		weightsIndices = new int[numStates][][];
+		labelIndices = new int[numStates][];
+		Alphabet outputAlphabet = crf.getOutputAlphabet ();
+		int maxDestinations = 0;
+		for (int i = 0; i < numStates; i++) {
+			CRF4.State s = (CRF4.State) crf.getState (i);
+			initialCosts[i] = s.getInitialCost ();
+			finalCosts[i] = s.getFinalCost ();
+			int n = s.numDestinations ();
+			destinations[i] = new int[n];
+			weightsIndices[i] = new int[n][];
+			labelIndices[i] = new int[n];
+			for (int t = 0; t < n; t++) {
+				destinations[i][t] = s.getDestinationState (t).getIndex ();
+				weightsIndices[i][t] = s.weightsIndices[t];
+				labelIndices[i][t] = outputAlphabet.lookupIndex (s.labels[t], false);
+				if (labelIndices[i][t] < 0)
+					throw new IllegalStateException ("Label "+s.labels[t]+" is not in the output alphabet");
+			}
+			maxDestinations = Math.max (maxDestinations, n);
+		}
+		costs = new double[maxDestinations];
+		groupScores = new double[crf.weights.length];
+		groupScorePosition = new int[crf.weights.length];
+	}
+
+	/** Finds the Viterbi path through the CRF for <code>input</code>, and
+	 * stores the output alphabet index of the label of each position in
+	 * <code>labels</code>, which must be at least as long as the input.
+	 * @return The cost of the path, or <code>INFINITE_COST</code> if there
+	 * is no path, in which case <code>labels</code> is not changed */
+	public double bestLabels (FeatureVectorSequence input, int[] labels)
+	{
+		int inputLength = input.size ();
+		int latticeLength = inputLength + 1;
+		ensureCapacity (latticeLength * numStates);
+		java.util.Arrays.fill (delta, 0, latticeLength * numStates, INFINITE_COST);
+		java.util.Arrays.fill (groupScorePosition, -1);
+
+		for (int i = 0; i < numStates; i++)
+			if (initialCosts[i] < INFINITE_COST)
+				delta[i] = initialCosts[i];
+
+		for (int ip = 0; ip < inputLength; ip++) {
+			FeatureVector fv = (FeatureVector) input.get (ip);
+			if (denseWeights != null)
+				denseWeights.score (fv, groupScores);
+			int from = ip * numStates;
+			int to = from + numStates;
+			boolean last = ip == inputLength - 1;
+			for (int i = 0; i < numStates; i++) {
+				double sourceDelta = delta[from + i];
+				if (sourceDelta == INFINITE_COST)
+					continue;
+				int[] dest = destinations[i];
+				int[][] swis = weightsIndices[i];
+				// Summed in the same order as CRF4.TransitionIterator, so the
+				// costs are identical
+				for (int t = 0; t < dest.length; t++) {
+					double cost = 0;
+					int[] swi = swis[t];
+					for (int wi = 0; wi < swi.length; wi++)
+						cost -= groupScore (swi[wi], fv, ip);
+					costs[t] = cost;
+				}
+				for (int t = 0; t < dest.length; t++) {
+					if (costs[t] == INFINITE_COST)
+						continue;
+					int d = to + dest[t];
+					// As in Transducer.ViterbiPath, the output of a node is
+					// that of the last transition into it
+					output[d] = labelIndices[i][t];
+					double cost = sourceDelta + costs[t];
+					if (last)
+						cost += finalCosts[dest[t]];
+					if (cost < delta[d]) {
+						delta[d] = cost;
+						predecessor[d] = i;
+					}
+				}
+			}
+		}
+
+		// The first final state with the minimum cost
+		int from = inputLength * numStates;
+		int state = -1;
+		double pathCost = INFINITE_COST;
+		for (int i = 0; i < numStates; i++)
+			if (delta[from + i] < pathCost) {
+				state = i;
+				pathCost = delta[from + i];
+			}
+		if (state < 0)
+			return INFINITE_COST;
+		for (int ip = inputLength; ip > 0; ip--) {
+			labels[ip-1] = output[ip * numStates + state];
+			state = predecessor[ip * numStates + state];
+		}
+		return pathCost;
+	}
+
+	/** Returns the label whose output alphabet index is <code>labelIndex</code>. */
+	public String getLabel (int labelIndex)
+	{
+		return (String) crf.getOutputAlphabet ().lookupObject (labelIndex);
+	}
+
+	private double groupScore (int swi, FeatureVector fv, int ip)
+	{
+		if (denseWeights == null && groupScorePosition[swi] != ip) {
+			// include with implicit weight 1.0 the default feature
+			groupScores[swi] = crf.weights[swi].dotProduct (fv) + crf.defaultWeights[swi];
+			groupScorePosition[swi] = ip;
+		}
+		return groupScores[swi];
+	}
+
+	private void ensureCapacity (int size)
+	{
+		if (delta.length < size) {
+			int capacity = Math.max (size, 2 * delta.length);
+			delta = new double[capacity];
+			predecessor = new int[capacity];
+			output = new int[capacity];
+		}
+	}
+
+}
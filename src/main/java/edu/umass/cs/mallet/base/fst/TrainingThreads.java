@@ -0,0 +1,86 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 The threads among which {@link CRF4} divides the training instances of
+	 each value and gradient it computes, and {@link CRF4StochasticTrainer}
+	 those of each batch.  The threads of a pool are
+	 daemons which end once idle for a while, so a pool which is not shut
+	 down neither keeps the virtual machine running nor holds its threads.
+ */
+
+package edu.umass.cs.mallet.base.fst;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class TrainingThreads
+{
+	private static final long KEEP_ALIVE_SECONDS = 10;
+
+	private TrainingThreads () {}
+
+	/** Returns a pool of <code>numThreads</code> threads for {@link #callInParallel}. */
+	static ExecutorService newExecutor (int numThreads)
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor (numThreads, numThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+																												 new LinkedBlockingQueue<Runnable> (), new ThreadFactory () {
+				public Thread newThread (Runnable r) {
+					Thread thread = new Thread (r, "CRF4 training");
+					thread.setDaemon (true);
+					return thread;
+				}
+			});
+		executor.allowCoreThreadTimeOut (true);
+		return executor;
+	}
+
+	/** Calls each task, the first in the calling thread and the others on <code>executor</code>,
+	 * and returns once all are done.  Rethrows the first failure, after the others finished. */
+	static void callInParallel (ExecutorService executor, Callable<?>[] tasks)
+	{
+		List<Future<?>> results = new ArrayList<Future<?>> (tasks.length - 1);
+		for (int i = 1; i < tasks.length; i++)
+			results.add (executor.submit (tasks[i]));
+		RuntimeException failure = null;
+		try {
+			tasks[0].call ();
+		} catch (RuntimeException e) {
+			failure = e;
+		} catch (Exception e) {
+			failure = new RuntimeException (e);
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get ();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException (e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				if (failure == null)
+					failure = (e.getCause() instanceof RuntimeException
+										 ? (RuntimeException) e.getCause() : new RuntimeException (e.getCause()));
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+}
@@ -23,6 +23,9 @@ import edu.umass.cs.mallet.base.types.MatrixOps;
 import edu.umass.cs.mallet.base.util.MalletLogger;
 import java.util.logging.*;
 import java.util.LinkedList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class LimitedMemoryBFGS implements Maximizer.ByGradient
 {
@@ -249,6 +252,76 @@ public class LimitedMemoryBFGS implements Maximizer.ByGradient
 		g = null;
 	}
 
+	/** Writes the state of the search, so that {@link #readState} can continue it
+	 * where it is: the last parameters and gradients, the corrections used to
+	 * approximate the Hessian, and the step of the line search. */
+	public void writeState (DataOutput out) throws IOException
+	{
+		out.writeBoolean (g != null);
+		out.writeDouble (step);
+		if (g == null)
+			return;
+		out.writeInt (iterations);
+		out.writeInt (g.length);
+		writeArray (out, g);
+		writeArray (out, oldg);
+		writeArray (out, direction);
+		writeArray (out, parameters);
+		writeArray (out, oldParameters);
+		writeArray (out, alpha);
+		out.writeInt (s.size());
+		for (int i = 0; i < s.size(); i++) {
+			writeArray (out, (double[]) s.get(i));
+			writeArray (out, (double[]) y.get(i));
+			out.writeDouble (((Double) rho.get(i)).doubleValue());
+		}
+	}
+
+	/** Continues the search written by {@link #writeState}, which must have been
+	 * of a {@link Maximizable} with as many parameters, set as they were then. */
+	public void readState (DataInput in, Maximizable.ByGradient maxable) throws IOException
+	{
+		boolean started = in.readBoolean ();
+		step = in.readDouble ();
+		if (!started) {
+			g = null;
+			return;
+		}
+		iterations = in.readInt ();
+		int n = in.readInt ();
+		if (n != maxable.getNumParameters())
+			throw new IllegalStateException ("L-BFGS state has "+n+" parameters, not "+maxable.getNumParameters());
+		g = readArray (in, n);
+		oldg = readArray (in, n);
+		direction = readArray (in, n);
+		parameters = readArray (in, n);
+		oldParameters = readArray (in, n);
+		alpha = readArray (in, m);
+		s = new LinkedList();
+		y = new LinkedList();
+		rho = new LinkedList();
+		int size = in.readInt ();
+		for (int i = 0; i < size; i++) {
+			s.addLast (readArray (in, n));
+			y.addLast (readArray (in, n));
+			rho.addLast (new Double (in.readDouble ()));
+		}
+	}
+
+	private static void writeArray (DataOutput out, double[] a) throws IOException
+	{
+		for (int i = 0; i < a.length; i++)
+			out.writeDouble (a[i]);
+	}
+
+	private static double[] readArray (DataInput in, int length) throws IOException
+	{
+		double[] a = new double[length];
+		for (int i = 0; i < length; i++)
+			a[i] = in.readDouble ();
+		return a;
+	}
+
 	/**
 	 * Pushes a new object onto the queue l
 	 * @param l linked list queue of Matrix obj's
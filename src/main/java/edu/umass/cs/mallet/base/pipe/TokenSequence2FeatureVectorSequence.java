@@ -64,6 +64,8 @@ public class TokenSequence2FeatureVectorSequence extends Pipe implements Seriali
 		return carrier;
 	}
 
+	public boolean isBinary () { return binary; }
+
 	public void setGrowAlphabet(boolean growAlphabet) {
 		this.growAlphabet = growAlphabet;
 	}
@@ -0,0 +1,146 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 The id of the conjunction of each feature of an {@link Alphabet} with each
+	 offset of an {@link OffsetConjunctions} pipe whose conjunctions all have a
+	 single offset, such as "W=p53@-1" for "W=p53" and -1.  This lets the
+	 conjunctions of a token be found from the ids of its features without
+	 building their names.
+	 <p>
+	 The table is either read from a buffer written by {@link #write}, which
+	 may be a read-only mapping of a file, or resolved from the names in the
+	 alphabet as each feature is first looked up, so that no time is spent on
+	 features which are never seen.  Instances may be shared between threads.
+ */
+
+package edu.umass.cs.mallet.base.pipe.tsf;
+
+import edu.umass.cs.mallet.base.types.Alphabet;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class ConjunctionTable
+{
+	Alphabet features;
+	int[] offsets;
+	// When read from a buffer, the conjunction of each feature with each
+	// offset, or -1 if it is not in the alphabet; null for offset 0
+	IntBuffer[] table;
+	// Otherwise the conjunctions resolved so far, plus 2, so that 0 is not yet
+	// resolved and 1 is not in the alphabet.  Two threads may resolve the same
+	// entry, or allocate the same array, but always to the same values.
+	int[][] resolved;
+
+	/** Creates a table which resolves the conjunctions of each feature of
+	 * <code>features</code> from their names when it is first looked up.
+	 * @throws IllegalArgumentException If a conjunction has more than one offset */
+	public ConjunctionTable (Alphabet features, int[][] conjunctions)
+	{
+		this.features = features;
+		offsets = singleOffsets (conjunctions);
+		resolved = new int[offsets.length][];
+	}
+
+	/** Creates a table for <code>features</code> from the bytes between the
+	 * position and the limit of <code>buffer</code>, which must have been
+	 * written by {@link #write} for the same alphabet.  Unless <code>copy</code>
+	 * is true, the buffer is not copied; its position is not changed. */
+	public ConjunctionTable (Alphabet features, ByteBuffer buffer, boolean copy)
+	{
+		this.features = features;
+		IntBuffer ints = buffer.slice ().asIntBuffer ();
+		int size = ints.get ();
+		int numOffsets = ints.get ();
+		if (size != features.size () || numOffsets < 0)
+			throw new IllegalArgumentException ("Not a ConjunctionTable of "+features.size ()+" features: size "+size+", "+numOffsets+" offsets");
+		offsets = new int[numOffsets];
+		ints.get (offsets);
+		table = new IntBuffer[numOffsets];
+		for (int j = 0; j < numOffsets; j++) {
+			if (offsets[j] == 0)
+				continue;
+			IntBuffer t = ints.slice ();
+			t.limit (size);
+			if (copy) {
+				int[] a = new int[size];
+				t.get (a);
+				t = IntBuffer.wrap (a);
+			}
+			table[j] = t;
+			ints.position (ints.position () + size);
+		}
+	}
+
+	private static int[] singleOffsets (int[][] conjunctions)
+	{
+		int[] offsets = new int[conjunctions.length];
+		for (int j = 0; j < conjunctions.length; j++) {
+			if (conjunctions[j] == null || conjunctions[j].length != 1)
+				throw new IllegalArgumentException ("Conjunction "+j+" does not have a single offset");
+			offsets[j] = conjunctions[j][0];
+		}
+		return offsets;
+	}
+
+	/** Writes the conjunctions of every feature of <code>features</code> in the
+	 * layout read by {@link #ConjunctionTable(Alphabet,ByteBuffer,boolean)}:
+	 * the number of features and of conjunctions, the offsets, then for each
+	 * offset but 0 the id of the conjunction of each feature, or -1.
+	 * @throws IllegalArgumentException If a conjunction has more than one offset */
+	public static void write (Alphabet features, int[][] conjunctions, DataOutputStream out) throws IOException
+	{
+		ConjunctionTable t = new ConjunctionTable (features, conjunctions);
+		int size = features.size ();
+		out.writeInt (size);
+		out.writeInt (t.offsets.length);
+		for (int j = 0; j < t.offsets.length; j++)
+			out.writeInt (t.offsets[j]);
+		for (int j = 0; j < t.offsets.length; j++) {
+			if (t.offsets[j] == 0)
+				continue;
+			for (int id = 0; id < size; id++)
+				out.writeInt (t.resolve (j, id));
+		}
+	}
+
+	public Alphabet getAlphabet () { return features; }
+
+	public int[] getOffsets () { return offsets; }
+
+	/** Returns the id of the conjunction of the feature with id
+	 * <code>featureId</code> with conjunction <code>j</code>, or -1 if it
+	 * is not in the alphabet.  For offset 0 that is the feature itself. */
+	public int getConjunction (int j, int featureId)
+	{
+		if (offsets[j] == 0)
+			return featureId;
+		if (table != null)
+			return table[j].get (featureId);
+		int[] r = resolved[j];
+		if (r == null)
+			resolved[j] = r = new int[features.size ()];
+		int id = r[featureId];
+		if (id == 0) {
+			id = resolve (j, featureId) + 2;
+			r[featureId] = id;
+		}
+		return id - 2;
+	}
+
+	private int resolve (int j, int featureId)
+	{
+		// Named as in OffsetConjunctions.makeConjunctions
+		return features.lookupIndex (features.lookupObject (featureId) + "@" + offsets[j], false);
+	}
+
+}
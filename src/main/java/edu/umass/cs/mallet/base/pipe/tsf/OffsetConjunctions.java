@@ -17,12 +17,15 @@
 
 package edu.umass.cs.mallet.base.pipe.tsf;
 
+import edu.umass.cs.mallet.base.types.Alphabet;
 import edu.umass.cs.mallet.base.types.TokenSequence;
 import edu.umass.cs.mallet.base.util.PropertyList;
 import edu.umass.cs.mallet.base.pipe.Pipe;
 import edu.umass.cs.mallet.base.types.Token;
 import edu.umass.cs.mallet.base.types.Instance;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.*;
 
 public class OffsetConjunctions extends Pipe implements Serializable
@@ -32,6 +35,12 @@ public class OffsetConjunctions extends Pipe implements Serializable
 	//	boolean includeBeginEndBoundaries;
 	Pattern featureRegex;
 
+	// When non-null, features not in this alphabet are dropped instead of being conjoined
+	transient Alphabet knownFeatures = null;
+	transient AtomicLong droppedFeatures = null;
+	// The conjunctions of the known features by id, when all conjunctions have a single offset
+	transient ConjunctionTable conjunctionTable = null;
+
 	static final int maxWindowSize = 50;
 	static final PropertyList[] startfs = new PropertyList[maxWindowSize];
 	static final PropertyList[] endfs = new PropertyList[maxWindowSize];
@@ -69,6 +78,55 @@ public class OffsetConjunctions extends Pipe implements Serializable
 		this (true, conjunctions);
 	}
 	
+	/** Drops features which are not in <code>features</code>, for use once that alphabet
+	 * has stopped growing: such features would be ignored by the feature vectors anyway.
+	 * The original features of each token are filtered before any conjunction is built from
+	 * them (only when the original singletons are included, since otherwise they were never
+	 * added to the alphabet), and each conjunction is checked before it is added.
+	 * Pass <code>null</code> to keep all features again. */
+	public void setKnownFeatures (Alphabet features)
+	{
+		if (droppedFeatures == null || features != knownFeatures)
+			droppedFeatures = new AtomicLong ();
+		knownFeatures = features;
+		if (conjunctionTable != null && conjunctionTable.getAlphabet () != features)
+			conjunctionTable = null;
+		if (features != null && conjunctionTable == null && hasSingleOffsets ())
+			conjunctionTable = new ConjunctionTable (features, conjunctions);
+	}
+
+	private boolean hasSingleOffsets ()
+	{
+		for (int j = 0; j < conjunctions.length; j++)
+			if (conjunctions[j] == null || conjunctions[j].length != 1)
+				return false;
+		return true;
+	}
+
+	/** Sets the table of the conjunctions of the features of the alphabet passed to
+	 * {@link #setKnownFeatures}, such as one read with the alphabet, instead of
+	 * resolving them from their names. */
+	public void setConjunctionTable (ConjunctionTable table)
+	{
+		conjunctionTable = table;
+	}
+
+	/** Returns the table of the conjunctions of the known features, or <code>null</code>
+	 * if there are no known features or a conjunction has more than one offset. */
+	public ConjunctionTable getConjunctionTable () { return conjunctionTable; }
+
+	public int[][] getConjunctions () { return conjunctions; }
+
+	public boolean includesOriginalSingletons () { return includeOriginalSingletons; }
+
+	public Pattern getFeatureRegex () { return featureRegex; }
+
+	/** Returns the number of features dropped since {@link #setKnownFeatures} was called. */
+	public long getDroppedFeatureCount ()
+	{
+		return droppedFeatures == null ? 0 : droppedFeatures.get ();
+	}
+
 	public Instance pipe (Instance carrier)
 	{
 		TokenSequence ts = (TokenSequence) carrier.getData();
@@ -90,9 +148,12 @@ public class OffsetConjunctions extends Pipe implements Serializable
 		
 		for (int i = 0; i < tsSize; i++)
 			oldfs[i] = ts.getToken(i).getFeatures ();
+		if (knownFeatures != null && includeOriginalSingletons)
+			for (int i = 0; i < tsSize; i++)
+				oldfs[i] = retainKnownFeatures (oldfs[i]);
 		if (includeOriginalSingletons)
 			for (int i = 0; i < tsSize; i++)
-				newfs[i] = ts.getToken(i).getFeatures ();
+				newfs[i] = oldfs[i];
 
 		for (int i = 0; i < tsSize; i++) {
 			for (int j = 0; j < conjunctions.length; j++) {				
@@ -132,6 +193,22 @@ public class OffsetConjunctions extends Pipe implements Serializable
 			if (redundant (conjunctions, j, iterIndices)) {
 				return newfs;
 			}
+			// Looks a single offset up by the id of its feature, so that only the names of
+			// known conjunctions are made.  The start and end markers have no id.
+			if (iters.length == 1 && knownFeatures != null && conjunctionTable != null) {
+				String s = iters[0].getKey();
+				if (featureRegex != null && !featureRegex.matcher(s).matches())
+					return newfs;
+				int id = knownFeatures.lookupIndex (s, false);
+				if (id >= 0) {
+					int conjunction = conjunctionTable.getConjunction (j, id);
+					if (conjunction < 0) {
+						droppedFeatures.incrementAndGet ();
+						return newfs;
+					}
+					return PropertyList.add ((String) knownFeatures.lookupObject (conjunction), iters[0].getNumericValue(), newfs);
+				}
+			}
 			String newFeature = "";
 			double newValue = 1.0;
 			for (int i=0; i < iters.length; i++) {
@@ -141,6 +218,10 @@ public class OffsetConjunctions extends Pipe implements Serializable
 				newFeature += (i==0 ? "" : "_&_") + s + (conjunctions[j][i]==0 ? "" : ("@" + conjunctions[j][i]));
 				newValue *= iters[i].getNumericValue();
 			}
+			if (knownFeatures != null && !knownFeatures.contains (newFeature)) {
+				droppedFeatures.incrementAndGet ();
+				return newfs;
+			}
 			//System.err.println ("Adding new feature " + newFeature);
 			newfs = PropertyList.add (newFeature, newValue, newfs);
 		}
@@ -157,6 +238,39 @@ public class OffsetConjunctions extends Pipe implements Serializable
 		return newfs;
 	}
 
+	/** Returns the features of <code>pl</code> which are in <code>knownFeatures</code>,
+	 * in their original order, or <code>pl</code> itself if all of them are. */
+	private PropertyList retainKnownFeatures (PropertyList pl)
+	{
+		if (pl == null)
+			return null;
+		ArrayList<String> keys = new ArrayList<String> ();
+		ArrayList<Object> values = new ArrayList<Object> ();
+		int dropped = 0;
+		PropertyList.Iterator iter = pl.iterator ();
+		while (iter.hasNext ()) {
+			iter.nextProperty ();
+			if (knownFeatures.contains (iter.getKey ())) {
+				keys.add (iter.getKey ());
+				values.add (iter.isNumeric () ? Double.valueOf (iter.getNumericValue ()) : iter.getObjectValue ());
+			} else
+				dropped++;
+		}
+		if (dropped == 0)
+			return pl;
+		droppedFeatures.addAndGet (dropped);
+		// PropertyList.add prepends, so rebuild from the end
+		PropertyList ret = null;
+		for (int i = keys.size () - 1; i >= 0; i--) {
+			Object value = values.get (i);
+			if (value instanceof Double)
+				ret = PropertyList.add (keys.get (i), ((Double) value).doubleValue (), ret);
+			else
+				ret = PropertyList.add (keys.get (i), value, ret);
+		}
+		return ret;
+	}
+
 	/** Is the current feature redundant? The current feature is
 	 * determined by the current values in iterIndices, which tells us
 	 * where we are in each PropertyList.Iterator. We do this test to
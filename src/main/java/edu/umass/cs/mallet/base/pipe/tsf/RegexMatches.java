@@ -24,7 +24,7 @@ import edu.umass.cs.mallet.base.pipe.*;
 import java.io.*;
 
 
-public class RegexMatches extends Pipe implements Serializable
+public class RegexMatches extends Pipe implements Serializable, TokenTextFeatureIds
 {
 	Pattern regex;
 	String feature;
@@ -35,6 +35,10 @@ public class RegexMatches extends Pipe implements Serializable
 		this.regex = regex;
 	}
 
+	public String getFeature () { return feature; }
+
+	public Pattern getPattern () { return regex; }
+
 	// Too dangerous with both arguments having the same type
 	//public RegexMatches (String regex, String feature) {
 	//this (Pattern.compile (regex), feature);
@@ -52,6 +56,12 @@ public class RegexMatches extends Pipe implements Serializable
 		return carrier;
 	}
 
+	public void addFeatureIds (String text, FeatureIdBuffer ids)
+	{
+		if (regex.matcher (text).matches ())
+			ids.add (feature);
+	}
+
 
 	// Serialization 
 	
@@ -21,7 +21,7 @@ import edu.umass.cs.mallet.base.pipe.*;
 import java.io.*;
 import java.util.regex.Pattern;
 
-public class TokenTextCharNGrams extends Pipe implements Serializable
+public class TokenTextCharNGrams extends Pipe implements Serializable, TokenTextFeatureIds
 {
 	static char startBorderChar = '>';
 	static char endBorderChar = '<';
@@ -65,6 +65,19 @@ public class TokenTextCharNGrams extends Pipe implements Serializable
 		}
 		return carrier;
 	}
+
+	public void addFeatureIds (String text, FeatureIdBuffer ids)
+	{
+		String s = text;
+		if (distinguishBorders)
+			s = startBorderChar + s + endBorderChar;
+		int slen = s.length();
+		for (int j = 0; j < gramSizes.length; j++) {
+			int size = gramSizes[j];
+			for (int k = 0; k < (slen - size)+1; k++)
+				ids.add (prefix, s, k, k+size);
+		}
+	}
 	
 	// Serialization
 
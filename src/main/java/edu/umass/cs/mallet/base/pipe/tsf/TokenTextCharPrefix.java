@@ -20,7 +20,7 @@ import edu.umass.cs.mallet.base.types.*;
 import edu.umass.cs.mallet.base.pipe.*;
 import java.io.*;
 
-public class TokenTextCharPrefix extends Pipe implements Serializable
+public class TokenTextCharPrefix extends Pipe implements Serializable, TokenTextFeatureIds
 {
 	String prefix;
 	int prefixLength;
@@ -47,6 +47,12 @@ public class TokenTextCharPrefix extends Pipe implements Serializable
 		}
 		return carrier;
 	}
+
+	public void addFeatureIds (String text, FeatureIdBuffer ids)
+	{
+		if (text.length() > prefixLength)
+			ids.add (prefix, text, 0, prefixLength);
+	}
 	
 	// Serialization 
 	
@@ -20,7 +20,7 @@ import edu.umass.cs.mallet.base.types.*;
 import edu.umass.cs.mallet.base.pipe.*;
 import java.io.*;
 
-public class TokenTextCharSuffix extends Pipe implements Serializable
+public class TokenTextCharSuffix extends Pipe implements Serializable, TokenTextFeatureIds
 {
 	String prefix;
 	int suffixLength;
@@ -48,6 +48,13 @@ public class TokenTextCharSuffix extends Pipe implements Serializable
 		}
 		return carrier;
 	}
+
+	public void addFeatureIds (String text, FeatureIdBuffer ids)
+	{
+		int slen = text.length();
+		if (slen > suffixLength)
+			ids.add (prefix, text, slen - suffixLength, slen);
+	}
 	
 	// Serialization 
 	
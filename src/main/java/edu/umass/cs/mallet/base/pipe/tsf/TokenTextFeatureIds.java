@@ -0,0 +1,25 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 A pipe whose features for a token depend only on the token's text, and
+	 which can therefore add their alphabet indices to a {@link FeatureIdBuffer}
+	 directly.  The ids added must be exactly those of the features the pipe
+	 would set on a token with that text.
+ */
+
+package edu.umass.cs.mallet.base.pipe.tsf;
+
+import edu.umass.cs.mallet.base.types.FeatureIdBuffer;
+
+public interface TokenTextFeatureIds
+{
+	public void addFeatureIds (String text, FeatureIdBuffer ids);
+}
@@ -0,0 +1,104 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Collects the alphabet indices of the features of one token, for pipes
+	 which can produce them directly instead of adding named features to a
+	 {@link Token}.  A feature name is assembled from its parts in a reusable
+	 character buffer and looked up in a fixed {@link Alphabet}; features
+	 which are not in the alphabet are counted and skipped.  With a
+	 {@link MappedAlphabet} no objects are created, otherwise one String per
+	 feature is.
+	 <p>
+	 Buffers are reused from one token to the next with {@link #clear}, and
+	 are not thread-safe.
+ */
+
+package edu.umass.cs.mallet.base.types;
+
+public class FeatureIdBuffer
+{
+	Alphabet dictionary;
+	MappedAlphabet mappedDictionary;
+	char[] name = new char[64];
+	int[] ids = new int[32];
+	int size = 0;
+	long unknownCount = 0;
+
+	public FeatureIdBuffer (Alphabet dictionary)
+	{
+		this.dictionary = dictionary;
+		if (dictionary instanceof MappedAlphabet)
+			mappedDictionary = (MappedAlphabet) dictionary;
+	}
+
+	public Alphabet getAlphabet () { return dictionary; }
+
+	/** Removes all the ids, but not the count of unknown features. */
+	public void clear ()
+	{
+		size = 0;
+	}
+
+	public int size () { return size; }
+
+	public int getId (int i)
+	{
+		if (i >= size)
+			throw new IndexOutOfBoundsException ("Index: "+i+", Size: "+size);
+		return ids[i];
+	}
+
+	/** Returns the number of features which were not in the alphabet. */
+	public long getUnknownCount () { return unknownCount; }
+
+	/** Adds the id of the feature named <code>feature</code>. */
+	public void add (String feature)
+	{
+		addId (dictionary.lookupIndex (feature, false));
+	}
+
+	/** Adds the id of the feature named <code>prefix+value</code>. */
+	public void add (String prefix, String value)
+	{
+		add (prefix, value, 0, value.length ());
+	}
+
+	/** Adds the id of the feature named <code>prefix+value.substring(start,end)</code>. */
+	public void add (String prefix, String value, int start, int end)
+	{
+		int prefixLength = prefix.length ();
+		int length = prefixLength + end - start;
+		if (name.length < length)
+			name = new char[Math.max (length, 2 * name.length)];
+		prefix.getChars (0, prefixLength, name, 0);
+		value.getChars (start, end, name, prefixLength);
+		if (mappedDictionary != null)
+			addId (mappedDictionary.lookupIndex (name, length));
+		else
+			addId (dictionary.lookupIndex (new String (name, 0, length), false));
+	}
+
+	/** Adds <code>id</code>, or counts an unknown feature if it is negative. */
+	public void addId (int id)
+	{
+		if (id < 0) {
+			unknownCount++;
+			return;
+		}
+		if (size == ids.length) {
+			int[] newIds = new int[2 * ids.length];
+			System.arraycopy (ids, 0, newIds, 0, size);
+			ids = newIds;
+		}
+		ids[size++] = id;
+	}
+
+}
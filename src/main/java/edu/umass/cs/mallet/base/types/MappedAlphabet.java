@@ -0,0 +1,289 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 A read-only {@link Alphabet} of Strings which is kept in a {@link ByteBuffer}
+	 rather than in a hash map and list on the heap.  The buffer holds an
+	 open-addressing hash table of the entries and the entries themselves as
+	 UTF-16 characters, in the layout written by {@link #write}.  When the
+	 buffer is a read-only mapping of a file, processes which map the same
+	 file share one copy of the alphabet through the page cache.
+	 <p>
+	 Growth is always stopped, so looking up an entry which is not in the
+	 alphabet returns -1.  Looking up an entry does not create any objects,
+	 so instances may be shared between threads.  Serializing one writes an
+	 ordinary <code>Alphabet</code> with the same entries.
+ */
+
+package edu.umass.cs.mallet.base.types;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+public class MappedAlphabet extends Alphabet
+{
+	// Header: size, capacity, number of characters, unused
+	private static final int HEADER_INTS = 4;
+
+	int size;
+	int mask;
+	// Index of the entry in each slot of the hash table, or -1 if it is empty
+	IntBuffer slots;
+	IntBuffer hashes;
+	// Entry i is chars [offsets[i], offsets[i+1])
+	IntBuffer offsets;
+	CharBuffer chars;
+
+	/** Creates an alphabet from the bytes between the position and the limit of
+	 * <code>buffer</code>, which must have been written by {@link #write}.  The
+	 * buffer is not copied, and its position is not changed. */
+	public MappedAlphabet (ByteBuffer buffer)
+	{
+		super (1, String.class);
+		IntBuffer header = buffer.slice ().asIntBuffer ();
+		size = header.get (0);
+		int capacity = header.get (1);
+		int numChars = header.get (2);
+		if (size < 0 || capacity <= size || (capacity & (capacity - 1)) != 0 || numChars < 0)
+			throw new IllegalArgumentException ("Not a MappedAlphabet: size "+size+", capacity "+capacity);
+		mask = capacity - 1;
+		int position = 4 * HEADER_INTS;
+		slots = slice (buffer, position, 4 * capacity).asIntBuffer ();
+		position += 4 * capacity;
+		hashes = slice (buffer, position, 4 * size).asIntBuffer ();
+		position += 4 * size;
+		offsets = slice (buffer, position, 4 * (size + 1)).asIntBuffer ();
+		position += 4 * (size + 1);
+		chars = slice (buffer, position, 2 * numChars).asCharBuffer ();
+		stopGrowth ();
+	}
+
+	private static ByteBuffer slice (ByteBuffer buffer, int position, int length)
+	{
+		ByteBuffer b = buffer.duplicate ();
+		b.position (buffer.position () + position);
+		b.limit (b.position () + length);
+		return b.slice ();
+	}
+
+	/** Writes the entries of <code>alphabet</code>, which must all be Strings, in
+	 * the layout read by {@link #MappedAlphabet(ByteBuffer)}.  The hash table is
+	 * at most half full. */
+	public static void write (Alphabet alphabet, DataOutputStream out) throws IOException
+	{
+		int size = alphabet.size ();
+		int capacity = 2;
+		while (capacity < 2 * size)
+			capacity *= 2;
+		int[] slots = new int[capacity];
+		java.util.Arrays.fill (slots, -1);
+		int numChars = 0;
+		for (int i = 0; i < size; i++) {
+			Object entry = alphabet.lookupObject (i);
+			if (!(entry instanceof String))
+				throw new IllegalArgumentException ("Entry "+i+" is a "+entry.getClass ().getName ()+", not a String");
+			String s = (String) entry;
+			int slot = hash (s.hashCode ()) & (capacity - 1);
+			while (slots[slot] >= 0)
+				slot = (slot + 1) & (capacity - 1);
+			slots[slot] = i;
+			numChars += s.length ();
+		}
+		out.writeInt (size);
+		out.writeInt (capacity);
+		out.writeInt (numChars);
+		out.writeInt (0);
+		for (int slot = 0; slot < capacity; slot++)
+			out.writeInt (slots[slot]);
+		for (int i = 0; i < size; i++)
+			out.writeInt (alphabet.lookupObject (i).hashCode ());
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			out.writeInt (offset);
+			offset += ((String) alphabet.lookupObject (i)).length ();
+		}
+		out.writeInt (offset);
+		for (int i = 0; i < size; i++)
+			out.writeChars ((String) alphabet.lookupObject (i));
+	}
+
+	// Spreads the high bits of String.hashCode() into the low bits used for the slot
+	private static int hash (int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+	public int lookupIndex (Object entry, boolean addIfNotPresent)
+	{
+		if (entry == null)
+			throw new IllegalArgumentException ("Can't lookup \"null\" in an Alphabet.");
+		if (entry.getClass () != String.class)
+			throw new IllegalArgumentException ("Non-matching entry class, "+entry.getClass ()+", was "+String.class);
+		String s = (String) entry;
+		int h = s.hashCode ();
+		for (int slot = hash (h) & mask; ; slot = (slot + 1) & mask) {
+			int index = slots.get (slot);
+			if (index < 0)
+				return -1;
+			if (hashes.get (index) == h && matches (index, s))
+				return index;
+		}
+	}
+
+	/** Returns the index of the entry made of the first <code>length</code> characters
+	 * of <code>key</code>, or -1 if there is none, without creating a String. */
+	public int lookupIndex (char[] key, int length)
+	{
+		// The same as String.hashCode()
+		int h = 0;
+		for (int i = 0; i < length; i++)
+			h = 31 * h + key[i];
+		for (int slot = hash (h) & mask; ; slot = (slot + 1) & mask) {
+			int index = slots.get (slot);
+			if (index < 0)
+				return -1;
+			if (hashes.get (index) == h && matches (index, key, length))
+				return index;
+		}
+	}
+
+	private boolean matches (int index, char[] key, int length)
+	{
+		int start = offsets.get (index);
+		if (offsets.get (index + 1) - start != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (chars.get (start + i) != key[i])
+				return false;
+		return true;
+	}
+
+	private boolean matches (int index, String s)
+	{
+		int start = offsets.get (index);
+		int length = s.length ();
+		if (offsets.get (index + 1) - start != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (chars.get (start + i) != s.charAt (i))
+				return false;
+		return true;
+	}
+
+	public Object lookupObject (int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException ("Index: "+index+", Size: "+size);
+		int start = offsets.get (index);
+		char[] c = new char[offsets.get (index + 1) - start];
+		for (int i = 0; i < c.length; i++)
+			c[i] = chars.get (start + i);
+		return new String (c);
+	}
+
+	public boolean contains (Object entry)
+	{
+		return entry instanceof String && lookupIndex (entry, false) >= 0;
+	}
+
+	public int size ()
+	{
+		return size;
+	}
+
+	public void startGrowth ()
+	{
+		throw new UnsupportedOperationException ("A MappedAlphabet is read-only");
+	}
+
+	public Object clone ()
+	{
+		return toAlphabet ();
+	}
+
+	/** Returns an ordinary, growable copy of this alphabet on the heap. */
+	public Alphabet toAlphabet ()
+	{
+		Alphabet ret = new Alphabet (size, String.class);
+		for (int i = 0; i < size; i++)
+			ret.lookupIndex (lookupObject (i), true);
+		if (growthStopped ())
+			ret.stopGrowth ();
+		return ret;
+	}
+
+	private ArrayList<Object> entryList ()
+	{
+		ArrayList<Object> ret = new ArrayList<Object> (size);
+		for (int i = 0; i < size; i++)
+			ret.add (lookupObject (i));
+		return ret;
+	}
+
+	public Object[] toArray ()
+	{
+		return entryList ().toArray ();
+	}
+
+	public Object[] toArray (Object[] in)
+	{
+		return entryList ().toArray (in);
+	}
+
+	public Iterator<Object> iterator ()
+	{
+		return entryList ().iterator ();
+	}
+
+	public Object[] lookupObjects (int[] indices)
+	{
+		return lookupObjects (indices, new Object[indices.length]);
+	}
+
+	public Object[] lookupObjects (int[] indices, Object[] buf)
+	{
+		for (int i = 0; i < indices.length; i++)
+			buf[i] = lookupObject (indices[i]);
+		return buf;
+	}
+
+	public String toString ()
+	{
+		StringBuffer sb = new StringBuffer ();
+		for (int i = 0; i < size; i++) {
+			sb.append (lookupObject (i));
+			sb.append ('\n');
+		}
+		return sb.toString ();
+	}
+
+	public void dump (PrintWriter out)
+	{
+		for (int i = 0; i < size; i++)
+			out.println (i+" => "+lookupObject (i));
+	}
+
+	// Serialization
+
+	private static final long serialVersionUID = 1;
+
+	private Object writeReplace () throws ObjectStreamException
+	{
+		return toAlphabet ();
+	}
+
+}
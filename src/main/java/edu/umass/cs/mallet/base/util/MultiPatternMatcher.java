@@ -0,0 +1,789 @@
+/* Copyright (C) 2002 Univ. of Massachusetts Amherst, Computer Science Dept.
+   This file is part of "MALLET" (MAchine Learning for LanguagE Toolkit).
+   http://www.cs.umass.edu/~mccallum/mallet
+   This software is provided under the terms of the Common Public License,
+   version 1.0, as published by http://www.opensource.org.  For further
+   information, see the file `LICENSE' included with this distribution. */
+
+
+
+
+/**
+	 Finds which of a list of regular expressions match an entire string, as
+	 <code>pattern.matcher(text).matches()</code> would, in one pass over the
+	 string instead of one per pattern.  The patterns are compiled together
+	 into a deterministic automaton over classes of characters which the
+	 patterns do not distinguish; when the automaton for all of them would be
+	 too large, they are split between several automata.
+	 <p>
+	 Only the regular part of the syntax of {@link Pattern} is compiled:
+	 literals, escaped characters, character classes without unions or
+	 intersections, the predefined classes \d \s \w and their negations,
+	 <code>.</code>, groups, alternation and the greedy or reluctant
+	 quantifiers, with no flags other than <code>CASE_INSENSITIVE</code>.
+	 Any other pattern is matched with <code>java.util.regex</code>, so the
+	 result is the same for every pattern.
+	 <p>
+	 The results for recently matched strings may be kept in a fixed-size
+	 cache, which only pays off when walking the automata costs more than
+	 hashing and comparing the string.  Instances may be shared between
+	 threads.
+ */
+
+package edu.umass.cs.mallet.base.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class MultiPatternMatcher
+{
+	// The largest number of states of one automaton
+	private static final int MAX_STATES = 4096;
+	// The largest count of a bounded quantifier, which is compiled as copies
+	private static final int MAX_COUNT = 32;
+	private static final int[] NONE = new int[0];
+	private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+	Pattern[] patterns;
+	Automaton[] automata;
+	// The patterns which could not be compiled
+	int[] uncompiled;
+	// The cached matches of recent strings; entries are immutable, so a
+	// thread sees either an old entry or a complete new one
+	Entry[] cache;
+	int cacheMask;
+
+	/** Creates a matcher for <code>patterns</code>, which caches the matches of
+	 * <code>cacheSize</code> strings, rounded up to a power of two, or of none
+	 * if it is 0. */
+	public MultiPatternMatcher (List<Pattern> patterns, int cacheSize)
+	{
+		this.patterns = patterns.toArray (new Pattern[patterns.size ()]);
+		Node[] nodes = new Node[this.patterns.length];
+		List<Integer> compiled = new ArrayList<Integer> ();
+		List<Integer> notCompiled = new ArrayList<Integer> ();
+		for (int p = 0; p < nodes.length; p++) {
+			nodes[p] = new Parser (this.patterns[p]).parse ();
+			if (nodes[p] != null)
+				compiled.add (p);
+			else
+				notCompiled.add (p);
+		}
+		List<Automaton> automata = new ArrayList<Automaton> ();
+		compile (nodes, compiled, automata, notCompiled);
+		this.automata = automata.toArray (new Automaton[automata.size ()]);
+		uncompiled = toArray (notCompiled);
+		Arrays.sort (uncompiled);
+		int capacity = 1;
+		while (capacity < cacheSize)
+			capacity *= 2;
+		cache = cacheSize > 0 ? new Entry[capacity] : null;
+		cacheMask = capacity - 1;
+	}
+
+	// Compiles the patterns into one automaton, or splits them in two if it
+	// would be too large
+	private static void compile (Node[] nodes, List<Integer> patterns, List<Automaton> automata, List<Integer> notCompiled)
+	{
+		if (patterns.isEmpty ())
+			return;
+		Automaton automaton = Automaton.build (nodes, toArray (patterns));
+		if (automaton != null)
+			automata.add (automaton);
+		else if (patterns.size () == 1)
+			notCompiled.add (patterns.get (0));
+		else {
+			int half = patterns.size () / 2;
+			compile (nodes, patterns.subList (0, half), automata, notCompiled);
+			compile (nodes, patterns.subList (half, patterns.size ()), automata, notCompiled);
+		}
+	}
+
+	private static int[] toArray (List<Integer> list)
+	{
+		int[] ret = new int[list.size ()];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = list.get (i);
+		return ret;
+	}
+
+	public int numPatterns ()
+	{
+		return patterns.length;
+	}
+
+	public Pattern getPattern (int index)
+	{
+		return patterns[index];
+	}
+
+	/** Returns whether pattern <code>index</code> is matched by an automaton
+	 * rather than by <code>java.util.regex</code>. */
+	public boolean isCompiled (int index)
+	{
+		return Arrays.binarySearch (uncompiled, index) < 0;
+	}
+
+	/** Returns the indices of the patterns which match all of <code>text</code>,
+	 * in increasing order.  The array may be shared, and must not be changed. */
+	public int[] matches (String text)
+	{
+		if (cache == null)
+			return findMatches (text);
+		int h = text.hashCode ();
+		int slot = (h ^ (h >>> 16)) & cacheMask;
+		Entry entry = cache[slot];
+		if (entry == null || !entry.text.equals (text)) {
+			entry = new Entry (text, findMatches (text));
+			cache[slot] = entry;
+		}
+		return entry.matches;
+	}
+
+	private int[] findMatches (String text)
+	{
+		if (automata.length == 1 && uncompiled.length == 0)
+			return automata[0].matches (text);
+		int[] ret = NONE;
+		for (int a = 0; a < automata.length; a++)
+			ret = merge (ret, automata[a].matches (text));
+		for (int i = 0; i < uncompiled.length; i++)
+			if (patterns[uncompiled[i]].matcher (text).matches ())
+				ret = merge (ret, new int[] { uncompiled[i] });
+		return ret;
+	}
+
+	private static int[] merge (int[] a, int[] b)
+	{
+		if (b.length == 0)
+			return a;
+		if (a.length == 0)
+			return b;
+		int[] ret = new int[a.length + b.length];
+		System.arraycopy (a, 0, ret, 0, a.length);
+		System.arraycopy (b, 0, ret, a.length, b.length);
+		Arrays.sort (ret);
+		return ret;
+	}
+
+	private static class Entry
+	{
+		final String text;
+		final int[] matches;
+
+		Entry (String text, int[] matches)
+		{
+			this.text = text;
+			this.matches = matches;
+		}
+	}
+
+
+	// Sets of code points, as sorted, disjoint ranges [start, end] in an int[]
+	// of alternating starts and ends
+
+	private static int[] range (int start, int end)
+	{
+		return new int[] { start, end };
+	}
+
+	private static int[] union (int[] a, int[] b)
+	{
+		int[] ret = new int[a.length + b.length];
+		int size = 0;
+		// Takes the ranges of both sets in order of their starts, and joins
+		// each to the last one if they overlap or touch
+		for (int i = 0, j = 0; i < a.length || j < b.length; ) {
+			int start, end;
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				start = a[i];
+				end = a[i+1];
+				i += 2;
+			} else {
+				start = b[j];
+				end = b[j+1];
+				j += 2;
+			}
+			if (size > 0 && start <= ret[size-1] + 1)
+				ret[size-1] = Math.max (ret[size-1], end);
+			else {
+				ret[size++] = start;
+				ret[size++] = end;
+			}
+		}
+		return Arrays.copyOf (ret, size);
+	}
+
+	private static int[] complement (int[] set)
+	{
+		int[] ret = new int[set.length + 2];
+		int size = 0;
+		int next = 0;
+		for (int i = 0; i < set.length; i += 2) {
+			if (set[i] > next) {
+				ret[size++] = next;
+				ret[size++] = set[i] - 1;
+			}
+			next = set[i+1] + 1;
+		}
+		if (next <= MAX_CODE_POINT) {
+			ret[size++] = next;
+			ret[size++] = MAX_CODE_POINT;
+		}
+		return Arrays.copyOf (ret, size);
+	}
+
+	private static boolean contains (int[] set, int c)
+	{
+		for (int i = 0; i < set.length && set[i] <= c; i += 2)
+			if (c <= set[i+1])
+				return true;
+		return false;
+	}
+
+	// Adds the other case of the ASCII letters in the set, as CASE_INSENSITIVE
+	// does without UNICODE_CASE
+	private static int[] caseInsensitive (int[] set)
+	{
+		int[] ret = set;
+		for (int c = 'A'; c <= 'Z'; c++) {
+			int lower = c + ('a' - 'A');
+			if (contains (set, c) != contains (set, lower))
+				ret = union (ret, contains (set, c) ? range (lower, lower) : range (c, c));
+		}
+		return ret;
+	}
+
+
+	// The syntax tree of a pattern
+
+	private static class Node
+	{
+		static final int SET = 0, CONCAT = 1, ALTERNATION = 2, REPEAT = 3;
+
+		int type;
+		int[] set;
+		Node[] children;
+		int min, max;
+
+		Node (int type, int[] set, Node[] children, int min, int max)
+		{
+			this.type = type;
+			this.set = set;
+			this.children = children;
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	private static class UnsupportedSyntax extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class Parser
+	{
+		static final int[] DIGIT = range ('0', '9');
+		static final int[] SPACE = union (range ('\t', '\r'), range (' ', ' '));
+		static final int[] WORD = union (union (range ('0', '9'), range ('A', 'Z')), union (range ('_', '_'), range ('a', 'z')));
+		// Any character but a line terminator, without DOTALL or UNIX_LINES
+		static final int[] DOT = complement (union (union (range ('\n', '\n'), range ('\r', '\r')),
+		                                            union (range ('\u0085', '\u0085'), range ((char) 0x2028, (char) 0x2029))));
+
+		String regex;
+		boolean caseInsensitive;
+		int flags;
+		int position;
+
+		Parser (Pattern pattern)
+		{
+			regex = pattern.pattern ();
+			flags = pattern.flags ();
+			caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+		}
+
+		// Returns the tree of the pattern, or null if it has unsupported syntax
+		Node parse ()
+		{
+			if ((flags & ~Pattern.CASE_INSENSITIVE) != 0)
+				return null;
+			try {
+				Node node = alternation ();
+				if (position != regex.length ())
+					return null;
+				return node;
+			} catch (UnsupportedSyntax e) {
+				return null;
+			}
+		}
+
+		boolean more ()
+		{
+			return position < regex.length ();
+		}
+
+		int peek ()
+		{
+			return regex.codePointAt (position);
+		}
+
+		int next ()
+		{
+			int c = regex.codePointAt (position);
+			position += Character.charCount (c);
+			return c;
+		}
+
+		Node alternation () throws UnsupportedSyntax
+		{
+			List<Node> alternatives = new ArrayList<Node> ();
+			alternatives.add (concatenation ());
+			while (more () && peek () == '|') {
+				next ();
+				alternatives.add (concatenation ());
+			}
+			if (alternatives.size () == 1)
+				return alternatives.get (0);
+			return new Node (Node.ALTERNATION, null, alternatives.toArray (new Node[alternatives.size ()]), 0, 0);
+		}
+
+		Node concatenation () throws UnsupportedSyntax
+		{
+			List<Node> items = new ArrayList<Node> ();
+			while (more () && peek () != '|' && peek () != ')')
+				items.add (repetition ());
+			return new Node (Node.CONCAT, null, items.toArray (new Node[items.size ()]), 0, 0);
+		}
+
+		Node repetition () throws UnsupportedSyntax
+		{
+			Node atom = atom ();
+			if (!more ())
+				return atom;
+			int min, max;
+			int c = peek ();
+			if (c == '*') {
+				min = 0;
+				max = -1;
+			} else if (c == '+') {
+				min = 1;
+				max = -1;
+			} else if (c == '?') {
+				min = 0;
+				max = 1;
+			} else if (c == '{') {
+				next ();
+				min = number ();
+				max = min;
+				if (more () && peek () == ',') {
+					next ();
+					max = more () && peek () == '}' ? -1 : number ();
+				}
+				if (!more () || peek () != '}' || max > MAX_COUNT || (max >= 0 && max < min) || min > MAX_COUNT)
+					throw new UnsupportedSyntax ();
+			} else
+				return atom;
+			next ();
+			// A reluctant quantifier matches the same strings; a possessive one
+			// may not, and a second quantifier is an error
+			if (more () && peek () == '?')
+				next ();
+			if (more () && (peek () == '+' || peek () == '*' || peek () == '?' || peek () == '{'))
+				throw new UnsupportedSyntax ();
+			return new Node (Node.REPEAT, null, new Node[] { atom }, min, max);
+		}
+
+		int number () throws UnsupportedSyntax
+		{
+			int start = position;
+			while (more () && peek () >= '0' && peek () <= '9' && position - start < 4)
+				next ();
+			if (position == start || (more () && peek () >= '0' && peek () <= '9'))
+				throw new UnsupportedSyntax ();
+			return Integer.parseInt (regex.substring (start, position));
+		}
+
+		Node atom () throws UnsupportedSyntax
+		{
+			int c = next ();
+			switch (c) {
+			case '(':
+				if (more () && peek () == '?') {
+					next ();
+					if (!more () || next () != ':')
+						throw new UnsupportedSyntax ();
+				}
+				Node group = alternation ();
+				if (!more () || next () != ')')
+					throw new UnsupportedSyntax ();
+				return group;
+			case '[':
+				return set (characterClass ());
+			case '.':
+				return set (DOT);
+			case '\\':
+				int[] predefined = predefinedClass ();
+				if (predefined != null)
+					return set (predefined);
+				return set (single (escapedCharacter ()));
+			case '^': case '$': case '*': case '+': case '?': case '{': case ')':
+				throw new UnsupportedSyntax ();
+			default:
+				return set (single (c));
+			}
+		}
+
+		Node set (int[] set)
+		{
+			return new Node (Node.SET, set, null, 0, 0);
+		}
+
+		int[] single (int c)
+		{
+			int[] set = range (c, c);
+			return caseInsensitive ? caseInsensitive (set) : set;
+		}
+
+		// After a backslash, returns a predefined class and consumes it, or
+		// returns null if the escape is not one
+		int[] predefinedClass () throws UnsupportedSyntax
+		{
+			if (!more ())
+				throw new UnsupportedSyntax ();
+			int[] set;
+			switch (peek ()) {
+			case 'd': set = DIGIT; break;
+			case 'D': set = complement (DIGIT); break;
+			case 's': set = SPACE; break;
+			case 'S': set = complement (SPACE); break;
+			case 'w': set = WORD; break;
+			case 'W': set = complement (WORD); break;
+			default: return null;
+			}
+			next ();
+			return set;
+		}
+
+		// After a backslash, returns the character it escapes
+		int escapedCharacter () throws UnsupportedSyntax
+		{
+			int c = next ();
+			switch (c) {
+			case 't': return '\t';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 'f': return '\f';
+			case 'a': return '\u0007';
+			case 'e': return '\u001B';
+			}
+			// Other letters and digits are classes, references or codes
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+				throw new UnsupportedSyntax ();
+			return c;
+		}
+
+		// After the opening bracket, returns the set of the class and consumes it
+		int[] characterClass () throws UnsupportedSyntax
+		{
+			boolean negated = false;
+			if (more () && peek () == '^') {
+				next ();
+				negated = true;
+			}
+			int[] set = new int[0];
+			boolean first = true;
+			while (true) {
+				if (!more ())
+					throw new UnsupportedSyntax ();
+				int c = next ();
+				if (c == ']') {
+					if (first)
+						throw new UnsupportedSyntax ();
+					break;
+				}
+				first = false;
+				// Nested classes and intersections
+				if (c == '[' || (c == '&' && more () && peek () == '&'))
+					throw new UnsupportedSyntax ();
+				if (c == '\\') {
+					int[] predefined = predefinedClass ();
+					if (predefined != null) {
+						// A class cannot start a range
+						if (more () && peek () == '-' && position + 1 < regex.length () && regex.charAt (position + 1) != ']')
+							throw new UnsupportedSyntax ();
+						set = union (set, predefined);
+						continue;
+					}
+					c = escapedCharacter ();
+				}
+				int end = c;
+				if (more () && peek () == '-' && position + 1 < regex.length () && regex.charAt (position + 1) != ']') {
+					next ();
+					end = next ();
+					if (end == '[')
+						throw new UnsupportedSyntax ();
+					if (end == '\\') {
+						if (predefinedClass () != null)
+							throw new UnsupportedSyntax ();
+						end = escapedCharacter ();
+					}
+					if (end < c)
+						throw new UnsupportedSyntax ();
+				}
+				set = union (set, range (c, end));
+			}
+			if (caseInsensitive)
+				set = caseInsensitive (set);
+			return negated ? complement (set) : set;
+		}
+	}
+
+
+	// A deterministic automaton, built from a nondeterministic one with
+	// epsilon transitions by the subset construction
+
+	private static class Automaton
+	{
+		// The first code point of each class of code points which every
+		// pattern treats alike
+		int[] classStarts;
+		int[] asciiClass = new int[128];
+		int numClasses;
+		// Indexed by state * numClasses + class
+		int[] transitions;
+		// The patterns which match when the text ends in each state
+		int[][] accepted;
+		int start;
+		int dead;
+
+		int[] matches (String text)
+		{
+			int state = start;
+			int length = text.length ();
+			for (int i = 0; i < length && state != dead; ) {
+				int c = text.charAt (i);
+				int k;
+				if (c < 128) {
+					k = asciiClass[c];
+					i++;
+				} else {
+					c = text.codePointAt (i);
+					i += Character.charCount (c);
+					k = Arrays.binarySearch (classStarts, c);
+					if (k < 0)
+						k = -k - 2;
+				}
+				state = transitions[state * numClasses + k];
+			}
+			return accepted[state];
+		}
+
+		// Returns the automaton of the patterns, or null if it would have too
+		// many states
+		static Automaton build (Node[] nodes, int[] patterns)
+		{
+			Nfa nfa = new Nfa ();
+			int[] starts = new int[patterns.length];
+			for (int i = 0; i < patterns.length; i++) {
+				starts[i] = nfa.newState ();
+				int end = nfa.compile (nodes[patterns[i]], starts[i]);
+				nfa.accept.set (end, patterns[i]);
+			}
+			Automaton a = new Automaton ();
+			a.setClasses (nfa.sets);
+			int[][] closures = nfa.closures ();
+
+			HashMap<String,Integer> ids = new HashMap<String,Integer> ();
+			List<int[]> states = new ArrayList<int[]> ();
+			int[] transitions = new int[64 * a.numClasses];
+			a.dead = a.state (new int[0], ids, states);
+			int[] startSet = new int[0];
+			for (int s : starts)
+				startSet = union (startSet, closures[s]);
+			a.start = a.state (startSet, ids, states);
+			boolean[] targets = new boolean[nfa.size ()];
+			for (int d = 0; d < states.size (); d++) {
+				if (states.size () > MAX_STATES)
+					return null;
+				if (transitions.length < states.size () * a.numClasses)
+					transitions = Arrays.copyOf (transitions, 2 * states.size () * a.numClasses);
+				int[] set = states.get (d);
+				for (int k = 0; k < a.numClasses; k++) {
+					int c = a.classStarts[k];
+					Arrays.fill (targets, false);
+					for (int i = 0; i < set.length; i += 2)
+						for (int s = set[i]; s <= set[i+1]; s++)
+							for (int t = 0; t < nfa.edgeSets.get (s).size (); t++)
+								if (contains (nfa.sets.get (nfa.edgeSets.get (s).get (t)), c)) {
+									int[] closure = closures[nfa.edgeTargets.get (s).get (t)];
+									for (int j = 0; j < closure.length; j += 2)
+										Arrays.fill (targets, closure[j], closure[j+1] + 1, true);
+								}
+					transitions[d * a.numClasses + k] = a.state (toSet (targets), ids, states);
+				}
+			}
+			a.transitions = Arrays.copyOf (transitions, states.size () * a.numClasses);
+			a.accepted = new int[states.size ()][];
+			for (int d = 0; d < states.size (); d++) {
+				int[] set = states.get (d);
+				List<Integer> accepted = new ArrayList<Integer> ();
+				for (int i = 0; i < set.length; i += 2)
+					for (int s = set[i]; s <= set[i+1]; s++)
+						if (nfa.accept.get (s) >= 0)
+							accepted.add (nfa.accept.get (s));
+				int[] ret = toArray (accepted);
+				Arrays.sort (ret);
+				a.accepted[d] = ret.length == 0 ? NONE : ret;
+			}
+			return a;
+		}
+
+		// The states of the NFA in a set of states are kept as ranges too
+		private static int[] toSet (boolean[] members)
+		{
+			int[] ret = new int[0];
+			for (int s = 0; s < members.length; s++)
+				if (members[s]) {
+					int end = s;
+					while (end + 1 < members.length && members[end + 1])
+						end++;
+					ret = Arrays.copyOf (ret, ret.length + 2);
+					ret[ret.length - 2] = s;
+					ret[ret.length - 1] = end;
+					s = end;
+				}
+			return ret;
+		}
+
+		private int state (int[] set, HashMap<String,Integer> ids, List<int[]> states)
+		{
+			String key = Arrays.toString (set);
+			Integer id = ids.get (key);
+			if (id == null) {
+				id = states.size ();
+				ids.put (key, id);
+				states.add (set);
+			}
+			return id;
+		}
+
+		private void setClasses (List<int[]> sets)
+		{
+			int[] boundaries = new int[] { 0 };
+			for (int[] set : sets)
+				for (int i = 0; i < set.length; i += 2) {
+					boundaries = Arrays.copyOf (boundaries, boundaries.length + 2);
+					boundaries[boundaries.length - 2] = set[i];
+					boundaries[boundaries.length - 1] = set[i+1] + 1;
+				}
+			Arrays.sort (boundaries);
+			int n = 0;
+			for (int i = 0; i < boundaries.length; i++)
+				if ((n == 0 || boundaries[i] != boundaries[n-1]) && boundaries[i] <= MAX_CODE_POINT)
+					boundaries[n++] = boundaries[i];
+			classStarts = Arrays.copyOf (boundaries, n);
+			numClasses = n;
+			for (int c = 0, k = 0; c < 128; c++) {
+				while (k + 1 < n && classStarts[k + 1] <= c)
+					k++;
+				asciiClass[c] = k;
+			}
+		}
+	}
+
+	// A nondeterministic automaton with epsilon transitions
+	private static class Nfa
+	{
+		List<int[]> sets = new ArrayList<int[]> ();
+		// The transitions of each state on a character in a set, and on nothing
+		List<List<Integer>> edgeSets = new ArrayList<List<Integer>> ();
+		List<List<Integer>> edgeTargets = new ArrayList<List<Integer>> ();
+		List<List<Integer>> epsilons = new ArrayList<List<Integer>> ();
+		List<Integer> accept = new ArrayList<Integer> ();
+
+		int size ()
+		{
+			return accept.size ();
+		}
+
+		int newState ()
+		{
+			edgeSets.add (new ArrayList<Integer> ());
+			edgeTargets.add (new ArrayList<Integer> ());
+			epsilons.add (new ArrayList<Integer> ());
+			accept.add (-1);
+			return accept.size () - 1;
+		}
+
+		// Adds the transitions of the node from the state, and returns the state
+		// they end in
+		int compile (Node node, int from)
+		{
+			switch (node.type) {
+			case Node.SET:
+				int to = newState ();
+				sets.add (node.set);
+				edgeSets.get (from).add (sets.size () - 1);
+				edgeTargets.get (from).add (to);
+				return to;
+			case Node.CONCAT:
+				for (Node child : node.children)
+					from = compile (child, from);
+				return from;
+			case Node.ALTERNATION:
+				int end = newState ();
+				for (Node child : node.children) {
+					int start = newState ();
+					epsilons.get (from).add (start);
+					epsilons.get (compile (child, start)).add (end);
+				}
+				return end;
+			default:
+				for (int i = 0; i < node.min; i++)
+					from = compile (node.children[0], from);
+				int last = newState ();
+				if (node.max < 0) {
+					int loop = newState ();
+					epsilons.get (from).add (loop);
+					epsilons.get (compile (node.children[0], loop)).add (loop);
+					epsilons.get (loop).add (last);
+				} else {
+					for (int i = node.min; i < node.max; i++) {
+						epsilons.get (from).add (last);
+						from = compile (node.children[0], from);
+					}
+					epsilons.get (from).add (last);
+				}
+				return last;
+			}
+		}
+
+		// The states reachable from each state by epsilon transitions, as sets
+		int[][] closures ()
+		{
+			int[][] ret = new int[size ()][];
+			boolean[] reached = new boolean[size ()];
+			int[] stack = new int[size ()];
+			for (int s = 0; s < size (); s++) {
+				Arrays.fill (reached, false);
+				int top = 0;
+				stack[top++] = s;
+				reached[s] = true;
+				while (top > 0) {
+					int t = stack[--top];
+					for (int u : epsilons.get (t))
+						if (!reached[u]) {
+							reached[u] = true;
+							stack[top++] = u;
+						}
+				}
+				ret[s] = Automaton.toSet (reached);
+			}
+			return ret;
+		}
+	}
+
+}
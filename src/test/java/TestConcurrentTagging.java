@@ -0,0 +1,98 @@
+import banner.BannerWrapper;
+import banner.tagging.Mention;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that tagging with several threads produces the same mentions as a single thread
+ */
+public class TestConcurrentTagging {
+  private static final String[] SENTENCES = {
+    "Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo.",
+    "Only p105 and human c-Rel (hc-Rel) are common to complexes precipitated with antiserum directed against either p105 or hc-Rel.",
+    "The p53 tumor suppressor protein binds to the MDM2 oncoprotein.",
+    "Expression of IL-2 and IL-4 was reduced in T cells lacking NF-AT1.",
+    "These results suggest that the TATA-binding protein (TBP) is required for transcription by RNA polymerase III."
+  };
+
+  private static final int THREADS = 4;
+  private static final int ROUNDS = 25;
+
+  private static String describe(List<Mention> mentions) {
+    StringBuilder sb = new StringBuilder();
+    for(Mention m: mentions)
+      sb.append(m.getText()).append(' ').append(m.getType()).append(' ').append(m.getStartChar()).append(' ').append(m.getEndChar()).append('\n');
+    return sb.toString();
+  }
+
+  @Test
+  public void testTagAll() throws Exception {
+    BannerWrapper single = new BannerWrapper();
+    List<String> batch = new ArrayList<String>();
+    List<String> expected = new ArrayList<String>();
+    for(int r = 0; r < ROUNDS; r ++) {
+      for(String sentence: SENTENCES) {
+        batch.add(sentence);
+        expected.add(describe(single.tag(sentence)));
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<List<Mention>> found = new BannerWrapper(executor).tagAll(batch);
+      assertEquals(expected.size(), found.size());
+      for(int i = 0; i < expected.size(); i ++)
+        assertEquals(expected.get(i), describe(found.get(i)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testConcurrentTagging() throws Exception {
+    BannerWrapper single = new BannerWrapper();
+    final String[] expected = new String[SENTENCES.length];
+    for(int i = 0; i < SENTENCES.length; i ++)
+      expected[i] = describe(single.tag(SENTENCES[i]));
+
+    final BannerWrapper shared = new BannerWrapper(true);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+      for(int t = 0; t < THREADS; t ++) {
+        final int offset = t;
+        results.add(executor.submit(new Callable<String[]>() {
+          public String[] call() {
+            String[] found = new String[SENTENCES.length];
+            for(int r = 0; r < ROUNDS; r ++) {
+              for(int j = 0; j < SENTENCES.length; j ++) {
+                // Each thread visits the sentences in a different order
+                int i = (j + offset + r) % SENTENCES.length;
+                String mentions = describe(shared.tag(SENTENCES[i]));
+                if(found[i] != null && !found[i].equals(mentions))
+                  throw new AssertionError("Mentions changed between rounds for: " + SENTENCES[i]);
+                found[i] = mentions;
+              }
+            }
+            return found;
+          }
+        }));
+      }
+      for(Future<String[]> result: results) {
+        String[] found = result.get();
+        for(int i = 0; i < SENTENCES.length; i ++)
+          assertEquals(expected[i], found[i]);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
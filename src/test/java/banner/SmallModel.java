@@ -0,0 +1,150 @@
+package banner;
+
+import banner.tagging.CRFTagger;
+import banner.tagging.Mention;
+import banner.tagging.MentionType;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.InstanceList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The test fixture of the tests of the CRFs: a small model trained in both directions on a few sentences whose gene
+ * mentions are marked, with the properties it was trained with. It needs only the data in banner_data, not a model.
+ */
+final class SmallModel {
+  static final String[] SENTENCES = {
+    "Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo.",
+    "Only p105 and human c-Rel (hc-Rel) are common to complexes precipitated with antiserum directed against either p105 or hc-Rel.",
+    "The p53 tumor suppressor protein binds to the MDM2 oncoprotein.",
+    "Expression of IL-2 and IL-4 was reduced in T cells lacking NF-AT1.",
+    "These results suggest that the TATA-binding protein (TBP) is required for transcription by RNA polymerase III.",
+    "Mutations in BRCA1 and BRCA2 increase the risk of breast cancer.",
+    "Alpha-1 antitrypsin, TNF-alpha and the 5'-flanking region of beta-globin (HBB) were examined at 37 degrees.",
+    "No genes here.",
+    "A"
+  };
+  // The mentions of SENTENCES, wherever they occur
+  private static final String[] GENES = {
+    "Bis", "Bcl-2", "p105", "human c-Rel", "hc-Rel", "p53", "MDM2", "IL-2", "IL-4", "NF-AT1", "TATA-binding protein", "TBP",
+    "RNA polymerase III", "BRCA1", "BRCA2", "Alpha-1 antitrypsin", "TNF-alpha", "beta-globin", "HBB"
+  };
+
+  private static BannerProperties properties;
+  private static File model;
+
+  private SmallModel() {
+  }
+
+  /**
+   * @return The properties of the model, which read the lemmatiser, part-of-speech tagger and regular expressions from
+   *         banner_data
+   */
+  static synchronized BannerProperties properties() {
+    if(properties == null) {
+      try {
+        properties = BannerProperties.load(mkProps());
+      } catch(Exception e) {
+        throw new IllegalStateException("Cannot read banner_data", e);
+      }
+    }
+    return properties;
+  }
+
+  static Properties mkProps() {
+    Properties props = new Properties();
+    props.setProperty("lemmatiserDataDirectory", "banner_data/nlpdata/lemmatiser");
+    props.setProperty("posTaggerDataDirectory", "banner_data/nlpdata/tagger");
+    props.setProperty("posTagger", "dragon.nlp.tool.HeppleTagger");
+    props.setProperty("tokenizer", "banner.tokenization.SimpleTokenizer");
+    props.setProperty("tagFormat", "IOB");
+    props.setProperty("useNumericNormalization", "true");
+    props.setProperty("useParenthesisPostProcessing", "true");
+    props.setProperty("order", "2");
+    props.setProperty("regexFilename", "banner_data/regex.txt");
+    props.setProperty("useFeatureInduction", "false");
+    props.setProperty("textDirection", "Union");
+    return props;
+  }
+
+  /**
+   * @return A new copy of the model, which tests may change
+   */
+  static CRFTagger tagger() throws IOException {
+    BannerProperties properties = properties();
+    return CRFTagger.load(model(), properties.getLemmatiser(), properties.getPosTagger());
+  }
+
+  /**
+   * @return The file of the model, trained the first time it is needed
+   */
+  static synchronized File model() throws IOException {
+    if(model == null) {
+      BannerProperties properties = properties();
+      CRFTagger tagger = CRFTagger.train(sentences(), properties.getOrder(), false, properties.getTagFormat(), properties.getTextDirection(),
+          properties.getLemmatiser(), properties.getPosTagger(), properties.isUseNumericNormalization(), null, properties.getRegexFilename());
+      File file = File.createTempFile("banner_model", ".dat");
+      file.deleteOnExit();
+      tagger.write(file);
+      model = file;
+    }
+    return model;
+  }
+
+  /**
+   * @return SENTENCES, tokenized, with their gene mentions
+   */
+  static List<Sentence> sentences() {
+    List<Sentence> sentences = new ArrayList<Sentence>();
+    for(String text: SENTENCES)
+      sentences.add(labeled(text));
+    return sentences;
+  }
+
+  /**
+   * @return The sentence, tokenized, with the mentions of GENES in it
+   */
+  static Sentence labeled(String text) {
+    Sentence sentence = tokenized(text);
+    for(String gene: GENES)
+      for(int start = text.indexOf(gene); start >= 0; start = text.indexOf(gene, start + 1)) {
+        int end = start + gene.length();
+        // Only whole tokens are mentions
+        boolean before = start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+        boolean after = end == text.length() || !Character.isLetterOrDigit(text.charAt(end));
+        if(before && after)
+          sentence.addOrMergeMention(new Mention(sentence, MentionType.getType("GENE"), sentence.getTokenIndex(start, true),
+              sentence.getTokenIndex(end - 1, false) + 1));
+      }
+    return sentence;
+  }
+
+  static Sentence tokenized(String text) {
+    Sentence sentence = new Sentence(text);
+    properties().getTokenizer().tokenize(sentence);
+    return sentence;
+  }
+
+  /**
+   * @return The training instances of SENTENCES for the CRF, with the first mention of each moved to the first token, so
+   *         that the labels are not all the most likely ones and the gradient is far from zero
+   */
+  static InstanceList movedInstances(CRF4 crf) {
+    InstanceList instances = new InstanceList(crf.getInputPipe());
+    for(String text: SENTENCES) {
+      Sentence sentence = labeled(text);
+      if(!sentence.getMentions().isEmpty()) {
+        sentence.removeMention(sentence.getMentions().get(0));
+        sentence.addMention(new Mention(sentence, MentionType.getType("GENE"), 0, 1));
+      }
+      instances.add(new Instance(sentence.getTokenText(), sentence.getTokenLabels(properties().getTagFormat()), null, null,
+          crf.getInputPipe()));
+    }
+    return instances;
+  }
+}
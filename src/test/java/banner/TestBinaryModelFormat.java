@@ -0,0 +1,107 @@
+package banner;
+
+import banner.tagging.BinaryModelFormat;
+import banner.tagging.CRFTagger;
+import banner.tagging.Mention;
+import edu.umass.cs.mallet.base.pipe.tsf.ConjunctionTable;
+import edu.umass.cs.mallet.base.types.Alphabet;
+import edu.umass.cs.mallet.base.types.MappedAlphabet;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a small model tags identically after conversion to the binary model format, whether read onto the heap or shared, and
+ * that the stored tables read back as written
+ */
+public class TestBinaryModelFormat {
+  private static String tag(CRFTagger tagger, String text) {
+    Sentence sentence = SmallModel.tokenized(text);
+    tagger.tag(sentence);
+    StringBuilder sb = new StringBuilder();
+    for(Mention m: sentence.getMentions())
+      sb.append(m.getText()).append(' ').append(m.getType()).append(' ').append(m.getStart()).append(' ').append(m.getEnd()).append('\n');
+    return sb.toString();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    BannerProperties properties = SmallModel.properties();
+    File model = SmallModel.model();
+    CRFTagger original = CRFTagger.load(model, properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+
+    File binary = File.createTempFile("banner_model", ".bin");
+    binary.deleteOnExit();
+    BinaryModelFormat.write(original, binary);
+    assertTrue(BinaryModelFormat.isBinaryModel(binary));
+    assertFalse(BinaryModelFormat.isBinaryModel(model));
+
+    for(boolean memoryMap: new boolean[] { true, false }) {
+      CRFTagger converted = BinaryModelFormat.read(binary, properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger(), memoryMap);
+      assertEquals(original.getTextDirection(), converted.getTextDirection());
+      assertEquals(original.getFormat(), converted.getFormat());
+      assertEquals(original.getOrder(), converted.getOrder());
+      assertEquals(original.getForwardCRF().getInputAlphabet().size(), converted.getForwardCRF().getInputAlphabet().size());
+      for(String sentence: SmallModel.SENTENCES)
+        assertEquals(tag(original, sentence), tag(converted, sentence));
+    }
+
+    CRFTagger shared = BinaryModelFormat.readShared(binary, properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+    assertTrue(shared.hasSharedWeights());
+    assertTrue(shared.getForwardCRF().getInputAlphabet() instanceof MappedAlphabet);
+    for(String sentence: SmallModel.SENTENCES)
+      assertEquals(tag(original, sentence), tag(shared, sentence));
+  }
+
+  @Test
+  public void testMappedAlphabet() throws Exception {
+    Alphabet alphabet = new Alphabet();
+    String[] entries = { "W=p53", "2PREFIX=p5", "CHARNGRAM=53", "W=p53@-1", "", "GREEK", "\u03b1-helix" };
+    for(String entry: entries)
+      alphabet.lookupIndex(entry);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MappedAlphabet.write(alphabet, new DataOutputStream(bytes));
+    MappedAlphabet mapped = new MappedAlphabet(ByteBuffer.wrap(bytes.toByteArray()));
+
+    assertEquals(entries.length, mapped.size());
+    for(int i = 0; i < entries.length; i ++) {
+      assertEquals(i, mapped.lookupIndex(entries[i]));
+      assertEquals(entries[i], mapped.lookupObject(i));
+      assertTrue(mapped.contains(entries[i]));
+    }
+    assertEquals(-1, mapped.lookupIndex("W=p54", true));
+    assertFalse(mapped.contains("W=p5"));
+    assertEquals(entries.length, mapped.size());
+  }
+
+  @Test
+  public void testConjunctionTable() throws Exception {
+    Alphabet alphabet = new Alphabet();
+    String[] entries = { "W=p53", "W=p53@-1", "W=p53@2", "GREEK", "GREEK@2", "W=p53@-1@-1" };
+    for(String entry: entries)
+      alphabet.lookupIndex(entry);
+    int[][] conjunctions = { { -1 }, { 0 }, { 2 } };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ConjunctionTable.write(alphabet, conjunctions, new DataOutputStream(bytes));
+    ConjunctionTable resolved = new ConjunctionTable(alphabet, conjunctions);
+
+    for(boolean copy: new boolean[] { true, false }) {
+      ConjunctionTable stored = new ConjunctionTable(alphabet, ByteBuffer.wrap(bytes.toByteArray()), copy);
+      for(int j = 0; j < conjunctions.length; j++)
+        for(int id = 0; id < entries.length; id++)
+          assertEquals(resolved.getConjunction(j, id), stored.getConjunction(j, id));
+    }
+    assertEquals(1, resolved.getConjunction(0, 0));
+    assertEquals(5, resolved.getConjunction(0, 1));
+    assertEquals(3, resolved.getConjunction(1, 3));
+    assertEquals(4, resolved.getConjunction(2, 3));
+    assertEquals(-1, resolved.getConjunction(0, 3));
+  }
+}
@@ -0,0 +1,110 @@
+package banner;
+
+import banner.tagging.CachingLemmatiser;
+import banner.tagging.CachingPosTagger;
+import banner.util.BoundedCache;
+import dragon.nlp.Sentence;
+import dragon.nlp.Word;
+import dragon.nlp.tool.Lemmatiser;
+import dragon.nlp.tool.Tagger;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the eviction and counts of BoundedCache, and that the caching lemmatiser and part-of-speech tagger give the
+ * results of the ones they wrap without calling them again
+ */
+public class TestBoundedCache {
+  @Test
+  public void testEviction() {
+    // One value per segment, so that the eviction order is that of a single map
+    BoundedCache<String, Integer> lru = new BoundedCache<String, Integer>(1, BoundedCache.Eviction.LRU);
+    lru.put("a", 1);
+    assertEquals(Integer.valueOf(1), lru.get("a"));
+    lru.put("b", 2);
+    assertNull(lru.get("a"));
+    assertEquals(1, lru.size());
+    assertEquals(1, lru.getHits());
+    assertEquals(1, lru.getMisses());
+    assertEquals(1, lru.getEvictions());
+
+    BoundedCache<Integer, Integer> fifo = new BoundedCache<Integer, Integer>(64, BoundedCache.Eviction.FIFO);
+    BoundedCache<Integer, Integer> recent = new BoundedCache<Integer, Integer>(64, BoundedCache.Eviction.LRU);
+    for(int i = 0; i < 1000; i ++) {
+      fifo.put(i, i);
+      recent.put(i, i);
+      // Keeps 0 in use
+      fifo.get(0);
+      recent.get(0);
+    }
+    assertEquals(64, fifo.size());
+    assertEquals(64, recent.size());
+    assertNull(fifo.get(0));
+    assertEquals(Integer.valueOf(0), recent.get(0));
+    assertEquals(Integer.valueOf(999), fifo.get(999));
+    assertEquals(1000 - 64, fifo.getEvictions());
+  }
+
+  @Test
+  public void testLemmatiser() {
+    final int[] calls = new int[1];
+    Lemmatiser lemmatiser = new Lemmatiser() {
+      public String lemmatize(String word) {
+        calls[0] ++;
+        return word.toLowerCase();
+      }
+
+      public String lemmatize(String word, int pos) {
+        calls[0] ++;
+        return word.toLowerCase() + pos;
+      }
+
+      public String stem(String word) {
+        return word;
+      }
+    };
+    BoundedCache<CachingLemmatiser.Key, String> cache = new BoundedCache<CachingLemmatiser.Key, String>(100, BoundedCache.Eviction.LRU);
+    CachingLemmatiser caching = new CachingLemmatiser(lemmatiser, cache);
+    for(int round = 0; round < 3; round ++) {
+      assertEquals("genes", caching.lemmatize("Genes"));
+      assertEquals("genes1", caching.lemmatize("Genes", 1));
+      assertEquals("genes2", caching.lemmatize("Genes", 2));
+    }
+    assertEquals(3, calls[0]);
+    assertEquals(6, cache.getHits());
+  }
+
+  @Test
+  public void testPosTagger() {
+    final int[] calls = new int[1];
+    Tagger tagger = new Tagger() {
+      public void tag(Sentence sentence) {
+        calls[0] ++;
+        for(Word word = sentence.getFirstWord(); word != null; word = word.next)
+          word.setPOS(word.getContent().toUpperCase(), word.getContent().length());
+      }
+    };
+    BoundedCache<List<String>, CachingPosTagger.Tags> cache = new BoundedCache<List<String>, CachingPosTagger.Tags>(100, BoundedCache.Eviction.LRU);
+    CachingPosTagger caching = new CachingPosTagger(tagger, cache);
+    for(int round = 0; round < 3; round ++) {
+      Sentence sentence = sentence("the", "p53", "gene");
+      caching.tag(sentence);
+      assertEquals("P53", sentence.getWord(1).getPOSLabel());
+      assertEquals(4, sentence.getWord(2).getPOSIndex());
+    }
+    caching.tag(sentence("the", "gene"));
+    assertEquals(2, calls[0]);
+    assertEquals(2, cache.size());
+  }
+
+  private static Sentence sentence(String... words) {
+    Sentence sentence = new Sentence();
+    for(String word: words)
+      sentence.addWord(new Word(word));
+    return sentence;
+  }
+}
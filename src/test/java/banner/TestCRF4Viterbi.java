@@ -0,0 +1,49 @@
+package banner;
+
+import banner.tagging.CRFTagger;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4DenseWeights;
+import edu.umass.cs.mallet.base.fst.CRF4Viterbi;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.Sequence;
+import edu.umass.cs.mallet.base.types.SequencePairAlignment;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that CRF4Viterbi finds the same paths as CRF4.viterbiPath() with a small model,
+ * with both sparse and compiled dense weights
+ */
+public class TestCRF4Viterbi {
+  @Test
+  public void testSamePaths() throws Exception {
+    CRFTagger tagger = SmallModel.tagger();
+
+    for(CRF4 crf: new CRF4[] { tagger.getForwardCRF(), tagger.getReverseCRF() }) {
+      if(crf == null) continue;
+      checkSamePaths(crf, new CRF4Viterbi(crf));
+      checkSamePaths(crf, new CRF4Viterbi(crf, new CRF4DenseWeights(crf)));
+    }
+  }
+
+  private void checkSamePaths(CRF4 crf, CRF4Viterbi decoder) {
+    // One decoder for all the sentences, so that reusing its buffers is tested too
+    for(String text: SmallModel.SENTENCES) {
+      Sentence sentence = SmallModel.tokenized(text);
+      Instance instance = new Instance(sentence.getTokenText(), null, null, null, crf.getInputPipe());
+      FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
+
+      SequencePairAlignment expected = crf.viterbiPath(input);
+      int[] labels = new int[input.size()];
+      double cost = decoder.bestLabels(input, labels);
+
+      assertEquals(Double.doubleToLongBits(expected.getCost()), Double.doubleToLongBits(cost));
+      Sequence output = expected.output();
+      assertEquals(output.size(), labels.length);
+      for(int i = 0; i < labels.length; i ++)
+        assertEquals(output.get(i), decoder.getLabel(labels[i]));
+    }
+  }
+}
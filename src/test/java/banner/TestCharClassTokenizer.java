@@ -0,0 +1,175 @@
+package banner;
+
+import banner.tokenization.BaseTokenizer;
+import banner.tokenization.CharClassTokenizer;
+import banner.tokenization.NaiveTokenizer;
+import banner.tokenization.SimpleTokenizer;
+import banner.tokenization.TokenOffsets;
+import banner.tokenization.Tokenizer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that CharClassTokenizer finds the same tokens as the character tests BaseTokenizer, SimpleTokenizer and
+ * NaiveTokenizer used to make, for sentences and for ranges of a document
+ */
+public class TestCharClassTokenizer {
+  private static final String PUNCTUATION = "`~!@#$%^&*()-=_+[]\\{}|;':\",./<>?";
+  // Letters, digits, punctuation, spaces which are and are not whitespace, and characters of no class
+  private static final String CHARACTERS = "aZ\u00e9\u03b112\u0663+-.%,()/' \t\n\u00a0\u2003\u00b0\u00b1\u2013\ud835\udefc";
+
+  @Test
+  public void testSameTokens() {
+    Random random = new Random(0);
+    for(int n = 0; n < 20000; n ++) {
+      String text = randomText(random);
+      assertEquals(text, reference(text, 0), tokens(CharClassTokenizer.BASE, text));
+      assertEquals(text, reference(text, 1), tokens(CharClassTokenizer.SIMPLE, text));
+      assertEquals(text, reference(text, 2), tokens(CharClassTokenizer.NAIVE, text));
+    }
+    assertEquals("[The, -1.5%, of, IL, -, 2, (, p, <, 0.05, ), ., 3a, 5]",
+        text("The -1.5% of IL-2 (p<0.05). 3a 5", new BaseTokenizer()));
+    assertEquals("[The, -, 1, ., 5, %, of, IL, -, 2, (, p, <, 0, ., 05, ), ., 3a, 5]",
+        text("The -1.5% of IL-2 (p<0.05). 3a 5", new SimpleTokenizer()));
+    assertEquals("[IL, -, 2, 3, a]", text("IL-2 3a", new NaiveTokenizer()));
+  }
+
+  @Test
+  public void testDocument() {
+    Random random = new Random(1);
+    StringBuilder document = new StringBuilder();
+    List<int[]> ranges = new ArrayList<int[]>();
+    for(int n = 0; n < 200; n ++) {
+      String text = randomText(random);
+      int start = document.length();
+      document.append(text).append("\n ");
+      ranges.add(new int[] {start, start + text.length()});
+    }
+    for(CharClassTokenizer tokenizer: new CharClassTokenizer[] {CharClassTokenizer.BASE, CharClassTokenizer.SIMPLE,
+        CharClassTokenizer.NAIVE}) {
+      TokenOffsets offsets = new TokenOffsets(1);
+      for(int[] range: ranges) {
+        offsets.clear();
+        tokenizer.tokenize(document, range[0], range[1], offsets);
+        String text = document.substring(range[0], range[1]);
+        List<String> tokens = new ArrayList<String>();
+        for(int i = 0; i < offsets.size(); i ++)
+          tokens.add((offsets.getStart(i) - range[0]) + "-" + (offsets.getEnd(i) - range[0]));
+        assertEquals(text, tokens(tokenizer, text), tokens);
+      }
+    }
+  }
+
+  private static String randomText(Random random) {
+    StringBuilder text = new StringBuilder();
+    int length = random.nextInt(12);
+    for(int i = 0; i < length; i ++) {
+      char ch = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+      text.append(ch);
+      if(Character.isHighSurrogate(ch))
+        text.append(CHARACTERS.charAt(CHARACTERS.length() - 1));
+    }
+    return text.toString();
+  }
+
+  private static List<String> tokens(CharClassTokenizer tokenizer, String text) {
+    TokenOffsets offsets = new TokenOffsets(1);
+    tokenizer.tokenize(text, 0, text.length(), offsets);
+    List<String> tokens = new ArrayList<String>();
+    for(int i = 0; i < offsets.size(); i ++)
+      tokens.add(offsets.getStart(i) + "-" + offsets.getEnd(i));
+    return tokens;
+  }
+
+  private static String text(String text, Tokenizer tokenizer) {
+    Sentence sentence = new Sentence(text);
+    tokenizer.tokenize(sentence);
+    return sentence.getTokenText().toString();
+  }
+
+  // The tokens as BaseTokenizer (0), SimpleTokenizer (1) and NaiveTokenizer (2) found them
+  private static List<String> reference(String text, int rules) {
+    List<String> tokens = new ArrayList<String>();
+    if(rules == 0) {
+      int current = 0;
+      while(true) {
+        while(current < text.length() && Character.isWhitespace(text.charAt(current)))
+          current ++;
+        if(current == text.length())
+          return tokens;
+        int end = referenceNumber(text, current);
+        if(end < 0) {
+          end = current;
+          while(end < text.length() && (Character.isLetter(text.charAt(end)) || Character.isDigit(text.charAt(end))))
+            end ++;
+        }
+        if(end == current) {
+          if(PUNCTUATION.indexOf(text.charAt(current)) == -1)
+            return tokens;
+          end = current + 1;
+        }
+        tokens.add(current + "-" + end);
+        current = end;
+      }
+    }
+    int start = 0;
+    for(int i = 1; i - 1 < text.length(); i ++) {
+      char current = text.charAt(i - 1);
+      char next = i < text.length() ? text.charAt(i) : 0;
+      if(Character.isSpaceChar(current)) {
+        start = i;
+      } else if(rules == 1 && (Character.isLetter(current) || Character.isDigit(current))) {
+        if(!Character.isLetter(next) && !Character.isDigit(next)) {
+          tokens.add(start + "-" + i);
+          start = i;
+        }
+      } else if(rules == 2 && Character.isLetter(current)) {
+        if(!Character.isLetter(next)) {
+          tokens.add(start + "-" + i);
+          start = i;
+        }
+      } else if(rules == 2 && Character.isDigit(current)) {
+        if(!Character.isDigit(next)) {
+          tokens.add(start + "-" + i);
+          start = i;
+        }
+      } else if(PUNCTUATION.indexOf(current) != -1) {
+        tokens.add(start + "-" + i);
+        start = i;
+      }
+    }
+    if(start < text.length())
+      tokens.add(start + "-" + text.length());
+    return tokens;
+  }
+
+  private static int referenceNumber(String text, int current) {
+    if(current > 0 && Character.isLetter(text.charAt(current - 1)))
+      return -1;
+    int end = current;
+    if(end < text.length() && (text.charAt(end) == '+' || text.charAt(end) == '-'))
+      end ++;
+    boolean foundDigit = false;
+    while(end < text.length() && Character.isDigit(text.charAt(end))) {
+      end ++;
+      foundDigit = true;
+    }
+    if(end < text.length() && text.charAt(end) == '.' && end + 1 < text.length() && Character.isDigit(text.charAt(end + 1))) {
+      end ++;
+      while(end < text.length() && Character.isDigit(text.charAt(end))) {
+        end ++;
+        foundDigit = true;
+      }
+    }
+    if(end < text.length() && text.charAt(end) == '%')
+      end ++;
+    if(foundDigit && (end == text.length() || !Character.isLetter(text.charAt(end))))
+      return end;
+    return -1;
+  }
+}
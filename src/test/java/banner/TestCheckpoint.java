@@ -0,0 +1,167 @@
+package banner;
+
+import banner.tagging.CRFTagger;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4Checkpoint;
+import edu.umass.cs.mallet.base.fst.TransducerEvaluator;
+import edu.umass.cs.mallet.base.fst.Transducer;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import edu.umass.cs.mallet.base.types.Sequence;
+import edu.umass.cs.mallet.base.types.SparseVector;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that training resumed from a checkpoint ends with the parameters of training which did not stop, and that
+ * training finished from a kept checkpoint takes its parameters, in both directions
+ */
+public class TestCheckpoint {
+  private static final int ITERATIONS = 12;
+  private static final int ITERATIONS_PER_PROPORTION = 3;
+  // Training stops after this many iterations of all rounds, in the last one
+  private static final int CRASH = 6;
+
+  @Test
+  public void testResume() throws Exception {
+    InstanceList instances = SmallModel.movedInstances(SmallModel.tagger().getForwardCRF());
+
+    File directory = Files.createTempDirectory("checkpoint").toFile();
+    try {
+      double[] uninterrupted = parameters(train(instances, null, null), instances);
+
+      // Stops training once the checkpoint after CRASH iterations is written
+      CRF4Checkpoint checkpoint = new CRF4Checkpoint(new File(directory, "crf.bin"), 1);
+      checkpoint.setKeepAll(true);
+      CrashingEvaluator crashing = new CrashingEvaluator(instances);
+      try {
+        train(instances, checkpoint, crashing);
+      } catch(IllegalStateException e) {
+        assertEquals("Crash", e.getMessage());
+      }
+      assertNotNull(crashing.costs);
+      assertTrue(checkpoint.getKeptFile(CRASH).exists());
+
+      checkpoint.setResume(true);
+      double[] resumed = parameters(train(instances, checkpoint, null), instances);
+      assertEquals(uninterrupted.length, resumed.length);
+      for(int i = 0; i < uninterrupted.length; i ++)
+        assertEquals("Parameter " + i, uninterrupted[i], resumed[i], 1e-12 * Math.max(1, Math.abs(uninterrupted[i])));
+
+      CRF4Checkpoint kept = new CRF4Checkpoint(checkpoint.getKeptFile(CRASH), 1);
+      kept.setFinish(true);
+      double[] costs = costs(train(instances, kept, null), instances);
+      for(int i = 0; i < costs.length; i ++)
+        assertEquals("Cost " + i, crashing.costs[i], costs[i], 1e-12 * Math.abs(costs[i]));
+    } finally {
+      for(File file: directory.listFiles())
+        file.delete();
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void testFinishBothDirections() throws Exception {
+    BannerProperties properties = SmallModel.properties();
+    assertTrue(properties.getTextDirection().doForward() && properties.getTextDirection().doReverse());
+    File directory = Files.createTempDirectory("checkpoint").toFile();
+    try {
+      CRF4Checkpoint checkpoint = new CRF4Checkpoint(new File(directory, "crf.bin"), 1);
+      checkpoint.setKeepAll(true);
+      CRFTagger trained = train(properties, checkpoint);
+      File kept = checkpoint.getKeptFile(2);
+      assertTrue(kept.exists());
+      assertEquals(checkpoint.withSuffix(".reverse").getKeptFile(2), new File(kept.getPath() + ".reverse"));
+      assertTrue(new File(kept.getPath() + ".reverse").exists());
+
+      // Both CRFs take the parameters after 2 iterations, rather than being trained again
+      CRF4Checkpoint from = new CRF4Checkpoint(kept, 1);
+      from.setFinish(true);
+      CRFTagger finished = train(properties, from);
+      assertTrue(!Arrays.equals(weights(trained.getForwardCRF()), weights(finished.getForwardCRF())));
+      assertTrue(!Arrays.equals(weights(trained.getReverseCRF()), weights(finished.getReverseCRF())));
+    } finally {
+      for(File file: directory.listFiles())
+        file.delete();
+      directory.delete();
+    }
+  }
+
+  private static CRFTagger train(BannerProperties properties, CRF4Checkpoint checkpoint) {
+    return CRFTagger.train(SmallModel.sentences(), properties.getOrder(), false, properties.getTagFormat(),
+        properties.getTextDirection(), properties.getLemmatiser(), properties.getPosTagger(),
+        properties.isUseNumericNormalization(), null, properties.getRegexFilename(), 1, null, checkpoint);
+  }
+
+  // The default weights and weights of the CRF
+  private static double[] weights(CRF4 crf) {
+    int length = crf.getDefaultWeights().length;
+    for(SparseVector weights: crf.getWeights())
+      length += weights.numLocations();
+    double[] all = new double[length];
+    System.arraycopy(crf.getDefaultWeights(), 0, all, 0, crf.getDefaultWeights().length);
+    int n = crf.getDefaultWeights().length;
+    for(SparseVector weights: crf.getWeights())
+      for(int i = 0; i < weights.numLocations(); i ++)
+        all[n ++] = weights.valueAtLocation(i);
+    return all;
+  }
+
+  private static CRF4 train(InstanceList instances, CRF4Checkpoint checkpoint, TransducerEvaluator eval) {
+    CRF4 crf = new CRF4(instances.getPipe(), null);
+    crf.addStatesForBiLabelsConnectedAsIn(instances);
+    crf.setCheckpoint(checkpoint);
+    crf.train(instances, null, null, eval, ITERATIONS, ITERATIONS_PER_PROPORTION, new double[] { .5 });
+    return crf;
+  }
+
+  private static double[] parameters(CRF4 crf, InstanceList instances) {
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    return parameters;
+  }
+
+  // The costs of the labels of the instances, and of all labels, which depend on all the parameters used
+  private static double[] costs(CRF4 crf, InstanceList instances) {
+    double[] costs = new double[2 * instances.size()];
+    for(int i = 0; i < instances.size(); i ++) {
+      FeatureVectorSequence input = (FeatureVectorSequence) instances.getInstance(i).getData();
+      costs[2 * i] = crf.forwardBackward(input, (Sequence) instances.getInstance(i).getTarget()).getCost();
+      costs[2 * i + 1] = crf.forwardBackward(input).getCost();
+    }
+    return costs;
+  }
+
+  private static class CrashingEvaluator extends TransducerEvaluator {
+    private final InstanceList instances;
+    private int iterations = 0;
+    double[] costs;
+
+    CrashingEvaluator(InstanceList instances) {
+      this.instances = instances;
+    }
+
+    @Override
+    public boolean evaluate(Transducer crf, boolean finishedTraining, int iteration, boolean converged, double cost,
+        InstanceList training, InstanceList validation, InstanceList testing) {
+      if(++ iterations == CRASH) {
+        costs = costs((CRF4) crf, instances);
+        throw new IllegalStateException("Crash");
+      }
+      return true;
+    }
+
+    @Override
+    public void test(Transducer transducer, InstanceList data, String description, PrintStream viterbiOutputStream) {
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package banner;
+
+import banner.tagging.DictionaryIndex;
+import banner.tagging.DictionaryTagger;
+import banner.tagging.Mention;
+import banner.tagging.MentionType;
+import banner.tokenization.NaiveTokenizer;
+import banner.tokenization.SimpleTokenizer;
+import bc2.GeneDictionaryTagger;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a DictionaryTagger read from an index tags as the one it was built from, and that an index is not read
+ * once its dictionary file or tokenizer has changed, or when it is corrupt
+ */
+public class TestDictionaryIndex {
+  @Test
+  public void testIndex() throws Exception {
+    File dictionary = File.createTempFile("dictionary", ".txt");
+    File index = File.createTempFile("dictionary", ".idx");
+    dictionary.deleteOnExit();
+    index.deleteOnExit();
+    write(dictionary, "p53\nIL-2\nIL-2 receptor\nhuman IL\nbeta catenin\n");
+
+    DictionaryTagger tagger = load(new DictionaryTagger(new SimpleTokenizer(), true), dictionary);
+    DictionaryIndex.write(tagger, dictionary, index);
+    DictionaryTagger copy = new DictionaryTagger(new SimpleTokenizer(), true);
+    assertTrue(DictionaryIndex.read(copy, dictionary, index));
+    assertEquals(tagger.size(), copy.size());
+    String text = "The human IL-2 receptor binds p53 and beta catenin in IL-2 cells .";
+    assertEquals(mentions(tagger, text), mentions(copy, text));
+
+    // A different class of tokenizer may break the entries differently
+    DictionaryTagger naive = new DictionaryTagger(new NaiveTokenizer(), true);
+    assertFalse(DictionaryIndex.read(naive, dictionary, index));
+    assertEquals(0, naive.size());
+
+    // As is a dictionary with the same length but different contents
+    write(dictionary, "p54\nIL-2\nIL-2 receptor\nhuman IL\nbeta catenin\n");
+    DictionaryTagger stale = new DictionaryTagger(new SimpleTokenizer(), true);
+    assertFalse(DictionaryIndex.read(stale, dictionary, index));
+    assertEquals(0, stale.size());
+
+    assertFalse(DictionaryIndex.read(stale, dictionary, new File(index.getPath() + ".missing")));
+  }
+
+  @Test
+  public void testCorruptIndex() throws Exception {
+    File dictionary = File.createTempFile("dictionary", ".txt");
+    File index = File.createTempFile("dictionary", ".idx");
+    dictionary.deleteOnExit();
+    index.deleteOnExit();
+    write(dictionary, "p53\nIL-2\nIL-2 receptor\nhuman IL\nbeta catenin\n");
+
+    write(index, "Not an index");
+    DictionaryTagger tagger = new GeneDictionaryTagger(new SimpleTokenizer(), true);
+    assertFalse(DictionaryIndex.read(tagger, dictionary, index));
+    assertEquals(0, tagger.size());
+
+    // Truncated within the entries, after a header which matches
+    DictionaryIndex.write(load(new GeneDictionaryTagger(new SimpleTokenizer(), true), dictionary), dictionary, index);
+    RandomAccessFile truncated = new RandomAccessFile(index, "rw");
+    truncated.setLength(index.length() - 5);
+    truncated.close();
+    assertFalse(DictionaryIndex.read(tagger, dictionary, index));
+    assertEquals(0, tagger.size());
+
+    // Loading the properties falls back to the dictionary, and writes the index again
+    Properties props = SmallModel.mkProps();
+    props.setProperty("dictionary", dictionary.getPath());
+    props.setProperty("dictionaryIndex", index.getPath());
+    DictionaryTagger loaded = (DictionaryTagger) BannerProperties.load(props).getPreTagger();
+    DictionaryTagger fromIndex = new GeneDictionaryTagger(new SimpleTokenizer(), true);
+    assertTrue(DictionaryIndex.read(fromIndex, dictionary, index));
+    assertTrue(loaded.size() > 0);
+    assertEquals(loaded.size(), fromIndex.size());
+  }
+
+  private static DictionaryTagger load(DictionaryTagger tagger, File dictionary) throws Exception {
+    FileReader reader = new FileReader(dictionary);
+    tagger.add(reader, MentionType.getType("GENE"));
+    reader.close();
+    return tagger;
+  }
+
+  private static void write(File file, String text) throws Exception {
+    FileWriter writer = new FileWriter(file);
+    writer.write(text);
+    writer.close();
+  }
+
+  private static List<String> mentions(DictionaryTagger tagger, String text) {
+    Sentence sentence = new Sentence(text);
+    new SimpleTokenizer().tokenize(sentence);
+    tagger.tag(sentence);
+    List<String> mentions = new ArrayList<String>();
+    for(Mention mention: sentence.getMentions())
+      mentions.add(mention.getType().getText() + " " + mention.getStart() + " " + mention.getEnd());
+    return mentions;
+  }
+}
@@ -0,0 +1,93 @@
+package banner;
+
+import banner.tagging.Mention;
+import banner.tokenization.SentenceSplitter;
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that tagging a document finds the mentions of tagging each of its sentences, at their offsets in the document,
+ * whether the document is read a part at a time or tagged in parallel
+ */
+public class TestDocumentTagger {
+  private static final String[] SENTENCES = {
+    "Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo.",
+    "Only p105 and human c-Rel (hc-Rel) are common to complexes precipitated with antiserum directed against either p105 or hc-Rel.",
+    "The p53 tumor suppressor protein binds to the MDM2 oncoprotein.",
+    "Expression of IL-2 and IL-4 was reduced in T cells lacking NF-AT1.",
+    "These results suggest that the TATA-binding protein (TBP) is required for transcription by RNA polymerase III."
+  };
+  private static final String[] SEPARATORS = {" ", "  ", "\n", "\n\n", " \t\n"};
+
+  @Test
+  public void testDocument() throws Exception {
+    Random random = new Random(0);
+    BannerWrapper single = new BannerWrapper();
+    StringBuilder document = new StringBuilder();
+    List<String> expected = new ArrayList<String>();
+    for(int n = 0; n < 60; n ++) {
+      String sentence = SENTENCES[random.nextInt(SENTENCES.length)];
+      int offset = document.length();
+      for(Mention mention: single.tag(sentence))
+        expected.add(mention.getText() + " " + (offset + mention.getStartChar()) + " " + (offset + mention.getEndChar()));
+      document.append(sentence).append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+    }
+    final String text = document.toString();
+
+    assertEquals(expected, tag(single, text, null));
+    assertEquals(expected, tag(single, text, new ChunkReader(new StringReader(text), random)));
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      BannerWrapper shared = new BannerWrapper(executor);
+      assertEquals(expected, tag(shared, text, new ChunkReader(new StringReader(text), random)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  // Tags the text, or what the reader reads if not null, in batches of a few sentences
+  private static List<String> tag(BannerWrapper wrapper, final String text, Reader reader) throws IOException {
+    final List<String> found = new ArrayList<String>();
+    DocumentTagger.MentionHandler handler = new DocumentTagger.MentionHandler() {
+      public void mention(Mention mention, long start, long end) {
+        assertEquals(mention.getText(), text.substring((int) start, (int) end));
+        found.add(mention.getText() + " " + start + " " + end);
+      }
+    };
+    DocumentTagger tagger = new DocumentTagger(wrapper.tokenizer, wrapper.tagger, wrapper.postProcessor, new SentenceSplitter(),
+        wrapper.executor);
+    tagger.setBatchSize(7);
+    if(reader == null)
+      tagger.tag(text, handler);
+    else
+      tagger.tag(reader, handler);
+    return found;
+  }
+
+  // Reads a few characters at a time
+  private static class ChunkReader extends FilterReader {
+    Random random;
+
+    ChunkReader(Reader in, Random random) {
+      super(in);
+      this.random = random;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      return super.read(buffer, offset, Math.min(length, 1 + random.nextInt(50)));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package banner;
+
+import banner.tagging.FeatureEncoder;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.SerialPipes;
+import edu.umass.cs.mallet.base.pipe.tsf.ConjunctionTable;
+import edu.umass.cs.mallet.base.pipe.tsf.OffsetConjunctions;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that FeatureEncoder produces the same feature vectors as the feature pipe of a small model, and that the pipe
+ * produces the same ones whether or not it looks the conjunctions up by id
+ */
+public class TestFeatureEncoder {
+  @Test
+  public void testSameFeatures() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    FeatureEncoder encoder = FeatureEncoder.create(crf.getInputPipe());
+    assertNotNull(encoder);
+
+    for(String text: SmallModel.SENTENCES) {
+      Sentence sentence = SmallModel.tokenized(text);
+      FeatureVectorSequence expected = (FeatureVectorSequence) new Instance(sentence.getTokenText(), null, null, null, crf.getInputPipe()).getData();
+      FeatureVectorSequence found = encoder.encode(sentence.getTokenText());
+      assertEquals(expected.size(), found.size());
+      for(int i = 0; i < expected.size(); i ++) {
+        FeatureVector e = expected.getFeatureVector(i);
+        FeatureVector f = found.getFeatureVector(i);
+        assertTrue(f.isBinary());
+        assertEquals(text + " token " + i, Arrays.toString(indices(e)), Arrays.toString(indices(f)));
+      }
+    }
+  }
+
+  @Test
+  public void testConjunctionTable() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    List<Pipe> pipes = ((SerialPipes) crf.getInputPipe()).getPipes();
+    OffsetConjunctions conjunctions = (OffsetConjunctions) pipes.get(pipes.size() - 2);
+    ConjunctionTable table = conjunctions.getConjunctionTable();
+    assertNotNull(table);
+
+    for(String text: SmallModel.SENTENCES) {
+      Sentence sentence = SmallModel.tokenized(text);
+      conjunctions.setConjunctionTable(table);
+      long dropped = conjunctions.getDroppedFeatureCount();
+      FeatureVectorSequence expected = (FeatureVectorSequence) new Instance(sentence.getTokenText(), null, null, null, crf.getInputPipe()).getData();
+      long expectedDropped = conjunctions.getDroppedFeatureCount() - dropped;
+      // Without the table, the pipe names every conjunction and looks it up
+      conjunctions.setConjunctionTable(null);
+      dropped = conjunctions.getDroppedFeatureCount();
+      FeatureVectorSequence found = (FeatureVectorSequence) new Instance(sentence.getTokenText(), null, null, null, crf.getInputPipe()).getData();
+      assertEquals(expectedDropped, conjunctions.getDroppedFeatureCount() - dropped);
+      for(int i = 0; i < expected.size(); i ++)
+        assertEquals(text + " token " + i, Arrays.toString(indices(expected.getFeatureVector(i))), Arrays.toString(indices(found.getFeatureVector(i))));
+    }
+  }
+
+  private static int[] indices(FeatureVector fv) {
+    int[] indices = new int[fv.numLocations()];
+    for(int loc = 0; loc < indices.length; loc ++)
+      indices[loc] = fv.indexAtLocation(loc);
+    return indices;
+  }
+}
@@ -0,0 +1,116 @@
+package banner;
+
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4ForwardBackward;
+import edu.umass.cs.mallet.base.fst.Transducer;
+import edu.umass.cs.mallet.base.types.FeatureSequence;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that CRF4ForwardBackward finds the costs of the lattices of CRF4, and that the training gradient computed with
+ * it is that of the training value
+ */
+public class TestForwardBackward {
+  @Test
+  public void testGradient() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    InstanceList instances = SmallModel.movedInstances(crf);
+    CRF4ForwardBackward lattice = new CRF4ForwardBackward(crf);
+    for(int ii = 0; ii < instances.size(); ii ++) {
+      FeatureVectorSequence input = (FeatureVectorSequence) instances.getInstance(ii).getData();
+      FeatureSequence output = (FeatureSequence) instances.getInstance(ii).getTarget();
+      lattice.setInput(input);
+      double cost = crf.forwardBackward(input).getCost();
+      assertEquals(cost, lattice.getCost(), 1e-9 * Math.abs(cost));
+      // Summed in the same order
+      assertEquals(Double.doubleToLongBits(crf.forwardBackward(input, output).getCost()),
+          Double.doubleToLongBits(lattice.getLabeledCost(output)));
+    }
+
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    maximizable.getValue();
+    double[] gradient = new double[parameters.length];
+    maximizable.getValueGradient(gradient);
+
+    // Compares the largest partial derivatives, and some others, with central differences of the value
+    int[] checked = new int[30];
+    boolean[] chosen = new boolean[parameters.length];
+    for(int n = 0; n < 20; n ++) {
+      int largest = -1;
+      for(int i = 0; i < parameters.length; i ++)
+        if(!chosen[i] && !Double.isInfinite(parameters[i])
+            && (largest < 0 || Math.abs(gradient[i]) > Math.abs(gradient[largest])))
+          largest = i;
+      chosen[largest] = true;
+      checked[n] = largest;
+    }
+    for(int n = 20; n < checked.length; n ++)
+      checked[n] = (int) ((n - 20 + 0.5) * parameters.length / (checked.length - 20));
+    assertTrue(Math.abs(gradient[checked[0]]) > 1);
+
+    double h = 1e-4;
+    for(int i: checked) {
+      double[] changed = parameters.clone();
+      changed[i] = parameters[i] + h;
+      maximizable.setParameters(changed);
+      double plus = maximizable.getValue();
+      changed[i] = parameters[i] - h;
+      maximizable.setParameters(changed);
+      double minus = maximizable.getValue();
+      double difference = (plus - minus) / (2 * h);
+      assertEquals("Parameter " + i, difference, gradient[i], 1e-4 * Math.max(1, Math.abs(difference)));
+    }
+  }
+
+  /**
+   * Only one state may start, and the weights are so large that the costs of the transitions from the others are far
+   * below those from it
+   */
+  @Test
+  public void testUnreachableStates() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    InstanceList instances = SmallModel.movedInstances(crf);
+    FeatureVectorSequence input = (FeatureVectorSequence) instances.getInstance(0).getData();
+    // The start state is the one whose cheapest first transition costs most
+    double cheapest = Double.POSITIVE_INFINITY;
+    int start = -1;
+    double startCost = Double.NEGATIVE_INFINITY;
+    for(int i = 0; i < crf.numStates(); i ++) {
+      double cost = Double.POSITIVE_INFINITY;
+      for(Transducer.TransitionIterator it = crf.getState(i).transitionIterator(input, 0); it.hasNext(); ) {
+        it.nextState();
+        cost = Math.min(cost, it.getCost());
+      }
+      cheapest = Math.min(cheapest, cost);
+      if(!Double.isInfinite(cost) && cost > startCost) {
+        start = i;
+        startCost = cost;
+      }
+    }
+    assertTrue(startCost > cheapest);
+
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    int numStateParameters = 2 * crf.numStates();
+    for(int i = 0; i < parameters.length; i ++)
+      if(i >= numStateParameters)
+        parameters[i] *= 1000 / (startCost - cheapest);
+      else if(i % 2 == 0)
+        parameters[i] = i == 2 * start ? 0 : Double.NEGATIVE_INFINITY;
+    maximizable.setParameters(parameters);
+
+    CRF4ForwardBackward lattice = new CRF4ForwardBackward(crf);
+    lattice.setInput(input);
+    double cost = crf.forwardBackward(input).getCost();
+    assertTrue(!Double.isInfinite(cost));
+    assertEquals(cost, lattice.getCost(), 1e-9 * Math.abs(cost));
+  }
+}
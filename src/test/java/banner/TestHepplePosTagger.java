@@ -0,0 +1,97 @@
+package banner;
+
+import banner.tagging.DragonPosTagger;
+import banner.tagging.HepplePosTagger;
+import banner.tokenization.SimpleTokenizer;
+import dragon.nlp.Word;
+import dragon.nlp.tool.HeppleTagger;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that HepplePosTagger sets the same tags and part-of-speech indexes as the dragon HeppleTagger
+ */
+public class TestHepplePosTagger {
+  private static final String DIRECTORY = "banner_data/nlpdata/tagger";
+  private static final String[] SENTENCES = {
+    "Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo.",
+    "Only p105 and human c-Rel (hc-Rel) are common to complexes precipitated with antiserum directed against either p105 or hc-Rel.",
+    "The p53 tumor suppressor protein binds to the MDM2 oncoprotein, although IF it was BUT 2 of 3 cells.",
+    "Expression of IL-2 and IL-4 was reduced in T cells lacking NF-AT1 ; STAART",
+    "These results suggest that the TATA-binding protein (TBP) is required for transcription by RNA polymerase III."
+  };
+
+  @Test
+  public void testSentences() throws Exception {
+    HeppleTagger expected = new HeppleTagger(DIRECTORY);
+    HepplePosTagger tagger = new HepplePosTagger(DIRECTORY);
+    for(String text: SENTENCES) {
+      Sentence sentence = new Sentence(text);
+      new SimpleTokenizer().tokenize(sentence);
+      check(expected, tagger, sentence.getTokenText());
+    }
+  }
+
+  @Test
+  public void testRandomWords() throws Exception {
+    // Words of the lexicon and the rules, with unknown words of each form the tagger guesses
+    List<String> vocabulary = new ArrayList<String>(Arrays.asList("Bcl-2", "anti-apoptotic", "p53", "phosphorylated", "tumorous", "allelic",
+        "capable", "active", "auxiliary", "useful", "biological", "harmless", "kinases", "rapidly", "binding", "protein", "ABC", "A", "x", ".", ",",
+        "(", ")", "-", "12", "that", "While"));
+    // Dragon ends the sentence at the literal "STAART", which tokens never are
+    vocabulary.add(new String("STAART"));
+    addWords(vocabulary, DIRECTORY + "/lexicon_all", 0, 50);
+    addWords(vocabulary, DIRECTORY + "/rules_cap", 3, 1);
+    HeppleTagger expected = new HeppleTagger(DIRECTORY);
+    HepplePosTagger tagger = new HepplePosTagger(DIRECTORY);
+    Random random = new Random(0);
+    for(int i = 0; i < 5000; i ++) {
+      List<String> tokens = new ArrayList<String>();
+      int length = 1 + random.nextInt(12);
+      for(int j = 0; j < length; j ++)
+        tokens.add(vocabulary.get(random.nextInt(vocabulary.size())));
+      check(expected, tagger, tokens);
+    }
+  }
+
+  private static void check(HeppleTagger expected, HepplePosTagger tagger, List<String> tokens) {
+    String[] labels = new String[tokens.size()];
+    int[] indexes = new int[tokens.size()];
+    dragon.nlp.Sentence sentence = new dragon.nlp.Sentence();
+    for(String token: tokens)
+      sentence.addWord(new Word(token));
+    expected.tag(sentence);
+    int i = 0;
+    for(Word word = sentence.getFirstWord(); word != null; word = word.next, i ++) {
+      labels[i] = word.getPOSLabel();
+      indexes[i] = word.getPOSIndex();
+    }
+    assertEquals(tokens.toString(), Arrays.toString(labels), Arrays.toString(tagger.tagLabels(tokens)));
+    assertArrayEquals(tokens.toString(), indexes, tagger.tag(tokens));
+    assertArrayEquals(tokens.toString(), indexes, new DragonPosTagger(tagger).tag(tokens));
+  }
+
+  // Adds every nth word from the column of the file
+  private static void addWords(List<String> words, String fileName, int column, int n) throws Exception {
+    BufferedReader reader = new BufferedReader(new FileReader(fileName));
+    int line = 0;
+    for(String text = reader.readLine(); text != null; text = reader.readLine(), line ++) {
+      StringTokenizer tokens = new StringTokenizer(text);
+      for(int i = 0; i < column && tokens.hasMoreTokens(); i ++)
+        tokens.nextToken();
+      if(line % n == 0 && tokens.hasMoreTokens() && !text.startsWith("DEFAULT_TAG:"))
+        words.add(tokens.nextToken());
+    }
+    reader.close();
+  }
+}
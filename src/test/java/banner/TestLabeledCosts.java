@@ -0,0 +1,99 @@
+package banner;
+
+import edu.umass.cs.mallet.base.fst.CRF;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.types.FeatureSequence;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import edu.umass.cs.mallet.base.util.MalletLogger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the training value of a CRF, whose labeled costs are computed over the transitions found when gathering
+ * the constraints, is the log likelihood of the labels found by forward-backward plus the prior, and that instances
+ * whose labels are impossible are skipped
+ */
+public class TestLabeledCosts {
+  @Test
+  public void testValue() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    InstanceList instances = SmallModel.movedInstances(crf);
+    double logLikelihood = 0;
+    for(int i = 0; i < instances.size(); i ++) {
+      Instance instance = instances.getInstance(i);
+      FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
+      logLikelihood += crf.forwardBackward(input).getCost()
+          - crf.forwardBackward(input, (FeatureSequence) instance.getTarget()).getCost();
+    }
+
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    double prior = 0;
+    for(double parameter: parameters)
+      if(!Double.isInfinite(parameter))
+        prior += parameter * parameter / (2 * crf.getGaussianPriorVariance());
+    double expected = logLikelihood - prior;
+    assertEquals(expected, maximizable.getValue(), 1e-9 * Math.abs(expected));
+
+    crf.setTrainingThreads(3);
+    maximizable.setParameters(parameters);
+    assertEquals(expected, maximizable.getValue(), 1e-9 * Math.abs(expected));
+  }
+
+  @Test
+  public void testImpossibleLabels() throws Exception {
+    for(boolean beam: new boolean[] { false, true }) {
+      CRF4 crf = SmallModel.tagger().getForwardCRF();
+      crf.setUseForwardBackwardBeam(beam);
+      InstanceList instances = SmallModel.movedInstances(crf);
+      double expected = crf.getMaximizableCRF(instances).getValue();
+
+      // I-GENE never follows O, and the many positions after it reach no state
+      List<String> tokens = new ArrayList<String>();
+      List<String> labels = new ArrayList<String>();
+      for(int i = 0; i < 40; i ++) {
+        tokens.add("p" + i);
+        labels.add(i == 1 ? "I-GENE" : "O");
+      }
+      instances.add(new Instance(tokens, labels, "impossible", null, crf.getInputPipe()));
+
+      final List<String> warnings = new ArrayList<String>();
+      Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+          if(record.getLevel() == Level.WARNING)
+            warnings.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+      // CRF4 logs as CRF
+      Logger logger = MalletLogger.getLogger(CRF.class.getName());
+      logger.addHandler(handler);
+      try {
+        assertEquals(expected, crf.getMaximizableCRF(instances).getValue(), 1e-9 * Math.abs(expected));
+      } finally {
+        logger.removeHandler(handler);
+      }
+      assertTrue(warnings.toString(), warnings.contains("impossible has infinite cost; skipping."));
+    }
+  }
+}
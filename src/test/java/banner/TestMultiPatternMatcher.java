@@ -0,0 +1,123 @@
+package banner;
+
+import banner.tagging.ConfigurableRegexMatches;
+import edu.umass.cs.mallet.base.util.MultiPatternMatcher;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that MultiPatternMatcher finds the same matches as matching each pattern with java.util.regex
+ */
+public class TestMultiPatternMatcher {
+  private static final String DICTIONARY = "banner_data/dict/single.txt";
+  private static final String REGEX_FILENAME = "banner_data/regex.txt";
+  // The patterns added by CRFTagger.setupPipes
+  private static final Pattern[] TAGGER_PATTERNS = {
+    Pattern.compile("[IVXDLCM]+", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("(alpha|beta|gamma|delta|epsilon|zeta|eta|theta|iota|kappa|lambda|mu|nu|xi|omicron|pi|rho|sigma|tau|upsilon|phi|chi|psi|omega)", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("[`~!@#$%^&*()-=_+\\[\\]\\\\{}|;\':\\\",./<>?]+")
+  };
+
+  // Patterns using more of the syntax, some of which is matched with java.util.regex
+  private static final Pattern[] OTHER_PATTERNS = {
+    Pattern.compile("\\d+\\.\\d*"),
+    Pattern.compile("[^a-z]+"),
+    Pattern.compile("(?:ab|c)*d?"),
+    Pattern.compile("a{2,3}b{2}c{1,}"),
+    Pattern.compile(".?x.??"),
+    Pattern.compile("[\\w-]+"),
+    Pattern.compile("\\s+|\\S\\W"),
+    Pattern.compile("[a-f]+1", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("[^b-y]+", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("[+-]?[0-9,]*"),
+    Pattern.compile("\u03b1.|\ud835\udefc+"),
+    Pattern.compile("^ab$"),
+    Pattern.compile("(a)\\1"),
+    Pattern.compile("\\p{L}+"),
+    Pattern.compile("[a-z&&[^e]]+"),
+    Pattern.compile("a++b"),
+    Pattern.compile("a.c", Pattern.DOTALL),
+    Pattern.compile("(?i)ab")
+  };
+
+  private static final String[] STRINGS = {
+    "", "p53", "Bcl-2", "IL-2", "NF-kappaB", "5'-flanking", "3.5", "-3.5%", "+1,000", "IV", "iv", "Alpha", "ALPHA",
+    "alphabeta", "pi", "(", ")-", "[]", "\\", "\"", "=", "1-2", "aab", "aaabbc", "aabbcc", "abcabd", "ax", "x", "xy",
+    "a\nc", "a\rx", (char) 0x2028 + "x", "\u03b1x", "\u03b1", "\ud835\udefc\ud835\udefc", "\ud835\udefc", "\ud835x", "x\udc00",
+    "ABCDEF1", "abcdef1", "Az", "ZA", " \t", "\u00e9", "ab", "aa", "eee", "abc"
+  };
+
+  @Test
+  public void testBannerPatterns() throws Exception {
+    List<Pattern> patterns = new ArrayList<Pattern>(new ConfigurableRegexMatches(REGEX_FILENAME).getPatterns());
+    patterns.addAll(Arrays.asList(TAGGER_PATTERNS));
+    MultiPatternMatcher matcher = new MultiPatternMatcher(patterns, 0);
+    for(int p = 0; p < patterns.size(); p ++)
+      assertTrue(patterns.get(p).pattern(), matcher.isCompiled(p));
+
+    Set<String> strings = new LinkedHashSet<String>(Arrays.asList(STRINGS));
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(DICTIONARY)), "UTF-8"));
+    for(String line = reader.readLine(); line != null; line = reader.readLine())
+      for(String token: line.split("\\s+"))
+        strings.add(token);
+    reader.close();
+    for(String text: strings)
+      assertEquals(text, Arrays.toString(expected(patterns, text)), Arrays.toString(matcher.matches(text)));
+  }
+
+  @Test
+  public void testOtherPatterns() {
+    List<Pattern> patterns = Arrays.asList(OTHER_PATTERNS);
+    MultiPatternMatcher matcher = new MultiPatternMatcher(patterns, 16);
+    assertTrue(matcher.isCompiled(0));
+    assertFalse(matcher.isCompiled(patterns.size() - 1));
+    Set<String> strings = new LinkedHashSet<String>(Arrays.asList(STRINGS));
+    Random random = new Random(0);
+    String alphabet = "abcdxyzABX019.,+- \n\u03b1\ud835\udefc";
+    for(int i = 0; i < 20000; i ++) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(7);
+      for(int j = 0; j < length; j ++)
+        text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      strings.add(text.toString());
+    }
+    for(String text: strings)
+      for(int round = 0; round < 2; round ++)
+        assertEquals(text, Arrays.toString(expected(patterns, text)), Arrays.toString(matcher.matches(text)));
+  }
+
+  @Test
+  public void testCache() {
+    MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(TAGGER_PATTERNS), 16);
+    int[] matches = matcher.matches("beta");
+    assertEquals("[1]", Arrays.toString(matches));
+    assertSame(matches, matcher.matches(new String("beta")));
+  }
+
+  private static int[] expected(List<Pattern> patterns, String text) {
+    List<Integer> matches = new ArrayList<Integer>();
+    for(int p = 0; p < patterns.size(); p ++)
+      if(patterns.get(p).matcher(text).matches())
+        matches.add(p);
+    int[] ret = new int[matches.size()];
+    for(int i = 0; i < ret.length; i ++)
+      ret[i] = matches.get(i);
+    return ret;
+  }
+}
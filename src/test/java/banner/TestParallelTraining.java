@@ -0,0 +1,48 @@
+package banner;
+
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that computing the training value and gradient of a CRF with several threads gives those of one thread, up to
+ * rounding, and gives the same result every time
+ */
+public class TestParallelTraining {
+  @Test
+  public void testSameGradient() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    InstanceList instances = SmallModel.movedInstances(crf);
+
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    double value = maximizable.getValue();
+    double[] gradient = new double[parameters.length];
+    maximizable.getValueGradient(gradient);
+
+    crf.setTrainingThreads(3);
+    maximizable.setParameters(parameters);
+    double parallelValue = maximizable.getValue();
+    double[] parallelGradient = new double[parameters.length];
+    maximizable.getValueGradient(parallelGradient);
+    assertEquals(value, parallelValue, 1e-9 * Math.abs(value));
+    double norm = 0;
+    for(int i = 0; i < gradient.length; i ++) {
+      assertEquals(gradient[i], parallelGradient[i], 1e-9);
+      norm += Math.abs(gradient[i]);
+    }
+    assertTrue(norm > 1);
+
+    // The shards are added in order, whichever thread finishes first
+    maximizable.setParameters(parameters);
+    assertEquals(Double.doubleToLongBits(parallelValue), Double.doubleToLongBits(maximizable.getValue()));
+    double[] again = new double[parameters.length];
+    maximizable.getValueGradient(again);
+    for(int i = 0; i < gradient.length; i ++)
+      assertEquals(Double.doubleToLongBits(parallelGradient[i]), Double.doubleToLongBits(again[i]));
+  }
+}
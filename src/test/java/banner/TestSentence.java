@@ -0,0 +1,165 @@
+package banner;
+
+import banner.tagging.Mention;
+import banner.tagging.MentionType;
+import banner.tagging.TaggedToken.TagFormat;
+import banner.tokenization.SimpleTokenizer;
+import banner.tokenization.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a Sentence keeping its tokens as boundaries gives the same tokens and text as the tokenizer found, and
+ * copies the text of each token at most once, and that its index of the mentions agrees with scanning them
+ */
+public class TestSentence {
+  private static final String TEXT = "Only p105 and human c-Rel (hc-Rel) are common to complexes precipitated with antiserum directed against either p105 or hc-Rel.";
+
+  @Test
+  public void testTokens() {
+    Sentence sentence = new Sentence(TEXT);
+    new SimpleTokenizer().tokenize(sentence);
+    // More tokens than the initial capacity
+    assertEquals(28, sentence.getTokenCount());
+    List<String> expected = new ArrayList<String>();
+    StringBuilder tokenized = new StringBuilder();
+    for(int i = 0; i < sentence.getTokenCount(); i ++) {
+      Token token = sentence.getTokens().get(i);
+      String text = TEXT.substring(token.getStart(), token.getEnd());
+      expected.add(text);
+      tokenized.append(text).append(' ');
+      assertEquals(token.getStart(), sentence.getTokenStart(i));
+      assertEquals(token.getEnd(), sentence.getTokenEnd(i));
+      assertEquals(text, sentence.getTokenChars(i).toString());
+      assertSame(token, sentence.getTokens().get(i));
+    }
+    assertEquals(expected, sentence.getTokenText());
+    assertEquals(tokenized.toString().trim(), sentence.getTokenizedText());
+    for(int i = 0; i < sentence.getTokenCount(); i ++) {
+      String text = sentence.getTokenText(i);
+      assertSame(text, sentence.getTokenText().get(i));
+      assertSame(text, sentence.getTokens().get(i).getText());
+      assertSame(text, sentence.getText(sentence.getTokenStart(i), sentence.getTokenEnd(i)));
+      assertSame(text, sentence.getTokenChars(i));
+    }
+    assertEquals("Only p105", sentence.getText(0, 9));
+    assertEquals(4, sentence.getTokenIndex(TEXT.indexOf("c-Rel"), true));
+    assertEquals(4, sentence.getTokenIndex(TEXT.indexOf("c-Rel"), false));
+  }
+
+  @Test
+  public void testAddToken() {
+    Sentence sentence = new Sentence(TEXT);
+    sentence.addToken(new Token(sentence, 0, 4));
+    sentence.addToken(5, 9);
+    assertEquals("[Only, p105]", sentence.getTokenText().toString());
+    assertEquals(new Token(sentence, 5, 9), sentence.getTokens().get(1));
+    try {
+      sentence.addToken(9, 9);
+      fail();
+    } catch(IllegalArgumentException e) {
+      // Expected
+    }
+    try {
+      sentence.getTokenText(2);
+      fail();
+    } catch(IndexOutOfBoundsException e) {
+      // Expected
+    }
+    try {
+      sentence.getTokens().add(new Token(sentence, 10, 13));
+      fail();
+    } catch(UnsupportedOperationException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testMentions() {
+    Random random = new Random(0);
+    MentionType[] types = {MentionType.getType("GENE"), MentionType.getType("PROTEIN")};
+    for(int n = 0; n < 200; n ++) {
+      Sentence sentence = new Sentence(TEXT);
+      new SimpleTokenizer().tokenize(sentence);
+      int numTokens = sentence.getTokenCount();
+      List<Mention> expected = new ArrayList<Mention>();
+      for(int i = 0; i < 40; i ++) {
+        int start = random.nextInt(numTokens);
+        int end = Math.min(numTokens, start + 1 + random.nextInt(3));
+        Mention mention = new Mention(sentence, types[random.nextInt(types.length)], start, end);
+        int operation = random.nextInt(4);
+        if(operation == 0) {
+          sentence.addMention(mention);
+          expected.add(mention);
+        } else if(operation == 1) {
+          addOrMergeMention(expected, mention);
+          sentence.addOrMergeMention(mention);
+        } else {
+          if(operation == 3 && !expected.isEmpty())
+            mention = expected.get(random.nextInt(expected.size()));
+          assertEquals(expected.remove(mention), sentence.removeMention(mention));
+        }
+        assertEquals(expected, sentence.getMentions());
+        for(int j = 0; j < numTokens; j ++) {
+          List<Mention> tokenMentions = new ArrayList<Mention>();
+          for(Mention mention2: expected)
+            if(mention2.contains(j))
+              tokenMentions.add(mention2);
+          assertEquals(tokenMentions, sentence.getMentions(sentence.getTokens().get(j)));
+        }
+      }
+      // Each token is labeled with the mentions containing it
+      List<String> labels = sentence.getTokenLabels(TagFormat.IOB);
+      for(int j = 0; j < numTokens; j ++)
+        assertEquals(sentence.getMentions(sentence.getTokens().get(j)).size() > 1, labels.get(j).contains("&"));
+    }
+  }
+
+  @Test
+  public void testTaggedTokens() {
+    Sentence sentence = new Sentence(TEXT);
+    new SimpleTokenizer().tokenize(sentence);
+    MentionType type = MentionType.getType("GENE");
+    sentence.addMention(new Mention(sentence, type, 4, 7));
+    sentence.addOrMergeMention(new Mention(sentence, type, 3, 5));
+    sentence.addMention(new Mention(sentence, type, 8, 11));
+    assertEquals("[GENE: human c-Rel, GENE: hc-Rel]", sentence.getMentions().toString());
+    assertEquals("Only p105 and <GENE> human c - Rel </GENE> ( <GENE> hc - Rel </GENE> ) are",
+        sentence.getSGML().substring(0, 74));
+    sentence.addMention(new Mention(sentence, MentionType.getType("PROTEIN"), 8, 9));
+    try {
+      sentence.getTaggedTokens();
+      fail();
+    } catch(IllegalArgumentException e) {
+      assertEquals("Token \"hc\" (8) is tagged multiple times", e.getMessage());
+    }
+    assertEquals(-1, sentence.getTokenIndex(-1, true));
+    assertEquals(-1, sentence.getTokenIndex(TEXT.length(), false));
+    assertEquals(sentence.getTokenCount() - 1, sentence.getTokenIndex(TEXT.length() - 1, true));
+    // Between "Only" and "p105"
+    assertEquals(0, sentence.getTokenIndex(4, true));
+    assertEquals(1, sentence.getTokenIndex(4, false));
+  }
+
+  // Adds or merges the mention as Sentence did by scanning all mentions
+  private static void addOrMergeMention(List<Mention> mentions, Mention mention) {
+    List<Mention> overlapping = new ArrayList<Mention>();
+    for(Mention mention2: mentions)
+      if(mention.overlaps(mention2) && mention.getType().equals(mention2.getType()))
+        overlapping.add(mention2);
+    if(overlapping.isEmpty())
+      mentions.add(mention);
+    for(Mention mention2: overlapping) {
+      mentions.remove(mention2);
+      mentions.add(new Mention(mention.getSentence(), mention.getType(), Math.min(mention.getStart(), mention2.getStart()),
+          Math.max(mention.getEnd(), mention2.getEnd())));
+    }
+  }
+}
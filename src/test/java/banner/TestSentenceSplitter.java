@@ -0,0 +1,83 @@
+package banner;
+
+import banner.tokenization.SentenceSplitter;
+import banner.tokenization.TokenOffsets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks where SentenceSplitter ends sentences, and that it ends them in the same places when given the text a part at
+ * a time
+ */
+public class TestSentenceSplitter {
+  private static final String TEXT = "Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo. " +
+      "Only p105 and human c-Rel (hc-Rel) are common, e.g. to complexes (Smith et al. 2001; Fig. 3).\n" +
+      "The p53 protein binds to MDM2 in J. Smith's assay! Is IL-2 \"reduced?\" Yes.\n \n" +
+      "A title without a period\n\n" +
+      "  Expression of IL-2 was 2.5 times higher than of IL-4.  ";
+
+  @Test
+  public void testSplit() {
+    assertEquals("[Co-immunoprecipitation analysis confirmed that Bis interacted with Bcl-2 in vivo., " +
+        "Only p105 and human c-Rel (hc-Rel) are common, e.g. to complexes (Smith et al. 2001; Fig. 3)., " +
+        "The p53 protein binds to MDM2 in J. Smith's assay!, Is IL-2 \"reduced?\", Yes., A title without a period, " +
+        "Expression of IL-2 was 2.5 times higher than of IL-4.]", split(new SentenceSplitter(), TEXT).toString());
+  }
+
+  @Test
+  public void testMaxLength() {
+    List<String> sentences = split(new SentenceSplitter(20), TEXT);
+    // A word longer than a sentence is split, otherwise sentences are split at whitespace
+    assertEquals("Co-immunoprecipitati", sentences.get(0));
+    assertEquals("on analysis", sentences.get(1));
+    StringBuilder text = new StringBuilder();
+    for(String sentence: sentences) {
+      assertTrue(sentence, sentence.length() <= 20);
+      text.append(sentence);
+    }
+    assertEquals(TEXT.replaceAll("\\s", ""), text.toString().replaceAll("\\s", ""));
+  }
+
+  @Test
+  public void testParts() {
+    Random random = new Random(0);
+    for(SentenceSplitter splitter: new SentenceSplitter[] {new SentenceSplitter(), new SentenceSplitter(16)}) {
+      List<String> expected = split(splitter, TEXT);
+      for(int n = 0; n < 200; n ++) {
+        // Gives the splitter the text up to end, adding to end whenever it needs more
+        List<String> sentences = new ArrayList<String>();
+        TokenOffsets offsets = new TokenOffsets();
+        int start = 0;
+        int end = 0;
+        while(start < TEXT.length()) {
+          int sentenceEnd = start < end ? splitter.findSentenceEnd(TEXT, start, end, end < TEXT.length()) : -1;
+          if(sentenceEnd < 0) {
+            end = Math.min(TEXT.length(), end + 1 + random.nextInt(8));
+            continue;
+          }
+          offsets.clear();
+          SentenceSplitter.addTrimmed(TEXT, start, sentenceEnd, offsets);
+          if(offsets.size() > 0)
+            sentences.add(TEXT.substring(offsets.getStart(0), offsets.getEnd(0)));
+          start = sentenceEnd;
+        }
+        assertEquals(expected, sentences);
+      }
+    }
+  }
+
+  private static List<String> split(SentenceSplitter splitter, String text) {
+    TokenOffsets offsets = new TokenOffsets();
+    splitter.split(text, 0, text.length(), offsets);
+    List<String> sentences = new ArrayList<String>();
+    for(int i = 0; i < offsets.size(); i ++)
+      sentences.add(text.substring(offsets.getStart(i), offsets.getEnd(i)));
+    return sentences;
+  }
+}
@@ -0,0 +1,80 @@
+package banner;
+
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4StochasticTrainer;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a step of stochastic training over all the instances follows the gradient of the training value, and that
+ * training gives the same parameters with several threads and is refused with the hyperbolic prior
+ */
+public class TestStochasticTraining {
+  @Test
+  public void testGradientStep() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    InstanceList instances = SmallModel.movedInstances(crf);
+    // The trainer sets the weights as for these instances, which then does not change them
+    crf.setWeightsDimensionAsIn(instances);
+
+    CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+    double[] parameters = new double[maximizable.getNumParameters()];
+    maximizable.getParameters(parameters);
+    double[] gradient = new double[parameters.length];
+    maximizable.getValueGradient(gradient);
+
+    CRF4StochasticTrainer trainer = new CRF4StochasticTrainer();
+    trainer.setNumEpochs(1);
+    trainer.setBatchSize(instances.size());
+    trainer.setAdaGrad(false);
+    double rate = 1e-3;
+    trainer.setLearningRate(rate, 0);
+    trainer.train(crf, instances);
+
+    maximizable = crf.getMaximizableCRF(instances);
+    assertEquals(parameters.length, maximizable.getNumParameters());
+    double[] trained = new double[parameters.length];
+    maximizable.getParameters(trained);
+    double norm = 0;
+    for(int i = 0; i < parameters.length; i ++) {
+      if(Double.isInfinite(parameters[i]))
+        continue;
+      // The parameters of features not in the instances are shrunk by exp(-rate / variance) rather than by
+      // 1 - rate / variance, which differ by about the square of the step
+      assertEquals("Parameter " + i, parameters[i] + rate * gradient[i], trained[i],
+          1e-9 * Math.max(1, Math.abs(parameters[i])) + rate * rate * Math.abs(parameters[i]));
+      norm += Math.abs(gradient[i]);
+    }
+    assertTrue(norm > 1);
+  }
+
+  @Test
+  public void testThreads() throws Exception {
+    double[][] trained = new double[2][];
+    for(int n = 0; n < 2; n ++) {
+      CRF4 crf = SmallModel.tagger().getForwardCRF();
+      InstanceList instances = SmallModel.movedInstances(crf);
+      crf.setTrainingThreads(n == 0 ? 1 : 3);
+      CRF4StochasticTrainer trainer = new CRF4StochasticTrainer();
+      trainer.setNumEpochs(3);
+      trainer.setBatchSize(4);
+      trainer.train(crf, instances);
+      CRF4.MaximizableCRF maximizable = crf.getMaximizableCRF(instances);
+      trained[n] = new double[maximizable.getNumParameters()];
+      maximizable.getParameters(trained[n]);
+    }
+    assertEquals(trained[0].length, trained[1].length);
+    for(int i = 0; i < trained[0].length; i ++)
+      assertEquals(trained[0][i], trained[1][i], 1e-9 * Math.max(1, Math.abs(trained[0][i])));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHyperbolicPrior() throws Exception {
+    CRF4 crf = SmallModel.tagger().getForwardCRF();
+    crf.setUseHyperbolicPrior(true);
+    new CRF4StochasticTrainer().train(crf, SmallModel.movedInstances(crf));
+  }
+}
@@ -0,0 +1,101 @@
+package banner;
+
+import banner.tagging.DictionaryTagger;
+import banner.tagging.Mention;
+import banner.tagging.MentionType;
+import banner.tokenization.SimpleTokenizer;
+import banner.util.TokenTrie;
+import banner.util.Trie;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that TokenTrie holds the same entries as Trie, and that a DictionaryTagger read from a stream tags as the one
+ * written
+ */
+public class TestTokenTrie {
+  @Test
+  public void testSameAsTrie() throws Exception {
+    Random random = new Random(0);
+    String[] vocabulary = {"a", "b", "c", "alpha", "beta", "-", "/", "p53", "IL-2", "\ud835\udefc", ""};
+    Trie<String, Integer> expected = new Trie<String, Integer>();
+    TokenTrie.Builder builder = new TokenTrie.Builder();
+    List<List<String>> keys = new ArrayList<List<String>>();
+    for(int i = 0; i < 2000; i ++) {
+      List<String> key = randomKey(random, vocabulary);
+      keys.add(key);
+      Integer old = expected.add(key, i % 7);
+      assertEquals(old == null ? TokenTrie.NONE : old.intValue(), builder.add(key, i % 7));
+    }
+    TokenTrie trie = builder.build();
+    TokenTrie copy = read(trie);
+    TokenTrie rebuilt = new TokenTrie.Builder(trie).build();
+    assertEquals(expected.size(), trie.size());
+    assertEquals(expected.size(), copy.size());
+    assertEquals(trie.numNodes(), rebuilt.numNodes());
+    for(int i = 0; i < 4000; i ++) {
+      List<String> key = i < keys.size() ? keys.get(i) : randomKey(random, vocabulary);
+      Integer value = expected.getValue(key);
+      int v = value == null ? TokenTrie.NONE : value;
+      assertEquals(key.toString(), v, trie.getValue(key));
+      assertEquals(key.toString(), v, copy.getValue(key));
+      assertEquals(key.toString(), v, rebuilt.getValue(key));
+    }
+    assertEquals(TokenTrie.NONE, trie.getTokenId("gamma"));
+  }
+
+  @Test
+  public void testReadDictionary() throws Exception {
+    DictionaryTagger tagger = new DictionaryTagger(new SimpleTokenizer(), true);
+    tagger.add(new StringReader("p53\nIL-2\nIL-2 receptor\nhuman IL\nbeta catenin\n"), MentionType.getType("GENE"));
+    tagger.add("alpha", MentionType.getType("PROTEIN"));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    tagger.write(new DataOutputStream(bytes));
+    DictionaryTagger copy = new DictionaryTagger(new SimpleTokenizer(), true);
+    copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(tagger.size(), copy.size());
+
+    String text = "The human IL-2 receptor binds p53 and beta catenin with alpha in IL-2 cells .";
+    assertEquals(mentions(tagger, text), mentions(copy, text));
+    assertEquals("[GENE 1 6, GENE 7 8, GENE 9 11, PROTEIN 12 13, GENE 14 17]", mentions(copy, text).toString());
+
+    // Entries may still be added after the dictionary has been used; adjacent mentions are merged
+    copy.add("cells", MentionType.getType("GENE"));
+    assertEquals(tagger.size() + 1, copy.size());
+    assertEquals("[GENE 1 6, GENE 7 8, GENE 9 11, PROTEIN 12 13, GENE 14 18]", mentions(copy, text).toString());
+  }
+
+  private static List<String> mentions(DictionaryTagger tagger, String text) {
+    Sentence sentence = new Sentence(text);
+    new SimpleTokenizer().tokenize(sentence);
+    tagger.tag(sentence);
+    List<String> mentions = new ArrayList<String>();
+    for(Mention mention: sentence.getMentions())
+      mentions.add(mention.getType().getText() + " " + mention.getStart() + " " + mention.getEnd());
+    return mentions;
+  }
+
+  private static List<String> randomKey(Random random, String[] vocabulary) {
+    List<String> key = new ArrayList<String>();
+    int length = random.nextInt(4);
+    for(int j = 0; j < length; j ++)
+      key.add(vocabulary[random.nextInt(vocabulary.length)]);
+    return key;
+  }
+
+  private static TokenTrie read(TokenTrie trie) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    trie.write(new DataOutputStream(bytes));
+    return TokenTrie.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
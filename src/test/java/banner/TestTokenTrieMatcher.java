@@ -0,0 +1,140 @@
+package banner;
+
+import banner.tagging.DictionaryTagger;
+import banner.tagging.Mention;
+import banner.tagging.MentionType;
+import banner.tagging.TaggedToken;
+import banner.tokenization.WhitespaceTokenizer;
+import banner.util.TokenTrie;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that DictionaryTagger, which finds entries with a TokenTrieMatcher, tags as the walk from every token and
+ * merge of adjacent mentions it used before, and that it finds the same mention types for a list of tokens as for a
+ * Sentence
+ */
+public class TestTokenTrieMatcher {
+  private static final String[] VOCABULARY = {"a", "b", "c", "d", "e"};
+  private static final MentionType[] TYPES = {MentionType.getType("GENE"), MentionType.getType("PROTEIN")};
+
+  @Test
+  public void testSameAsWalk() {
+    Random random = new Random(0);
+    for(int round = 0; round < 200; round ++) {
+      DictionaryTagger filtered = new DictionaryTagger(new WhitespaceTokenizer(), true);
+      DictionaryTagger unfiltered = new DictionaryTagger(new WhitespaceTokenizer(), false);
+      int numEntries = 1 + random.nextInt(20);
+      for(int i = 0; i < numEntries; i ++) {
+        String entry = randomText(random, 1 + random.nextInt(4));
+        // An entry keeps the type it was first added with
+        MentionType type = TYPES[entry.hashCode() & 1];
+        filtered.add(entry, type);
+        unfiltered.add(entry, type);
+      }
+      for(int i = 0; i < 20; i ++) {
+        String text = randomText(random, 1 + random.nextInt(15));
+        assertEquals(text, walk(filtered, text, true), mentions(filtered, text));
+        assertEquals(text, walk(unfiltered, text, false), mentions(unfiltered, text));
+      }
+    }
+  }
+
+  @Test
+  public void testTokenTypes() {
+    Random random = new Random(1);
+    for(int round = 0; round < 200; round ++) {
+      DictionaryTagger tagger = new DictionaryTagger(new WhitespaceTokenizer(), round % 2 == 0);
+      for(int i = 0; i < 1 + random.nextInt(10); i ++) {
+        String entry = randomText(random, 1 + random.nextInt(3));
+        tagger.add(entry, TYPES[entry.hashCode() & 1]);
+      }
+      for(int i = 0; i < 20; i ++) {
+        String text = randomText(random, 1 + random.nextInt(15));
+        Sentence sentence = new Sentence(text);
+        new WhitespaceTokenizer().tokenize(sentence);
+        tagger.tag(sentence);
+        String expected;
+        try {
+          List<MentionType> types = new ArrayList<MentionType>();
+          for(TaggedToken token: sentence.getTaggedTokens())
+            types.add(token.getMention() == null ? null : token.getMention().getType());
+          expected = types.toString();
+        } catch(IllegalArgumentException e) {
+          expected = e.getMessage();
+        }
+        String actual;
+        try {
+          actual = Arrays.asList(tagger.tag(sentence.getTokenText())).toString();
+        } catch(IllegalArgumentException e) {
+          actual = e.getMessage();
+        }
+        assertEquals(text, expected, actual);
+      }
+    }
+  }
+
+  private static String randomText(Random random, int length) {
+    StringBuilder text = new StringBuilder();
+    for(int i = 0; i < length; i ++)
+      text.append(i == 0 ? "" : " ").append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+    return text.toString();
+  }
+
+  private static List<String> mentions(DictionaryTagger tagger, String text) {
+    Sentence sentence = new Sentence(text);
+    new WhitespaceTokenizer().tokenize(sentence);
+    tagger.tag(sentence);
+    List<String> mentions = new ArrayList<String>();
+    for(Mention mention: sentence.getMentions())
+      mentions.add(mention.getType().getText() + " " + mention.getStart() + " " + mention.getEnd());
+    return mentions;
+  }
+
+  // The tagging of DictionaryTagger before it used a TokenTrieMatcher
+  private static List<String> walk(DictionaryTagger tagger, String text, boolean filterContainedMentions) {
+    Sentence sentence = new Sentence(text);
+    new WhitespaceTokenizer().tokenize(sentence);
+    TokenTrie trie = tagger.getEntities();
+    List<MentionType> types = tagger.getTypes();
+    int size = sentence.getTokens().size();
+    List<Mention> mentions = new LinkedList<Mention>();
+    for(int startIndex = 0; startIndex < size; startIndex ++) {
+      int node = TokenTrie.ROOT;
+      for(int currentIndex = startIndex; currentIndex < size && node != TokenTrie.NONE; currentIndex ++) {
+        int value = trie.getValue(node);
+        if(value != TokenTrie.NONE)
+          mentions.add(new Mention(sentence, types.get(value), startIndex, currentIndex));
+        node = trie.getChild(node, sentence.getTokens().get(currentIndex).getText());
+      }
+    }
+    List<String> result = new ArrayList<String>();
+    while(!mentions.isEmpty()) {
+      Mention mention1 = mentions.remove(0);
+      int start = mention1.getStart();
+      int end = mention1.getEnd();
+      if(filterContainedMentions) {
+        Iterator<Mention> mentionIterator = mentions.iterator();
+        while(mentionIterator.hasNext()) {
+          Mention mention2 = mentionIterator.next();
+          boolean adjacent = (end >= mention2.getStart()) && (start <= mention2.getEnd());
+          if(mention1.getType().equals(mention2.getType()) && adjacent) {
+            mentionIterator.remove();
+            start = Math.min(start, mention2.getStart());
+            end = Math.max(end, mention2.getEnd());
+          }
+        }
+      }
+      result.add(mention1.getType().getText() + " " + start + " " + end);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,85 @@
+package banner;
+
+import banner.tagging.WordShapes;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that WordShapes gives the same word and number classes as the regular expressions it replaces, over the
+ * tokens of the dictionary and some unusual strings
+ */
+public class TestWordShapes {
+  private static final String DICTIONARY = "banner_data/dict/single.txt";
+  private static final String[] TOKENS = {
+    "", "p53", "Bcl-2", "IL-2", "NF-kappaB", "5'-flanking", "3.5", "0", "007", "10-20", "a1b22c333", "__", "ABCdef",
+    "\u03b1-globin", "TNF\u03b1", "\u00e9t\u00e9", "\uff21\uff22", "\ud835\udefc", "\ud835\udefc\ud835\udefd1",
+    "x\ud800y", "\udc00", "\ud800", "a\udc00\ud800b", "\u0661\u0662", " \t"
+  };
+
+  @Test
+  public void testSameAsRegex() throws Exception {
+    Set<String> tokens = new LinkedHashSet<String>();
+    for(String token: TOKENS)
+      tokens.add(token);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(DICTIONARY)), "UTF-8"));
+    for(String line = reader.readLine(); line != null; line = reader.readLine())
+      for(String token: line.split("\\s+"))
+        tokens.add(token);
+    reader.close();
+
+    WordShapes shapes = new WordShapes(64);
+    for(String token: tokens) {
+      assertEquals(token, regexWordClass(token), WordShapes.getWordClass(token));
+      assertEquals(token, regexBriefWordClass(token), WordShapes.getBriefWordClass(token));
+      assertEquals(token, regexNumberClass(token), WordShapes.getNumberClass(token));
+      assertEquals(token, regexBriefNumberClass(token), WordShapes.getBriefNumberClass(token));
+      WordShapes.Shape shape = shapes.getShape(token);
+      assertEquals(token, shape.getText());
+      assertEquals(token, regexWordClass(token), shape.getWordClass());
+      assertEquals(token, regexBriefNumberClass(token), shape.getBriefNumberClass());
+    }
+  }
+
+  @Test
+  public void testCache() {
+    WordShapes shapes = new WordShapes(16);
+    WordShapes.Shape shape = shapes.getShape("Bcl-2");
+    assertSame(shape, shapes.getShape(new String("Bcl-2")));
+    assertEquals("Aa0", new WordShapes(0).getShape("Bcl2").getBriefWordClass());
+  }
+
+  // The implementations replaced by WordShapes
+
+  private static String regexNumberClass(String text) {
+    return text.replaceAll("[0-9]", "0");
+  }
+
+  private static String regexWordClass(String text) {
+    text = text.replaceAll("[A-Z]", "A");
+    text = text.replaceAll("[a-z]", "a");
+    text = text.replaceAll("[0-9]", "0");
+    text = text.replaceAll("[^A-Za-z0-9]", "x");
+    return text;
+  }
+
+  private static String regexBriefNumberClass(String text) {
+    return text.replaceAll("[0-9]+", "0");
+  }
+
+  private static String regexBriefWordClass(String text) {
+    text = text.replaceAll("[A-Z]+", "A");
+    text = text.replaceAll("[a-z]+", "a");
+    text = text.replaceAll("[0-9]+", "0");
+    text = text.replaceAll("[^A-Za-z0-9]+", "x");
+    return text;
+  }
+}
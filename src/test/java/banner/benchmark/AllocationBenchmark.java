@@ -0,0 +1,62 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.CRFTagger;
+import banner.tagging.Mention;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the bytes allocated, and the time taken, per sentence to tokenize, tag and post-process sentences and read
+ * the text of their mentions, as BannerWrapper does.
+ * Usage: AllocationBenchmark properties model sentences [rounds]
+ * where model is a serialized or binary model and sentences is a text file with one sentence per line.
+ */
+public class AllocationBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    CRFTagger tagger = CRFTagger.load(new File(args[1]), properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+    List<String> texts = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(args[2]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine())
+      if(line.trim().length() > 0)
+        texts.add(line.trim());
+    reader.close();
+    System.out.println(texts.size() + " sentences, " + rounds + " rounds");
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT and fills the caches
+      long bytes = threads.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String text: texts) {
+          Sentence sentence = new Sentence(text);
+          properties.getTokenizer().tokenize(sentence);
+          tagger.tag(sentence);
+          if(properties.getPostProcessor() != null)
+            properties.getPostProcessor().postProcess(sentence);
+          for(Mention mention: sentence.getMentions())
+            check += mention.getText().length();
+        }
+      long time = System.nanoTime() - start;
+      bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+      if(pass == 1) {
+        double n = (double) texts.size() * rounds;
+        System.out.printf("Allocated: %10.0f bytes/sentence%n", bytes / n);
+        System.out.printf("Time:      %10.1f us/sentence%n", time / n / 1e3);
+      }
+    }
+    // Printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
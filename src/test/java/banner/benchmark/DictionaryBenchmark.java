@@ -0,0 +1,100 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.tagging.DictionaryTagger;
+import banner.tagging.MentionType;
+import banner.tokenization.Tokenizer;
+import banner.util.Trie;
+import bc2.GeneDictionaryTagger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reports the load time and retained heap of the dictionary of the pre-tagger: kept in a Trie of HashMaps, as
+ * DictionaryTagger used to, in a TokenTrie built from the dictionary file, and in a TokenTrie read from a file written
+ * by DictionaryTagger.write.
+ * Usage: DictionaryBenchmark properties
+ * Run with a heap large enough for the Trie, e.g. -Xmx2g.
+ */
+public class DictionaryBenchmark {
+  // Keeps the entries in a Trie instead of a TokenTrie
+  private static class TrieDictionaryTagger extends GeneDictionaryTagger {
+    Trie<String, MentionType> entries = new Trie<String, MentionType>();
+
+    TrieDictionaryTagger(Tokenizer tokenizer) {
+      super(tokenizer, true);
+    }
+
+    @Override
+    protected void add(List<String> tokens, MentionType type) {
+      entries.add(tokens, type);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    Properties props = new Properties();
+    props.load(new FileReader(args[0]));
+    File dictionary = new File(props.getProperty("dictionary"));
+    MentionType type = MentionType.getType("GENE");
+
+    long base = usedHeap();
+    long start = System.nanoTime();
+    TrieDictionaryTagger trieTagger = new TrieDictionaryTagger(properties.getTokenizer());
+    add(trieTagger, dictionary, type);
+    long time = System.nanoTime() - start;
+    report("Trie, from " + dictionary.getName(), trieTagger.entries.size(), time, usedHeap() - base);
+    trieTagger = null;
+
+    base = usedHeap();
+    start = System.nanoTime();
+    DictionaryTagger tagger = new GeneDictionaryTagger(properties.getTokenizer(), true);
+    add(tagger, dictionary, type);
+    int size = tagger.size();
+    time = System.nanoTime() - start;
+    report("TokenTrie, from " + dictionary.getName(), size, time, usedHeap() - base);
+
+    File file = File.createTempFile("dictionary", ".bin");
+    file.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    tagger.write(out);
+    out.close();
+    tagger = null;
+
+    base = usedHeap();
+    start = System.nanoTime();
+    tagger = new GeneDictionaryTagger(properties.getTokenizer(), true);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    tagger.read(in);
+    in.close();
+    time = System.nanoTime() - start;
+    report("TokenTrie, read from " + (file.length() >> 10) + " KB", tagger.size(), time, usedHeap() - base);
+  }
+
+  private static void add(DictionaryTagger tagger, File dictionary, MentionType type) throws IOException {
+    FileReader reader = new FileReader(dictionary);
+    tagger.add(reader, type);
+    reader.close();
+  }
+
+  private static void report(String name, int size, long time, long heap) {
+    System.out.printf("%-32s %8d entries %8.0f ms %8.1f MB retained%n", name, size, time / 1e6, heap / (1024.0 * 1024.0));
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for(int i = 0; i < 4; i ++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
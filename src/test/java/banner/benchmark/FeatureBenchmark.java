@@ -0,0 +1,77 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.BinaryModelFormat;
+import banner.tagging.CRFTagger;
+import banner.tagging.FeatureEncoder;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares computing the features of sentences with the string feature pipe against FeatureEncoder.
+ * Usage: FeatureBenchmark properties model sentences [rounds]
+ * where sentences is a text file with one sentence per line. The model may be in the binary format,
+ * in which case it is read with shared weights and its feature alphabet is memory mapped.
+ */
+public class FeatureBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    File model = new File(args[1]);
+    CRFTagger tagger;
+    if(BinaryModelFormat.isBinaryModel(model))
+      tagger = BinaryModelFormat.readShared(model, properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+    else
+      tagger = CRFTagger.load(model, properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+    CRF4 crf = tagger.getForwardCRF() != null ? tagger.getForwardCRF() : tagger.getReverseCRF();
+    FeatureEncoder encoder = FeatureEncoder.create(crf.getInputPipe());
+
+    List<List<String>> sentences = new ArrayList<List<String>>();
+    int tokens = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(args[2]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      Sentence sentence = new Sentence(line.trim());
+      properties.getTokenizer().tokenize(sentence);
+      sentences.add(sentence.getTokenText());
+      tokens += sentence.getTokens().size();
+    }
+    reader.close();
+    System.out.println(crf.getInputAlphabet().getClass().getSimpleName() + " of " + crf.getInputAlphabet().size() + " features");
+    System.out.println(sentences.size() + " sentences, " + tokens + " tokens, " + rounds + " rounds");
+
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(List<String> sentence: sentences) {
+          Instance instance = new Instance(sentence, null, null, null, crf.getInputPipe());
+          check += ((FeatureVectorSequence) instance.getData()).size();
+        }
+      long pipe = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(List<String> sentence: sentences)
+          check += encoder.encode(sentence).size();
+      long encoded = System.nanoTime() - start;
+
+      if(pass == 1) {
+        double n = (double) tokens * rounds;
+        System.out.printf("Features, pipe:           %8.1f ns/token%n", pipe / n);
+        System.out.printf("Features, FeatureEncoder: %8.1f ns/token (%.2fx)%n", encoded / n, (double) pipe / encoded);
+      }
+    }
+    // Printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
@@ -0,0 +1,76 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.DragonPosTagger;
+import banner.tagging.HepplePosTagger;
+import banner.tagging.PosTagger;
+import dragon.nlp.tool.HeppleTagger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Compares the load time and tagging speed of the dragon HeppleTagger, tagging a Sentence of Words as
+ * String2TokenSequencePipe used to, against HepplePosTagger tagging the tokens directly.
+ * Usage: PosTaggerBenchmark properties sentences [rounds]
+ * where sentences is a text file with one sentence per line, tokenized with the tokenizer of the properties.
+ */
+public class PosTaggerBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    Properties props = new Properties();
+    props.load(new FileReader(args[0]));
+    String directory = props.getProperty("posTaggerDataDirectory");
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    List<List<String>> sentences = new ArrayList<List<String>>();
+    int numTokens = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(args[1]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      Sentence sentence = new Sentence(line.trim());
+      properties.getTokenizer().tokenize(sentence);
+      sentences.add(sentence.getTokenText());
+      numTokens += sentence.getTokens().size();
+    }
+    reader.close();
+    System.out.println(sentences.size() + " sentences, " + numTokens + " tokens, " + rounds + " rounds");
+
+    long start = System.nanoTime();
+    PosTagger dragon = new DragonPosTagger(new HeppleTagger(directory));
+    System.out.printf("HeppleTagger load:          %8.0f ms%n", (System.nanoTime() - start) / 1e6);
+    start = System.nanoTime();
+    PosTagger builtIn = new HepplePosTagger(directory);
+    System.out.printf("HepplePosTagger load:       %8.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(List<String> tokens: sentences)
+          for(int pos: dragon.tag(tokens))
+            check += pos;
+      long dragonTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(List<String> tokens: sentences)
+          for(int pos: builtIn.tag(tokens))
+            check -= pos;
+      long builtInTime = System.nanoTime() - start;
+
+      if(pass == 1) {
+        double n = (double) numTokens * rounds;
+        System.out.printf("HeppleTagger, Sentence:     %8.1f ns/token%n", dragonTime / n);
+        System.out.printf("HepplePosTagger, tokens:    %8.1f ns/token (%.2fx)%n", builtInTime / n, (double) dragonTime / builtInTime);
+      }
+    }
+    // Zero if both taggers found the same indexes; printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
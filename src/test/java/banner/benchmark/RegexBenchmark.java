@@ -0,0 +1,81 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.ConfigurableRegexMatches;
+import edu.umass.cs.mallet.base.util.MultiPatternMatcher;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Compares matching the regex features of tokens one pattern at a time, as the regex pipes used to, against
+ * MultiPatternMatcher with and without its cache. The patterns are those of the regex file of the properties and
+ * the ROMAN, GREEK and ISPUNCT patterns of CRFTagger.
+ * Usage: RegexBenchmark properties sentences [rounds]
+ * where sentences is a text file with one sentence per line, tokenized with the tokenizer of the properties.
+ */
+public class RegexBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    Properties props = new Properties();
+    props.load(new FileReader(args[0]));
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    List<Pattern> patterns = new ArrayList<Pattern>(new ConfigurableRegexMatches(props.getProperty("regexFilename")).getPatterns());
+    patterns.add(Pattern.compile("[IVXDLCM]+", Pattern.CASE_INSENSITIVE));
+    patterns.add(Pattern.compile("(alpha|beta|gamma|delta|epsilon|zeta|eta|theta|iota|kappa|lambda|mu|nu|xi|omicron|pi|rho|sigma|tau|upsilon|phi|chi|psi|omega)", Pattern.CASE_INSENSITIVE));
+    patterns.add(Pattern.compile("[`~!@#$%^&*()-=_+\\[\\]\\\\{}|;\':\\\",./<>?]+"));
+
+    List<String> tokens = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(args[1]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      Sentence sentence = new Sentence(line.trim());
+      properties.getTokenizer().tokenize(sentence);
+      tokens.addAll(sentence.getTokenText());
+    }
+    reader.close();
+    System.out.println(patterns.size() + " patterns, " + tokens.size() + " tokens, " + rounds + " rounds");
+
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens)
+          for(int p = 0; p < patterns.size(); p ++)
+            if(patterns.get(p).matcher(token).matches())
+              check += p;
+      long loop = System.nanoTime() - start;
+
+      MultiPatternMatcher uncached = new MultiPatternMatcher(patterns, 0);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens)
+          for(int p: uncached.matches(token))
+            check += p;
+      long combined = System.nanoTime() - start;
+
+      MultiPatternMatcher cached = new MultiPatternMatcher(patterns, 8192);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens)
+          for(int p: cached.matches(token))
+            check += p;
+      long cachedTime = System.nanoTime() - start;
+
+      if(pass == 1) {
+        double n = (double) tokens.size() * rounds;
+        System.out.printf("Regex features, pattern loop:                %8.1f ns/token%n", loop / n);
+        System.out.printf("Regex features, MultiPatternMatcher:         %8.1f ns/token (%.2fx)%n", combined / n, (double) loop / combined);
+        System.out.printf("Regex features, MultiPatternMatcher, cached: %8.1f ns/token (%.2fx)%n", cachedTime / n, (double) loop / cachedTime);
+      }
+    }
+    // Printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
@@ -0,0 +1,109 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.CRFTagger;
+import edu.umass.cs.mallet.base.fst.CRF4;
+import edu.umass.cs.mallet.base.fst.CRF4DenseWeights;
+import edu.umass.cs.mallet.base.fst.CRF4Viterbi;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.SparseVector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares scoring tokens with the sparse CRF4 weights against the compiled dense weights, and
+ * decoding with CRF4.viterbiPath() against CRF4Viterbi.
+ * Usage: ScoringBenchmark properties model sentences [rounds]
+ * where sentences is a text file with one sentence per line.
+ */
+public class ScoringBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    CRFTagger tagger = CRFTagger.load(new File(args[1]), properties.getLemmatiser(), properties.getPosTagger(), properties.getPreTagger());
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+    CRF4 crf = tagger.getForwardCRF() != null ? tagger.getForwardCRF() : tagger.getReverseCRF();
+
+    List<FeatureVectorSequence> inputs = new ArrayList<FeatureVectorSequence>();
+    int tokens = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(args[2]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      Sentence sentence = new Sentence(line.trim());
+      properties.getTokenizer().tokenize(sentence);
+      Instance instance = new Instance(sentence.getTokenText(), null, null, null, crf.getInputPipe());
+      FeatureVectorSequence input = (FeatureVectorSequence) instance.getData();
+      inputs.add(input);
+      tokens += input.size();
+    }
+    reader.close();
+
+    CRF4DenseWeights dense = new CRF4DenseWeights(crf);
+    System.out.println(dense);
+    System.out.println(inputs.size() + " sentences, " + tokens + " tokens, " + rounds + " rounds");
+
+    SparseVector[] weights = crf.getWeights();
+    double[] defaultWeights = crf.getDefaultWeights();
+    double[] scores = new double[weights.length];
+    double check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(FeatureVectorSequence input: inputs)
+          for(int ip = 0; ip < input.size(); ip ++) {
+            FeatureVector fv = (FeatureVector) input.get(ip);
+            for(int g = 0; g < weights.length; g ++)
+              scores[g] = weights[g].dotProduct(fv) + defaultWeights[g];
+            check += scores[0];
+          }
+      long sparse = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(FeatureVectorSequence input: inputs)
+          for(int ip = 0; ip < input.size(); ip ++) {
+            dense.score((FeatureVector) input.get(ip), scores);
+            check += scores[0];
+          }
+      long compiled = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(FeatureVectorSequence input: inputs)
+          check += crf.viterbiPath(input).getCost();
+      long viterbiPath = System.nanoTime() - start;
+
+      CRF4Viterbi sparseDecoder = new CRF4Viterbi(crf);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(FeatureVectorSequence input: inputs)
+          check += sparseDecoder.bestLabels(input, new int[input.size()]);
+      long sparseViterbi = System.nanoTime() - start;
+
+      CRF4Viterbi denseDecoder = new CRF4Viterbi(crf, dense);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(FeatureVectorSequence input: inputs)
+          check += denseDecoder.bestLabels(input, new int[input.size()]);
+      long denseViterbi = System.nanoTime() - start;
+
+      if(pass == 1) {
+        double n = (double) tokens * rounds;
+        System.out.printf("Scoring, sparse weights:     %8.1f ns/token%n", sparse / n);
+        System.out.printf("Scoring, compiled weights:   %8.1f ns/token (%.2fx)%n", compiled / n, (double) sparse / compiled);
+        System.out.printf("Decoding, viterbiPath():     %8.1f ns/token%n", viterbiPath / n);
+        System.out.printf("Decoding, CRF4Viterbi:       %8.1f ns/token (%.2fx)%n", sparseViterbi / n, (double) viterbiPath / sparseViterbi);
+        System.out.printf("Decoding, CRF4Viterbi dense: %8.1f ns/token (%.2fx)%n", denseViterbi / n, (double) viterbiPath / denseViterbi);
+      }
+    }
+    // Printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
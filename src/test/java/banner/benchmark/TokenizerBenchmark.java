@@ -0,0 +1,71 @@
+package banner.benchmark;
+
+import banner.Sentence;
+import banner.tokenization.BaseTokenizer;
+import banner.tokenization.CharClassTokenizer;
+import banner.tokenization.NaiveTokenizer;
+import banner.tokenization.SimpleTokenizer;
+import banner.tokenization.TokenOffsets;
+import banner.tokenization.Tokenizer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the speed of BaseTokenizer, SimpleTokenizer and NaiveTokenizer tokenizing each sentence into a Sentence, and
+ * of CharClassTokenizer tokenizing the sentences as one document into reused TokenOffsets.
+ * Usage: TokenizerBenchmark sentences [rounds]
+ * where sentences is a text file with one sentence per line.
+ */
+public class TokenizerBenchmark {
+  public static void main(String[] args) throws Exception {
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    List<String> sentences = new ArrayList<String>();
+    StringBuilder documentText = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      sentences.add(line.trim());
+      documentText.append(line.trim()).append(' ');
+    }
+    reader.close();
+    String document = documentText.toString();
+    System.out.println(sentences.size() + " sentences, " + document.length() + " characters, " + rounds + " rounds");
+
+    Tokenizer[] tokenizers = {new BaseTokenizer(), new SimpleTokenizer(), new NaiveTokenizer()};
+    CharClassTokenizer[] engines = {CharClassTokenizer.BASE, CharClassTokenizer.SIMPLE, CharClassTokenizer.NAIVE};
+    TokenOffsets offsets = new TokenOffsets();
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      for(int t = 0; t < tokenizers.length; t ++) {
+        long start = System.nanoTime();
+        for(int r = 0; r < rounds; r ++)
+          for(String text: sentences) {
+            Sentence sentence = new Sentence(text);
+            tokenizers[t].tokenize(sentence);
+            check += sentence.getTokenCount();
+          }
+        long sentenceTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(int r = 0; r < rounds; r ++) {
+          offsets.clear();
+          engines[t].tokenize(document, 0, document.length(), offsets);
+          check -= offsets.size();
+        }
+        long documentTime = System.nanoTime() - start;
+
+        if(pass == 1) {
+          double n = (double) document.length() * rounds;
+          System.out.printf("%-16s Sentence: %6.2f ns/char   document: %6.2f ns/char%n", tokenizers[t].getClass().getSimpleName(),
+              sentenceTime / n, documentTime / n);
+        }
+      }
+    }
+    // Zero if the document has the same tokens as its sentences; printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+}
@@ -0,0 +1,75 @@
+package banner.benchmark;
+
+import banner.BannerProperties;
+import banner.Sentence;
+import banner.tagging.WordShapes;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares computing the word and number classes of tokens with regular expressions, as String2TokenSequencePipe
+ * used to, against WordShapes with and without its cache.
+ * Usage: WordShapeBenchmark properties sentences [rounds]
+ * where sentences is a text file with one sentence per line, tokenized with the tokenizer of the properties.
+ */
+public class WordShapeBenchmark {
+  public static void main(String[] args) throws Exception {
+    BannerProperties properties = BannerProperties.load(args[0]);
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    List<String> tokens = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(args[1]));
+    for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if(line.trim().length() == 0) continue;
+      Sentence sentence = new Sentence(line.trim());
+      properties.getTokenizer().tokenize(sentence);
+      tokens.addAll(sentence.getTokenText());
+    }
+    reader.close();
+    System.out.println(tokens.size() + " tokens, " + rounds + " rounds");
+
+    long check = 0;
+    for(int pass = 0; pass < 2; pass ++) {
+      // The first pass warms up the JIT
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens) {
+          check += token.replaceAll("[0-9]", "0").length();
+          check += token.replaceAll("[0-9]+", "0").length();
+          check += token.replaceAll("[A-Z]", "A").replaceAll("[a-z]", "a").replaceAll("[0-9]", "0").replaceAll("[^A-Za-z0-9]", "x").length();
+          check += token.replaceAll("[A-Z]+", "A").replaceAll("[a-z]+", "a").replaceAll("[0-9]+", "0").replaceAll("[^A-Za-z0-9]+", "x").length();
+        }
+      long regex = System.nanoTime() - start;
+
+      WordShapes uncached = new WordShapes(0);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens)
+          check += length(uncached.getShape(token));
+      long scanned = System.nanoTime() - start;
+
+      WordShapes cached = new WordShapes(8192);
+      start = System.nanoTime();
+      for(int r = 0; r < rounds; r ++)
+        for(String token: tokens)
+          check += length(cached.getShape(token));
+      long cachedTime = System.nanoTime() - start;
+
+      if(pass == 1) {
+        double n = (double) tokens.size() * rounds;
+        System.out.printf("Shapes, regex:              %8.1f ns/token%n", regex / n);
+        System.out.printf("Shapes, WordShapes:         %8.1f ns/token (%.2fx)%n", scanned / n, (double) regex / scanned);
+        System.out.printf("Shapes, WordShapes, cached: %8.1f ns/token (%.2fx)%n", cachedTime / n, (double) regex / cachedTime);
+      }
+    }
+    // Printed so that the work cannot be optimized away
+    System.out.println("(checksum " + check + ")");
+  }
+
+  private static int length(WordShapes.Shape shape) {
+    return shape.getNumberClass().length() + shape.getBriefNumberClass().length() + shape.getWordClass().length()
+        + shape.getBriefWordClass().length();
+  }
+}